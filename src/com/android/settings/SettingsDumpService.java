@@ -33,6 +33,8 @@ import android.telephony.TelephonyManager;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.settings.applications.ProcStatsData;
 import com.android.settings.fuelgauge.batterytip.AnomalyConfigJobService;
+import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager;
+import com.android.settings.fuelgauge.batterytip.BatteryTipDetectorStats;
 import com.android.settingslib.net.DataUsageController;
 
 import org.json.JSONArray;
@@ -57,6 +59,8 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting
     static final String KEY_ANOMALY_DETECTION = "anomaly_detection";
     @VisibleForTesting
+    static final String KEY_BATTERY_TIP_DETECTION = "battery_tip_detection";
+    @VisibleForTesting
     static final Intent BROWSER_INTENT =
             new Intent("android.intent.action.VIEW", Uri.parse("http://"));
 
@@ -76,6 +80,7 @@ public class SettingsDumpService extends Service {
             dump.put(KEY_MEMORY, dumpMemory());
             dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
             dump.put(KEY_ANOMALY_DETECTION, dumpAnomalyDetection());
+            dump.put(KEY_BATTERY_TIP_DETECTION, BatteryTipDetectorStats.getInstance().dumpToJson());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -177,6 +182,11 @@ public class SettingsDumpService extends Service {
                 0 /* defValue */);
         obj.put("anomaly_config_version", String.valueOf(currentVersion));
 
+        final BatteryDatabaseManager databaseManager = BatteryDatabaseManager.getInstance(this);
+        obj.put("anomaly_db_row_count", databaseManager.getAnomalyRowCount());
+        obj.put("anomaly_db_size_bytes", databaseManager.getDatabaseSizeBytes());
+        obj.put("anomaly_db_last_compaction_ms", databaseManager.getLastCompactionTimeMs());
+
         return obj;
     }
 }
@@ -16,7 +16,6 @@ package com.android.settings.applications;
 
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.content.pm.UserInfo;
 import android.os.AsyncTask;
 import android.os.UserHandle;
@@ -30,21 +29,30 @@ public abstract class AppCounter extends AsyncTask<Void, Void, Integer> {
 
     protected final PackageManagerWrapper mPm;
     protected final UserManager mUm;
+    private final InstalledAppsSnapshot mSnapshot;
 
     public AppCounter(Context context, PackageManagerWrapper packageManager) {
+        this(context, packageManager, null /* snapshot */);
+    }
+
+    /**
+     * @param snapshot the installed apps shared with other counters and listers, or {@code null}
+     *                 to scan them again
+     */
+    public AppCounter(Context context, PackageManagerWrapper packageManager,
+            InstalledAppsSnapshot snapshot) {
         mPm = packageManager;
         mUm = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        mSnapshot = snapshot;
     }
 
     @Override
     protected Integer doInBackground(Void... params) {
         int count = 0;
         for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
-            final List<ApplicationInfo> list =
-                    mPm.getInstalledApplicationsAsUser(PackageManager.GET_DISABLED_COMPONENTS
-                            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
-                            | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
-                            user.id);
+            final List<ApplicationInfo> list = mSnapshot != null
+                    ? mSnapshot.getInstalledApplications(user)
+                    : InstalledAppsSnapshot.loadInstalledApplications(mPm, user);
             for (ApplicationInfo info : list) {
                 if (includeInCount(info)) {
                     count++;
@@ -17,7 +17,6 @@
 package com.android.settings.applications;
 
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.content.pm.UserInfo;
 import android.os.AsyncTask;
 import android.os.UserHandle;
@@ -37,21 +36,30 @@ import java.util.List;
 public abstract class AppLister extends AsyncTask<Void, Void, List<UserAppInfo>> {
     protected final PackageManagerWrapper mPm;
     protected final UserManager mUm;
+    private final InstalledAppsSnapshot mSnapshot;
 
     public AppLister(PackageManagerWrapper packageManager, UserManager userManager) {
+        this(packageManager, userManager, null /* snapshot */);
+    }
+
+    /**
+     * @param snapshot the installed apps shared with other counters and listers, or {@code null}
+     *                 to scan them again
+     */
+    public AppLister(PackageManagerWrapper packageManager, UserManager userManager,
+            InstalledAppsSnapshot snapshot) {
         mPm = packageManager;
         mUm = userManager;
+        mSnapshot = snapshot;
     }
 
     @Override
     protected List<UserAppInfo> doInBackground(Void... params) {
         final List<UserAppInfo> result = new ArrayList<>();
         for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
-            final List<ApplicationInfo> list =
-                    mPm.getInstalledApplicationsAsUser(PackageManager.GET_DISABLED_COMPONENTS
-                            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
-                            | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
-                            user.id);
+            final List<ApplicationInfo> list = mSnapshot != null
+                    ? mSnapshot.getInstalledApplications(user)
+                    : InstalledAppsSnapshot.loadInstalledApplications(mPm, user);
             for (ApplicationInfo info : list) {
                 if (includeInCount(info)) {
                     result.add(new UserAppInfo(user, info));
@@ -149,6 +149,19 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         }
     }
 
+    @Override
+    protected void loadChangedExtraInfo(List<AppEntry> apps) {
+        for (int i = 0, size = apps.size(); i < size; i++) {
+            final AppEntry app = apps.get(i);
+            updateExtraInfo(app, app.info.packageName, app.info.uid);
+            // Like loadAllExtraInfo(), which only maps the packages requesting the permission.
+            if (app.extraInfo instanceof PermissionState
+                    && !((PermissionState) app.extraInfo).permissionDeclared) {
+                app.extraInfo = null;
+            }
+        }
+    }
+
     /*
      * Gets a sparse array that describes every user on the device and all the associated packages
      * of each user, together with the packages available for that user.
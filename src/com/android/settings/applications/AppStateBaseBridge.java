@@ -15,27 +15,53 @@
  */
 package com.android.settings.applications;
 
+import android.content.pm.ApplicationInfo;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.SparseArray;
 
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.Session;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Common base class for bridging information to ApplicationsState.
+ *
+ * <p>The extra info of every app is loaded on {@link #resume()}. After that, package changes only
+ * load the extra info of the apps whose entry or {@link ApplicationInfo} changed, and a burst of
+ * package changes is coalesced into a single load.
  */
 public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks {
 
+    /**
+     * Delay of a load after a package change, so that the following changes are coalesced.
+     */
+    @VisibleForTesting
+    static final long LOAD_CHANGED_DELAY_MS = 200;
+    /**
+     * Loading the changed apps one by one is only worth it when they are a small part of the
+     * apps, since {@link #loadAllExtraInfo()} can batch its queries.
+     */
+    private static final int MAX_CHANGED_APPS_RATIO = 4;
+
     protected final ApplicationsState mAppState;
     protected final Session mAppSession;
     protected final Callback mCallback;
     protected final BackgroundHandler mHandler;
     protected final MainHandler mMainHandler;
 
+    // Only accessed on the background thread.
+    private ArrayMap<AppEntry, ApplicationInfo> mLoadedApps = new ArrayMap<>();
+    private ArrayMap<AppEntry, ApplicationInfo> mNewLoadedApps = new ArrayMap<>();
+    private final SparseArray<List<AppEntry>> mUidApps = new SparseArray<>();
+    private final ArrayList<AppEntry> mChangedApps = new ArrayList<>();
+
     public AppStateBaseBridge(ApplicationsState appState, Callback callback) {
         mAppState = appState;
         mAppSession = mAppState != null ? mAppState.newSession(this) : null;
@@ -49,6 +75,8 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     }
 
     public void resume() {
+        mHandler.removeMessages(BackgroundHandler.MSG_LOAD_CHANGED);
+        mHandler.removeMessages(BackgroundHandler.MSG_LOAD_ALL);
         mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
         mAppSession.onResume();
     }
@@ -67,12 +95,22 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
 
     @Override
     public void onPackageListChanged() {
-        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
+        scheduleLoadChanged();
     }
 
     @Override
     public void onLoadEntriesCompleted() {
-        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
+        scheduleLoadChanged();
+    }
+
+    private void scheduleLoadChanged() {
+        if (mHandler.hasMessages(BackgroundHandler.MSG_LOAD_ALL)) {
+            // The pending load covers the changes.
+            return;
+        }
+        mHandler.removeMessages(BackgroundHandler.MSG_LOAD_CHANGED);
+        mHandler.sendEmptyMessageDelayed(BackgroundHandler.MSG_LOAD_CHANGED,
+                LOAD_CHANGED_DELAY_MS);
     }
 
     @Override
@@ -108,6 +146,107 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     protected abstract void loadAllExtraInfo();
     protected abstract void updateExtraInfo(AppEntry app, String pkg, int uid);
 
+    /**
+     * Load the extra info of {@code apps} only, which were added or changed since the last load.
+     */
+    protected void loadChangedExtraInfo(List<AppEntry> apps) {
+        for (int i = 0, size = apps.size(); i < size; i++) {
+            final AppEntry app = apps.get(i);
+            updateExtraInfo(app, app.info.packageName, app.info.uid);
+        }
+    }
+
+    /**
+     * Load the extra info of every app, or only of the changed apps when there are few of them.
+     *
+     * @return whether any extra info was loaded
+     */
+    @VisibleForTesting
+    boolean loadExtraInfo(boolean loadAll) {
+        final ArrayList<AppEntry> apps = mAppSession.getAllApps();
+        if (apps == null) {
+            if (loadAll) {
+                loadAllExtraInfo();
+            }
+            return loadAll;
+        }
+        final ArrayList<AppEntry> changedApps = mChangedApps;
+        changedApps.clear();
+        if (!loadAll) {
+            for (int i = 0, size = apps.size(); i < size; i++) {
+                final AppEntry app = apps.get(i);
+                if (mLoadedApps.get(app) != app.info) {
+                    changedApps.add(app);
+                }
+            }
+            loadAll = mLoadedApps.isEmpty()
+                    || changedApps.size() * MAX_CHANGED_APPS_RATIO > apps.size();
+        }
+
+        boolean loaded = true;
+        if (loadAll) {
+            loadAllExtraInfo();
+        } else if (!changedApps.isEmpty()) {
+            loadChangedExtraInfo(changedApps);
+        } else {
+            // Only removed apps, whose entries are already gone from the list.
+            loaded = mLoadedApps.size() != apps.size();
+        }
+        changedApps.clear();
+        onAppsLoaded(apps);
+        return loaded;
+    }
+
+    private void onAppsLoaded(List<AppEntry> apps) {
+        final ArrayMap<AppEntry, ApplicationInfo> loadedApps = mNewLoadedApps;
+        loadedApps.clear();
+        mUidApps.clear();
+        for (int i = 0, size = apps.size(); i < size; i++) {
+            final AppEntry app = apps.get(i);
+            loadedApps.put(app, app.info);
+            List<AppEntry> uidApps = mUidApps.get(app.info.uid);
+            if (uidApps == null) {
+                uidApps = new ArrayList<>(1);
+                mUidApps.put(app.info.uid, uidApps);
+            }
+            uidApps.add(app);
+        }
+        mNewLoadedApps = mLoadedApps;
+        mNewLoadedApps.clear();
+        mLoadedApps = loadedApps;
+    }
+
+    @VisibleForTesting
+    void forceLoadPackage(String pkg, int uid) {
+        final List<AppEntry> uidApps = mUidApps.get(uid);
+        boolean found = false;
+        if (uidApps != null) {
+            for (int i = 0, size = uidApps.size(); i < size; i++) {
+                final AppEntry app = uidApps.get(i);
+                if (app.info.uid == uid && pkg.equals(app.info.packageName)) {
+                    updateExtraInfo(app, pkg, uid);
+                    found = true;
+                }
+            }
+        }
+        if (!found) {
+            // The package was added after the last load, so it is not indexed yet.
+            final ArrayList<AppEntry> apps = mAppSession.getAllApps();
+            for (int i = 0, size = apps.size(); i < size; i++) {
+                final AppEntry app = apps.get(i);
+                if (app.info.uid == uid && pkg.equals(app.info.packageName)) {
+                    updateExtraInfo(app, pkg, uid);
+                }
+            }
+        }
+    }
+
+    private void notifyInfoUpdated() {
+        if (!mMainHandler.hasMessages(MainHandler.MSG_INFO_UPDATED)) {
+            mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+        }
+    }
+
     private class MainHandler extends Handler {
         private static final int MSG_INFO_UPDATED = 1;
 
@@ -124,6 +263,7 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     private class BackgroundHandler extends Handler {
         private static final int MSG_LOAD_ALL = 1;
         private static final int MSG_FORCE_LOAD_PKG = 2;
+        private static final int MSG_LOAD_CHANGED = 3;
 
         public BackgroundHandler(Looper looper) {
             super(looper);
@@ -133,21 +273,17 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_LOAD_ALL:
-                    loadAllExtraInfo();
-                    mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+                    loadExtraInfo(true /* loadAll */);
+                    notifyInfoUpdated();
                     break;
-                case MSG_FORCE_LOAD_PKG:
-                    ArrayList<AppEntry> apps = mAppSession.getAllApps();
-                    final int N = apps.size();
-                    String pkg = (String) msg.obj;
-                    int uid = msg.arg1;
-                    for (int i = 0; i < N; i++) {
-                        AppEntry app = apps.get(i);
-                        if (app.info.uid == uid && pkg.equals(app.info.packageName)) {
-                            updateExtraInfo(app, pkg, uid);
-                        }
+                case MSG_LOAD_CHANGED:
+                    if (loadExtraInfo(false /* loadAll */)) {
+                        notifyInfoUpdated();
                     }
-                    mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+                    break;
+                case MSG_FORCE_LOAD_PKG:
+                    forceLoadPackage((String) msg.obj, msg.arg1);
+                    notifyInfoUpdated();
                     break;
             }
         }
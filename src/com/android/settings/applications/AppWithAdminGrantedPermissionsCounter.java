@@ -38,7 +38,14 @@ public abstract class AppWithAdminGrantedPermissionsCounter extends AppCounter {
     public AppWithAdminGrantedPermissionsCounter(Context context, String[] permissions,
             PackageManagerWrapper packageManager, IPackageManager packageManagerService,
             DevicePolicyManager devicePolicyManager) {
-        super(context, packageManager);
+        this(context, permissions, packageManager, packageManagerService, devicePolicyManager,
+                null /* snapshot */);
+    }
+
+    public AppWithAdminGrantedPermissionsCounter(Context context, String[] permissions,
+            PackageManagerWrapper packageManager, IPackageManager packageManagerService,
+            DevicePolicyManager devicePolicyManager, InstalledAppsSnapshot snapshot) {
+        super(context, packageManager, snapshot);
         mPermissions = permissions;
         mPackageManagerService = packageManagerService;
         mDevicePolicyManager = devicePolicyManager;
@@ -35,7 +35,15 @@ public abstract class AppWithAdminGrantedPermissionsLister extends AppLister {
     public AppWithAdminGrantedPermissionsLister(String[] permissions,
             PackageManagerWrapper packageManager, IPackageManager packageManagerService,
             DevicePolicyManager devicePolicyManager, UserManager userManager) {
-        super(packageManager, userManager);
+        this(permissions, packageManager, packageManagerService, devicePolicyManager,
+                userManager, null /* snapshot */);
+    }
+
+    public AppWithAdminGrantedPermissionsLister(String[] permissions,
+            PackageManagerWrapper packageManager, IPackageManager packageManagerService,
+            DevicePolicyManager devicePolicyManager, UserManager userManager,
+            InstalledAppsSnapshot snapshot) {
+        super(packageManager, userManager, snapshot);
         mPermissions = permissions;
         mPackageManagerService = packageManagerService;
         mDevicePolicyManager = devicePolicyManager;
@@ -45,6 +45,7 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
     private final IPackageManager mPms;
     private final DevicePolicyManager mDpm;
     private final UserManager mUm;
+    private final InstalledAppsSnapshot mInstalledApps;
 
     public ApplicationFeatureProviderImpl(Context context, PackageManagerWrapper pm,
             IPackageManager pms, DevicePolicyManager dpm) {
@@ -53,12 +54,14 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
         mPms = pms;
         mDpm = dpm;
         mUm = UserManager.get(mContext);
+        mInstalledApps = new InstalledAppsSnapshot(mContext, mPm);
     }
 
     @Override
     public void calculateNumberOfPolicyInstalledApps(boolean async, NumberOfAppsCallback callback) {
         final CurrentUserAndManagedProfilePolicyInstalledAppCounter counter =
-                new CurrentUserAndManagedProfilePolicyInstalledAppCounter(mContext, mPm, callback);
+                new CurrentUserAndManagedProfilePolicyInstalledAppCounter(mContext, mPm,
+                        mInstalledApps, callback);
         if (async) {
             counter.execute();
         } else {
@@ -69,7 +72,7 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
     @Override
     public void listPolicyInstalledApps(ListOfAppsCallback callback) {
         final CurrentUserPolicyInstalledAppLister lister =
-                new CurrentUserPolicyInstalledAppLister(mPm, mUm, callback);
+                new CurrentUserPolicyInstalledAppLister(mPm, mUm, mInstalledApps, callback);
         lister.execute();
     }
 
@@ -78,7 +81,7 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
             boolean async, NumberOfAppsCallback callback) {
         final CurrentUserAndManagedProfileAppWithAdminGrantedPermissionsCounter counter =
                 new CurrentUserAndManagedProfileAppWithAdminGrantedPermissionsCounter(mContext,
-                        permissions, mPm, mPms, mDpm, callback);
+                        permissions, mPm, mPms, mDpm, mInstalledApps, callback);
         if (async) {
             counter.execute();
         } else {
@@ -91,7 +94,7 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
             ListOfAppsCallback callback) {
         final CurrentUserAppWithAdminGrantedPermissionsLister lister =
                 new CurrentUserAppWithAdminGrantedPermissionsLister(permissions, mPm, mPms, mDpm,
-                        mUm, callback);
+                        mUm, mInstalledApps, callback);
         lister.execute();
     }
 
@@ -147,8 +150,9 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
         private NumberOfAppsCallback mCallback;
 
         CurrentUserAndManagedProfilePolicyInstalledAppCounter(Context context,
-                PackageManagerWrapper packageManager, NumberOfAppsCallback callback) {
-            super(context, PackageManager.INSTALL_REASON_POLICY, packageManager);
+                PackageManagerWrapper packageManager, InstalledAppsSnapshot snapshot,
+                NumberOfAppsCallback callback) {
+            super(context, PackageManager.INSTALL_REASON_POLICY, packageManager, snapshot);
             mCallback = callback;
         }
 
@@ -165,8 +169,10 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
         CurrentUserAndManagedProfileAppWithAdminGrantedPermissionsCounter(Context context,
                 String[] permissions, PackageManagerWrapper packageManager,
                 IPackageManager packageManagerService,
-                DevicePolicyManager devicePolicyManager, NumberOfAppsCallback callback) {
-            super(context, permissions, packageManager, packageManagerService, devicePolicyManager);
+                DevicePolicyManager devicePolicyManager, InstalledAppsSnapshot snapshot,
+                NumberOfAppsCallback callback) {
+            super(context, permissions, packageManager, packageManagerService, devicePolicyManager,
+                    snapshot);
             mCallback = callback;
         }
 
@@ -180,8 +186,9 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
         private ListOfAppsCallback mCallback;
 
         CurrentUserPolicyInstalledAppLister(PackageManagerWrapper packageManager,
-                UserManager userManager, ListOfAppsCallback callback) {
-            super(packageManager, userManager);
+                UserManager userManager, InstalledAppsSnapshot snapshot,
+                ListOfAppsCallback callback) {
+            super(packageManager, userManager, snapshot);
             mCallback = callback;
         }
 
@@ -198,9 +205,9 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
         CurrentUserAppWithAdminGrantedPermissionsLister(String[] permissions,
                 PackageManagerWrapper packageManager, IPackageManager packageManagerService,
                 DevicePolicyManager devicePolicyManager, UserManager userManager,
-                ListOfAppsCallback callback) {
+                InstalledAppsSnapshot snapshot, ListOfAppsCallback callback) {
             super(permissions, packageManager, packageManagerService, devicePolicyManager,
-                    userManager);
+                    userManager, snapshot);
             mCallback = callback;
         }
 
@@ -36,7 +36,12 @@ public abstract class InstalledAppCounter extends AppCounter {
 
     public InstalledAppCounter(Context context, int installReason,
             PackageManagerWrapper packageManager) {
-        super(context, packageManager);
+        this(context, installReason, packageManager, null /* snapshot */);
+    }
+
+    public InstalledAppCounter(Context context, int installReason,
+            PackageManagerWrapper packageManager, InstalledAppsSnapshot snapshot) {
+        super(context, packageManager, snapshot);
         mInstallReason = installReason;
     }
 
@@ -25,7 +25,12 @@ import com.android.settingslib.wrapper.PackageManagerWrapper;
 public abstract class InstalledAppLister extends AppLister {
 
     public InstalledAppLister(PackageManagerWrapper packageManager, UserManager userManager) {
-        super(packageManager, userManager);
+        this(packageManager, userManager, null /* snapshot */);
+    }
+
+    public InstalledAppLister(PackageManagerWrapper packageManager, UserManager userManager,
+            InstalledAppsSnapshot snapshot) {
+        super(packageManager, userManager, snapshot);
     }
 
     @Override
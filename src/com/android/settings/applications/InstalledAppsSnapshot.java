@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.applications;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.os.UserHandle;
+import android.support.annotation.VisibleForTesting;
+import android.util.SparseArray;
+
+import com.android.settingslib.wrapper.PackageManagerWrapper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Installed apps of each profile of the current user, shared by the {@link AppCounter} and
+ * {@link AppLister} created by {@link ApplicationFeatureProviderImpl}. Screens such as the
+ * enterprise privacy page run several of them at once, which then scan the installed packages of
+ * a profile only once.
+ *
+ * <p>Every snapshot is dropped when a package is added, changed or removed in any user.
+ */
+public class InstalledAppsSnapshot {
+
+    private final Context mContext;
+    private final PackageManagerWrapper mPm;
+    private final SparseArray<Entry> mEntries = new SparseArray<>();
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private boolean mReceiverRegistered;
+
+    @VisibleForTesting
+    final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    public InstalledAppsSnapshot(Context context, PackageManagerWrapper packageManager) {
+        mContext = context;
+        mPm = packageManager;
+    }
+
+    /**
+     * @return the installed apps of {@code user}, which must not be modified. Concurrent callers
+     * wait for a single scan of the profile instead of running their own.
+     */
+    public synchronized List<ApplicationInfo> getInstalledApplications(UserInfo user) {
+        registerReceiverIfNeeded();
+        final int generation = mGeneration.get();
+        final Entry entry = mEntries.get(user.id);
+        if (entry != null && entry.generation == generation) {
+            return entry.apps;
+        }
+        final List<ApplicationInfo> apps =
+                Collections.unmodifiableList(loadInstalledApplications(mPm, user));
+        mEntries.put(user.id, new Entry(generation, apps));
+        return apps;
+    }
+
+    /**
+     * Drop every snapshot. It doesn't wait for a scan in progress, whose result is not reused.
+     */
+    public void invalidate() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Scan the installed apps of {@code user} without any caching.
+     */
+    static List<ApplicationInfo> loadInstalledApplications(PackageManagerWrapper packageManager,
+            UserInfo user) {
+        return packageManager.getInstalledApplicationsAsUser(
+                PackageManager.GET_DISABLED_COMPONENTS
+                        | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
+                        | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
+                user.id);
+    }
+
+    private void registerReceiverIfNeeded() {
+        if (mReceiverRegistered) {
+            return;
+        }
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        mContext.registerReceiverAsUser(mPackageReceiver, UserHandle.ALL, filter,
+                null /* broadcastPermission */, null /* scheduler */);
+        mReceiverRegistered = true;
+    }
+
+    private static class Entry {
+        final int generation;
+        final List<ApplicationInfo> apps;
+
+        Entry(int generation, List<ApplicationInfo> apps) {
+            this.generation = generation;
+            this.apps = apps;
+        }
+    }
+}
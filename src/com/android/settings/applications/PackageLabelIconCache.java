@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.applications;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ComponentInfo;
+import android.content.pm.PackageItemInfo;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.support.annotation.VisibleForTesting;
+import android.util.LruCache;
+
+import java.util.Map;
+
+/**
+ * Size-bounded cache of the labels and icons of packages and of their components, shared by the
+ * running services and process stats screens, which resolve the same labels every time a process
+ * comes and goes.
+ *
+ * <p>Entries are keyed by package, user and version code. The entries of a package are dropped
+ * when it is added, changed or removed, and every entry is dropped when the locale changes.
+ */
+public class PackageLabelIconCache {
+
+    private static final int MAX_LABELS = 256;
+    private static final int MAX_ICONS = 64;
+
+    private static PackageLabelIconCache sInstance;
+
+    private final Context mContext;
+    private final PackageManager mPm;
+    private final LruCache<String, CharSequence> mLabels = new LruCache<>(MAX_LABELS);
+    private final LruCache<String, Drawable> mIcons = new LruCache<>(MAX_ICONS);
+    private boolean mReceiverRegistered;
+
+    @VisibleForTesting
+    final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final Uri data = intent.getData();
+            final String pkg = data != null ? data.getSchemeSpecificPart() : null;
+            if (pkg == null || Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+                mLabels.evictAll();
+                mIcons.evictAll();
+            } else {
+                removePackage(mLabels, pkg);
+                removePackage(mIcons, pkg);
+            }
+        }
+    };
+
+    public static synchronized PackageLabelIconCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PackageLabelIconCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PackageLabelIconCache(Context context) {
+        this(context, context.getPackageManager());
+    }
+
+    @VisibleForTesting
+    PackageLabelIconCache(Context context, PackageManager packageManager) {
+        mContext = context;
+        mPm = packageManager;
+    }
+
+    /**
+     * @return the label of {@code item}, which is an {@link ApplicationInfo} or a
+     * {@link ComponentInfo}
+     */
+    public CharSequence getLabel(PackageItemInfo item) {
+        registerReceiverIfNeeded();
+        final ApplicationInfo info = getApplicationInfo(item);
+        final String key = getKey(item, info, info != null ? UserHandle.getUserId(info.uid) : 0);
+        CharSequence label = mLabels.get(key);
+        if (label == null) {
+            label = item.loadLabel(mPm);
+            mLabels.put(key, label);
+        }
+        return label;
+    }
+
+    /**
+     * @return the icon of {@code info}, as returned by {@link ApplicationInfo#loadIcon}
+     */
+    public Drawable getIcon(ApplicationInfo info) {
+        registerReceiverIfNeeded();
+        // USER_NULL keeps these icons apart from the badged ones, whose user ids are not negative.
+        final String key = getKey(info, info, UserHandle.USER_NULL);
+        Drawable icon = mIcons.get(key);
+        if (icon == null) {
+            icon = info.loadIcon(mPm);
+            mIcons.put(key, icon);
+        }
+        return newDrawable(icon);
+    }
+
+    /**
+     * @return the icon of {@code info} with the badge of {@code userId}
+     */
+    public Drawable getBadgedIcon(ApplicationInfo info, int userId) {
+        registerReceiverIfNeeded();
+        final String key = getKey(info, info, userId);
+        Drawable icon = mIcons.get(key);
+        if (icon == null) {
+            icon = mPm.getUserBadgedIcon(info.loadUnbadgedIcon(mPm), new UserHandle(userId));
+            mIcons.put(key, icon);
+        }
+        return newDrawable(icon);
+    }
+
+    private static String getKey(PackageItemInfo item, ApplicationInfo info, int userId) {
+        final StringBuilder key = new StringBuilder(item.packageName).append('/');
+        if (item != info) {
+            key.append(item.name);
+        }
+        return key.append('/').append(userId)
+                .append('/').append(info != null ? info.longVersionCode : 0)
+                .toString();
+    }
+
+    private static ApplicationInfo getApplicationInfo(PackageItemInfo item) {
+        if (item instanceof ApplicationInfo) {
+            return (ApplicationInfo) item;
+        }
+        if (item instanceof ComponentInfo) {
+            return ((ComponentInfo) item).applicationInfo;
+        }
+        return null;
+    }
+
+    private static Drawable newDrawable(Drawable icon) {
+        // Drawables keep the state of the view they are bound to, so hand out a copy.
+        final Drawable.ConstantState constState = icon.getConstantState();
+        return constState != null ? constState.newDrawable() : icon;
+    }
+
+    private static void removePackage(LruCache<String, ?> cache, String pkg) {
+        final String prefix = pkg + "/";
+        for (Map.Entry<String, ?> entry : cache.snapshot().entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                cache.remove(entry.getKey());
+            }
+        }
+    }
+
+    private synchronized void registerReceiverIfNeeded() {
+        if (mReceiverRegistered) {
+            return;
+        }
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        mContext.registerReceiverAsUser(mPackageReceiver, UserHandle.ALL, filter,
+                null /* broadcastPermission */, null /* scheduler */);
+        mContext.registerReceiver(mPackageReceiver,
+                new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+        mReceiverRegistered = true;
+    }
+}
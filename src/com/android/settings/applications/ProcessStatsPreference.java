@@ -42,7 +42,8 @@ public class ProcessStatsPreference extends AppPreference {
             Log.d(TAG, "PackageEntry contained no package name or uiLabel");
         }
         if (entry.mUiTargetApp != null) {
-            setIcon(entry.mUiTargetApp.loadIcon(pm));
+            setIcon(PackageLabelIconCache.getInstance(getContext())
+                    .getIcon(entry.mUiTargetApp));
         } else {
             setIcon(pm.getDefaultActivityIcon());
         }
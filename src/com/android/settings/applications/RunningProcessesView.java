@@ -338,60 +338,59 @@ public class RunningProcessesView extends FrameLayout
         }
         */
 
-        synchronized (mState.mLock) {
-            if (mCurShowCached != mAdapter.mShowBackground) {
-                mCurShowCached = mAdapter.mShowBackground;
-                if (mCurShowCached) {
-                    mForegroundProcessPrefix.setText(getResources().getText(
-                            R.string.running_processes_header_used_prefix));
-                    mAppsProcessPrefix.setText(getResources().getText(
-                            R.string.running_processes_header_cached_prefix));
-                } else {
-                    mForegroundProcessPrefix.setText(getResources().getText(
-                            R.string.running_processes_header_system_prefix));
-                    mAppsProcessPrefix.setText(getResources().getText(
-                            R.string.running_processes_header_apps_prefix));
-                }
-            }
-
-            final long totalRam = mMemInfoReader.getTotalSize();
-            final long medRam;
-            final long lowRam;
+        final RunningState.Snapshot snapshot = mState.getSnapshot();
+        if (mCurShowCached != mAdapter.mShowBackground) {
+            mCurShowCached = mAdapter.mShowBackground;
             if (mCurShowCached) {
-                lowRam = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize();
-                medRam = mState.mBackgroundProcessMemory;
+                mForegroundProcessPrefix.setText(getResources().getText(
+                        R.string.running_processes_header_used_prefix));
+                mAppsProcessPrefix.setText(getResources().getText(
+                        R.string.running_processes_header_cached_prefix));
             } else {
-                lowRam = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize()
-                        + mState.mBackgroundProcessMemory;
-                medRam = mState.mServiceProcessMemory;
-
-            }
-            final long highRam = totalRam - medRam - lowRam;
-
-            if (mCurTotalRam != totalRam || mCurHighRam != highRam || mCurMedRam != medRam
-                    || mCurLowRam != lowRam) {
-                mCurTotalRam = totalRam;
-                mCurHighRam = highRam;
-                mCurMedRam = medRam;
-                mCurLowRam = lowRam;
-                BidiFormatter bidiFormatter = BidiFormatter.getInstance();
-                String sizeStr = bidiFormatter.unicodeWrap(
-                        Formatter.formatShortFileSize(getContext(), lowRam));
-                mBackgroundProcessText.setText(getResources().getString(
-                        R.string.running_processes_header_ram, sizeStr));
-                sizeStr = bidiFormatter.unicodeWrap(
-                        Formatter.formatShortFileSize(getContext(), medRam));
-                mAppsProcessText.setText(getResources().getString(
-                        R.string.running_processes_header_ram, sizeStr));
-                sizeStr = bidiFormatter.unicodeWrap(
-                        Formatter.formatShortFileSize(getContext(), highRam));
-                mForegroundProcessText.setText(getResources().getString(
-                        R.string.running_processes_header_ram, sizeStr));
-                int progress = (int) ((highRam/(float) totalRam) * 100);
-                mColorBar.setProgress(progress);
-                mColorBar.setSecondaryProgress(progress + (int) ((medRam/(float) totalRam) * 100));
+                mForegroundProcessPrefix.setText(getResources().getText(
+                        R.string.running_processes_header_system_prefix));
+                mAppsProcessPrefix.setText(getResources().getText(
+                        R.string.running_processes_header_apps_prefix));
             }
         }
+
+        final long totalRam = mMemInfoReader.getTotalSize();
+        final long medRam;
+        final long lowRam;
+        if (mCurShowCached) {
+            lowRam = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize();
+            medRam = snapshot.backgroundProcessMemory;
+        } else {
+            lowRam = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize()
+                    + snapshot.backgroundProcessMemory;
+            medRam = snapshot.serviceProcessMemory;
+
+        }
+        final long highRam = totalRam - medRam - lowRam;
+
+        if (mCurTotalRam != totalRam || mCurHighRam != highRam || mCurMedRam != medRam
+                || mCurLowRam != lowRam) {
+            mCurTotalRam = totalRam;
+            mCurHighRam = highRam;
+            mCurMedRam = medRam;
+            mCurLowRam = lowRam;
+            BidiFormatter bidiFormatter = BidiFormatter.getInstance();
+            String sizeStr = bidiFormatter.unicodeWrap(
+                    Formatter.formatShortFileSize(getContext(), lowRam));
+            mBackgroundProcessText.setText(getResources().getString(
+                    R.string.running_processes_header_ram, sizeStr));
+            sizeStr = bidiFormatter.unicodeWrap(
+                    Formatter.formatShortFileSize(getContext(), medRam));
+            mAppsProcessText.setText(getResources().getString(
+                    R.string.running_processes_header_ram, sizeStr));
+            sizeStr = bidiFormatter.unicodeWrap(
+                    Formatter.formatShortFileSize(getContext(), highRam));
+            mForegroundProcessText.setText(getResources().getString(
+                    R.string.running_processes_header_ram, sizeStr));
+            int progress = (int) ((highRam/(float) totalRam) * 100);
+            mColorBar.setProgress(progress);
+            mColorBar.setSecondaryProgress(progress + (int) ((medRam/(float) totalRam) * 100));
+        }
     }
 
     public void onItemClick(AdapterView<?> parent, View v, int position, long id) {
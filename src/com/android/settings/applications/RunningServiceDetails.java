@@ -362,7 +362,8 @@ public class RunningServiceDetails extends InstrumentedFragment
                         try {
                             ProviderInfo prov = getActivity().getPackageManager().getProviderInfo(
                                     rpi.importanceReasonComponent, 0);
-                            label = RunningState.makeLabel(getActivity().getPackageManager(),
+                            label = RunningState.makeLabel(
+                                    PackageLabelIconCache.getInstance(getActivity()),
                                     prov.name, prov);
                         } catch (NameNotFoundException e) {
                         }
@@ -374,7 +375,8 @@ public class RunningServiceDetails extends InstrumentedFragment
                         try {
                             ServiceInfo serv = getActivity().getPackageManager().getServiceInfo(
                                     rpi.importanceReasonComponent, 0);
-                            label = RunningState.makeLabel(getActivity().getPackageManager(),
+                            label = RunningState.makeLabel(
+                                    PackageLabelIconCache.getInstance(getActivity()),
                                     serv.name, serv);
                         } catch (NameNotFoundException e) {
                         }
@@ -78,6 +78,7 @@ public class RunningState {
     final Context mApplicationContext;
     final ActivityManager mAm;
     final PackageManager mPm;
+    final PackageLabelIconCache mLabelIconCache;
     final UserManager mUm;
     final int mMyUserId;
     final boolean mHideManagedProfiles;
@@ -125,9 +126,14 @@ public class RunningState {
     final SparseArray<MergedItem> mOtherUserBackgroundItems = new SparseArray<MergedItem>();
 
     static class AppProcessInfo {
-        final ActivityManager.RunningAppProcessInfo info;
+        ActivityManager.RunningAppProcessInfo info;
         boolean hasServices;
         boolean hasForegroundServices;
+        // Sequence of the update in which this process was last reported.
+        int curSeq;
+        // Sequence of the update in which shownInChain was computed, or -1 while computing it.
+        int chainSeq;
+        boolean shownInChain;
 
         AppProcessInfo(ActivityManager.RunningAppProcessInfo _info) {
             info = _info;
@@ -196,6 +202,43 @@ public class RunningState {
             }
     };
 
+    // Items of the last update, only used by the background thread.
+    ArrayList<BaseItem> mItems = new ArrayList<BaseItem>();
+    ArrayList<MergedItem> mMergedItems = new ArrayList<MergedItem>();
+    ArrayList<MergedItem> mBackgroundItems = new ArrayList<MergedItem>();
+
+    /**
+     * Result of an update, published to the UI thread as a whole. Its lists are never modified
+     * once published, so the UI reads them without taking {@link #mLock}.
+     */
+    static final class Snapshot {
+        final ArrayList<MergedItem> mergedItems;
+        final ArrayList<MergedItem> userBackgroundItems;
+        final int numBackgroundProcesses;
+        final long backgroundProcessMemory;
+        final int numForegroundProcesses;
+        final long foregroundProcessMemory;
+        final int numServiceProcesses;
+        final long serviceProcessMemory;
+
+        Snapshot(ArrayList<MergedItem> mergedItems, ArrayList<MergedItem> userBackgroundItems,
+                int numBackgroundProcesses, long backgroundProcessMemory,
+                int numForegroundProcesses, long foregroundProcessMemory,
+                int numServiceProcesses, long serviceProcessMemory) {
+            this.mergedItems = mergedItems;
+            this.userBackgroundItems = userBackgroundItems;
+            this.numBackgroundProcesses = numBackgroundProcesses;
+            this.backgroundProcessMemory = backgroundProcessMemory;
+            this.numForegroundProcesses = numForegroundProcesses;
+            this.foregroundProcessMemory = foregroundProcessMemory;
+            this.numServiceProcesses = numServiceProcesses;
+            this.serviceProcessMemory = serviceProcessMemory;
+        }
+    }
+
+    volatile Snapshot mSnapshot = new Snapshot(new ArrayList<MergedItem>(),
+            new ArrayList<MergedItem>(), 0, 0, 0, 0, 0, 0);
+
     // ----- following protected by mLock -----
     
     // Lock for protecting the state that will be shared between the
@@ -206,18 +249,6 @@ public class RunningState {
     boolean mHaveData;
     boolean mWatchingBackgroundItems;
 
-    ArrayList<BaseItem> mItems = new ArrayList<BaseItem>();
-    ArrayList<MergedItem> mMergedItems = new ArrayList<MergedItem>();
-    ArrayList<MergedItem> mBackgroundItems = new ArrayList<MergedItem>();
-    ArrayList<MergedItem> mUserBackgroundItems = new ArrayList<MergedItem>();
-    
-    int mNumBackgroundProcesses;
-    long mBackgroundProcessMemory;
-    int mNumForegroundProcesses;
-    long mForegroundProcessMemory;
-    int mNumServiceProcesses;
-    long mServiceProcessMemory;
-
     // ----- BACKGROUND MONITORING THREAD -----
 
     final HandlerThread mBackgroundThread;
@@ -349,6 +380,8 @@ public class RunningState {
         long mActiveSince;
         long mSize;
         String mSizeStr;
+        // Size that mSizeStr was formatted from, to skip formatting sizes that didn't change.
+        long mSizeStrSize = -1;
         String mCurSizeStr;
         boolean mNeedDivider;
         boolean mBackground;
@@ -360,9 +393,7 @@ public class RunningState {
 
         public Drawable loadIcon(Context context, RunningState state) {
             if (mPackageInfo != null) {
-                Drawable unbadgedIcon = mPackageInfo.loadUnbadgedIcon(state.mPm);
-                Drawable icon = state.mPm.getUserBadgedIcon(unbadgedIcon, new UserHandle(mUserId));
-                return icon;
+                return state.mLabelIconCache.getBadgedIcon(mPackageInfo, mUserId);
             }
             return null;
         }
@@ -400,6 +431,8 @@ public class RunningState {
 
         boolean mInteresting;
 
+        final PackageLabelIconCache mLabelCache;
+
         // Purely for sorting.
         boolean mIsSystem;
         boolean mIsStarted;
@@ -411,6 +444,7 @@ public class RunningState {
                     R.string.service_process_name, processName);
             mUid = uid;
             mProcessName = processName;
+            mLabelCache = PackageLabelIconCache.getInstance(context);
         }
         
         void ensureLabel(PackageManager pm) {
@@ -422,7 +456,7 @@ public class RunningState {
                 ApplicationInfo ai = pm.getApplicationInfo(mProcessName,
                         PackageManager.MATCH_ANY_USER);
                 if (ai.uid == mUid) {
-                    mDisplayLabel = ai.loadLabel(pm);
+                    mDisplayLabel = mLabelCache.getLabel(ai);
                     mLabel = mDisplayLabel.toString();
                     mPackageInfo = ai;
                     return;
@@ -439,7 +473,7 @@ public class RunningState {
                 try {
                     ApplicationInfo ai = pm.getApplicationInfo(pkgs[0],
                             PackageManager.MATCH_ANY_USER);
-                    mDisplayLabel = ai.loadLabel(pm);
+                    mDisplayLabel = mLabelCache.getLabel(ai);
                     mLabel = mDisplayLabel.toString();
                     mPackageInfo = ai;
                     return;
@@ -472,7 +506,7 @@ public class RunningState {
                 ApplicationInfo ai = mServices.values().iterator().next()
                         .mServiceInfo.applicationInfo;
                 mPackageInfo = ai;
-                mDisplayLabel = mPackageInfo.loadLabel(pm);
+                mDisplayLabel = mLabelCache.getLabel(mPackageInfo);
                 mLabel = mDisplayLabel.toString();
                 return;
             }
@@ -481,7 +515,7 @@ public class RunningState {
             try {
                 ApplicationInfo ai = pm.getApplicationInfo(pkgs[0],
                         PackageManager.MATCH_ANY_USER);
-                mDisplayLabel = ai.loadLabel(pm);
+                mDisplayLabel = mLabelCache.getLabel(ai);
                 mLabel = mDisplayLabel.toString();
                 mPackageInfo = ai;
                 return;
@@ -510,7 +544,7 @@ public class RunningState {
                     }
                 } catch (RemoteException e) {
                 }
-                si.mDisplayLabel = makeLabel(pm,
+                si.mDisplayLabel = makeLabel(mLabelCache,
                         si.mRunningService.service.getClassName(), si.mServiceInfo);
                 mLabel = mDisplayLabel != null ? mDisplayLabel.toString() : null;
                 si.mPackageInfo = si.mServiceInfo.applicationInfo;
@@ -550,7 +584,8 @@ public class RunningState {
         
         boolean updateSize(Context context, long pss, int curSeq) {
             mSize = pss * 1024;
-            if (mCurSeq == curSeq) {
+            if (mCurSeq == curSeq && mSize != mSizeStrSize) {
+                mSizeStrSize = mSize;
                 String sizeStr = Formatter.formatShortFileSize(
                         context, mSize);
                 if (!sizeStr.equals(mSizeStr)){
@@ -693,7 +728,11 @@ public class RunningState {
                     mSize += mOtherProcesses.get(i).mSize;
                 }
             }
-            
+            if (mSize == mSizeStrSize) {
+                return false;
+            }
+            mSizeStrSize = mSize;
+
             String sizeStr = Formatter.formatShortFileSize(
                     context, mSize);
             if (!sizeStr.equals(mSizeStr)){
@@ -747,11 +786,11 @@ public class RunningState {
         }
     }
     
-    static CharSequence makeLabel(PackageManager pm,
+    static CharSequence makeLabel(PackageLabelIconCache labelCache,
             String className, PackageItemInfo item) {
         if (item != null && (item.labelRes != 0
                 || item.nonLocalizedLabel != null)) {
-            CharSequence label = item.loadLabel(pm);
+            CharSequence label = labelCache.getLabel(item);
             if (label != null) {
                 return label;
             }
@@ -778,6 +817,7 @@ public class RunningState {
         mApplicationContext = context.getApplicationContext();
         mAm = (ActivityManager)mApplicationContext.getSystemService(Context.ACTIVITY_SERVICE);
         mPm = mApplicationContext.getPackageManager();
+        mLabelIconCache = PackageLabelIconCache.getInstance(mApplicationContext);
         mUm = (UserManager)mApplicationContext.getSystemService(Context.USER_SERVICE);
         mMyUserId = UserHandle.myUserId();
         UserInfo userInfo = mUm.getUserInfo(mMyUserId);
@@ -855,6 +895,30 @@ public class RunningState {
         return false;
     }
 
+    /**
+     * @return whether {@code ainfo} or a process in its importance reason chain has services or is
+     * interesting. The result is computed once per process and update, since services of the
+     * same process, and processes sharing a client, walk the same chain.
+     */
+    private boolean isShownInChain(AppProcessInfo ainfo) {
+        if (ainfo == null) {
+            return false;
+        }
+        if (ainfo.chainSeq == mSequence) {
+            return ainfo.shownInChain;
+        }
+        if (ainfo.chainSeq == -1) {
+            // A cycle in the chain, which doesn't lead to a shown process.
+            return false;
+        }
+        ainfo.chainSeq = -1;
+        final boolean shown = ainfo.hasServices || isInterestingProcess(ainfo.info)
+                || isShownInChain(mTmpAppProcesses.get(ainfo.info.importanceReasonPid));
+        ainfo.shownInChain = shown;
+        ainfo.chainSeq = mSequence;
+        return shown;
+    }
+
     private void reset() {
         mServiceProcessesByName.clear();
         mServiceProcessesByPid.clear();
@@ -905,26 +969,27 @@ public class RunningState {
         List<ActivityManager.RunningServiceInfo> services 
                 = am.getRunningServices(MAX_SERVICES);
         int NS = services != null ? services.size() : 0;
+        // Compact the kept services in place rather than removing them one by one.
+        int kept = 0;
         for (int i=0; i<NS; i++) {
             ActivityManager.RunningServiceInfo si = services.get(i);
             // We are not interested in services that have not been started
             // and don't have a known client, because
             // there is nothing the user can do about them.
             if (!si.started && si.clientLabel == 0) {
-                services.remove(i);
-                i--;
-                NS--;
                 continue;
             }
             // We likewise don't care about services running in a
             // persistent process like the system or phone.
             if ((si.flags&ActivityManager.RunningServiceInfo.FLAG_PERSISTENT_PROCESS)
                     != 0) {
-                services.remove(i);
-                i--;
-                NS--;
                 continue;
             }
+            services.set(kept++, si);
+        }
+        if (kept < NS) {
+            services.subList(kept, NS).clear();
+            NS = kept;
         }
 
         // Retrieve list of running processes, organizing them into a sparse
@@ -932,10 +997,24 @@ public class RunningState {
         List<ActivityManager.RunningAppProcessInfo> processes
                 = am.getRunningAppProcesses();
         final int NP = processes != null ? processes.size() : 0;
-        mTmpAppProcesses.clear();
+        // Reuse the entries of the processes that are still running under the same pid.
         for (int i=0; i<NP; i++) {
             ActivityManager.RunningAppProcessInfo pi = processes.get(i);
-            mTmpAppProcesses.put(pi.pid, new AppProcessInfo(pi));
+            AppProcessInfo ainfo = mTmpAppProcesses.get(pi.pid);
+            if (ainfo == null || ainfo.info.uid != pi.uid) {
+                ainfo = new AppProcessInfo(pi);
+                mTmpAppProcesses.put(pi.pid, ainfo);
+            } else {
+                ainfo.info = pi;
+                ainfo.hasServices = false;
+                ainfo.hasForegroundServices = false;
+            }
+            ainfo.curSeq = mSequence;
+        }
+        for (int i = mTmpAppProcesses.size() - 1; i >= 0; i--) {
+            if (mTmpAppProcesses.valueAt(i).curSeq != mSequence) {
+                mTmpAppProcesses.removeAt(i);
+            }
         }
 
         // Initial iteration through running services to collect per-process
@@ -974,16 +1053,8 @@ public class RunningState {
                             < ActivityManager.RunningAppProcessInfo.IMPORTANCE_SERVICE) {
                         // Follow process chain to see if there is something
                         // else that could be shown
-                        boolean skip = false;
-                        ainfo = mTmpAppProcesses.get(ainfo.info.importanceReasonPid);
-                        while (ainfo != null) {
-                            if (ainfo.hasServices || isInterestingProcess(ainfo.info)) {
-                                skip = true;
-                                break;
-                            }
-                            ainfo = mTmpAppProcesses.get(ainfo.info.importanceReasonPid);
-                        }
-                        if (skip) {
+                        if (isShownInChain(
+                                mTmpAppProcesses.get(ainfo.info.importanceReasonPid))) {
                             continue;
                         }
                     }
@@ -1271,10 +1342,8 @@ public class RunningState {
                 }
             }
 
-            synchronized (mLock) {
-                mItems = newItems;
-                mMergedItems = newMergedItems;
-            }
+            mItems = newItems;
+            mMergedItems = newMergedItems;
         }
         
         // Count number of interesting other (non-active) processes, and
@@ -1311,7 +1380,7 @@ public class RunningState {
         long foregroundProcessMemory = 0;
         long serviceProcessMemory = 0;
         ArrayList<MergedItem> newBackgroundItems = null;
-        ArrayList<MergedItem> newUserBackgroundItems = null;
+        ArrayList<MergedItem> newUserBackgroundItems = mSnapshot.userBackgroundItems;
         boolean diffUsers = false;
         try {
             final int numProc = mAllProcessItems.size();
@@ -1413,19 +1482,17 @@ public class RunningState {
             mMergedItems.get(i).updateSize(context);
         }
         
+        if (newBackgroundItems != null) {
+            mBackgroundItems = newBackgroundItems;
+        }
+        mSnapshot = new Snapshot(mMergedItems, newUserBackgroundItems,
+                numBackgroundProcesses, backgroundProcessMemory,
+                numForegroundProcesses, foregroundProcessMemory,
+                numServiceProcesses, serviceProcessMemory);
+
         synchronized (mLock) {
-            mNumBackgroundProcesses = numBackgroundProcesses;
-            mNumForegroundProcesses = numForegroundProcesses;
-            mNumServiceProcesses = numServiceProcesses;
-            mBackgroundProcessMemory = backgroundProcessMemory;
-            mForegroundProcessMemory = foregroundProcessMemory;
-            mServiceProcessMemory = serviceProcessMemory;
-            if (newBackgroundItems != null) {
-                mBackgroundItems = newBackgroundItems;
-                mUserBackgroundItems = newUserBackgroundItems;
-                if (mWatchingBackgroundItems) {
-                    changed = true;
-                }
+            if (newBackgroundItems != null && mWatchingBackgroundItems) {
+                changed = true;
             }
             if (!mHaveData) {
                 mHaveData = true;
@@ -1442,15 +1509,15 @@ public class RunningState {
         }
     }
 
+    Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
     ArrayList<MergedItem> getCurrentMergedItems() {
-        synchronized (mLock) {
-            return mMergedItems;
-        }
+        return mSnapshot.mergedItems;
     }
 
     ArrayList<MergedItem> getCurrentBackgroundItems() {
-        synchronized (mLock) {
-            return mUserBackgroundItems;
-        }
+        return mSnapshot.userBackgroundItems;
     }
 }
@@ -61,6 +61,7 @@ public class AppOpsDetails extends SettingsPreferenceFragment {
     private AppOpsManager mAppOps;
     private PackageInfo mPackageInfo;
     private PreferenceScreen mPreferenceScreen;
+    private AppOpsState.BuildStateTask mBuildStateTask;
 
     private final int MODE_ALLOWED = 0;
     private final int MODE_IGNORED = 1;
@@ -189,49 +190,61 @@ public class AppOpsDetails extends SettingsPreferenceFragment {
         mPreferenceScreen.removeAll();
         setAppHeader(mPackageInfo);
 
-        AppOpsState.OpsTemplate[] allTemplates = getTemplates();
-        for (AppOpsState.OpsTemplate tpl : allTemplates) {
-            List<AppOpsState.AppOpEntry> entries = mState.buildState(tpl,
-                    mPackageInfo.applicationInfo.uid, mPackageInfo.packageName, true);
-            for (final AppOpsState.AppOpEntry entry : entries) {
-                String perm = null;
-                int op = -1;
-                // Find the first permission with a known name
-                for (int i = 0; i < entry.getNumOpEntry() && perm == null; i++) {
-                    op = entry.getOpEntry(i).getOp();
-                    perm = AppOpsManager.opToPermission(op);
-                }
-                Drawable icon = getIconByPermission(perm);
-                if (icon == null && op != -1 && OP_ICONS.containsKey(op)) {
-                    icon = getActivity().getDrawable(OP_ICONS.get(op));
-                }
-                if (icon == null) {
-                    Log.e(TAG, "Failed to retrieve icon for permission: " + perm);
-                } else {
-                    icon.setTint(Utils.getColorAttr(getActivity(),
-                            android.R.attr.colorControlNormal));
-                }
-
-                final AppOpsManager.OpEntry firstOp = entry.getOpEntry(0);
-                final int switchOp = AppOpsManager.opToSwitch(firstOp.getOp());
+        // The entries of each template are built in the background, one template after the
+        // other, so that their preferences are added in the order of the templates.
+        buildTemplateState(getTemplates(), 0);
+        return true;
+    }
 
-                // ListPreference for 3 states: ask, allow, deny
-                if (AppOpsManager.isStrictOp(switchOp)) {
-                    ListPreference listPref = getListPrefForEntry(entry, icon);
-                    mPreferenceScreen.addPreference(listPref);
-                } else {
-                    SwitchPreference switchPref = getSwitchPrefForEntry(entry, icon);
-                    mPreferenceScreen.addPreference(switchPref);
-                }
+    private void buildTemplateState(final AppOpsState.OpsTemplate[] templates, final int index) {
+        if (index >= templates.length) {
+            mBuildStateTask = null;
+            if (mPreferenceScreen.getPreferenceCount() == 0) {
+                Preference noBlockablePermissionsPref = getNoBlockablePermissionsPref();
+                mPreferenceScreen.addPreference(noBlockablePermissionsPref);
             }
+            return;
         }
+        mBuildStateTask = mState.buildStateAsync(templates[index],
+                mPackageInfo.applicationInfo.uid, mPackageInfo.packageName,
+                AppOpsState.RECENCY_COMPARATOR, true /* privacyGuard */, entries -> {
+                    addEntryPreferences(entries);
+                    buildTemplateState(templates, index + 1);
+                });
+    }
 
-        if (mPreferenceScreen.getPreferenceCount() == 0) {
-            Preference noBlockablePermissionsPref = getNoBlockablePermissionsPref();
-            mPreferenceScreen.addPreference(noBlockablePermissionsPref);
-        }
+    private void addEntryPreferences(List<AppOpsState.AppOpEntry> entries) {
+        for (final AppOpsState.AppOpEntry entry : entries) {
+            String perm = null;
+            int op = -1;
+            // Find the first permission with a known name
+            for (int i = 0; i < entry.getNumOpEntry() && perm == null; i++) {
+                op = entry.getOpEntry(i).getOp();
+                perm = AppOpsManager.opToPermission(op);
+            }
+            Drawable icon = getIconByPermission(perm);
+            if (icon == null && op != -1 && OP_ICONS.containsKey(op)) {
+                icon = getActivity().getDrawable(OP_ICONS.get(op));
+            }
+            if (icon == null) {
+                Log.e(TAG, "Failed to retrieve icon for permission: " + perm);
+            } else {
+                icon.setTint(Utils.getColorAttr(getActivity(),
+                        android.R.attr.colorControlNormal));
+            }
 
-        return true;
+            final AppOpsManager.OpEntry firstOp = entry.getOpEntry(0);
+            final int switchOp = AppOpsManager.opToSwitch(firstOp.getOp());
+
+            // ListPreference for 3 states: ask, allow, deny
+            if (AppOpsManager.isStrictOp(switchOp)) {
+                ListPreference listPref = getListPrefForEntry(entry, icon);
+                mPreferenceScreen.addPreference(listPref);
+            } else {
+                SwitchPreference switchPref = getSwitchPrefForEntry(entry, icon);
+                mPreferenceScreen.addPreference(switchPref);
+            }
+        }
     }
 
     private AppOpsState.OpsTemplate[] getTemplates() {
@@ -385,6 +398,15 @@ public class AppOpsDetails extends SettingsPreferenceFragment {
         }
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (mBuildStateTask != null) {
+            mBuildStateTask.cancel(false /* mayInterruptIfRunning */);
+            mBuildStateTask = null;
+        }
+    }
+
     private String getSummary(CharSequence... lines) {
         StringJoiner sj = new StringJoiner("\n");
         for (CharSequence line : lines) {
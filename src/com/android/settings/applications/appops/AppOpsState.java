@@ -27,31 +27,43 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.content.SharedPreferences;
 import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.annotation.VisibleForTesting;
 import android.text.format.DateUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.util.SparseArray;
 
 import com.android.settings.R;
+import com.android.settings.applications.PackageLabelIconCache;
 
 import java.io.File;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class AppOpsState {
     static final String TAG = "AppOpsState";
     static final boolean DEBUG = false;
 
+    private static final BitSet PRIVACY_GUARD_OPS = new BitSet(AppOpsManager._NUM_OP);
+
+    static {
+        for (int op : AppOpsManager.PRIVACY_GUARD_OP_STATES) {
+            PRIVACY_GUARD_OPS.set(op);
+        }
+    }
+
     final Context mContext;
     final AppOpsManager mAppOps;
     final PackageManager mPm;
+    final PackageLabelIconCache mLabelIconCache;
     final CharSequence[] mOpSummaries;
     final CharSequence[] mOpLabels;
 
@@ -60,9 +72,16 @@ public class AppOpsState {
     private SharedPreferences mPreferences;
 
     public AppOpsState(Context context) {
+        this(context, (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE),
+                context.getPackageManager());
+    }
+
+    @VisibleForTesting
+    AppOpsState(Context context, AppOpsManager appOps, PackageManager pm) {
         mContext = context;
-        mAppOps = (AppOpsManager)context.getSystemService(Context.APP_OPS_SERVICE);
-        mPm = context.getPackageManager();
+        mAppOps = appOps;
+        mPm = pm;
+        mLabelIconCache = PackageLabelIconCache.getInstance(context);
         mOpSummaries = context.getResources().getTextArray(R.array.app_ops_summaries_benzo);
         mOpLabels = context.getResources().getTextArray(R.array.app_ops_labels_benzo);
         mPreferences = context.getSharedPreferences("appops_manager", Activity.MODE_PRIVATE);
@@ -72,6 +91,8 @@ public class AppOpsState {
         public final int[] ops;
         public final boolean[] showPerms;
 
+        private TemplateIndex mIndex;
+
         public OpsTemplate(int[] _ops, boolean[] _showPerms) {
             ops = _ops;
             showPerms = _showPerms;
@@ -82,6 +103,17 @@ public class AppOpsState {
             showPerms = src.createBooleanArray();
         }
 
+        /**
+         * @return the index of the ops of this template, which is built again when
+         * {@link #showPerms} was changed since the last call
+         */
+        synchronized TemplateIndex getIndex() {
+            if (mIndex == null || !Arrays.equals(mIndex.showPerms, showPerms)) {
+                mIndex = new TemplateIndex(this);
+            }
+            return mIndex;
+        }
+
         @Override
         public int describeContents() {
             return 0;
@@ -283,6 +315,50 @@ public class AppOpsState {
             BOOTUP_TEMPLATE, REMAINING_TEMPLATE
     };
 
+    /**
+     * Permissions and orders of the ops of an {@link OpsTemplate}, looked up for every op and
+     * requested permission of every package by {@link #buildState}.
+     */
+    @VisibleForTesting
+    static final class TemplateIndex {
+        final boolean[] showPerms;
+        // Distinct permissions of the ops whose permission is shown, and their first op.
+        final String[] perms;
+        final int[] permOps;
+        final ArrayMap<String, Integer> permToIndex = new ArrayMap<>();
+        final int[] opToOrder = new int[AppOpsManager._NUM_OP];
+        // Privacy Guard ops of the template which have a permission.
+        final BitSet privacyGuardOps = new BitSet(AppOpsManager._NUM_OP);
+
+        TemplateIndex(OpsTemplate tpl) {
+            showPerms = tpl.showPerms.clone();
+            final ArrayList<String> perms = new ArrayList<>();
+            final ArrayList<Integer> permOps = new ArrayList<>();
+            for (int i = 0; i < tpl.ops.length; i++) {
+                final int op = tpl.ops[i];
+                final String perm = AppOpsManager.opToPermission(op);
+                // If there's a permission for this Privacy Guard OP, then
+                // we don't have to treat it in a special way. The application
+                // should have the permission declared if it uses it, so we
+                // will add this later when we query PackageManager
+                if (perm != null && PRIVACY_GUARD_OPS.get(op)) {
+                    privacyGuardOps.set(op);
+                }
+                if (showPerms[i] && perm != null && !permToIndex.containsKey(perm)) {
+                    permToIndex.put(perm, perms.size());
+                    perms.add(perm);
+                    permOps.add(op);
+                    opToOrder[op] = i;
+                }
+            }
+            this.perms = perms.toArray(new String[perms.size()]);
+            this.permOps = new int[permOps.size()];
+            for (int i = 0; i < this.permOps.length; i++) {
+                this.permOps[i] = permOps.get(i);
+            }
+        }
+    }
+
     /**
      * This class holds the per-item data in our Loader.
      */
@@ -328,7 +404,7 @@ public class AppOpsState {
         public Drawable getIcon() {
             if (mIcon == null) {
                 if (mApkFile.exists()) {
-                    mIcon = mInfo.loadIcon(mState.mPm);
+                    mIcon = mState.mLabelIconCache.getIcon(mInfo);
                     return mIcon;
                 } else {
                     mMounted = false;
@@ -338,7 +414,7 @@ public class AppOpsState {
                 // its icon.
                 if (mApkFile.exists()) {
                     mMounted = true;
-                    mIcon = mInfo.loadIcon(mState.mPm);
+                    mIcon = mState.mLabelIconCache.getIcon(mInfo);
                     return mIcon;
                 }
             } else {
@@ -360,7 +436,8 @@ public class AppOpsState {
                     mLabel = mInfo.packageName;
                 } else {
                     mMounted = true;
-                    CharSequence label = mInfo.loadLabel(context.getPackageManager());
+                    CharSequence label = PackageLabelIconCache.getInstance(context)
+                            .getLabel(mInfo);
                     mLabel = label != null ? label.toString() : mInfo.packageName;
                 }
             }
@@ -562,9 +639,9 @@ public class AppOpsState {
         }
     };
 
-    private void addOp(List<AppOpEntry> entries, AppOpsManager.PackageOps pkgOps,
+    private void addOp(List<AppOpEntry> entries, int mergeStart, AppOpsManager.PackageOps pkgOps,
             AppEntry appEntry, AppOpsManager.OpEntry opEntry, boolean allowMerge, int switchOrder) {
-        if (allowMerge && entries.size() > 0) {
+        if (allowMerge && entries.size() > mergeStart) {
             AppOpEntry last = entries.get(entries.size()-1);
             if (last.getAppEntry() == appEntry) {
                 boolean lastExe = last.getTime() != 0;
@@ -596,8 +673,8 @@ public class AppOpsState {
         return buildState(tpl, 0, null, RECENCY_COMPARATOR);
     }
 
-    private AppEntry getAppEntry(final Context context, final HashMap<String, AppEntry> appEntries,
-            final String packageName, ApplicationInfo appInfo, boolean applyFilters) {
+    private AppEntry getAppEntry(final Context context, final String packageName,
+            ApplicationInfo appInfo, boolean applyFilters) {
 
         if (appInfo == null) {
             try {
@@ -623,12 +700,8 @@ public class AppOpsState {
             }
         }
 
-        AppEntry appEntry = appEntries.get(packageName);
-        if (appEntry == null) {
-            appEntry = new AppEntry(this, appInfo);
-            appEntry.loadLabel(context);
-            appEntries.put(packageName, appEntry);
-        }
+        AppEntry appEntry = new AppEntry(this, appInfo);
+        appEntry.loadLabel(context);
         return appEntry;
     }
 
@@ -650,54 +723,99 @@ public class AppOpsState {
         return buildState(tpl, uid, packageName, comparator, false);
     }
 
-    private boolean isPrivacyGuardOp(int op) {
-        for (int privacyGuardOp : AppOpsManager.PRIVACY_GUARD_OP_STATES) {
-            if (privacyGuardOp == op) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public List<AppOpEntry> buildState(OpsTemplate tpl, int uid, String packageName,
             Comparator<AppOpEntry> comparator, boolean privacyGuard) {
-        final Context context = mContext;
+        return buildState(tpl, uid, packageName, comparator, privacyGuard, null /* task */);
+    }
 
-        final HashMap<String, AppEntry> appEntries = new HashMap<String, AppEntry>();
-        final List<AppOpEntry> entries = new ArrayList<AppOpEntry>();
+    /**
+     * Receives the state built by {@link #buildStateAsync} on the main thread.
+     */
+    public interface BuildStateCallback {
+        /**
+         * Called with the sorted entries of every package, unless the task was cancelled.
+         */
+        void onStateBuilt(List<AppOpEntry> entries);
+    }
 
-        final ArrayList<String> perms = new ArrayList<String>();
-        final ArrayList<Integer> permOps = new ArrayList<Integer>();
-        final int[] opToOrder = new int[AppOpsManager._NUM_OP];
+    /**
+     * Build the same state as {@link #buildState(OpsTemplate, int, String, Comparator, boolean)}
+     * in the background.
+     *
+     * @return the task building the state, which stops at the next package once cancelled
+     */
+    public BuildStateTask buildStateAsync(OpsTemplate tpl, int uid, String packageName,
+            Comparator<AppOpEntry> comparator, boolean privacyGuard,
+            BuildStateCallback callback) {
+        final BuildStateTask task = new BuildStateTask(tpl, uid, packageName, comparator,
+                privacyGuard, callback);
+        task.execute();
+        return task;
+    }
 
-        final Set<Integer> privacyGuardOps = new HashSet<>();
+    public class BuildStateTask extends AsyncTask<Void, Void, List<AppOpEntry>> {
+        private final OpsTemplate mTemplate;
+        private final int mUid;
+        private final String mPackageName;
+        private final Comparator<AppOpEntry> mComparator;
+        private final boolean mPrivacyGuard;
+        private final BuildStateCallback mCallback;
+
+        BuildStateTask(OpsTemplate tpl, int uid, String packageName,
+                Comparator<AppOpEntry> comparator, boolean privacyGuard,
+                BuildStateCallback callback) {
+            mTemplate = tpl;
+            mUid = uid;
+            mPackageName = packageName;
+            mComparator = comparator;
+            mPrivacyGuard = privacyGuard;
+            mCallback = callback;
+        }
 
-        for (int i=0; i<tpl.ops.length; i++) {
-            if (privacyGuard && isPrivacyGuardOp(tpl.ops[i])) {
-                // If there's a permission for this Privacy Guard OP, then
-                // we don't have to treat it in a special way. The application
-                // should have the permission declared if it uses it, so we
-                // will add this later when we query PackageManager
-                String perm = AppOpsManager.opToPermission(tpl.ops[i]);
-                if (perm != null) {
-                    if (DEBUG) Log.d(TAG, "Adding " + AppOpsManager.opToName(tpl.ops[i])
-                            + " (" + tpl.ops[i] + ") to privacyGuardOps");
-                    privacyGuardOps.add(tpl.ops[i]);
-                } else {
-                    if (DEBUG) Log.d(TAG, "Not adding " + AppOpsManager.opToName(tpl.ops[i])
-                            + " (" + tpl.ops[i] + ") with perm " + perm + " to privacyGuardOps");
-                }
-            }
-            if (tpl.showPerms[i]) {
-                String perm = AppOpsManager.opToPermission(tpl.ops[i]);
-                if (perm != null && !perms.contains(perm)) {
-                    perms.add(perm);
-                    permOps.add(tpl.ops[i]);
-                    opToOrder[tpl.ops[i]] = i;
-                }
-            }
+        @Override
+        protected List<AppOpEntry> doInBackground(Void... params) {
+            return buildState(mTemplate, mUid, mPackageName, mComparator, mPrivacyGuard, this);
+        }
+
+        @Override
+        protected void onPostExecute(List<AppOpEntry> entries) {
+            mCallback.onStateBuilt(entries);
+        }
+    }
+
+    /**
+     * Ops and requested permissions of one package, which are all turned into entries together.
+     */
+    private static class PackageState {
+        final String packageName;
+        final ArrayList<AppOpsManager.PackageOps> ops = new ArrayList<>();
+        final ArrayList<PackageInfo> infos = new ArrayList<>();
+
+        PackageState(String packageName) {
+            this.packageName = packageName;
         }
 
+        ApplicationInfo getApplicationInfo() {
+            return infos.isEmpty() ? null : infos.get(0).applicationInfo;
+        }
+    }
+
+    private static PackageState getPackageState(ArrayList<PackageState> packages,
+            ArrayMap<String, PackageState> packagesByName, String packageName) {
+        PackageState pkg = packagesByName.get(packageName);
+        if (pkg == null) {
+            pkg = new PackageState(packageName);
+            packagesByName.put(packageName, pkg);
+            packages.add(pkg);
+        }
+        return pkg;
+    }
+
+    private List<AppOpEntry> buildState(OpsTemplate tpl, int uid, String packageName,
+            Comparator<AppOpEntry> comparator, boolean privacyGuard, BuildStateTask task) {
+        final Context context = mContext;
+        final TemplateIndex index = tpl.getIndex();
+
         // Whether to apply hide user / system app filters
         final boolean applyFilters = (packageName == null);
 
@@ -708,30 +826,6 @@ public class AppOpsState {
             pkgs = mAppOps.getPackagesForOps(tpl.ops);
         }
 
-        if (pkgs != null) {
-            for (int i=0; i<pkgs.size(); i++) {
-                AppOpsManager.PackageOps pkgOps = pkgs.get(i);
-                AppEntry appEntry = getAppEntry(context, appEntries, pkgOps.getPackageName(), null,
-                        applyFilters);
-                if (appEntry == null) {
-                    continue;
-                }
-                for (int j=0; j<pkgOps.getOps().size(); j++) {
-                    AppOpsManager.OpEntry opEntry = pkgOps.getOps().get(j);
-                    if (privacyGuard && privacyGuardOps.contains(opEntry.getOp())) {
-                        // This OP is here because the user enabled Privacy Guard
-                        // for this application.
-                        if (DEBUG) Log.d(TAG, "Not adding "
-                                + AppOpsManager.opToName(opEntry.getOp())
-                                + " (" + opEntry.getOp() + ")");
-                        continue;
-                    }
-                    addOp(entries, pkgOps, appEntry, opEntry, packageName == null,
-                            packageName == null ? 0 : opToOrder[opEntry.getOp()]);
-                }
-            }
-        }
-
         List<PackageInfo> apps;
         if (packageName != null) {
             apps = new ArrayList<PackageInfo>();
@@ -741,20 +835,63 @@ public class AppOpsState {
             } catch (NameNotFoundException e) {
             }
         } else {
-            String[] permsArray = new String[perms.size()];
-            perms.toArray(permsArray);
-            apps = mPm.getPackagesHoldingPermissions(permsArray, 0);
+            apps = mPm.getPackagesHoldingPermissions(index.perms, 0);
+        }
+
+        // Group the ops and the permissions of each package, so that the entries of a package
+        // are complete once it is processed.
+        final ArrayList<PackageState> packages = new ArrayList<>();
+        final ArrayMap<String, PackageState> packagesByName = new ArrayMap<>();
+        if (pkgs != null) {
+            for (int i=0; i<pkgs.size(); i++) {
+                AppOpsManager.PackageOps pkgOps = pkgs.get(i);
+                getPackageState(packages, packagesByName, pkgOps.getPackageName())
+                        .ops.add(pkgOps);
+            }
         }
         for (int i=0; i<apps.size(); i++) {
             PackageInfo appInfo = apps.get(i);
-            AppEntry appEntry = getAppEntry(context, appEntries, appInfo.packageName,
-                    appInfo.applicationInfo, applyFilters);
+            getPackageState(packages, packagesByName, appInfo.packageName).infos.add(appInfo);
+        }
+
+        final List<AppOpEntry> entries = new ArrayList<AppOpEntry>();
+        for (int p=0; p<packages.size(); p++) {
+            if (task != null && task.isCancelled()) {
+                return null;
+            }
+            final PackageState pkg = packages.get(p);
+            AppEntry appEntry = getAppEntry(context, pkg.packageName, pkg.getApplicationInfo(),
+                    applyFilters);
             if (appEntry == null) {
                 continue;
             }
-            List<AppOpsManager.OpEntry> dummyOps = null;
-            AppOpsManager.PackageOps pkgOps = null;
-            if (appInfo.requestedPermissions != null) {
+
+            int mergeStart = entries.size();
+            for (int i=0; i<pkg.ops.size(); i++) {
+                AppOpsManager.PackageOps pkgOps = pkg.ops.get(i);
+                for (int j=0; j<pkgOps.getOps().size(); j++) {
+                    AppOpsManager.OpEntry opEntry = pkgOps.getOps().get(j);
+                    if (privacyGuard && index.privacyGuardOps.get(opEntry.getOp())) {
+                        // This OP is here because the user enabled Privacy Guard
+                        // for this application.
+                        if (DEBUG) Log.d(TAG, "Not adding "
+                                + AppOpsManager.opToName(opEntry.getOp())
+                                + " (" + opEntry.getOp() + ")");
+                        continue;
+                    }
+                    addOp(entries, mergeStart, pkgOps, appEntry, opEntry, packageName == null,
+                            packageName == null ? 0 : index.opToOrder[opEntry.getOp()]);
+                }
+            }
+
+            mergeStart = entries.size();
+            for (int i=0; i<pkg.infos.size(); i++) {
+                PackageInfo appInfo = pkg.infos.get(i);
+                if (appInfo.requestedPermissions == null) {
+                    continue;
+                }
+                List<AppOpsManager.OpEntry> dummyOps = null;
+                AppOpsManager.PackageOps pkgOps = null;
                 for (int j=0; j<appInfo.requestedPermissions.length; j++) {
                     if (appInfo.requestedPermissionsFlags != null) {
                         if (!privacyGuard && (appInfo.requestedPermissionsFlags[j]
@@ -764,29 +901,28 @@ public class AppOpsState {
                             continue;
                         }
                     }
-                    if (DEBUG) Log.d(TAG, "Pkg " + appInfo.packageName + ": requested perm "
-                            + appInfo.requestedPermissions[j]);
-                    for (int k=0; k<perms.size(); k++) {
-                        if (!perms.get(k).equals(appInfo.requestedPermissions[j])) {
-                            continue;
-                        }
-                        if (DEBUG) Log.d(TAG, "Pkg " + appInfo.packageName + " perm " + perms.get(k)
-                                + " has op " + permOps.get(k) + ": " + appEntry.hasOp(permOps.get(k)));
-                        if (appEntry.hasOp(permOps.get(k))) {
-                            continue;
-                        }
-                        if (dummyOps == null) {
-                            dummyOps = new ArrayList<AppOpsManager.OpEntry>();
-                            pkgOps = new AppOpsManager.PackageOps(
-                                    appInfo.packageName, appInfo.applicationInfo.uid, dummyOps);
+                    final Integer k = index.permToIndex.get(appInfo.requestedPermissions[j]);
+                    if (k == null) {
+                        continue;
+                    }
+                    final int permOp = index.permOps[k];
+                    if (DEBUG) Log.d(TAG, "Pkg " + appInfo.packageName + " perm "
+                            + index.perms[k] + " has op " + permOp + ": "
+                            + appEntry.hasOp(permOp));
+                    if (appEntry.hasOp(permOp)) {
+                        continue;
+                    }
+                    if (dummyOps == null) {
+                        dummyOps = new ArrayList<AppOpsManager.OpEntry>();
+                        pkgOps = new AppOpsManager.PackageOps(
+                                appInfo.packageName, appInfo.applicationInfo.uid, dummyOps);
 
-                        }
-                        AppOpsManager.OpEntry opEntry = new AppOpsManager.OpEntry(
-                                permOps.get(k), AppOpsManager.MODE_ALLOWED, 0, 0, 0, -1, null, 0, 0);
-                        dummyOps.add(opEntry);
-                        addOp(entries, pkgOps, appEntry, opEntry, packageName == null,
-                                packageName == null ? 0 : opToOrder[opEntry.getOp()]);
                     }
+                    AppOpsManager.OpEntry opEntry = new AppOpsManager.OpEntry(
+                            permOp, AppOpsManager.MODE_ALLOWED, 0, 0, 0, -1, null, 0, 0);
+                    dummyOps.add(opEntry);
+                    addOp(entries, mergeStart, pkgOps, appEntry, opEntry, packageName == null,
+                            packageName == null ? 0 : index.opToOrder[opEntry.getOp()]);
                 }
             }
         }
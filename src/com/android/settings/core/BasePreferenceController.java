@@ -107,10 +107,16 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     /**
      * Instantiate a controller as specified controller type and user-defined key.
      * <p/>
-     * This is done through reflection. Do not use this method unless you know what you are doing.
+     * Controllers missing from {@link PreferenceControllerRegistry} are instantiated through
+     * reflection. Do not use this method unless you know what you are doing.
      */
     public static BasePreferenceController createInstance(Context context,
             String controllerName, String key) {
+        final PreferenceControllerRegistry.KeyedFactory factory =
+                PreferenceControllerRegistry.getKeyedFactory(controllerName);
+        if (factory != null) {
+            return factory.create(context, key);
+        }
         try {
             final Class<?> clazz = Class.forName(controllerName);
             final Constructor<?> preferenceConstructor =
@@ -127,9 +133,15 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     /**
      * Instantiate a controller as specified controller type.
      * <p/>
-     * This is done through reflection. Do not use this method unless you know what you are doing.
+     * Controllers missing from {@link PreferenceControllerRegistry} are instantiated through
+     * reflection. Do not use this method unless you know what you are doing.
      */
     public static BasePreferenceController createInstance(Context context, String controllerName) {
+        final PreferenceControllerRegistry.Factory factory =
+                PreferenceControllerRegistry.getFactory(controllerName);
+        if (factory != null) {
+            return factory.create(context);
+        }
         try {
             final Class<?> clazz = Class.forName(controllerName);
             final Constructor<?> preferenceConstructor = clazz.getConstructor(Context.class);
@@ -65,11 +65,16 @@ public class PreferenceControllerListHelper {
             if (TextUtils.isEmpty(controllerName)) {
                 continue;
             }
-            BasePreferenceController controller;
-            try {
-                controller = BasePreferenceController.createInstance(context, controllerName);
-            } catch (IllegalStateException e) {
-                Log.d(TAG, "Could not find Context-only controller for pref: " + controllerName);
+            BasePreferenceController controller = null;
+            if (!PreferenceControllerRegistry.requiresKey(controllerName)) {
+                try {
+                    controller = BasePreferenceController.createInstance(context, controllerName);
+                } catch (IllegalStateException e) {
+                    Log.d(TAG, "Could not find Context-only controller for pref: "
+                            + controllerName);
+                }
+            }
+            if (controller == null) {
                 final String key = metadata.getString(METADATA_KEY);
                 if (TextUtils.isEmpty(key)) {
                     Log.w(TAG, "Controller requires key but it's not defined in xml: "
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+import android.util.ArrayMap;
+
+import com.android.settings.accessibility.MagnificationGesturesPreferenceController;
+import com.android.settings.accessibility.MagnificationNavbarPreferenceController;
+import com.android.settings.applications.AppPermissionsPreferenceController;
+import com.android.settings.applications.appinfo.AdvancedAppInfoPreferenceCategoryController;
+import com.android.settings.applications.appinfo.AppDataUsagePreferenceController;
+import com.android.settings.applications.appinfo.AppInstallerInfoPreferenceController;
+import com.android.settings.applications.appinfo.AppInstallerPreferenceCategoryController;
+import com.android.settings.applications.appinfo.AppNotificationPreferenceController;
+import com.android.settings.applications.appinfo.AppOpenByDefaultPreferenceController;
+import com.android.settings.applications.appinfo.AppPackageNamePreferenceController;
+import com.android.settings.applications.appinfo.AppPermissionPreferenceController;
+import com.android.settings.applications.appinfo.AppSettingPreferenceController;
+import com.android.settings.applications.appinfo.AppStoragePreferenceController;
+import com.android.settings.applications.appinfo.AppVersionPreferenceController;
+import com.android.settings.applications.appinfo.DrawOverlayDetailPreferenceController;
+import com.android.settings.applications.appinfo.ExternalSourceDetailPreferenceController;
+import com.android.settings.applications.appinfo.InstantAppDomainsPreferenceController;
+import com.android.settings.applications.appinfo.PictureInPictureDetailPreferenceController;
+import com.android.settings.applications.appinfo.ThermalControlPerAppPreferenceController;
+import com.android.settings.applications.appinfo.TimeSpentInAppPreferenceController;
+import com.android.settings.applications.appinfo.WriteSystemSettingsPreferenceController;
+import com.android.settings.backup.BackupSettingsActivityPreferenceController;
+import com.android.settings.bluetooth.BluetoothDeviceRenamePreferenceController;
+import com.android.settings.connecteddevice.AddDevicePreferenceController;
+import com.android.settings.connecteddevice.AdvancedConnectedDeviceController;
+import com.android.settings.connecteddevice.AvailableMediaDeviceGroupController;
+import com.android.settings.connecteddevice.BluetoothOnWhileDrivingPreferenceController;
+import com.android.settings.connecteddevice.ConnectedDeviceGroupController;
+import com.android.settings.connecteddevice.PreviouslyConnectedDevicePreferenceController;
+import com.android.settings.connecteddevice.SavedDeviceGroupController;
+import com.android.settings.datetime.timezone.TimeZoneInfoPreferenceController;
+import com.android.settings.display.AmbientDisplayAlwaysOnPreferenceController;
+import com.android.settings.display.AmbientDisplayNotificationsPreferenceController;
+import com.android.settings.display.AutoBrightnessPreferenceController;
+import com.android.settings.display.FontSizePreferenceController;
+import com.android.settings.display.NightDisplayActivationPreferenceController;
+import com.android.settings.display.NightDisplayAutoModePreferenceController;
+import com.android.settings.display.NightDisplayCustomEndTimePreferenceController;
+import com.android.settings.display.NightDisplayCustomStartTimePreferenceController;
+import com.android.settings.display.NightDisplayIntensityPreferenceController;
+import com.android.settings.display.SystemUiThemePreferenceController;
+import com.android.settings.fuelgauge.AutoRestrictionPreferenceController;
+import com.android.settings.fuelgauge.BatterySaverController;
+import com.android.settings.fuelgauge.SmartBatteryPreferenceController;
+import com.android.settings.fuelgauge.batterysaver.AutoBatterySaverPreferenceController;
+import com.android.settings.fuelgauge.batterysaver.BatterySaverButtonPreferenceController;
+import com.android.settings.fuelgauge.batterytip.BatteryManagerPreferenceController;
+import com.android.settings.gestures.AssistGestureSettingsPreferenceController;
+import com.android.settings.gestures.DoubleTapPowerPreferenceController;
+import com.android.settings.gestures.DoubleTapScreenPreferenceController;
+import com.android.settings.gestures.DoubleTwistPreferenceController;
+import com.android.settings.gestures.PickupGesturePreferenceController;
+import com.android.settings.gestures.PreventRingingPreferenceController;
+import com.android.settings.gestures.SwipeToNotificationPreferenceController;
+import com.android.settings.gestures.SwipeUpPreferenceController;
+import com.android.settings.inputmethod.GameControllerPreferenceController;
+import com.android.settings.network.AirplaneModePreferenceController;
+import com.android.settings.network.NetworkScorerPickerPreferenceController;
+import com.android.settings.nfc.AndroidBeamPreferenceController;
+import com.android.settings.nfc.NfcPreferenceController;
+import com.android.settings.notification.AlarmVolumePreferenceController;
+import com.android.settings.notification.BadgingNotificationPreferenceController;
+import com.android.settings.notification.CallVolumePreferenceController;
+import com.android.settings.notification.IncreasingRingPreferenceController;
+import com.android.settings.notification.IncreasingRingVolumePreferenceController;
+import com.android.settings.notification.MediaVolumePreferenceController;
+import com.android.settings.notification.NotificationVolumePreferenceController;
+import com.android.settings.notification.RingVolumePreferenceController;
+import com.android.settings.notification.VibrateWhenRingPreferenceController;
+import com.android.settings.security.LockdownButtonPreferenceController;
+import com.android.settings.security.ShowPasswordPreferenceController;
+import com.android.settings.security.VisiblePatternProfilePreferenceController;
+import com.android.settings.sound.HandsFreeProfileOutputPreferenceController;
+import com.android.settings.sound.MediaOutputPreferenceController;
+import com.android.settings.system.AdditionalSystemUpdatePreferenceController;
+import com.android.settings.system.ResetPreferenceController;
+import com.android.settings.system.SystemUpdatePreferenceController;
+
+import java.util.Map;
+
+/**
+ * Static lookup table from the name of a controller declared in preference xml
+ * ({@code settings:controller}) to its constructor.
+ *
+ * {@link BasePreferenceController#createInstance} consults this table before falling back to
+ * reflection. Controllers missing from the table still work, but are instantiated reflectively.
+ */
+public final class PreferenceControllerRegistry {
+
+    /**
+     * Creates a controller from a {@link Context} only.
+     */
+    public interface Factory {
+        BasePreferenceController create(Context context);
+    }
+
+    /**
+     * Creates a controller from a {@link Context} and a preference key.
+     */
+    public interface KeyedFactory {
+        BasePreferenceController create(Context context, String key);
+    }
+
+    private static final Map<String, Factory> FACTORIES = new ArrayMap<>();
+    private static final Map<String, KeyedFactory> KEYED_FACTORIES = new ArrayMap<>();
+
+    static {
+        addController(AdditionalSystemUpdatePreferenceController.class,
+                AdditionalSystemUpdatePreferenceController::new);
+        addController(AlarmVolumePreferenceController.class, AlarmVolumePreferenceController::new);
+        addController(AppPermissionsPreferenceController.class,
+                AppPermissionsPreferenceController::new);
+        addController(AutoBatterySaverPreferenceController.class,
+                AutoBatterySaverPreferenceController::new);
+        addController(AutoRestrictionPreferenceController.class,
+                AutoRestrictionPreferenceController::new);
+        addController(AvailableMediaDeviceGroupController.class,
+                AvailableMediaDeviceGroupController::new);
+        addController(BackupSettingsActivityPreferenceController.class,
+                BackupSettingsActivityPreferenceController::new);
+        addController(BatteryManagerPreferenceController.class,
+                BatteryManagerPreferenceController::new);
+        addController(BatterySaverController.class, BatterySaverController::new);
+        addController(BluetoothOnWhileDrivingPreferenceController.class,
+                BluetoothOnWhileDrivingPreferenceController::new);
+        addController(ConnectedDeviceGroupController.class, ConnectedDeviceGroupController::new);
+        addController(IncreasingRingPreferenceController.class,
+                IncreasingRingPreferenceController::new);
+        addController(IncreasingRingVolumePreferenceController.class,
+                IncreasingRingVolumePreferenceController::new);
+        addController(LockdownButtonPreferenceController.class,
+                LockdownButtonPreferenceController::new);
+        addController(MediaVolumePreferenceController.class, MediaVolumePreferenceController::new);
+        addController(NotificationVolumePreferenceController.class,
+                NotificationVolumePreferenceController::new);
+        addController(RingVolumePreferenceController.class, RingVolumePreferenceController::new);
+        addController(SavedDeviceGroupController.class, SavedDeviceGroupController::new);
+        addController(ShowPasswordPreferenceController.class,
+                ShowPasswordPreferenceController::new);
+        addController(SmartBatteryPreferenceController.class,
+                SmartBatteryPreferenceController::new);
+        addController(SystemUpdatePreferenceController.class,
+                SystemUpdatePreferenceController::new);
+        addController(TimeZoneInfoPreferenceController.class,
+                TimeZoneInfoPreferenceController::new);
+        addController(VisiblePatternProfilePreferenceController.class,
+                VisiblePatternProfilePreferenceController::new);
+
+        addKeyedController(AddDevicePreferenceController.class, AddDevicePreferenceController::new);
+        addKeyedController(AdvancedAppInfoPreferenceCategoryController.class,
+                AdvancedAppInfoPreferenceCategoryController::new);
+        addKeyedController(AdvancedConnectedDeviceController.class,
+                AdvancedConnectedDeviceController::new);
+        addKeyedController(AirplaneModePreferenceController.class,
+                AirplaneModePreferenceController::new);
+        addKeyedController(AmbientDisplayAlwaysOnPreferenceController.class,
+                AmbientDisplayAlwaysOnPreferenceController::new);
+        addKeyedController(AmbientDisplayNotificationsPreferenceController.class,
+                AmbientDisplayNotificationsPreferenceController::new);
+        addKeyedController(AndroidBeamPreferenceController.class,
+                AndroidBeamPreferenceController::new);
+        addKeyedController(AppDataUsagePreferenceController.class,
+                AppDataUsagePreferenceController::new);
+        addKeyedController(AppInstallerInfoPreferenceController.class,
+                AppInstallerInfoPreferenceController::new);
+        addKeyedController(AppInstallerPreferenceCategoryController.class,
+                AppInstallerPreferenceCategoryController::new);
+        addKeyedController(AppNotificationPreferenceController.class,
+                AppNotificationPreferenceController::new);
+        addKeyedController(AppOpenByDefaultPreferenceController.class,
+                AppOpenByDefaultPreferenceController::new);
+        addKeyedController(AppPackageNamePreferenceController.class,
+                AppPackageNamePreferenceController::new);
+        addKeyedController(AppPermissionPreferenceController.class,
+                AppPermissionPreferenceController::new);
+        addKeyedController(AppSettingPreferenceController.class,
+                AppSettingPreferenceController::new);
+        addKeyedController(AppStoragePreferenceController.class,
+                AppStoragePreferenceController::new);
+        addKeyedController(AppVersionPreferenceController.class,
+                AppVersionPreferenceController::new);
+        addKeyedController(AssistGestureSettingsPreferenceController.class,
+                AssistGestureSettingsPreferenceController::new);
+        addKeyedController(AutoBrightnessPreferenceController.class,
+                AutoBrightnessPreferenceController::new);
+        addKeyedController(BadgingNotificationPreferenceController.class,
+                BadgingNotificationPreferenceController::new);
+        addKeyedController(BatterySaverButtonPreferenceController.class,
+                BatterySaverButtonPreferenceController::new);
+        addKeyedController(BluetoothDeviceRenamePreferenceController.class,
+                BluetoothDeviceRenamePreferenceController::new);
+        addKeyedController(CallVolumePreferenceController.class,
+                CallVolumePreferenceController::new);
+        addKeyedController(DoubleTapPowerPreferenceController.class,
+                DoubleTapPowerPreferenceController::new);
+        addKeyedController(DoubleTapScreenPreferenceController.class,
+                DoubleTapScreenPreferenceController::new);
+        addKeyedController(DoubleTwistPreferenceController.class,
+                DoubleTwistPreferenceController::new);
+        addKeyedController(DrawOverlayDetailPreferenceController.class,
+                DrawOverlayDetailPreferenceController::new);
+        addKeyedController(ExternalSourceDetailPreferenceController.class,
+                ExternalSourceDetailPreferenceController::new);
+        addKeyedController(FontSizePreferenceController.class, FontSizePreferenceController::new);
+        addKeyedController(GameControllerPreferenceController.class,
+                GameControllerPreferenceController::new);
+        addKeyedController(HandsFreeProfileOutputPreferenceController.class,
+                HandsFreeProfileOutputPreferenceController::new);
+        addKeyedController(InstantAppDomainsPreferenceController.class,
+                InstantAppDomainsPreferenceController::new);
+        addKeyedController(MagnificationGesturesPreferenceController.class,
+                MagnificationGesturesPreferenceController::new);
+        addKeyedController(MagnificationNavbarPreferenceController.class,
+                MagnificationNavbarPreferenceController::new);
+        addKeyedController(MediaOutputPreferenceController.class,
+                MediaOutputPreferenceController::new);
+        addKeyedController(NetworkScorerPickerPreferenceController.class,
+                NetworkScorerPickerPreferenceController::new);
+        addKeyedController(NfcPreferenceController.class, NfcPreferenceController::new);
+        addKeyedController(NightDisplayActivationPreferenceController.class,
+                NightDisplayActivationPreferenceController::new);
+        addKeyedController(NightDisplayAutoModePreferenceController.class,
+                NightDisplayAutoModePreferenceController::new);
+        addKeyedController(NightDisplayCustomEndTimePreferenceController.class,
+                NightDisplayCustomEndTimePreferenceController::new);
+        addKeyedController(NightDisplayCustomStartTimePreferenceController.class,
+                NightDisplayCustomStartTimePreferenceController::new);
+        addKeyedController(NightDisplayIntensityPreferenceController.class,
+                NightDisplayIntensityPreferenceController::new);
+        addKeyedController(PickupGesturePreferenceController.class,
+                PickupGesturePreferenceController::new);
+        addKeyedController(PictureInPictureDetailPreferenceController.class,
+                PictureInPictureDetailPreferenceController::new);
+        addKeyedController(PreventRingingPreferenceController.class,
+                PreventRingingPreferenceController::new);
+        addKeyedController(PreviouslyConnectedDevicePreferenceController.class,
+                PreviouslyConnectedDevicePreferenceController::new);
+        addKeyedController(ResetPreferenceController.class, ResetPreferenceController::new);
+        addKeyedController(RingVolumePreferenceController.class,
+                RingVolumePreferenceController::new);
+        addKeyedController(SwipeToNotificationPreferenceController.class,
+                SwipeToNotificationPreferenceController::new);
+        addKeyedController(SwipeUpPreferenceController.class, SwipeUpPreferenceController::new);
+        addKeyedController(SystemUiThemePreferenceController.class,
+                SystemUiThemePreferenceController::new);
+        addKeyedController(ThermalControlPerAppPreferenceController.class,
+                ThermalControlPerAppPreferenceController::new);
+        addKeyedController(TimeSpentInAppPreferenceController.class,
+                TimeSpentInAppPreferenceController::new);
+        addKeyedController(VibrateWhenRingPreferenceController.class,
+                VibrateWhenRingPreferenceController::new);
+        addKeyedController(WriteSystemSettingsPreferenceController.class,
+                WriteSystemSettingsPreferenceController::new);
+    }
+
+    private PreferenceControllerRegistry() {
+    }
+
+    /**
+     * @return the context-only constructor of {@param controllerName}, or null if the controller
+     * is not registered with one.
+     */
+    public static Factory getFactory(String controllerName) {
+        return FACTORIES.get(controllerName);
+    }
+
+    /**
+     * @return the context and key constructor of {@param controllerName}, or null if the
+     * controller is not registered with one.
+     */
+    public static KeyedFactory getKeyedFactory(String controllerName) {
+        return KEYED_FACTORIES.get(controllerName);
+    }
+
+    /**
+     * @return true if {@param controllerName} is registered with a context and key constructor
+     * only, so trying to instantiate it from a {@link Context} alone is bound to fail.
+     */
+    public static boolean requiresKey(String controllerName) {
+        return !FACTORIES.containsKey(controllerName)
+                && KEYED_FACTORIES.containsKey(controllerName);
+    }
+
+    private static void addController(Class<? extends BasePreferenceController> clazz,
+            Factory factory) {
+        FACTORIES.put(clazz.getName(), factory);
+    }
+
+    private static void addKeyedController(Class<? extends BasePreferenceController> clazz,
+            KeyedFactory factory) {
+        KEYED_FACTORIES.put(clazz.getName(), factory);
+    }
+}
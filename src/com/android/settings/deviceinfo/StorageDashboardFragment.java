@@ -322,8 +322,7 @@ public class StorageDashboardFragment extends DashboardFragment implements
 
     private void maybeCacheFreshValues() {
         if (mStorageInfo != null && mAppsResult != null) {
-            mCachedStorageValuesHelper.cacheResult(
-                    mStorageInfo, mAppsResult.get(UserHandle.myUserId()));
+            mCachedStorageValuesHelper.cacheResult(mStorageInfo, mAppsResult);
         }
     }
 
@@ -20,11 +20,13 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.provider.Settings;
 import android.support.annotation.VisibleForTesting;
+import android.util.ArraySet;
 import android.util.SparseArray;
 
 import com.android.settingslib.applications.StorageStatsSource;
 import com.android.settingslib.deviceinfo.PrivateStorageInfo;
 
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 public class CachedStorageValuesHelper {
@@ -45,6 +47,7 @@ public class CachedStorageValuesHelper {
     public static final String EXTERNAL_IMAGE_BYTES = "external_image_bytes";
     public static final String EXTERNAL_APP_BYTES = "external_apps_bytes";
     public static final String USER_ID_KEY = "user_id";
+    public static final String OTHER_USER_IDS_KEY = "other_user_ids";
     private final Long mClobberThreshold;
     private final SharedPreferences mSharedPreferences;
     private final int mUserId;
@@ -81,12 +84,34 @@ public class CachedStorageValuesHelper {
         if (!isDataValid()) {
             return null;
         }
-        final long gamesSize = mSharedPreferences.getLong(GAME_APPS_SIZE_KEY, -1);
-        final long musicAppsSize = mSharedPreferences.getLong(MUSIC_APPS_SIZE_KEY, -1);
-        final long videoAppsSize = mSharedPreferences.getLong(VIDEO_APPS_SIZE_KEY, -1);
-        final long photoAppSize = mSharedPreferences.getLong(PHOTO_APPS_SIZE_KEY, -1);
-        final long otherAppsSize = mSharedPreferences.getLong(OTHER_APPS_SIZE_KEY, -1);
-        final long cacheSize = mSharedPreferences.getLong(CACHE_APPS_SIZE_KEY, -1);
+        final StorageAsyncLoader.AppsStorageResult result = getCachedResult("" /* keySuffix */);
+        if (result == null) {
+            return null;
+        }
+        final SparseArray<StorageAsyncLoader.AppsStorageResult> resultArray = new SparseArray<>();
+        resultArray.append(mUserId, result);
+
+        // The other users are optional, the loader fills in the ones which are missing.
+        final Set<String> userIds = mSharedPreferences.getStringSet(OTHER_USER_IDS_KEY, null);
+        if (userIds != null) {
+            for (String userId : userIds) {
+                final StorageAsyncLoader.AppsStorageResult userResult =
+                        getCachedResult(getUserKeySuffix(userId));
+                if (userResult != null) {
+                    resultArray.put(Integer.parseInt(userId), userResult);
+                }
+            }
+        }
+        return resultArray;
+    }
+
+    private StorageAsyncLoader.AppsStorageResult getCachedResult(String keySuffix) {
+        final long gamesSize = mSharedPreferences.getLong(GAME_APPS_SIZE_KEY + keySuffix, -1);
+        final long musicAppsSize = mSharedPreferences.getLong(MUSIC_APPS_SIZE_KEY + keySuffix, -1);
+        final long videoAppsSize = mSharedPreferences.getLong(VIDEO_APPS_SIZE_KEY + keySuffix, -1);
+        final long photoAppSize = mSharedPreferences.getLong(PHOTO_APPS_SIZE_KEY + keySuffix, -1);
+        final long otherAppsSize = mSharedPreferences.getLong(OTHER_APPS_SIZE_KEY + keySuffix, -1);
+        final long cacheSize = mSharedPreferences.getLong(CACHE_APPS_SIZE_KEY + keySuffix, -1);
         if (gamesSize < 0
                 || musicAppsSize < 0
                 || videoAppsSize < 0
@@ -96,11 +121,16 @@ public class CachedStorageValuesHelper {
             return null;
         }
 
-        final long externalTotalBytes = mSharedPreferences.getLong(EXTERNAL_TOTAL_BYTES, -1);
-        final long externalAudioBytes = mSharedPreferences.getLong(EXTERNAL_AUDIO_BYTES, -1);
-        final long externalVideoBytes = mSharedPreferences.getLong(EXTERNAL_VIDEO_BYTES, -1);
-        final long externalImageBytes = mSharedPreferences.getLong(EXTERNAL_IMAGE_BYTES, -1);
-        final long externalAppBytes = mSharedPreferences.getLong(EXTERNAL_APP_BYTES, -1);
+        final long externalTotalBytes =
+                mSharedPreferences.getLong(EXTERNAL_TOTAL_BYTES + keySuffix, -1);
+        final long externalAudioBytes =
+                mSharedPreferences.getLong(EXTERNAL_AUDIO_BYTES + keySuffix, -1);
+        final long externalVideoBytes =
+                mSharedPreferences.getLong(EXTERNAL_VIDEO_BYTES + keySuffix, -1);
+        final long externalImageBytes =
+                mSharedPreferences.getLong(EXTERNAL_IMAGE_BYTES + keySuffix, -1);
+        final long externalAppBytes =
+                mSharedPreferences.getLong(EXTERNAL_APP_BYTES + keySuffix, -1);
         if (externalTotalBytes < 0
                 || externalAudioBytes < 0
                 || externalVideoBytes < 0
@@ -125,33 +155,70 @@ public class CachedStorageValuesHelper {
         result.otherAppsSize = otherAppsSize;
         result.cacheSize = cacheSize;
         result.externalStats = externalStats;
-        final SparseArray<StorageAsyncLoader.AppsStorageResult> resultArray = new SparseArray<>();
-        resultArray.append(mUserId, result);
-        return resultArray;
+        return result;
     }
 
     public void cacheResult(
             PrivateStorageInfo storageInfo, StorageAsyncLoader.AppsStorageResult result) {
-        mSharedPreferences
-                .edit()
-                .putLong(FREE_BYTES_KEY, storageInfo.freeBytes)
+        final SharedPreferences.Editor editor = mSharedPreferences.edit();
+        putResult(editor, result, "" /* keySuffix */);
+        editor.putLong(FREE_BYTES_KEY, storageInfo.freeBytes)
                 .putLong(TOTAL_BYTES_KEY, storageInfo.totalBytes)
-                .putLong(GAME_APPS_SIZE_KEY, result.gamesSize)
-                .putLong(MUSIC_APPS_SIZE_KEY, result.musicAppsSize)
-                .putLong(VIDEO_APPS_SIZE_KEY, result.videoAppsSize)
-                .putLong(PHOTO_APPS_SIZE_KEY, result.photosAppsSize)
-                .putLong(OTHER_APPS_SIZE_KEY, result.otherAppsSize)
-                .putLong(CACHE_APPS_SIZE_KEY, result.cacheSize)
-                .putLong(EXTERNAL_TOTAL_BYTES, result.externalStats.totalBytes)
-                .putLong(EXTERNAL_AUDIO_BYTES, result.externalStats.audioBytes)
-                .putLong(EXTERNAL_VIDEO_BYTES, result.externalStats.videoBytes)
-                .putLong(EXTERNAL_IMAGE_BYTES, result.externalStats.imageBytes)
-                .putLong(EXTERNAL_APP_BYTES, result.externalStats.appBytes)
+                .remove(OTHER_USER_IDS_KEY)
                 .putInt(USER_ID_KEY, mUserId)
                 .putLong(TIMESTAMP_KEY, mClock.getCurrentTime())
                 .apply();
     }
 
+    /**
+     * Cache the result of every user in {@code results}, so that the other users and profiles
+     * don't have to wait for the loader either.
+     */
+    public void cacheResult(PrivateStorageInfo storageInfo,
+            SparseArray<StorageAsyncLoader.AppsStorageResult> results) {
+        final StorageAsyncLoader.AppsStorageResult result = results.get(mUserId);
+        if (result == null) {
+            return;
+        }
+        final SharedPreferences.Editor editor = mSharedPreferences.edit();
+        putResult(editor, result, "" /* keySuffix */);
+        final Set<String> userIds = new ArraySet<>();
+        for (int i = 0, size = results.size(); i < size; i++) {
+            final StorageAsyncLoader.AppsStorageResult userResult = results.valueAt(i);
+            final String userId = String.valueOf(results.keyAt(i));
+            if (results.keyAt(i) == mUserId || userResult.externalStats == null) {
+                continue;
+            }
+            putResult(editor, userResult, getUserKeySuffix(userId));
+            userIds.add(userId);
+        }
+        editor.putLong(FREE_BYTES_KEY, storageInfo.freeBytes)
+                .putLong(TOTAL_BYTES_KEY, storageInfo.totalBytes)
+                .putStringSet(OTHER_USER_IDS_KEY, userIds)
+                .putInt(USER_ID_KEY, mUserId)
+                .putLong(TIMESTAMP_KEY, mClock.getCurrentTime())
+                .apply();
+    }
+
+    private static void putResult(SharedPreferences.Editor editor,
+            StorageAsyncLoader.AppsStorageResult result, String keySuffix) {
+        editor.putLong(GAME_APPS_SIZE_KEY + keySuffix, result.gamesSize)
+                .putLong(MUSIC_APPS_SIZE_KEY + keySuffix, result.musicAppsSize)
+                .putLong(VIDEO_APPS_SIZE_KEY + keySuffix, result.videoAppsSize)
+                .putLong(PHOTO_APPS_SIZE_KEY + keySuffix, result.photosAppsSize)
+                .putLong(OTHER_APPS_SIZE_KEY + keySuffix, result.otherAppsSize)
+                .putLong(CACHE_APPS_SIZE_KEY + keySuffix, result.cacheSize)
+                .putLong(EXTERNAL_TOTAL_BYTES + keySuffix, result.externalStats.totalBytes)
+                .putLong(EXTERNAL_AUDIO_BYTES + keySuffix, result.externalStats.audioBytes)
+                .putLong(EXTERNAL_VIDEO_BYTES + keySuffix, result.externalStats.videoBytes)
+                .putLong(EXTERNAL_IMAGE_BYTES + keySuffix, result.externalStats.imageBytes)
+                .putLong(EXTERNAL_APP_BYTES + keySuffix, result.externalStats.appBytes);
+    }
+
+    private static String getUserKeySuffix(String userId) {
+        return "_" + userId;
+    }
+
     private boolean isDataValid() {
         final int cachedUserId = mSharedPreferences.getInt(USER_ID_KEY, -1);
         if (cachedUserId != mUserId) {
@@ -30,15 +30,22 @@ import android.os.UserManager;
 import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
+import android.util.SparseLongArray;
 
+import com.android.settings.utils.BackgroundThreadFactory;
 import com.android.settingslib.applications.StorageStatsSource;
 import com.android.settingslib.utils.AsyncLoader;
 import com.android.settingslib.wrapper.PackageManagerWrapper;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
 /**
  * StorageAsyncLoader is a Loader which loads categorized app information and external stats for all
@@ -49,10 +56,18 @@ public class StorageAsyncLoader
     private UserManager mUserManager;
     private static final String TAG = "StorageAsyncLoader";
 
+    private static final int MAX_PARALLEL_USERS = 4;
+
+    // Buckets which the size of an app is attributed to.
+    private static final int BUCKET_OTHER = 0;
+    private static final int BUCKET_GAMES = 1;
+    private static final int BUCKET_MUSIC = 2;
+    private static final int BUCKET_VIDEOS = 3;
+    private static final int BUCKET_PHOTOS = 4;
+
     private String mUuid;
     private StorageStatsSource mStatsManager;
     private PackageManagerWrapper mPackageManager;
-    private ArraySet<String> mSeenPackages;
 
     public StorageAsyncLoader(Context context, UserManager userManager,
             String uuid, StorageStatsSource source, PackageManagerWrapper pm) {
@@ -69,7 +84,6 @@ public class StorageAsyncLoader
     }
 
     private SparseArray<AppsStorageResult> loadApps() {
-        mSeenPackages = new ArraySet<>();
         SparseArray<AppsStorageResult> result = new SparseArray<>();
         List<UserInfo> infos = mUserManager.getUsers();
         // Sort the users by user id ascending.
@@ -81,71 +95,96 @@ public class StorageAsyncLoader
                         return Integer.compare(userInfo.id, otherUser.id);
                     }
                 });
-        for (int i = 0, userCount = infos.size(); i < userCount; i++) {
-            UserInfo info = infos.get(i);
-            result.put(info.id, getStorageResultForUser(info.id));
+
+        // The code size of a package is attributed to the first user, by user id, which has it
+        // installed. Deciding it upfront lets the users be loaded in parallel.
+        final int userCount = infos.size();
+        final List<List<ApplicationInfo>> apps = new ArrayList<>(userCount);
+        final List<ArraySet<String>> codePackages = new ArrayList<>(userCount);
+        final ArraySet<String> seenPackages = new ArraySet<>();
+        for (int i = 0; i < userCount; i++) {
+            Log.d(TAG, "Loading apps");
+            final List<ApplicationInfo> userApps =
+                    mPackageManager.getInstalledApplicationsAsUser(0, infos.get(i).id);
+            final ArraySet<String> userCodePackages = new ArraySet<>();
+            for (int j = 0, size = userApps.size(); j < size; j++) {
+                final String packageName = userApps.get(j).packageName;
+                if (seenPackages.add(packageName)) {
+                    userCodePackages.add(packageName);
+                }
+            }
+            apps.add(userApps);
+            codePackages.add(userCodePackages);
+        }
+
+        if (userCount == 1) {
+            result.put(infos.get(0).id,
+                    getStorageResultForUser(infos.get(0).id, apps.get(0), codePackages.get(0)));
+            return result;
+        }
+
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(userCount, MAX_PARALLEL_USERS),
+                        new BackgroundThreadFactory(TAG));
+        try {
+            final List<FutureTask<AppsStorageResult>> tasks = new ArrayList<>(userCount);
+            for (int i = 0; i < userCount; i++) {
+                final int userId = infos.get(i).id;
+                final List<ApplicationInfo> userApps = apps.get(i);
+                final ArraySet<String> userCodePackages = codePackages.get(i);
+                final FutureTask<AppsStorageResult> task = new FutureTask<>(
+                        () -> getStorageResultForUser(userId, userApps, userCodePackages));
+                tasks.add(task);
+                executor.execute(task);
+            }
+            for (int i = 0; i < userCount; i++) {
+                final int userId = infos.get(i).id;
+                AppsStorageResult userResult;
+                try {
+                    userResult = tasks.get(i).get();
+                } catch (ExecutionException | InterruptedException e) {
+                    // Every user must be in the result, load it again on this thread instead.
+                    Log.w(TAG, "Failed to load the storage of user " + userId + " in parallel", e);
+                    userResult = getStorageResultForUser(userId, apps.get(i), codePackages.get(i));
+                }
+                result.put(userId, userResult);
+            }
+        } finally {
+            executor.shutdownNow();
         }
         return result;
     }
 
-    private AppsStorageResult getStorageResultForUser(int userId) {
-        Log.d(TAG, "Loading apps");
-        List<ApplicationInfo> applicationInfos =
-                mPackageManager.getInstalledApplicationsAsUser(0, userId);
+    /**
+     * @param codePackages packages whose code size is attributed to {@code userId}
+     */
+    private AppsStorageResult getStorageResultForUser(int userId,
+            List<ApplicationInfo> applicationInfos, ArraySet<String> codePackages) {
         AppsStorageResult result = new AppsStorageResult();
         UserHandle myUser = UserHandle.of(userId);
+
+        // Apps sharing a uid are queried with a single call when possible.
+        final SparseArray<List<ApplicationInfo>> appsByUid = new SparseArray<>();
         for (int i = 0, size = applicationInfos.size(); i < size; i++) {
             ApplicationInfo app = applicationInfos.get(i);
-
-            StorageStatsSource.AppStorageStats stats;
-            try {
-                stats = mStatsManager.getStatsForPackage(mUuid, app.packageName, myUser);
-            } catch (NameNotFoundException | IOException e) {
-                // This may happen if the package was removed during our calculation.
-                Log.w(TAG, "App unexpectedly not found", e);
-                continue;
+            List<ApplicationInfo> uidApps = appsByUid.get(app.uid);
+            if (uidApps == null) {
+                uidApps = new ArrayList<>(1);
+                appsByUid.put(app.uid, uidApps);
             }
+            uidApps.add(app);
+        }
 
-            final long dataSize = stats.getDataBytes();
-            final long cacheQuota = mStatsManager.getCacheQuotaBytes(mUuid, app.uid);
-            final long cacheBytes = stats.getCacheBytes();
-            long blamedSize = dataSize;
-            // Technically, we could overages as freeable on the storage settings screen.
-            // If the app is using more cache than its quota, we would accidentally subtract the
-            // overage from the system size (because it shows up as unused) during our attribution.
-            // Thus, we cap the attribution at the quota size.
-            if (cacheQuota < cacheBytes) {
-                blamedSize = blamedSize - cacheBytes + cacheQuota;
+        final SparseLongArray cacheQuotas = new SparseLongArray();
+        for (int i = 0, size = appsByUid.size(); i < size; i++) {
+            final List<ApplicationInfo> uidApps = appsByUid.valueAt(i);
+            if (uidApps.size() > 1
+                    && addUidSize(result, appsByUid.keyAt(i), uidApps, codePackages,
+                            cacheQuotas)) {
+                continue;
             }
-
-            // This isn't quite right because it slams the first user by user id with the whole code
-            // size, but this ensures that we count all apps seen once.
-            if (!mSeenPackages.contains(app.packageName)) {
-                blamedSize += stats.getCodeBytes();
-                mSeenPackages.add(app.packageName);
-            }
-
-            switch (app.category) {
-                case CATEGORY_GAME:
-                    result.gamesSize += blamedSize;
-                    break;
-                case CATEGORY_AUDIO:
-                    result.musicAppsSize += blamedSize;
-                    break;
-                case CATEGORY_VIDEO:
-                    result.videoAppsSize += blamedSize;
-                    break;
-                case CATEGORY_IMAGE:
-                    result.photosAppsSize += blamedSize;
-                    break;
-                default:
-                    // The deprecated game flag does not set the category.
-                    if ((app.flags & ApplicationInfo.FLAG_IS_GAME) != 0) {
-                        result.gamesSize += blamedSize;
-                        break;
-                    }
-                    result.otherAppsSize += blamedSize;
-                    break;
+            for (int j = 0, count = uidApps.size(); j < count; j++) {
+                addPackageSize(result, uidApps.get(j), myUser, codePackages, cacheQuotas);
             }
         }
 
@@ -160,6 +199,133 @@ public class StorageAsyncLoader
         return result;
     }
 
+    private void addPackageSize(AppsStorageResult result, ApplicationInfo app,
+            UserHandle user, ArraySet<String> codePackages, SparseLongArray cacheQuotas) {
+        StorageStatsSource.AppStorageStats stats;
+        try {
+            stats = mStatsManager.getStatsForPackage(mUuid, app.packageName, user);
+        } catch (NameNotFoundException | IOException e) {
+            // This may happen if the package was removed during our calculation.
+            Log.w(TAG, "App unexpectedly not found", e);
+            return;
+        }
+
+        final long dataSize = stats.getDataBytes();
+        final long cacheBytes = stats.getCacheBytes();
+        long blamedSize = dataSize;
+        // Technically, we could overages as freeable on the storage settings screen.
+        // If the app is using more cache than its quota, we would accidentally subtract the
+        // overage from the system size (because it shows up as unused) during our attribution.
+        // Thus, we cap the attribution at the quota size.
+        if (cacheBytes > 0) {
+            final long cacheQuota = getCacheQuotaBytes(app.uid, cacheQuotas);
+            if (cacheQuota < cacheBytes) {
+                blamedSize = blamedSize - cacheBytes + cacheQuota;
+            }
+        }
+
+        // This isn't quite right because it slams the first user by user id with the whole code
+        // size, but this ensures that we count all apps seen once.
+        if (codePackages.contains(app.packageName)) {
+            blamedSize += stats.getCodeBytes();
+        }
+
+        addSize(result, getBucket(app), blamedSize);
+    }
+
+    /**
+     * Attribute the size of the apps of {@code uid} from the stats of the whole uid. It only
+     * works when the apps fall in the same bucket, their code sizes are all attributed to this
+     * user or none is, and no app could have its cache capped at the quota of the uid.
+     *
+     * @return whether the size was attributed, or the apps must be queried one by one
+     */
+    private boolean addUidSize(AppsStorageResult result, int uid, List<ApplicationInfo> apps,
+            ArraySet<String> codePackages, SparseLongArray cacheQuotas) {
+        final int bucket = getBucket(apps.get(0));
+        final boolean hasCode = codePackages.contains(apps.get(0).packageName);
+        for (int i = 1, size = apps.size(); i < size; i++) {
+            final ApplicationInfo app = apps.get(i);
+            if (getBucket(app) != bucket
+                    || codePackages.contains(app.packageName) != hasCode) {
+                return false;
+            }
+        }
+
+        StorageStatsSource.AppStorageStats stats;
+        try {
+            stats = mStatsManager.getStatsForUid(mUuid, uid);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to get the stats of uid " + uid, e);
+            return false;
+        }
+        if (stats == null) {
+            return false;
+        }
+
+        // If the cache of the whole uid fits in its quota, so does the cache of every app.
+        final long cacheBytes = stats.getCacheBytes();
+        if (cacheBytes > 0 && getCacheQuotaBytes(uid, cacheQuotas) < cacheBytes) {
+            return false;
+        }
+
+        long blamedSize = stats.getDataBytes();
+        if (hasCode) {
+            blamedSize += stats.getCodeBytes();
+        }
+        addSize(result, bucket, blamedSize);
+        return true;
+    }
+
+    private long getCacheQuotaBytes(int uid, SparseLongArray cacheQuotas) {
+        final int index = cacheQuotas.indexOfKey(uid);
+        if (index >= 0) {
+            return cacheQuotas.valueAt(index);
+        }
+        final long cacheQuota = mStatsManager.getCacheQuotaBytes(mUuid, uid);
+        cacheQuotas.put(uid, cacheQuota);
+        return cacheQuota;
+    }
+
+    private static int getBucket(ApplicationInfo app) {
+        switch (app.category) {
+            case CATEGORY_GAME:
+                return BUCKET_GAMES;
+            case CATEGORY_AUDIO:
+                return BUCKET_MUSIC;
+            case CATEGORY_VIDEO:
+                return BUCKET_VIDEOS;
+            case CATEGORY_IMAGE:
+                return BUCKET_PHOTOS;
+            default:
+                // The deprecated game flag does not set the category.
+                if ((app.flags & ApplicationInfo.FLAG_IS_GAME) != 0) {
+                    return BUCKET_GAMES;
+                }
+                return BUCKET_OTHER;
+        }
+    }
+
+    private static void addSize(AppsStorageResult result, int bucket, long size) {
+        switch (bucket) {
+            case BUCKET_GAMES:
+                result.gamesSize += size;
+                break;
+            case BUCKET_MUSIC:
+                result.musicAppsSize += size;
+                break;
+            case BUCKET_VIDEOS:
+                result.videoAppsSize += size;
+                break;
+            case BUCKET_PHOTOS:
+                result.photosAppsSize += size;
+                break;
+            default:
+                result.otherAppsSize += size;
+                break;
+        }
+    }
+
     @Override
     protected void onDiscardResult(SparseArray<AppsStorageResult> result) {
     }
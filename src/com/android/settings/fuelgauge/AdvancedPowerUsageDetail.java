@@ -130,10 +130,24 @@ public class AdvancedPowerUsageDetail extends DashboardFragment implements
         final BatteryStats.Uid uid = sipper.uidObj;
         final boolean isTypeApp = sipper.drainType == BatterySipper.DrainType.APP;
 
-        final long foregroundTimeMs = isTypeApp ? batteryUtils.getProcessTimeMs(
-                BatteryUtils.StatusType.FOREGROUND, uid, which) : sipper.usageTimeMs;
-        final long backgroundTimeMs = isTypeApp ? batteryUtils.getProcessTimeMs(
-                BatteryUtils.StatusType.BACKGROUND, uid, which) : 0;
+        final long foregroundTimeMs;
+        final long backgroundTimeMs;
+        // Reuse the times already read by the battery tips for the same uid, if any
+        final BatterySipperAggregate aggregate = isTypeApp
+                && which == BatteryStats.STATS_SINCE_CHARGED
+                ? batteryUtils.getSipperAggregate(helper) : null;
+        final int index = aggregate != null ? aggregate.indexOfUid(sipper.getUid()) : -1;
+        if (index >= 0 && aggregate.getSipper(index).uidObj == uid) {
+            foregroundTimeMs = aggregate.getProcessTimeMs(batteryUtils,
+                    BatteryUtils.StatusType.FOREGROUND, index);
+            backgroundTimeMs = aggregate.getProcessTimeMs(batteryUtils,
+                    BatteryUtils.StatusType.BACKGROUND, index);
+        } else {
+            foregroundTimeMs = isTypeApp ? batteryUtils.getProcessTimeMs(
+                    BatteryUtils.StatusType.FOREGROUND, uid, which) : sipper.usageTimeMs;
+            backgroundTimeMs = isTypeApp ? batteryUtils.getProcessTimeMs(
+                    BatteryUtils.StatusType.BACKGROUND, uid, which) : 0;
+        }
 
         if (ArrayUtils.isEmpty(sipper.mPackages)) {
             // populate data for system app
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.support.annotation.IntDef;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+
+import com.android.internal.os.BatterySipper;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.List;
+
+/**
+ * Keyed diff between two refreshes of the rows shown by
+ * {@link BatteryAppListPreferenceController}.
+ *
+ * <p>Rows are matched by preference key, and only the rows that were inserted, removed, moved or
+ * whose displayed fields changed are reported, so that the unchanged {@link PowerGaugePreference}
+ * are not bound again.
+ */
+class BatteryAppListDiff {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef(flag = true, value = {Change.ORDER,
+            Change.PERCENT,
+            Change.SUMMARY,
+            Change.ANOMALY
+    })
+    @interface Change {
+        int ORDER = 1 << 0;
+        int PERCENT = 1 << 1;
+        int SUMMARY = 1 << 2;
+        int ANOMALY = 1 << 3;
+    }
+
+    /**
+     * Receives the minimal mutations of a {@link #dispatch} call. Removals are reported before
+     * the insertions and changes, which are reported in the order of the new rows.
+     */
+    interface Callback {
+        void onRemoved(String key);
+
+        void onInserted(Row row);
+
+        void onChanged(Row row, @Change int changes);
+    }
+
+    /**
+     * Displayed state of one {@link PowerGaugePreference}.
+     */
+    static class Row {
+        final String key;
+        final BatterySipper sipper;
+        int order;
+        double percent;
+        CharSequence summary;
+        boolean showAnomalyIcon;
+
+        Row(String key, BatterySipper sipper) {
+            this.key = key;
+            this.sipper = sipper;
+        }
+    }
+
+    private ArrayMap<String, Row> mRows = new ArrayMap<>();
+    private ArrayMap<String, Row> mNewRows = new ArrayMap<>();
+
+    /**
+     * Report the difference between the rows of the previous call and {@code newRows}, which then
+     * become the current rows. When several rows have the same key, only the first one is kept.
+     */
+    void dispatch(List<Row> newRows, Callback callback) {
+        final ArrayMap<String, Row> rows = mNewRows;
+        rows.clear();
+        for (int i = 0, size = newRows.size(); i < size; i++) {
+            final Row row = newRows.get(i);
+            if (!rows.containsKey(row.key)) {
+                rows.put(row.key, row);
+            }
+        }
+
+        for (int i = mRows.size() - 1; i >= 0; i--) {
+            final String key = mRows.keyAt(i);
+            if (!rows.containsKey(key)) {
+                callback.onRemoved(key);
+            }
+        }
+
+        for (int i = 0, size = newRows.size(); i < size; i++) {
+            final Row row = newRows.get(i);
+            if (rows.get(row.key) != row) {
+                continue;
+            }
+            final Row oldRow = mRows.get(row.key);
+            if (oldRow == null) {
+                callback.onInserted(row);
+            } else {
+                final int changes = getChanges(oldRow, row);
+                if (changes != 0) {
+                    callback.onChanged(row, changes);
+                }
+            }
+        }
+
+        mNewRows = mRows;
+        mNewRows.clear();
+        mRows = rows;
+    }
+
+    /**
+     * @return the current row with {@code key}, or {@code null} if there is none
+     */
+    Row getRow(String key) {
+        return mRows.get(key);
+    }
+
+    int size() {
+        return mRows.size();
+    }
+
+    Row getRowAt(int index) {
+        return mRows.valueAt(index);
+    }
+
+    void clear() {
+        mRows.clear();
+    }
+
+    private static int getChanges(Row oldRow, Row newRow) {
+        int changes = 0;
+        if (oldRow.order != newRow.order) {
+            changes |= Change.ORDER;
+        }
+        // PowerGaugePreference shows the percentage rounded to an integer
+        if (Math.round((float) oldRow.percent) != Math.round((float) newRow.percent)) {
+            changes |= Change.PERCENT;
+        }
+        if (!TextUtils.equals(oldRow.summary, newRow.summary)) {
+            changes |= Change.SUMMARY;
+        }
+        if (oldRow.showAnomalyIcon != newRow.showAnomalyIcon) {
+            changes |= Change.ANOMALY;
+        }
+        return changes;
+    }
+}
@@ -68,14 +68,18 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
     private static final int MAX_ITEMS_TO_LIST = USE_FAKE_DATA ? 30 : 10;
     private static final int MIN_AVERAGE_POWER_THRESHOLD_MILLI_AMP = 10;
     private static final int STATS_TYPE = BatteryStats.STATS_SINCE_CHARGED;
+    private static final String KEY_NOT_AVAILABLE = "not_available";
 
     private final String mPreferenceKey;
     @VisibleForTesting
     PreferenceGroup mAppListGroup;
     private BatteryStatsHelper mBatteryStatsHelper;
-    private ArrayMap<String, Preference> mPreferenceCache;
+    private final BatteryAppListDiff mListDiff = new BatteryAppListDiff();
+    private final ArrayMap<String, PowerGaugePreference> mPreferences = new ArrayMap<>();
+    private final List<BatteryAppListDiff.Row> mRows = new ArrayList<>();
     @VisibleForTesting
     BatteryUtils mBatteryUtils;
+    private final BatterySipperAggregate mSipperAggregate = new BatterySipperAggregate();
     private UserManager mUserManager;
     private SettingsActivity mActivity;
     private InstrumentedPreferenceFragment mFragment;
@@ -112,6 +116,44 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         }
     };
 
+    private final BatteryAppListDiff.Callback mListDiffCallback =
+            new BatteryAppListDiff.Callback() {
+                @Override
+                public void onRemoved(String key) {
+                    final PowerGaugePreference pref = mPreferences.remove(key);
+                    if (pref != null) {
+                        mAppListGroup.removePreference(pref);
+                    }
+                }
+
+                @Override
+                public void onInserted(BatteryAppListDiff.Row row) {
+                    addPreference(row);
+                }
+
+                @Override
+                public void onChanged(BatteryAppListDiff.Row row,
+                        @BatteryAppListDiff.Change int changes) {
+                    final PowerGaugePreference pref = mPreferences.get(row.key);
+                    if (pref == null) {
+                        addPreference(row);
+                        return;
+                    }
+                    if ((changes & BatteryAppListDiff.Change.ORDER) != 0) {
+                        pref.setOrder(row.order);
+                    }
+                    if ((changes & BatteryAppListDiff.Change.PERCENT) != 0) {
+                        pref.setPercent(row.percent);
+                    }
+                    if ((changes & BatteryAppListDiff.Change.SUMMARY) != 0) {
+                        pref.setSummary(row.summary);
+                    }
+                    if ((changes & BatteryAppListDiff.Change.ANOMALY) != 0) {
+                        pref.shouldShowAnomalyIcon(row.showAnomalyIcon);
+                    }
+                }
+            };
+
     public BatteryAppListPreferenceController(Context context, String preferenceKey,
             Lifecycle lifecycle, SettingsActivity activity,
             InstrumentedPreferenceFragment fragment) {
@@ -146,6 +188,9 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         super.displayPreference(screen);
         mPrefContext = screen.getContext();
         mAppListGroup = (PreferenceGroup) screen.findPreference(mPreferenceKey);
+        // The preferences of a previous screen are gone, so everything is inserted again
+        mListDiff.clear();
+        mPreferences.clear();
     }
 
     @Override
@@ -181,9 +226,13 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
             final String key = extractKeyFromUid(anomalySparseArray.keyAt(i));
             final PowerGaugePreference pref = (PowerGaugePreference) mAppListGroup.findPreference(
                     key);
-            if (pref != null) {
+            if (pref != null && !pref.showAnomalyIcon()) {
                 pref.shouldShowAnomalyIcon(true);
             }
+            final BatteryAppListDiff.Row row = mListDiff.getRow(key);
+            if (row != null) {
+                row.showAnomalyIcon = true;
+            }
         }
     }
 
@@ -198,27 +247,31 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         final PowerProfile powerProfile = statsHelper.getPowerProfile();
         final BatteryStats stats = statsHelper.getStats();
         final double averagePower = powerProfile.getAveragePower(PowerProfile.POWER_SCREEN_FULL);
-        boolean addedSome = false;
         final int dischargeAmount = USE_FAKE_DATA ? 5000
                 : stats != null ? stats.getDischargeAmount(STATS_TYPE) : 0;
 
-        cacheRemoveAllPrefs(mAppListGroup);
         mAppListGroup.setOrderingAsAdded(false);
+        final List<BatteryAppListDiff.Row> rows = mRows;
 
         if (averagePower >= MIN_AVERAGE_POWER_THRESHOLD_MILLI_AMP || USE_FAKE_DATA) {
             final List<BatterySipper> usageList = getCoalescedUsageList(
                     USE_FAKE_DATA ? getFakeStats() : statsHelper.getUsageList());
-            double hiddenPowerMah = showAllApps ? 0 :
-                    mBatteryUtils.removeHiddenBatterySippers(usageList);
-            mBatteryUtils.sortUsageList(usageList);
+            final BatterySipperAggregate aggregate = mSipperAggregate;
+            aggregate.update(mBatteryUtils, usageList, !showAllApps /* smearScreenUsage */);
+            final double hiddenPowerMah = showAllApps ? 0 : aggregate.getHiddenPowerMah();
+            final double totalPower = USE_FAKE_DATA ? 4000 : statsHelper.getTotalPower();
 
-            final int numSippers = usageList.size();
+            final int numSippers = aggregate.size();
             for (int i = 0; i < numSippers; i++) {
-                final BatterySipper sipper = usageList.get(i);
-                double totalPower = USE_FAKE_DATA ? 4000 : statsHelper.getTotalPower();
+                final int index = aggregate.getSortedIndex(i);
+                if (!showAllApps && aggregate.isHidden(index)) {
+                    continue;
+                }
+                final BatterySipper sipper = aggregate.getSipper(index);
 
                 final double percentOfTotal = mBatteryUtils.calculateBatteryPercent(
-                        sipper.totalPowerMah, totalPower, hiddenPowerMah, dischargeAmount);
+                        aggregate.getPowerMah(index), totalPower, hiddenPowerMah,
+                        dischargeAmount);
 
                 if (((int) (percentOfTotal + .5)) < 1) {
                     continue;
@@ -226,44 +279,31 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
                 if (shouldHideSipper(sipper)) {
                     continue;
                 }
-                final UserHandle userHandle = new UserHandle(UserHandle.getUserId(sipper.getUid()));
-                final BatteryEntry entry = new BatteryEntry(mActivity, mHandler, mUserManager,
-                        sipper);
-                final Drawable badgedIcon = mUserManager.getBadgedIconForUser(entry.getIcon(),
-                        userHandle);
-                final CharSequence contentDescription = mUserManager.getBadgedLabelForUser(
-                        entry.getLabel(),
-                        userHandle);
-
-                final String key = extractKeyFromSipper(sipper);
-                PowerGaugePreference pref = (PowerGaugePreference) getCachedPreference(key);
-                if (pref == null) {
-                    pref = new PowerGaugePreference(mPrefContext, badgedIcon,
-                            contentDescription, entry);
-                    pref.setKey(key);
-                }
                 sipper.percent = percentOfTotal;
-                pref.setTitle(entry.getLabel());
-                pref.setOrder(i + 1);
-                pref.setPercent(percentOfTotal);
-                pref.shouldShowAnomalyIcon(false);
                 if (sipper.usageTimeMs == 0 && sipper.drainType == DrainType.APP) {
-                    sipper.usageTimeMs = mBatteryUtils.getProcessTimeMs(
-                            BatteryUtils.StatusType.FOREGROUND, sipper.uidObj, STATS_TYPE);
+                    sipper.usageTimeMs = aggregate.getProcessTimeMs(mBatteryUtils,
+                            BatteryUtils.StatusType.FOREGROUND, index);
                 }
-                setUsageSummary(pref, sipper);
-                addedSome = true;
-                mAppListGroup.addPreference(pref);
-                if (mAppListGroup.getPreferenceCount() - getCachedCount()
-                        > (MAX_ITEMS_TO_LIST + 1)) {
+                final BatteryAppListDiff.Row row = new BatteryAppListDiff.Row(
+                        extractKeyFromSipper(sipper), sipper);
+                row.order = i + 1;
+                row.percent = percentOfTotal;
+                row.summary = getUsageSummary(sipper);
+                row.showAnomalyIcon = sipper.uidObj != null && mAnomalySparseArray != null
+                        && mAnomalySparseArray.indexOfKey(sipper.getUid()) >= 0;
+                rows.add(row);
+                if (rows.size() > (MAX_ITEMS_TO_LIST + 1)) {
                     break;
                 }
             }
         }
-        if (!addedSome) {
+        mListDiff.dispatch(rows, mListDiffCallback);
+        if (rows.isEmpty()) {
             addNotAvailableMessage();
+        } else {
+            removeNotAvailableMessage();
         }
-        removeCachedPrefs(mAppListGroup);
+        rows.clear();
 
         BatteryEntry.startRequestQueue();
     }
@@ -273,7 +313,7 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
      * exists for all users of the same app. We detect this case and merge the power use
      * for dex2oat to the device OWNER's use of the app.
      *
-     * @return A sorted list of apps using power.
+     * @return A list of apps using power, which is sorted by {@link BatterySipperAggregate}.
      */
     private List<BatterySipper> getCoalescedUsageList(final List<BatterySipper> sippers) {
         final SparseArray<BatterySipper> uidList = new SparseArray<>();
@@ -348,25 +388,52 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         for (int i = 0; i < numUidSippers; i++) {
             results.add(uidList.valueAt(i));
         }
-
-        // The sort order must have changed, so re-sort based on total power use.
-        mBatteryUtils.sortUsageList(results);
         return results;
     }
 
     @VisibleForTesting
     void setUsageSummary(Preference preference, BatterySipper sipper) {
+        final CharSequence summary = getUsageSummary(sipper);
+        if (summary != null) {
+            preference.setSummary(summary);
+        }
+    }
+
+    private CharSequence getUsageSummary(BatterySipper sipper) {
         // Only show summary when usage time is longer than one minute
         final long usageTimeMs = sipper.usageTimeMs;
-        if (usageTimeMs >= DateUtils.MINUTE_IN_MILLIS) {
-            final CharSequence timeSequence =
-                    StringUtil.formatElapsedTime(mContext, usageTimeMs, false);
-            preference.setSummary(
-                    (sipper.drainType != DrainType.APP || mBatteryUtils.shouldHideSipper(sipper))
-                            ? timeSequence
-                            : TextUtils.expandTemplate(mContext.getText(R.string.battery_used_for),
-                                    timeSequence));
+        if (usageTimeMs < DateUtils.MINUTE_IN_MILLIS) {
+            return null;
         }
+        final CharSequence timeSequence =
+                StringUtil.formatElapsedTime(mContext, usageTimeMs, false);
+        return (sipper.drainType != DrainType.APP || mBatteryUtils.shouldHideSipper(sipper))
+                ? timeSequence
+                : TextUtils.expandTemplate(mContext.getText(R.string.battery_used_for),
+                        timeSequence);
+    }
+
+    private void addPreference(BatteryAppListDiff.Row row) {
+        final BatterySipper sipper = row.sipper;
+        final UserHandle userHandle = new UserHandle(UserHandle.getUserId(sipper.getUid()));
+        final BatteryEntry entry = new BatteryEntry(mActivity, mHandler, mUserManager, sipper);
+        final Drawable badgedIcon = mUserManager.getBadgedIconForUser(entry.getIcon(),
+                userHandle);
+        final CharSequence contentDescription = mUserManager.getBadgedLabelForUser(
+                entry.getLabel(), userHandle);
+
+        final PowerGaugePreference pref = new PowerGaugePreference(mPrefContext, badgedIcon,
+                contentDescription, entry);
+        pref.setKey(row.key);
+        pref.setTitle(entry.getLabel());
+        pref.setOrder(row.order);
+        pref.setPercent(row.percent);
+        pref.shouldShowAnomalyIcon(row.showAnomalyIcon);
+        if (row.summary != null) {
+            pref.setSummary(row.summary);
+        }
+        mPreferences.put(row.key, pref);
+        mAppListGroup.addPreference(pref);
     }
 
     @VisibleForTesting
@@ -397,18 +464,6 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         return Integer.toString(uid);
     }
 
-    private void cacheRemoveAllPrefs(PreferenceGroup group) {
-        mPreferenceCache = new ArrayMap<>();
-        final int N = group.getPreferenceCount();
-        for (int i = 0; i < N; i++) {
-            Preference p = group.getPreference(i);
-            if (TextUtils.isEmpty(p.getKey())) {
-                continue;
-            }
-            mPreferenceCache.put(p.getKey(), p);
-        }
-    }
-
     private static boolean isSharedGid(int uid) {
         return UserHandle.getAppIdFromSharedAppGid(uid) > 0;
     }
@@ -453,30 +508,20 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         return stats;
     }
 
-    private Preference getCachedPreference(String key) {
-        return mPreferenceCache != null ? mPreferenceCache.remove(key) : null;
-    }
-
-    private void removeCachedPrefs(PreferenceGroup group) {
-        for (Preference p : mPreferenceCache.values()) {
-            group.removePreference(p);
-        }
-        mPreferenceCache = null;
-    }
-
-    private int getCachedCount() {
-        return mPreferenceCache != null ? mPreferenceCache.size() : 0;
-    }
-
     private void addNotAvailableMessage() {
-        final String NOT_AVAILABLE = "not_available";
-        Preference notAvailable = getCachedPreference(NOT_AVAILABLE);
-        if (notAvailable == null) {
-            notAvailable = new Preference(mPrefContext);
-            notAvailable.setKey(NOT_AVAILABLE);
+        if (mAppListGroup.findPreference(KEY_NOT_AVAILABLE) == null) {
+            final Preference notAvailable = new Preference(mPrefContext);
+            notAvailable.setKey(KEY_NOT_AVAILABLE);
             notAvailable.setTitle(R.string.power_usage_not_available);
             notAvailable.setSelectable(false);
             mAppListGroup.addPreference(notAvailable);
         }
     }
+
+    private void removeNotAvailableMessage() {
+        final Preference notAvailable = mAppListGroup.findPreference(KEY_NOT_AVAILABLE);
+        if (notAvailable != null) {
+            mAppListGroup.removePreference(notAvailable);
+        }
+    }
 }
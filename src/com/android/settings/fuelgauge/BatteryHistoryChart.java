@@ -22,7 +22,9 @@ import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.DashPathEffect;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Typeface;
@@ -62,6 +64,8 @@ public class BatteryHistoryChart extends View {
 
         int mNumTicks;
         int[] mTicks;
+        // Wall time of each tick, to place the ticks again when the time scale changes.
+        long[] mTickWalltimes;
         int mLastBin;
 
         void setColors(int[] colors) {
@@ -77,16 +81,23 @@ public class BatteryHistoryChart extends View {
         void init(int width) {
             if (width > 0) {
                 mTicks = new int[width*2];
+                mTickWalltimes = new long[width*2];
             } else {
                 mTicks = null;
+                mTickWalltimes = null;
             }
             mNumTicks = 0;
             mLastBin = 0;
         }
 
         void addTick(int x, int bin) {
+            addTick(x, 0 /* walltime */, bin);
+        }
+
+        void addTick(int x, long walltime, int bin) {
             if (bin != mLastBin && mNumTicks < mTicks.length) {
                 mTicks[mNumTicks] = (x&CHART_DATA_X_MASK) | (bin<<CHART_DATA_BIN_SHIFT);
+                mTickWalltimes[mNumTicks] = walltime;
                 mNumTicks++;
                 mLastBin = bin;
             }
@@ -98,6 +109,16 @@ public class BatteryHistoryChart extends View {
             }
         }
 
+        /**
+         * Place the ticks again from their wall times, like they would be by a full rebuild.
+         */
+        void updateTickPositions(int left, int width, long walltimeStart, long walltimeChange) {
+            for (int i=0; i<mNumTicks; i++) {
+                final int x = getX(mTickWalltimes[i], left, width, walltimeStart, walltimeChange);
+                mTicks[i] = (x&CHART_DATA_X_MASK) | (mTicks[i]&CHART_DATA_BIN_MASK);
+            }
+        }
+
         void draw(Canvas canvas, int top, int height) {
             int lastBin=0, lastX=0;
             int bottom = top + height;
@@ -155,7 +176,22 @@ public class BatteryHistoryChart extends View {
     final Path mCpuRunningPath = new Path();
     final Path mDateLinePath = new Path();
 
+    // Paths built from the history records, which can be extended when records are appended.
+    final Path[] mHistoryPaths = new Path[] {
+            mBatLevelPath, mBatGoodPath, mBatWarnPath, mBatCriticalPath, mChargingPath,
+            mScreenOnPath, mGpsOnPath, mFlashlightOnPath, mCameraOnPath, mWifiRunningPath,
+            mCpuRunningPath
+    };
+    // Copy of mHistoryPaths after the last drawn record, before finishPaths() closes them.
+    final Path[] mOpenHistoryPaths = new Path[] {
+            new Path(), new Path(), new Path(), new Path(), new Path(), new Path(), new Path(),
+            new Path(), new Path(), new Path(), new Path()
+    };
+    final Matrix mScaleMatrix = new Matrix();
+    PathState mPathState;
+
     BatteryStats mStats;
+    BatteryHistorySnapshot mHistory;
     Intent mBatteryBroadcast;
     long mStatsPeriod;
     String mMaxPercentLabelString;
@@ -232,6 +268,49 @@ public class BatteryHistoryChart extends View {
 
     Bitmap mBitmap;
     Canvas mCanvas;
+    boolean mBitmapValid;
+
+    /**
+     * Position of the path building in the history, so that records appended to the history can
+     * be added to the paths without going through the previous records again.
+     */
+    static class PathState {
+        int index;
+        long curWalltime;
+        long lastRealtime;
+        long walltimeChange;
+        int x;
+        int y;
+        int startX;
+        int lastX = -1;
+        int lastY = -1;
+        // Wall times at x, startX and lastX. The positions are computed again from them when
+        // the time scale changes, so that they don't drift through repeated rounding.
+        long xWalltime;
+        long startXWalltime;
+        long lastXWalltime;
+        Path curLevelPath;
+        Path lastLinePath;
+        boolean lastCharging;
+        boolean lastScreenOn;
+        boolean lastGpsOn;
+        boolean lastFlashlightOn;
+        boolean lastCameraOn;
+        boolean lastWifiRunning;
+        boolean lastWifiSupplRunning;
+        boolean lastCpuRunning;
+        int lastWifiSupplState = BatteryStats.WIFI_SUPPL_STATE_INVALID;
+        int numPhoneSignalTicks;
+        int lastPhoneSignalBin;
+
+        PathState(int levelLeft, long startWallTime) {
+            x = levelLeft;
+            startX = levelLeft;
+            curWalltime = startWallTime;
+            xWalltime = startWallTime;
+            startXWalltime = startWallTime;
+        }
+    }
 
     static class TextAttrs {
         ColorStateList textColor = null;
@@ -488,7 +567,9 @@ public class BatteryHistoryChart extends View {
     }
 
     void setStats(BatteryStats stats, Intent broadcast) {
+        final BatteryHistorySnapshot previousHistory = mHistory;
         mStats = stats;
+        mHistory = BatteryHistorySnapshot.get(stats);
         mBatteryBroadcast = broadcast;
 
         if (DEBUG) Log.d(TAG, "Setting stats...");
@@ -515,64 +596,21 @@ public class BatteryHistoryChart extends View {
             mChargeDurationString = "";
             setContentDescription(mInfo.chargeLabel);
 
-            int pos = 0;
-            int lastInteresting = 0;
-            byte lastLevel = -1;
+            final int previousLayoutFlags = getLayoutFlags();
             mBatLow = 0;
             mBatHigh = 100;
-            mStartWallTime = 0;
-            mEndDataWallTime = 0;
-            mEndWallTime = 0;
-            mHistStart = 0;
-            mHistEnd = 0;
-            long lastWallTime = 0;
-            long lastRealtime = 0;
-            int aggrStates = 0;
-            int aggrStates2 = 0;
-            boolean first = true;
-            if (stats.startIteratingHistoryLocked()) {
-                final HistoryItem rec = new HistoryItem();
-                while (stats.getNextHistoryLocked(rec)) {
-                    pos++;
-                    if (first) {
-                        first = false;
-                        mHistStart = rec.time;
-                    }
-                    if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
-                            || rec.cmd == HistoryItem.CMD_RESET) {
-                        // If there is a ridiculously large jump in time, then we won't be
-                        // able to create a good chart with that data, so just ignore the
-                        // times we got before and pretend like our data extends back from
-                        // the time we have now.
-                        // Also, if we are getting a time change and we are less than 5 minutes
-                        // since the start of the history real time, then also use this new
-                        // time to compute the base time, since whatever time we had before is
-                        // pretty much just noise.
-                        if (rec.currentTime > (lastWallTime+(180*24*60*60*1000L))
-                                || rec.time < (mHistStart+(5*60*1000L))) {
-                            mStartWallTime = 0;
-                        }
-                        lastWallTime = rec.currentTime;
-                        lastRealtime = rec.time;
-                        if (mStartWallTime == 0) {
-                            mStartWallTime = lastWallTime - (lastRealtime-mHistStart);
-                        }
-                    }
-                    if (rec.isDeltaData()) {
-                        if (rec.batteryLevel != lastLevel || pos == 1) {
-                            lastLevel = rec.batteryLevel;
-                        }
-                        lastInteresting = pos;
-                        mHistDataEnd = rec.time;
-                        aggrStates |= rec.states;
-                        aggrStates2 |= rec.states2;
-                    }
-                }
-            }
+            final BatteryHistorySnapshot history = mHistory;
+            mHistStart = history.historyStart;
+            mHistDataEnd = history.historyDataEnd;
+            mStartWallTime = history.startWallTime;
+            final long lastWallTime = history.lastWallTime;
+            final long lastRealtime = history.lastRealtime;
+            final int aggrStates = history.aggregatedStates;
+            final int aggrStates2 = history.aggregatedStates2;
             mHistEnd = mHistDataEnd + (mInfo.remainingTimeUs/1000);
             mEndDataWallTime = lastWallTime + mHistDataEnd - lastRealtime;
             mEndWallTime = mEndDataWallTime + (mInfo.remainingTimeUs/1000);
-            mNumHist = lastInteresting;
+            mNumHist = history.numInteresting;
             mHaveGps = (aggrStates&HistoryItem.STATE_GPS_ON_FLAG) != 0;
             mHaveFlashlight = (aggrStates2&HistoryItem.STATE2_FLASHLIGHT_FLAG) != 0;
             mHaveCamera = (aggrStates2&HistoryItem.STATE2_CAMERA_FLAG) != 0;
@@ -584,9 +622,26 @@ public class BatteryHistoryChart extends View {
                 mHavePhoneSignal = true;
             }
             if (mHistEnd <= mHistStart) mHistEnd = mHistStart+1;
+
+            if (mLastWidth > 0 && mLastHeight > 0) {
+                // Already laid out, so the chart has to be rebuilt for the new history.
+                if (previousLayoutFlags == getLayoutFlags()
+                        && canExtendHistory(previousHistory)) {
+                    extendHistoryPaths(mLastWidth, mLastHeight);
+                } else {
+                    layoutChart(mLastWidth, mLastHeight);
+                }
+                mBitmapValid = false;
+                invalidate();
+            }
         }, mStats, false /* shortString */);
     }
 
+    private int getLayoutFlags() {
+        return (mHaveGps ? 1 : 0) | (mHaveFlashlight ? 1<<1 : 0) | (mHaveCamera ? 1<<2 : 0)
+                | (mHaveWifi ? 1<<3 : 0) | (mHavePhoneSignal ? 1<<4 : 0);
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         mMaxPercentLabelStringWidth = (int)mTextPaint.measureText(mMaxPercentLabelString);
@@ -675,8 +730,16 @@ public class BatteryHistoryChart extends View {
 
         mLastWidth = w;
         mLastHeight = h;
+        layoutChart(w, h);
+    }
+
+    /**
+     * Compute the layout of the chart for a size of {@param w} x {@param h}, and build its paths.
+     */
+    void layoutChart(int w, int h) {
         mBitmap = null;
         mCanvas = null;
+        mBitmapValid = false;
 
         int textHeight = mTextDescent - mTextAscent;
         if (h > ((textHeight*10)+mChartMinHeight)) {
@@ -725,66 +788,130 @@ public class BatteryHistoryChart extends View {
             mPhoneSignalOffset = mCameraOnOffset + (mHaveCamera ? fullBarOffset : 0);
             mLevelOffset = mPhoneSignalOffset + (mHavePhoneSignal ? fullBarOffset : 0)
                     + mLineWidth*2 + mLineWidth/2;
-            if (mHavePhoneSignal) {
-                mPhoneSignalChart.init(w);
-            }
         } else {
             mScreenOnOffset = mGpsOnOffset = mCameraOnOffset = mFlashlightOnOffset =
                     mWifiRunningOffset = mCpuRunningOffset = mChargingOffset =
                     mPhoneSignalOffset = 0;
             mLevelOffset = fullBarOffset + mThinLineWidth*4;
+        }
+
+        buildHistoryPaths(w, h);
+    }
+
+    /**
+     * Build the paths of the chart from the start of the history.
+     */
+    void buildHistoryPaths(int w, int h) {
+        for (Path path : mHistoryPaths) {
+            path.reset();
+        }
+        if (mHavePhoneSignal) {
+            mPhoneSignalChart.init(mLargeMode ? w : 0);
+        }
+        mPathState = new PathState(mLevelLeft, mStartWallTime);
+
+        appendHistoryPaths(w, h);
+        finishHistoryPaths(w, h);
+    }
+
+    /**
+     * Append the records added to the history since the paths were built, instead of building
+     * them again from the start. The paths built so far are stretched to the new time scale.
+     */
+    void extendHistoryPaths(int w, int h) {
+        final PathState state = mPathState;
+        for (int i = 0; i < mHistoryPaths.length; i++) {
+            mHistoryPaths[i].set(mOpenHistoryPaths[i]);
+        }
+        if (mHavePhoneSignal) {
+            mPhoneSignalChart.mNumTicks = state.numPhoneSignalTicks;
+            mPhoneSignalChart.mLastBin = state.lastPhoneSignalBin;
+        }
+
+        final long walltimeChange = getWalltimeChange();
+        if (walltimeChange != state.walltimeChange) {
+            final float scale = (float) state.walltimeChange / walltimeChange;
+            mScaleMatrix.setScale(scale, 1, mLevelLeft, 0);
+            for (Path path : mHistoryPaths) {
+                path.transform(mScaleMatrix);
+            }
+            state.walltimeChange = walltimeChange;
+            state.x = getX(state.xWalltime);
+            state.startX = getX(state.startXWalltime);
+            if (state.lastX >= 0) {
+                state.lastX = getX(state.lastXWalltime);
+            }
             if (mHavePhoneSignal) {
-                mPhoneSignalChart.init(0);
+                mPhoneSignalChart.updateTickPositions(mLevelLeft, mLevelRight - mLevelLeft,
+                        mStartWallTime, walltimeChange);
             }
         }
 
-        mBatLevelPath.reset();
-        mBatGoodPath.reset();
-        mBatWarnPath.reset();
-        mTimeRemainPath.reset();
-        mBatCriticalPath.reset();
-        mScreenOnPath.reset();
-        mGpsOnPath.reset();
-        mFlashlightOnPath.reset();
-        mCameraOnPath.reset();
-        mWifiRunningPath.reset();
-        mCpuRunningPath.reset();
-        mChargingPath.reset();
+        appendHistoryPaths(w, h);
+        finishHistoryPaths(w, h);
+    }
 
-        mTimeLabels.clear();
-        mDateLabels.clear();
+    /**
+     * @return whether the paths built from {@param previous} can be extended with {@link #mHistory}
+     * rather than built again, which is the case when {@link #mHistory} only appends records.
+     */
+    boolean canExtendHistory(BatteryHistorySnapshot previous) {
+        final PathState state = mPathState;
+        if (state == null || previous == null || state.index > mHistory.numInteresting
+                || mHistory.historyStart != previous.historyStart
+                || mHistory.startWallTime != previous.startWallTime) {
+            return false;
+        }
+        final int last = state.index - 1;
+        return last < 0 || (mHistory.times[last] == previous.times[last]
+                && mHistory.cmds[last] == previous.cmds[last]);
+    }
 
+    /**
+     * Add the records of the history that were not drawn yet to the paths, and keep a copy of the
+     * paths before they are finished so that they can be extended later.
+     */
+    void appendHistoryPaths(int w, int h) {
+        final PathState state = mPathState;
+        final int levelWidth = mLevelRight-mLevelLeft;
         final long walltimeStart = mStartWallTime;
-        final long walltimeChange = mEndWallTime > walltimeStart
-                ? (mEndWallTime-walltimeStart) : 1;
-        long curWalltime = mStartWallTime;
-        long lastRealtime = 0;
-
+        final long walltimeChange = getWalltimeChange();
+        long curWalltime = state.curWalltime;
+        long lastRealtime = state.lastRealtime;
         final int batLow = mBatLow;
         final int batChange = mBatHigh-mBatLow;
 
         final int levelh = h - mLevelOffset - mLevelTop;
         mLevelBottom = mLevelTop + levelh;
 
-        int x = mLevelLeft, y = 0, startX = mLevelLeft, lastX = -1, lastY = -1;
-        int i = 0;
-        Path curLevelPath = null;
-        Path lastLinePath = null;
-        boolean lastCharging = false, lastScreenOn = false, lastGpsOn = false;
-        boolean lastFlashlightOn = false, lastCameraOn = false;
-        boolean lastWifiRunning = false, lastWifiSupplRunning = false, lastCpuRunning = false;
-        int lastWifiSupplState = BatteryStats.WIFI_SUPPL_STATE_INVALID;
+        int x = state.x, y = state.y, startX = state.startX, lastX = state.lastX;
+        long xWalltime = state.xWalltime, startXWalltime = state.startXWalltime;
+        long lastXWalltime = state.lastXWalltime;
+        int lastY = state.lastY;
+        int i = state.index;
+        Path curLevelPath = state.curLevelPath;
+        Path lastLinePath = state.lastLinePath;
+        boolean lastCharging = state.lastCharging, lastScreenOn = state.lastScreenOn;
+        boolean lastGpsOn = state.lastGpsOn;
+        boolean lastFlashlightOn = state.lastFlashlightOn, lastCameraOn = state.lastCameraOn;
+        boolean lastWifiRunning = state.lastWifiRunning;
+        boolean lastWifiSupplRunning = state.lastWifiSupplRunning;
+        boolean lastCpuRunning = state.lastCpuRunning;
+        int lastWifiSupplState = state.lastWifiSupplState;
         final int N = mNumHist;
-        if (mEndDataWallTime > mStartWallTime && mStats.startIteratingHistoryLocked()) {
-            final HistoryItem rec = new HistoryItem();
-            while (mStats.getNextHistoryLocked(rec) && i < N) {
-                if (rec.isDeltaData()) {
-                    curWalltime += rec.time-lastRealtime;
-                    lastRealtime = rec.time;
+        final BatteryHistorySnapshot history = mHistory;
+        if (mEndDataWallTime > mStartWallTime) {
+            for (; i < N; i++) {
+                final int states = history.states[i];
+                final int states2 = history.states2[i];
+                if (history.isDeltaData(i)) {
+                    curWalltime += history.times[i]-lastRealtime;
+                    lastRealtime = history.times[i];
                     x = mLevelLeft + (int)(((curWalltime-walltimeStart)*levelWidth)/walltimeChange);
                     if (x < 0) {
                         x = 0;
                     }
+                    xWalltime = curWalltime;
                     if (false) {
                         StringBuilder sb = new StringBuilder(128);
                         sb.append("walloff=");
@@ -795,14 +922,15 @@ public class BatteryHistoryChart extends View {
                         sb.append(x);
                         Log.d("foo", sb.toString());
                     }
-                    y = mLevelTop + levelh - ((rec.batteryLevel-batLow)*(levelh-1))/batChange;
+                    final byte batteryLevel = history.batteryLevels[i];
+                    y = mLevelTop + levelh - ((batteryLevel-batLow)*(levelh-1))/batChange;
 
                     if (lastX != x) {
                         // We have moved by at least a pixel.
                         if (lastY != y) {
                             // Don't plot changes within a pixel.
                             Path path;
-                            byte value = rec.batteryLevel;
+                            byte value = batteryLevel;
                             if (value <= mBatteryCriticalLevel) path = mBatCriticalPath;
                             else if (value <= mBatteryWarnLevel) path = mBatWarnPath;
                             else path = null; //mBatGoodPath;
@@ -823,17 +951,19 @@ public class BatteryHistoryChart extends View {
                                 curLevelPath = mBatLevelPath;
                                 curLevelPath.moveTo(x, y);
                                 startX = x;
+                                startXWalltime = xWalltime;
                             } else {
                                 curLevelPath.lineTo(x, y);
                             }
                             lastX = x;
+                            lastXWalltime = xWalltime;
                             lastY = y;
                         }
                     }
 
                     if (mLargeMode) {
                         final boolean charging =
-                            (rec.states&HistoryItem.STATE_BATTERY_PLUGGED_FLAG) != 0;
+                            (states&HistoryItem.STATE_BATTERY_PLUGGED_FLAG) != 0;
                         if (charging != lastCharging) {
                             if (charging) {
                                 mChargingPath.moveTo(x, h-mChargingOffset);
@@ -844,7 +974,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean screenOn =
-                            (rec.states&HistoryItem.STATE_SCREEN_ON_FLAG) != 0;
+                            (states&HistoryItem.STATE_SCREEN_ON_FLAG) != 0;
                         if (screenOn != lastScreenOn) {
                             if (screenOn) {
                                 mScreenOnPath.moveTo(x, h-mScreenOnOffset);
@@ -855,7 +985,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean gpsOn =
-                            (rec.states&HistoryItem.STATE_GPS_ON_FLAG) != 0;
+                            (states&HistoryItem.STATE_GPS_ON_FLAG) != 0;
                         if (gpsOn != lastGpsOn) {
                             if (gpsOn) {
                                 mGpsOnPath.moveTo(x, h-mGpsOnOffset);
@@ -866,7 +996,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean flashlightOn =
-                            (rec.states2&HistoryItem.STATE2_FLASHLIGHT_FLAG) != 0;
+                            (states2&HistoryItem.STATE2_FLASHLIGHT_FLAG) != 0;
                         if (flashlightOn != lastFlashlightOn) {
                             if (flashlightOn) {
                                 mFlashlightOnPath.moveTo(x, h-mFlashlightOnOffset);
@@ -877,7 +1007,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean cameraOn =
-                            (rec.states2&HistoryItem.STATE2_CAMERA_FLAG) != 0;
+                            (states2&HistoryItem.STATE2_CAMERA_FLAG) != 0;
                         if (cameraOn != lastCameraOn) {
                             if (cameraOn) {
                                 mCameraOnPath.moveTo(x, h-mCameraOnOffset);
@@ -888,7 +1018,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final int wifiSupplState =
-                            ((rec.states2&HistoryItem.STATE2_WIFI_SUPPL_STATE_MASK)
+                            ((states2&HistoryItem.STATE2_WIFI_SUPPL_STATE_MASK)
                                     >> HistoryItem.STATE2_WIFI_SUPPL_STATE_SHIFT);
                         boolean wifiRunning;
                         if (lastWifiSupplState != wifiSupplState) {
@@ -909,7 +1039,7 @@ public class BatteryHistoryChart extends View {
                         } else {
                             wifiRunning = lastWifiSupplRunning;
                         }
-                        if ((rec.states&(HistoryItem.STATE_WIFI_FULL_LOCK_FLAG
+                        if ((states&(HistoryItem.STATE_WIFI_FULL_LOCK_FLAG
                                 |HistoryItem.STATE_WIFI_MULTICAST_ON_FLAG
                                 |HistoryItem.STATE_WIFI_SCAN_FLAG)) != 0) {
                             wifiRunning = true;
@@ -924,7 +1054,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean cpuRunning =
-                            (rec.states&HistoryItem.STATE_CPU_RUNNING_FLAG) != 0;
+                            (states&HistoryItem.STATE_CPU_RUNNING_FLAG) != 0;
                         if (cpuRunning != lastCpuRunning) {
                             if (cpuRunning) {
                                 mCpuRunningPath.moveTo(x, h - mCpuRunningOffset);
@@ -936,35 +1066,36 @@ public class BatteryHistoryChart extends View {
 
                         if (mLargeMode && mHavePhoneSignal) {
                             int bin;
-                            if (((rec.states&HistoryItem.STATE_PHONE_STATE_MASK)
+                            if (((states&HistoryItem.STATE_PHONE_STATE_MASK)
                                     >> HistoryItem.STATE_PHONE_STATE_SHIFT)
                                     == ServiceState.STATE_POWER_OFF) {
                                 bin = 0;
-                            } else if ((rec.states&HistoryItem.STATE_PHONE_SCANNING_FLAG) != 0) {
+                            } else if ((states&HistoryItem.STATE_PHONE_SCANNING_FLAG) != 0) {
                                 bin = 1;
                             } else {
-                                bin = (rec.states&HistoryItem.STATE_PHONE_SIGNAL_STRENGTH_MASK)
+                                bin = (states&HistoryItem.STATE_PHONE_SIGNAL_STRENGTH_MASK)
                                         >> HistoryItem.STATE_PHONE_SIGNAL_STRENGTH_SHIFT;
                                 bin += 2;
                             }
-                            mPhoneSignalChart.addTick(x, bin);
+                            mPhoneSignalChart.addTick(x, xWalltime, bin);
                         }
                     }
 
                 } else {
+                    final byte cmd = history.cmds[i];
                     long lastWalltime = curWalltime;
-                    if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
-                            || rec.cmd == HistoryItem.CMD_RESET) {
-                        if (rec.currentTime >= mStartWallTime) {
-                            curWalltime = rec.currentTime;
+                    if (cmd == HistoryItem.CMD_CURRENT_TIME
+                            || cmd == HistoryItem.CMD_RESET) {
+                        if (history.currentTimes[i] >= mStartWallTime) {
+                            curWalltime = history.currentTimes[i];
                         } else {
-                            curWalltime = mStartWallTime + (rec.time-mHistStart);
+                            curWalltime = mStartWallTime + (history.times[i]-mHistStart);
                         }
-                        lastRealtime = rec.time;
+                        lastRealtime = history.times[i];
                     }
 
-                    if (rec.cmd != HistoryItem.CMD_OVERFLOW
-                            && (rec.cmd != HistoryItem.CMD_CURRENT_TIME
+                    if (cmd != HistoryItem.CMD_OVERFLOW
+                            && (cmd != HistoryItem.CMD_CURRENT_TIME
                                     || Math.abs(lastWalltime-curWalltime) > (60*60*1000))) {
                         if (curLevelPath != null) {
                             finishPaths(x+1, h, levelh, startX, lastY, curLevelPath, lastX,
@@ -978,12 +1109,62 @@ public class BatteryHistoryChart extends View {
                         }
                     }
                 }
-
-                i++;
             }
-            mStats.finishIteratingHistoryLocked();
         }
 
+        state.index = i;
+        state.curWalltime = curWalltime;
+        state.lastRealtime = lastRealtime;
+        state.walltimeChange = walltimeChange;
+        state.x = x;
+        state.y = y;
+        state.startX = startX;
+        state.lastX = lastX;
+        state.xWalltime = xWalltime;
+        state.startXWalltime = startXWalltime;
+        state.lastXWalltime = lastXWalltime;
+        state.lastY = lastY;
+        state.curLevelPath = curLevelPath;
+        state.lastLinePath = lastLinePath;
+        state.lastCharging = lastCharging;
+        state.lastScreenOn = lastScreenOn;
+        state.lastGpsOn = lastGpsOn;
+        state.lastFlashlightOn = lastFlashlightOn;
+        state.lastCameraOn = lastCameraOn;
+        state.lastWifiRunning = lastWifiRunning;
+        state.lastWifiSupplRunning = lastWifiSupplRunning;
+        state.lastCpuRunning = lastCpuRunning;
+        state.lastWifiSupplState = lastWifiSupplState;
+
+        for (int j = 0; j < mHistoryPaths.length; j++) {
+            mOpenHistoryPaths[j].set(mHistoryPaths[j]);
+        }
+        state.numPhoneSignalTicks = mPhoneSignalChart.mNumTicks;
+        state.lastPhoneSignalBin = mPhoneSignalChart.mLastBin;
+    }
+
+    /**
+     * Close the paths after the last drawn record, and build the remaining time path and the
+     * labels.
+     */
+    void finishHistoryPaths(int w, int h) {
+        final PathState state = mPathState;
+        final int levelWidth = mLevelRight-mLevelLeft;
+        final long walltimeStart = mStartWallTime;
+        final long walltimeChange = getWalltimeChange();
+        final int batLow = mBatLow;
+        final int batChange = mBatHigh-mBatLow;
+        final int levelh = h - mLevelOffset - mLevelTop;
+
+        int x = state.x, y = state.y, startX = state.startX, lastX = state.lastX;
+        int lastY = state.lastY;
+        Path curLevelPath = state.curLevelPath;
+        Path lastLinePath = state.lastLinePath;
+
+        mTimeRemainPath.reset();
+        mTimeLabels.clear();
+        mDateLabels.clear();
+
         if (lastY < 0 || lastX < 0) {
             // Didn't get any data...
             x = lastX = mLevelLeft;
@@ -1009,8 +1190,8 @@ public class BatteryHistoryChart extends View {
         }
 
         finishPaths(x, h, levelh, startX, lastY, curLevelPath, lastX,
-                lastCharging, lastScreenOn, lastGpsOn, lastFlashlightOn, lastCameraOn,
-                lastWifiRunning, lastCpuRunning, lastLinePath);
+                state.lastCharging, state.lastScreenOn, state.lastGpsOn, state.lastFlashlightOn,
+                state.lastCameraOn, state.lastWifiRunning, state.lastCpuRunning, lastLinePath);
 
         if (x < w) {
             // If we reserved room for the remaining time, create a final path to draw
@@ -1104,6 +1285,21 @@ public class BatteryHistoryChart extends View {
         }
     }
 
+    private long getWalltimeChange() {
+        return mEndWallTime > mStartWallTime ? (mEndWallTime-mStartWallTime) : 1;
+    }
+
+    private int getX(long walltime) {
+        return getX(walltime, mLevelLeft, mLevelRight - mLevelLeft, mStartWallTime,
+                getWalltimeChange());
+    }
+
+    static int getX(long walltime, int left, int width, long walltimeStart,
+            long walltimeChange) {
+        final int x = left + (int)(((walltime-walltimeStart)*width)/walltimeChange);
+        return x < 0 ? 0 : x;
+    }
+
     void addTimeLabel(Calendar cal, int levelLeft, int levelRight, boolean is24hr) {
         final long walltimeStart = mStartWallTime;
         final long walltimeChange = mEndWallTime-walltimeStart;
@@ -1129,24 +1325,31 @@ public class BatteryHistoryChart extends View {
         final int width = getWidth();
         final int height = getHeight();
 
-        //buildBitmap(width, height);
-
         if (DEBUG) Log.d(TAG, "onDraw: " + width + "x" + height);
-        //canvas.drawBitmap(mBitmap, 0, 0, null);
-        drawChart(canvas, width, height);
+        if (width > 0 && height > 0) {
+            buildBitmap(width, height);
+            canvas.drawBitmap(mBitmap, 0, 0, null);
+        } else {
+            drawChart(canvas, width, height);
+        }
     }
 
     void buildBitmap(int width, int height) {
         if (mBitmap != null && width == mBitmap.getWidth() && height == mBitmap.getHeight()) {
-            return;
+            if (mBitmapValid) {
+                return;
+            }
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        } else {
+            mBitmap = Bitmap.createBitmap(getResources().getDisplayMetrics(), width, height,
+                    Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
         }
 
         if (DEBUG) Log.d(TAG, "buildBitmap: " + width + "x" + height);
 
-        mBitmap = Bitmap.createBitmap(getResources().getDisplayMetrics(), width, height,
-                Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mBitmap);
         drawChart(mCanvas, width, height);
+        mBitmapValid = true;
     }
 
     void drawChart(Canvas canvas, int width, int height) {
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+import android.support.annotation.VisibleForTesting;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Columnar copy of the history of a {@link BatteryStats}, decoded in a single pass.
+ *
+ * <p>Walking the history of {@link BatteryStats} is expensive on devices with a large history
+ * buffer, so {@link #get(BatteryStats)} decodes it once per {@link BatteryStats} instance, which
+ * is once per refresh of the {@link com.android.internal.os.BatteryStatsHelper}, and shares the
+ * result between {@link BatteryInfo}, {@link BatteryHistoryChart} and the battery tip detectors.
+ *
+ * <p>Each record of the history is stored at the same index of the primitive arrays below. The
+ * wall clock bounds of the history are computed while decoding.
+ */
+public class BatteryHistorySnapshot {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final Object sLock = new Object();
+    private static WeakReference<BatteryStats> sLastStats;
+    private static BatteryHistorySnapshot sLastSnapshot;
+
+    /** Number of records in the history. */
+    public final int size;
+    public final byte[] cmds;
+    /** {@link HistoryItem#time} of each record, in elapsed realtime milliseconds. */
+    public final long[] times;
+    /** {@link HistoryItem#currentTime} of each record, in wall clock milliseconds. */
+    public final long[] currentTimes;
+    public final byte[] batteryLevels;
+    public final byte[] batteryStatuses;
+    public final byte[] batteryHealths;
+    public final byte[] batteryPlugTypes;
+    public final short[] batteryTemperatures;
+    public final char[] batteryVoltages;
+    public final int[] states;
+    public final int[] states2;
+
+    /** Realtime of the first record. */
+    public final long historyStart;
+    /** Realtime of the last record carrying delta data. */
+    public final long historyDataEnd;
+    /** Wall clock time corresponding to {@link #historyStart}. */
+    public final long startWallTime;
+    /** Wall clock time of the last time change record. */
+    public final long lastWallTime;
+    /** Realtime of the last time change record. */
+    public final long lastRealtime;
+    /** Number of records up to and including the last record carrying delta data. */
+    public final int numInteresting;
+    /** Union of the {@link HistoryItem#states} of all records carrying delta data. */
+    public final int aggregatedStates;
+    /** Union of the {@link HistoryItem#states2} of all records carrying delta data. */
+    public final int aggregatedStates2;
+
+    /**
+     * @return the decoded history of {@param stats}. The history is only decoded again when a
+     * different {@link BatteryStats} instance is passed in.
+     */
+    public static BatteryHistorySnapshot get(BatteryStats stats) {
+        synchronized (sLock) {
+            if (sLastSnapshot != null && sLastStats.get() == stats) {
+                return sLastSnapshot;
+            }
+            final BatteryHistorySnapshot snapshot = new BatteryHistorySnapshot(stats);
+            sLastStats = new WeakReference<>(stats);
+            sLastSnapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    @VisibleForTesting
+    static void clearCache() {
+        synchronized (sLock) {
+            sLastStats = null;
+            sLastSnapshot = null;
+        }
+    }
+
+    @VisibleForTesting
+    BatteryHistorySnapshot(BatteryStats stats) {
+        final long startTime = System.currentTimeMillis();
+        int capacity = INITIAL_CAPACITY;
+        byte[] cmds = new byte[capacity];
+        long[] times = new long[capacity];
+        long[] currentTimes = new long[capacity];
+        byte[] batteryLevels = new byte[capacity];
+        byte[] batteryStatuses = new byte[capacity];
+        byte[] batteryHealths = new byte[capacity];
+        byte[] batteryPlugTypes = new byte[capacity];
+        short[] batteryTemperatures = new short[capacity];
+        char[] batteryVoltages = new char[capacity];
+        int[] states = new int[capacity];
+        int[] states2 = new int[capacity];
+
+        int pos = 0;
+        long historyStart = 0;
+        long historyDataEnd = 0;
+        long startWallTime = 0;
+        long lastWallTime = 0;
+        long lastRealtime = 0;
+        int lastInteresting = 0;
+        int aggregatedStates = 0;
+        int aggregatedStates2 = 0;
+        if (stats.startIteratingHistoryLocked()) {
+            final HistoryItem rec = new HistoryItem();
+            while (stats.getNextHistoryLocked(rec)) {
+                if (pos == capacity) {
+                    capacity *= 2;
+                    cmds = Arrays.copyOf(cmds, capacity);
+                    times = Arrays.copyOf(times, capacity);
+                    currentTimes = Arrays.copyOf(currentTimes, capacity);
+                    batteryLevels = Arrays.copyOf(batteryLevels, capacity);
+                    batteryStatuses = Arrays.copyOf(batteryStatuses, capacity);
+                    batteryHealths = Arrays.copyOf(batteryHealths, capacity);
+                    batteryPlugTypes = Arrays.copyOf(batteryPlugTypes, capacity);
+                    batteryTemperatures = Arrays.copyOf(batteryTemperatures, capacity);
+                    batteryVoltages = Arrays.copyOf(batteryVoltages, capacity);
+                    states = Arrays.copyOf(states, capacity);
+                    states2 = Arrays.copyOf(states2, capacity);
+                }
+                cmds[pos] = rec.cmd;
+                times[pos] = rec.time;
+                currentTimes[pos] = rec.currentTime;
+                batteryLevels[pos] = rec.batteryLevel;
+                batteryStatuses[pos] = rec.batteryStatus;
+                batteryHealths[pos] = rec.batteryHealth;
+                batteryPlugTypes[pos] = rec.batteryPlugType;
+                batteryTemperatures[pos] = rec.batteryTemperature;
+                batteryVoltages[pos] = rec.batteryVoltage;
+                states[pos] = rec.states;
+                states2[pos] = rec.states2;
+                pos++;
+
+                if (pos == 1) {
+                    historyStart = rec.time;
+                }
+                if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
+                        || rec.cmd == HistoryItem.CMD_RESET) {
+                    // If there is a ridiculously large jump in time, then we won't be
+                    // able to create a good chart with that data, so just ignore the
+                    // times we got before and pretend like our data extends back from
+                    // the time we have now.
+                    // Also, if we are getting a time change and we are less than 5 minutes
+                    // since the start of the history real time, then also use this new
+                    // time to compute the base time, since whatever time we had before is
+                    // pretty much just noise.
+                    if (rec.currentTime > (lastWallTime + (180 * 24 * 60 * 60 * 1000L))
+                            || rec.time < (historyStart + (5 * 60 * 1000L))) {
+                        startWallTime = 0;
+                    }
+                    lastWallTime = rec.currentTime;
+                    lastRealtime = rec.time;
+                    if (startWallTime == 0) {
+                        startWallTime = lastWallTime - (lastRealtime - historyStart);
+                    }
+                }
+                if (rec.isDeltaData()) {
+                    lastInteresting = pos;
+                    historyDataEnd = rec.time;
+                    aggregatedStates |= rec.states;
+                    aggregatedStates2 |= rec.states2;
+                }
+            }
+        }
+        stats.finishIteratingHistoryLocked();
+
+        this.size = pos;
+        this.cmds = Arrays.copyOf(cmds, pos);
+        this.times = Arrays.copyOf(times, pos);
+        this.currentTimes = Arrays.copyOf(currentTimes, pos);
+        this.batteryLevels = Arrays.copyOf(batteryLevels, pos);
+        this.batteryStatuses = Arrays.copyOf(batteryStatuses, pos);
+        this.batteryHealths = Arrays.copyOf(batteryHealths, pos);
+        this.batteryPlugTypes = Arrays.copyOf(batteryPlugTypes, pos);
+        this.batteryTemperatures = Arrays.copyOf(batteryTemperatures, pos);
+        this.batteryVoltages = Arrays.copyOf(batteryVoltages, pos);
+        this.states = Arrays.copyOf(states, pos);
+        this.states2 = Arrays.copyOf(states2, pos);
+        this.historyStart = historyStart;
+        this.historyDataEnd = historyDataEnd;
+        this.startWallTime = startWallTime;
+        this.lastWallTime = lastWallTime;
+        this.lastRealtime = lastRealtime;
+        this.numInteresting = lastInteresting;
+        this.aggregatedStates = aggregatedStates;
+        this.aggregatedStates2 = aggregatedStates2;
+        BatteryUtils.logRuntime("BatteryHistorySnapshot", "time to decode " + pos + " records",
+                startTime);
+    }
+
+    /**
+     * @return the wall clock time of the last record carrying delta data.
+     */
+    public long getEndDataWallTime() {
+        return lastWallTime + historyDataEnd - lastRealtime;
+    }
+
+    /**
+     * @return whether the record at {@param index} carries delta data, like
+     * {@link HistoryItem#isDeltaData()}.
+     */
+    public boolean isDeltaData(int index) {
+        return cmds[index] == HistoryItem.CMD_UPDATE;
+    }
+
+    /**
+     * Copies the record at {@param index} into {@param rec}, for consumers that still expect a
+     * {@link HistoryItem}.
+     */
+    public void readRecord(int index, HistoryItem rec) {
+        rec.cmd = cmds[index];
+        rec.time = times[index];
+        rec.currentTime = currentTimes[index];
+        rec.batteryLevel = batteryLevels[index];
+        rec.batteryStatus = batteryStatuses[index];
+        rec.batteryHealth = batteryHealths[index];
+        rec.batteryPlugType = batteryPlugTypes[index];
+        rec.batteryTemperature = batteryTemperatures[index];
+        rec.batteryVoltage = batteryVoltages[index];
+        rec.states = states[index];
+        rec.states2 = states2[index];
+    }
+}
@@ -298,98 +298,57 @@ public class BatteryInfo {
     }
 
     public static void parse(BatteryStats stats, BatteryDataParser... parsers) {
-        long startWalltime = 0;
-        long endWalltime = 0;
-        long historyStart = 0;
-        long historyEnd = 0;
-        long curWalltime = startWalltime;
-        long lastWallTime = 0;
-        long lastRealtime = 0;
-        int lastInteresting = 0;
-        int pos = 0;
-        boolean first = true;
-        if (stats.startIteratingHistoryLocked()) {
-            final HistoryItem rec = new HistoryItem();
-            while (stats.getNextHistoryLocked(rec)) {
-                pos++;
-                if (first) {
-                    first = false;
-                    historyStart = rec.time;
-                }
-                if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
-                        || rec.cmd == HistoryItem.CMD_RESET) {
-                    // If there is a ridiculously large jump in time, then we won't be
-                    // able to create a good chart with that data, so just ignore the
-                    // times we got before and pretend like our data extends back from
-                    // the time we have now.
-                    // Also, if we are getting a time change and we are less than 5 minutes
-                    // since the start of the history real time, then also use this new
-                    // time to compute the base time, since whatever time we had before is
-                    // pretty much just noise.
-                    if (rec.currentTime > (lastWallTime + (180 * 24 * 60 * 60 * 1000L))
-                            || rec.time < (historyStart + (5 * 60 * 1000L))) {
-                        startWalltime = 0;
-                    }
-                    lastWallTime = rec.currentTime;
-                    lastRealtime = rec.time;
-                    if (startWalltime == 0) {
-                        startWalltime = lastWallTime - (lastRealtime - historyStart);
-                    }
-                }
-                if (rec.isDeltaData()) {
-                    lastInteresting = pos;
-                    historyEnd = rec.time;
-                }
-            }
-        }
-        stats.finishIteratingHistoryLocked();
-        endWalltime = lastWallTime + historyEnd - lastRealtime;
+        parse(BatteryHistorySnapshot.get(stats), parsers);
+    }
 
-        int i = 0;
-        final int N = lastInteresting;
+    public static void parse(BatteryHistorySnapshot history, BatteryDataParser... parsers) {
+        final long startWalltime = history.startWallTime;
+        final long endWalltime = history.getEndDataWallTime();
+        final long historyStart = history.historyStart;
+        long curWalltime = 0;
+        long lastRealtime = history.lastRealtime;
 
         for (int j = 0; j < parsers.length; j++) {
             parsers[j].onParsingStarted(startWalltime, endWalltime);
         }
-        if (endWalltime > startWalltime && stats.startIteratingHistoryLocked()) {
+        if (endWalltime > startWalltime) {
             final HistoryItem rec = new HistoryItem();
-            while (stats.getNextHistoryLocked(rec) && i < N) {
-                if (rec.isDeltaData()) {
-                    curWalltime += rec.time - lastRealtime;
-                    lastRealtime = rec.time;
+            for (int i = 0, N = history.numInteresting; i < N; i++) {
+                if (history.isDeltaData(i)) {
+                    curWalltime += history.times[i] - lastRealtime;
+                    lastRealtime = history.times[i];
                     long x = (curWalltime - startWalltime);
                     if (x < 0) {
                         x = 0;
                     }
+                    history.readRecord(i, rec);
                     for (int j = 0; j < parsers.length; j++) {
                         parsers[j].onDataPoint(x, rec);
                     }
                 } else {
+                    final byte cmd = history.cmds[i];
                     long lastWalltime = curWalltime;
-                    if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
-                            || rec.cmd == HistoryItem.CMD_RESET) {
-                        if (rec.currentTime >= startWalltime) {
-                            curWalltime = rec.currentTime;
+                    if (cmd == HistoryItem.CMD_CURRENT_TIME
+                            || cmd == HistoryItem.CMD_RESET) {
+                        if (history.currentTimes[i] >= startWalltime) {
+                            curWalltime = history.currentTimes[i];
                         } else {
-                            curWalltime = startWalltime + (rec.time - historyStart);
+                            curWalltime = startWalltime + (history.times[i] - historyStart);
                         }
-                        lastRealtime = rec.time;
+                        lastRealtime = history.times[i];
                     }
 
-                    if (rec.cmd != HistoryItem.CMD_OVERFLOW
-                            && (rec.cmd != HistoryItem.CMD_CURRENT_TIME
+                    if (cmd != HistoryItem.CMD_OVERFLOW
+                            && (cmd != HistoryItem.CMD_CURRENT_TIME
                             || Math.abs(lastWalltime - curWalltime) > (60 * 60 * 1000))) {
                         for (int j = 0; j < parsers.length; j++) {
                             parsers[j].onDataGap();
                         }
                     }
                 }
-                i++;
             }
         }
 
-        stats.finishIteratingHistoryLocked();
-
         for (int j = 0; j < parsers.length; j++) {
             parsers[j].onParsingDone();
         }
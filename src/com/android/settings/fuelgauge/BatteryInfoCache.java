@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.content.Intent;
+import android.os.BatteryManager;
+import android.os.BatteryStats;
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.text.format.DateUtils;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.ref.WeakReference;
+
+/**
+ * Memoizes {@link BatteryInfo}, so that the loaders of the battery page and the dashboard summary
+ * don't compute it again for the same battery state.
+ *
+ * <p>An entry is reused while the {@link BatteryStats} it was computed from is still the current
+ * generation, which changes every time a {@link com.android.internal.os.BatteryStatsHelper} is
+ * refreshed, and while the battery broadcast reports the same battery state. Entries also expire
+ * after {@link #MAX_AGE_MS}, since the estimates depend on the elapsed time.
+ */
+class BatteryInfoCache {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({InfoType.DEFAULT,
+            InfoType.SYSTEM_ESTIMATE,
+            InfoType.DEBUG_ENHANCED_ESTIMATE,
+            InfoType.SUMMARY
+    })
+    @interface InfoType {
+        /** Computed by {@link BatteryUtils#getBatteryInfo}. */
+        int DEFAULT = 0;
+        /** Computed by {@link BatteryInfo#getBatteryInfoOld}. */
+        int SYSTEM_ESTIMATE = 1;
+        /** Computed by {@link DebugEstimatesLoader} with the enhanced estimate only. */
+        int DEBUG_ENHANCED_ESTIMATE = 2;
+        /** Computed for the dashboard summary, with short strings. */
+        int SUMMARY = 3;
+    }
+
+    private static final int INFO_TYPE_COUNT = 4;
+
+    @VisibleForTesting
+    static final long MAX_AGE_MS = DateUtils.MINUTE_IN_MILLIS;
+
+    /**
+     * Computes a {@link BatteryInfo} on a cache miss.
+     */
+    interface InfoComputer {
+        BatteryInfo compute();
+    }
+
+    private static BatteryInfoCache sInstance;
+
+    private final Entry[] mEntries = new Entry[INFO_TYPE_COUNT];
+    private final Object[] mComputeLocks = new Object[INFO_TYPE_COUNT];
+    private int mHitCount;
+    private int mMissCount;
+
+    static synchronized BatteryInfoCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new BatteryInfoCache();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    BatteryInfoCache() {
+        for (int i = 0; i < INFO_TYPE_COUNT; i++) {
+            mComputeLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return the cached {@link BatteryInfo} of {@param type}, or the one returned by
+     * {@param computer}, which is then cached. Concurrent callers asking for the same
+     * {@param type} wait for a single computation instead of running their own.
+     */
+    BatteryInfo getOrCompute(@Nullable BatteryStats stats, @Nullable Intent batteryBroadcast,
+            @InfoType int type, InfoComputer computer) {
+        synchronized (mComputeLocks[type]) {
+            final BatteryInfo cachedInfo = get(stats, batteryBroadcast, type);
+            if (cachedInfo != null) {
+                return cachedInfo;
+            }
+            final BatteryInfo info = computer.compute();
+            put(stats, batteryBroadcast, type, info);
+            return info;
+        }
+    }
+
+    /**
+     * @param stats the current {@link BatteryStats}, or {@code null} to accept an entry computed
+     *              from any generation that is not older than {@link #MAX_AGE_MS}.
+     * @return the cached {@link BatteryInfo}, or {@code null} on a miss.
+     */
+    synchronized BatteryInfo get(@Nullable BatteryStats stats, @Nullable Intent batteryBroadcast,
+            @InfoType int type) {
+        final Entry entry = mEntries[type];
+        final String broadcastKey = getBroadcastKey(batteryBroadcast);
+        if (entry != null && broadcastKey != null && broadcastKey.equals(entry.broadcastKey)
+                && (stats == null || entry.stats.get() == stats)
+                && SystemClock.elapsedRealtime() - entry.createdTimeMs <= MAX_AGE_MS) {
+            mHitCount++;
+            return entry.info;
+        }
+        mMissCount++;
+        return null;
+    }
+
+    synchronized void put(@Nullable BatteryStats stats, @Nullable Intent batteryBroadcast,
+            @InfoType int type, BatteryInfo info) {
+        final String broadcastKey = getBroadcastKey(batteryBroadcast);
+        mEntries[type] = broadcastKey == null || info == null
+                ? null
+                : new Entry(stats, broadcastKey, info, SystemClock.elapsedRealtime());
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < INFO_TYPE_COUNT; i++) {
+            mEntries[i] = null;
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    @VisibleForTesting
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return a key made of every extra of {@param batteryBroadcast} read by {@link BatteryInfo},
+     * or {@code null} if there is no broadcast.
+     */
+    @VisibleForTesting
+    static String getBroadcastKey(@Nullable Intent batteryBroadcast) {
+        if (batteryBroadcast == null) {
+            return null;
+        }
+        return batteryBroadcast.getIntExtra(BatteryManager.EXTRA_LEVEL, 0)
+                + "/" + batteryBroadcast.getIntExtra(BatteryManager.EXTRA_SCALE, 100)
+                + "/" + batteryBroadcast.getIntExtra(BatteryManager.EXTRA_STATUS,
+                        BatteryManager.BATTERY_STATUS_UNKNOWN)
+                + "/" + batteryBroadcast.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0)
+                + "/" + batteryBroadcast.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0)
+                + "/" + batteryBroadcast.getBooleanExtra(BatteryManager.EXTRA_DASH_CHARGER, false);
+    }
+
+    private static class Entry {
+        final WeakReference<BatteryStats> stats;
+        final String broadcastKey;
+        final BatteryInfo info;
+        final long createdTimeMs;
+
+        Entry(BatteryStats stats, String broadcastKey, BatteryInfo info, long createdTimeMs) {
+            this.stats = new WeakReference<>(stats);
+            this.broadcastKey = broadcastKey;
+            this.info = info;
+            this.createdTimeMs = createdTimeMs;
+        }
+    }
+}
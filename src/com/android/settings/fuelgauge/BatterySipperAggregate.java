@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.os.BatteryStats;
+import android.support.annotation.VisibleForTesting;
+import android.text.format.DateUtils;
+import android.util.SparseIntArray;
+
+import com.android.internal.os.BatterySipper;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Primitive view of a list of {@link BatterySipper}, indexed by position and by uid.
+ *
+ * <p>The power, hidden state and process times of every sipper are kept in parallel arrays, with
+ * an index array sorted by power. The arrays are reused when the aggregate is updated again with
+ * a list of the same size or smaller, so refreshing the battery usage doesn't allocate per sipper.
+ *
+ * <p>An aggregate is not thread safe. Use {@link BatteryUtils#getSipperAggregate} to get one that
+ * is shared and never written after it is returned, with its process times already loaded.
+ */
+public class BatterySipperAggregate {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long TIME_UNKNOWN = -1;
+
+    private int mSize;
+    private BatterySipper[] mSippers = new BatterySipper[INITIAL_CAPACITY];
+    private double[] mPowerMah = new double[INITIAL_CAPACITY];
+    private boolean[] mHidden = new boolean[INITIAL_CAPACITY];
+    private long[] mForegroundTimeMs = new long[INITIAL_CAPACITY];
+    private long[] mBackgroundTimeMs = new long[INITIAL_CAPACITY];
+    private long[] mScreenTimeMs = new long[INITIAL_CAPACITY];
+    private int[] mSortedIndexes = new int[INITIAL_CAPACITY];
+    private final SparseIntArray mUidIndexes = new SparseIntArray();
+    private double mHiddenPowerMah;
+
+    /**
+     * Aggregate {@code sippers}, replacing the previous content.
+     *
+     * @param smearScreenUsage whether to smear the screen power among the sippers that are not
+     *                         hidden, based on their foreground activity time, like
+     *                         {@link BatteryUtils#removeHiddenBatterySippers(List)}. The smeared
+     *                         power is also written back to {@link BatterySipper#totalPowerMah}.
+     */
+    public void update(BatteryUtils batteryUtils, List<BatterySipper> sippers,
+            boolean smearScreenUsage) {
+        final int size = sippers.size();
+        ensureCapacity(size);
+        if (size < mSize) {
+            // Don't hold on to the sippers of the previous update.
+            Arrays.fill(mSippers, size, mSize, null);
+        }
+        mSize = size;
+        mUidIndexes.clear();
+        mHiddenPowerMah = 0;
+
+        BatterySipper screenSipper = null;
+        for (int i = 0; i < size; i++) {
+            final BatterySipper sipper = sippers.get(i);
+            final boolean hidden = batteryUtils.shouldHideSipper(sipper);
+            mSippers[i] = sipper;
+            mPowerMah[i] = sipper.totalPowerMah;
+            mHidden[i] = hidden;
+            mForegroundTimeMs[i] = TIME_UNKNOWN;
+            mBackgroundTimeMs[i] = TIME_UNKNOWN;
+            mSortedIndexes[i] = i;
+            if (hidden && sipper.drainType != BatterySipper.DrainType.OVERCOUNTED
+                    && sipper.drainType != BatterySipper.DrainType.SCREEN
+                    && sipper.drainType != BatterySipper.DrainType.UNACCOUNTED
+                    && sipper.drainType != BatterySipper.DrainType.BLUETOOTH
+                    && sipper.drainType != BatterySipper.DrainType.WIFI
+                    && sipper.drainType != BatterySipper.DrainType.IDLE) {
+                // Don't add it if it is overcounted, unaccounted, wifi, bluetooth, or screen
+                mHiddenPowerMah += sipper.totalPowerMah;
+            }
+            if (sipper.drainType == BatterySipper.DrainType.SCREEN) {
+                screenSipper = sipper;
+            }
+            final int uid = sipper.getUid();
+            if (mUidIndexes.indexOfKey(uid) < 0) {
+                mUidIndexes.put(uid, i);
+            }
+        }
+
+        if (smearScreenUsage && screenSipper != null) {
+            smearScreenPower(batteryUtils, screenSipper.totalPowerMah);
+        }
+        sortByPower();
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public BatterySipper getSipper(int index) {
+        return mSippers[index];
+    }
+
+    public double getPowerMah(int index) {
+        return mPowerMah[index];
+    }
+
+    /**
+     * @see BatteryUtils#shouldHideSipper(BatterySipper)
+     */
+    public boolean isHidden(int index) {
+        return mHidden[index];
+    }
+
+    /**
+     * @return the total power of the hidden sippers for proportional smearing, like the value
+     * returned by {@link BatteryUtils#removeHiddenBatterySippers(List)}
+     */
+    public double getHiddenPowerMah() {
+        return mHiddenPowerMah;
+    }
+
+    /**
+     * @return the index of the sipper at {@code position} when sorted by descending power
+     */
+    public int getSortedIndex(int position) {
+        return mSortedIndexes[position];
+    }
+
+    /**
+     * @return the index of the first sipper of {@code uid}, or -1 if there is none
+     */
+    public int indexOfUid(int uid) {
+        return mUidIndexes.get(uid, -1);
+    }
+
+    /**
+     * Load the foreground and background times of every sipper now, instead of on the first call
+     * to {@link #getProcessTimeMs}, so that an aggregate read by several threads is not written
+     * by them.
+     */
+    public void loadProcessTimes(BatteryUtils batteryUtils) {
+        for (int i = 0; i < mSize; i++) {
+            getProcessTimeMs(batteryUtils, BatteryUtils.StatusType.FOREGROUND, i);
+            getProcessTimeMs(batteryUtils, BatteryUtils.StatusType.BACKGROUND, i);
+        }
+    }
+
+    /**
+     * @return the time since last full charge of the sipper at {@code index} in the state
+     * {@code type}, which is computed once per update of the aggregate
+     * @see BatteryUtils#getProcessTimeMs(int, BatteryStats.Uid, int)
+     */
+    public long getProcessTimeMs(BatteryUtils batteryUtils, @BatteryUtils.StatusType int type,
+            int index) {
+        final long[] times;
+        if (type == BatteryUtils.StatusType.FOREGROUND) {
+            times = mForegroundTimeMs;
+        } else if (type == BatteryUtils.StatusType.BACKGROUND) {
+            times = mBackgroundTimeMs;
+        } else {
+            return batteryUtils.getProcessTimeMs(type, mSippers[index].uidObj,
+                    BatteryStats.STATS_SINCE_CHARGED);
+        }
+        if (times[index] == TIME_UNKNOWN) {
+            times[index] = batteryUtils.getProcessTimeMs(type, mSippers[index].uidObj,
+                    BatteryStats.STATS_SINCE_CHARGED);
+        }
+        return times[index];
+    }
+
+    private void smearScreenPower(BatteryUtils batteryUtils, double screenPowerMah) {
+        long totalActivityTimeMs = 0;
+        for (int i = 0; i < mSize; i++) {
+            final BatteryStats.Uid uid = mSippers[i].uidObj;
+            mScreenTimeMs[i] = mHidden[i] || uid == null ? 0 : batteryUtils.getProcessTimeMs(
+                    BatteryUtils.StatusType.SCREEN_USAGE, uid, BatteryStats.STATS_SINCE_CHARGED);
+            totalActivityTimeMs += mScreenTimeMs[i];
+        }
+
+        if (totalActivityTimeMs >= 10 * DateUtils.MINUTE_IN_MILLIS) {
+            for (int i = 0; i < mSize; i++) {
+                if (!mHidden[i]) {
+                    mPowerMah[i] += screenPowerMah * mScreenTimeMs[i] / totalActivityTimeMs;
+                    mSippers[i].totalPowerMah = mPowerMah[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Insertion sort of the indexes by descending power. It is stable and doesn't allocate, and
+     * the usage list of {@link com.android.internal.os.BatteryStatsHelper} is mostly sorted
+     * already.
+     */
+    @VisibleForTesting
+    void sortByPower() {
+        for (int i = 1; i < mSize; i++) {
+            final int index = mSortedIndexes[i];
+            final double power = mPowerMah[index];
+            int j = i - 1;
+            while (j >= 0 && mPowerMah[mSortedIndexes[j]] < power) {
+                mSortedIndexes[j + 1] = mSortedIndexes[j];
+                j--;
+            }
+            mSortedIndexes[j + 1] = index;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= mSippers.length) {
+            return;
+        }
+        final int capacity = Math.max(size, mSippers.length * 2);
+        mSippers = Arrays.copyOf(mSippers, capacity);
+        mPowerMah = new double[capacity];
+        mHidden = new boolean[capacity];
+        mForegroundTimeMs = new long[capacity];
+        mBackgroundTimeMs = new long[capacity];
+        mScreenTimeMs = new long[capacity];
+        mSortedIndexes = new int[capacity];
+    }
+}
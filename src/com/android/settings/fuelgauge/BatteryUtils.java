@@ -52,6 +52,7 @@ import com.android.settingslib.utils.PowerUtil;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -88,6 +89,13 @@ public class BatteryUtils {
     private Context mContext;
     @VisibleForTesting
     PowerUsageFeatureProvider mPowerUsageFeatureProvider;
+    @VisibleForTesting
+    BatteryInfoCache mBatteryInfoCache;
+
+    private final Object mSipperAggregateLock = new Object();
+    private WeakReference<BatteryStats> mSipperAggregateStats;
+    private BatterySipper mSipperAggregateFirstSipper;
+    private BatterySipperAggregate mSipperAggregate;
 
     public static BatteryUtils getInstance(Context context) {
         if (sInstance == null || sInstance.isDataCorrupted()) {
@@ -103,6 +111,7 @@ public class BatteryUtils {
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
         mPowerUsageFeatureProvider = FeatureFactory.getFactory(
                 context).getPowerUsageFeatureProvider(context);
+        mBatteryInfoCache = BatteryInfoCache.getInstance();
     }
 
     public long getProcessTimeMs(@StatusType int type, @Nullable BatteryStats.Uid uid,
@@ -238,6 +247,31 @@ public class BatteryUtils {
         }
     }
 
+    /**
+     * Get the {@link BatterySipperAggregate} of the usage list of {@code batteryStatsHelper},
+     * without screen smearing. It is shared by the callers until the helper is refreshed, so it
+     * must not be updated.
+     */
+    public BatterySipperAggregate getSipperAggregate(BatteryStatsHelper batteryStatsHelper) {
+        final BatteryStats stats = batteryStatsHelper.getStats();
+        final List<BatterySipper> usageList = batteryStatsHelper.getUsageList();
+        final BatterySipper firstSipper = usageList.isEmpty() ? null : usageList.get(0);
+        synchronized (mSipperAggregateLock) {
+            if (mSipperAggregate == null || mSipperAggregateStats.get() != stats
+                    || mSipperAggregateFirstSipper != firstSipper
+                    || mSipperAggregate.size() != usageList.size()) {
+                // A new aggregate, since the previous one may still be read by another thread
+                final BatterySipperAggregate aggregate = new BatterySipperAggregate();
+                aggregate.update(this, usageList, false /* smearScreenUsage */);
+                aggregate.loadProcessTimes(this);
+                mSipperAggregateStats = new WeakReference<>(stats);
+                mSipperAggregateFirstSipper = firstSipper;
+                mSipperAggregate = aggregate;
+            }
+            return mSipperAggregate;
+        }
+    }
+
     /**
      * Check whether we should hide the battery sipper.
      */
@@ -443,8 +477,17 @@ public class BatteryUtils {
         final long elapsedRealtimeUs = PowerUtil.convertMsToUs(
                 SystemClock.elapsedRealtime());
         final BatteryStats stats = statsHelper.getStats();
-        BatteryInfo batteryInfo;
+        final BatteryInfo batteryInfo = mBatteryInfoCache.getOrCompute(stats, batteryBroadcast,
+                BatteryInfoCache.InfoType.DEFAULT,
+                () -> computeBatteryInfo(batteryBroadcast, stats, elapsedRealtimeUs, tag,
+                        startTime));
+        BatteryUtils.logRuntime(tag, "BatteryInfoLoader.loadInBackground", startTime);
+
+        return batteryInfo;
+    }
 
+    private BatteryInfo computeBatteryInfo(Intent batteryBroadcast, BatteryStats stats,
+            long elapsedRealtimeUs, String tag, long startTime) {
         Estimate estimate = null;
         // Get enhanced prediction if available
         if (mPowerUsageFeatureProvider != null &&
@@ -459,11 +502,8 @@ public class BatteryUtils {
         }
 
         BatteryUtils.logRuntime(tag, "BatteryInfoLoader post query", startTime);
-        batteryInfo = BatteryInfo.getBatteryInfo(mContext, batteryBroadcast, stats,
+        return BatteryInfo.getBatteryInfo(mContext, batteryBroadcast, stats,
                 estimate, elapsedRealtimeUs, false /* shortString */);
-        BatteryUtils.logRuntime(tag, "BatteryInfoLoader.loadInBackground", startTime);
-
-        return batteryInfo;
     }
 
     /**
@@ -42,26 +42,34 @@ public class DebugEstimatesLoader extends AsyncLoader<List<BatteryInfo>> {
 
     @Override
     public List<BatteryInfo> loadInBackground() {
-        Context context = getContext();
-        PowerUsageFeatureProvider powerUsageFeatureProvider =
+        final Context context = getContext();
+        final PowerUsageFeatureProvider powerUsageFeatureProvider =
                 FeatureFactory.getFactory(context).getPowerUsageFeatureProvider(context);
 
         // get stuff we'll need for both BatteryInfo
         final long elapsedRealtimeUs = PowerUtil.convertMsToUs(
                 SystemClock.elapsedRealtime());
-        Intent batteryBroadcast = getContext().registerReceiver(null,
+        final Intent batteryBroadcast = getContext().registerReceiver(null,
                 new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-        BatteryStats stats = mStatsHelper.getStats();
+        final BatteryStats stats = mStatsHelper.getStats();
+        final BatteryInfoCache batteryInfoCache = BatteryInfoCache.getInstance();
 
-        BatteryInfo oldinfo = BatteryInfo.getBatteryInfoOld(getContext(), batteryBroadcast,
-                stats, elapsedRealtimeUs, false);
+        BatteryInfo oldinfo = batteryInfoCache.getOrCompute(stats, batteryBroadcast,
+                BatteryInfoCache.InfoType.SYSTEM_ESTIMATE,
+                () -> BatteryInfo.getBatteryInfoOld(context, batteryBroadcast, stats,
+                        elapsedRealtimeUs, false));
 
-        Estimate estimate = powerUsageFeatureProvider.getEnhancedBatteryPrediction(context);
-        if (estimate == null) {
-            estimate = new Estimate(0, false, Estimate.AVERAGE_TIME_TO_DISCHARGE_UNKNOWN);
-        }
-        BatteryInfo newInfo = BatteryInfo.getBatteryInfo(getContext(), batteryBroadcast, stats,
-                estimate, elapsedRealtimeUs, false);
+        BatteryInfo newInfo = batteryInfoCache.getOrCompute(stats, batteryBroadcast,
+                BatteryInfoCache.InfoType.DEBUG_ENHANCED_ESTIMATE, () -> {
+                    Estimate estimate =
+                            powerUsageFeatureProvider.getEnhancedBatteryPrediction(context);
+                    if (estimate == null) {
+                        estimate = new Estimate(0, false,
+                                Estimate.AVERAGE_TIME_TO_DISCHARGE_UNKNOWN);
+                    }
+                    return BatteryInfo.getBatteryInfo(context, batteryBroadcast, stats,
+                            estimate, elapsedRealtimeUs, false);
+                });
 
         List<BatteryInfo> infos = new ArrayList<>();
         infos.add(oldinfo);
@@ -380,10 +380,13 @@ public class PowerUsageSummary extends PowerUsageBase implements OnLongClickList
                 mBatteryUtils.calculateScreenUsageTime(mStatsHelper), false));
 
         final long elapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
-        Intent batteryBroadcast = context.registerReceiver(null,
+        final Intent batteryBroadcast = context.registerReceiver(null,
                 new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-        BatteryInfo batteryInfo = BatteryInfo.getBatteryInfoOld(context, batteryBroadcast,
-                mStatsHelper.getStats(), elapsedRealtimeUs, false);
+        final BatteryStats stats = mStatsHelper.getStats();
+        BatteryInfo batteryInfo = BatteryInfoCache.getInstance().getOrCompute(stats,
+                batteryBroadcast, BatteryInfoCache.InfoType.SYSTEM_ESTIMATE,
+                () -> BatteryInfo.getBatteryInfoOld(context, batteryBroadcast, stats,
+                        elapsedRealtimeUs, false));
         mBatteryTempPref.setSubtitle(BatteryInfo.batteryTemp+" "+Character.toString ((char) 176) + "C");
         updateHeaderPreference(batteryInfo);
     }
@@ -545,15 +548,30 @@ public class PowerUsageSummary extends PowerUsageBase implements OnLongClickList
         private final Context mContext;
         private final SummaryLoader mLoader;
         private final BatteryBroadcastReceiver mBatteryBroadcastReceiver;
+        private final BatteryInfoCache mBatteryInfoCache;
 
         private SummaryProvider(Context context, SummaryLoader loader) {
             mContext = context;
             mLoader = loader;
+            mBatteryInfoCache = BatteryInfoCache.getInstance();
             mBatteryBroadcastReceiver = new BatteryBroadcastReceiver(mContext);
             mBatteryBroadcastReceiver.setBatteryChangedListener(type -> {
+                // Reuse the label of a recent tick with the same battery state rather than
+                // loading a new BatteryStatsHelper every time the dashboard is resumed.
+                final Intent batteryBroadcast = mContext.registerReceiver(null,
+                        new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+                final BatteryInfo cachedInfo = mBatteryInfoCache.get(null /* stats */,
+                        batteryBroadcast, BatteryInfoCache.InfoType.SUMMARY);
+                if (cachedInfo != null) {
+                    mLoader.setSummary(SummaryProvider.this,
+                            getDashboardLabel(mContext, cachedInfo));
+                    return;
+                }
                 BatteryInfo.getBatteryInfo(mContext, new BatteryInfo.Callback() {
                     @Override
                     public void onBatteryInfoLoaded(BatteryInfo info) {
+                        mBatteryInfoCache.put(null /* stats */, batteryBroadcast,
+                                BatteryInfoCache.InfoType.SUMMARY, info);
                         mLoader.setSummary(SummaryProvider.this, getDashboardLabel(mContext, info));
                     }
                 }, true /* shortString */);
@@ -66,6 +66,10 @@ public class AnomalyCleanupJobService extends JobService {
             batteryDatabaseManager.deleteAllAnomaliesBeforeTimeStamp(
                     System.currentTimeMillis() - TimeUnit.DAYS.toMillis(
                             policy.dataHistoryRetainDay));
+            if (policy.dataHistoryCompactionEnabled) {
+                batteryDatabaseManager.compactAnomalies();
+            }
+            batteryDatabaseManager.deleteOldestAnomalies(policy.dataHistoryMaxRows);
             jobFinished(params, false /* wantsReschedule */);
         });
 
@@ -34,7 +34,10 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "BatteryDatabaseHelper";
 
     private static final String DATABASE_NAME = "battery_settings.db";
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 5;
+    // Version that only lacks INDEX_ANOMALY_TIME_STATE and ANOMALY_COUNT, so its data can be kept
+    // on upgrade.
+    private static final int DATABASE_VERSION_WITHOUT_INDEX_AND_COUNT = 4;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({State.NEW,
@@ -50,6 +53,13 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
         String TABLE_ANOMALY = "anomaly";
     }
 
+    public interface Indexes {
+        /**
+         * Index for the queries of anomalies newer than a time stamp and in a given state.
+         */
+        String INDEX_ANOMALY_TIME_STATE = "anomaly_time_state_index";
+    }
+
     public interface AnomalyColumns {
         /**
          * The package name of the anomaly app
@@ -73,6 +83,10 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
          * The time when anomaly happens
          */
         String TIME_STAMP_MS = "time_stamp_ms";
+        /**
+         * The number of anomalies collapsed into this row by the compaction, 1 otherwise
+         */
+        String ANOMALY_COUNT = "anomaly_count";
     }
 
     private static final String CREATE_ANOMALY_TABLE =
@@ -88,10 +102,21 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
                     " INTEGER NOT NULL, " +
                     AnomalyColumns.TIME_STAMP_MS +
                     " INTEGER NOT NULL, " +
+                    AnomalyColumns.ANOMALY_COUNT +
+                    " INTEGER NOT NULL DEFAULT 1, " +
                     " PRIMARY KEY (" + AnomalyColumns.UID + "," + AnomalyColumns.ANOMALY_TYPE + ","
                     + AnomalyColumns.ANOMALY_STATE + "," + AnomalyColumns.TIME_STAMP_MS + ")"
                     + ")";
 
+    private static final String CREATE_ANOMALY_TIME_STATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + Indexes.INDEX_ANOMALY_TIME_STATE + " ON "
+                    + Tables.TABLE_ANOMALY + "(" + AnomalyColumns.TIME_STAMP_MS + ","
+                    + AnomalyColumns.ANOMALY_STATE + ")";
+
+    private static final String ADD_ANOMALY_COUNT_COLUMN =
+            "ALTER TABLE " + Tables.TABLE_ANOMALY + " ADD COLUMN " + AnomalyColumns.ANOMALY_COUNT
+                    + " INTEGER NOT NULL DEFAULT 1";
+
     private static AnomalyDatabaseHelper sSingleton;
 
     public static synchronized AnomalyDatabaseHelper getInstance(Context context) {
@@ -103,6 +128,8 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private AnomalyDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Let the queries of the battery tips run while anomalies are inserted.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -112,12 +139,16 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private void bootstrapDB(SQLiteDatabase db) {
         db.execSQL(CREATE_ANOMALY_TABLE);
+        db.execSQL(CREATE_ANOMALY_TIME_STATE_INDEX);
         Log.i(TAG, "Bootstrapped database");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion < DATABASE_VERSION) {
+        if (oldVersion == DATABASE_VERSION_WITHOUT_INDEX_AND_COUNT) {
+            db.execSQL(CREATE_ANOMALY_TIME_STATE_INDEX);
+            db.execSQL(ADD_ANOMALY_COUNT_COLUMN);
+        } else if (oldVersion < DATABASE_VERSION) {
             Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
                     "Index needs to be rebuilt for schema version '" + newVersion + "'.");
             // We need to drop the tables and recreate them
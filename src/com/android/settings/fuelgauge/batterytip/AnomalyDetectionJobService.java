@@ -63,6 +63,8 @@ public class AnomalyDetectionJobService extends JobService {
     static final int STATSD_UID_FILED = 1;
     @VisibleForTesting
     static final long MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(30);
+    @VisibleForTesting
+    static final int MAX_BATCH_SIZE = 50;
 
     private final Object mLock = new Object();
     @GuardedBy("mLock")
@@ -103,13 +105,22 @@ public class AnomalyDetectionJobService extends JobService {
             final MetricsFeatureProvider metricsFeatureProvider = FeatureFactory
                     .getFactory(this).getMetricsFeatureProvider();
 
-            for (JobWorkItem item = dequeueWork(params); item != null; item = dequeueWork(params)) {
-                saveAnomalyToDatabase(context, userManager,
+            // Save the pending anomalies in batches, so a burst of anomalies is written in a few
+            // transactions instead of one per anomaly.
+            for (List<JobWorkItem> items = dequeueWorkBatch(params); !items.isEmpty();
+                    items = dequeueWorkBatch(params)) {
+                final List<Bundle> bundles = new ArrayList<>(items.size());
+                for (JobWorkItem item : items) {
+                    bundles.add(item.getIntent().getExtras());
+                }
+                saveAnomaliesToDatabase(context, userManager,
                         batteryDatabaseManager, batteryUtils, policy, powerWhitelistBackend,
                         contentResolver, powerUsageFeatureProvider, metricsFeatureProvider,
-                        item.getIntent().getExtras());
+                        bundles);
 
-                completeWork(params, item);
+                for (JobWorkItem item : items) {
+                    completeWork(params, item);
+                }
             }
         });
 
@@ -124,11 +135,30 @@ public class AnomalyDetectionJobService extends JobService {
         return true; // Need to reschedule
     }
 
+    /**
+     * Save the anomalies of all the {@code bundles} to database in a single transaction.
+     */
     @VisibleForTesting
-    void saveAnomalyToDatabase(Context context, UserManager userManager,
+    void saveAnomaliesToDatabase(Context context, UserManager userManager,
             BatteryDatabaseManager databaseManager, BatteryUtils batteryUtils,
             BatteryTipPolicy policy, PowerWhitelistBackend powerWhitelistBackend,
             ContentResolver contentResolver, PowerUsageFeatureProvider powerUsageFeatureProvider,
+            MetricsFeatureProvider metricsFeatureProvider, List<Bundle> bundles) {
+        final List<BatteryDatabaseManager.AnomalyRecord> anomalies = new ArrayList<>();
+        for (Bundle bundle : bundles) {
+            addAnomaly(context, userManager, anomalies, batteryUtils, policy,
+                    powerWhitelistBackend, contentResolver, powerUsageFeatureProvider,
+                    metricsFeatureProvider, bundle);
+        }
+        if (!anomalies.isEmpty()) {
+            databaseManager.insertAnomalies(anomalies);
+        }
+    }
+
+    private void addAnomaly(Context context, UserManager userManager,
+            List<BatteryDatabaseManager.AnomalyRecord> anomalies, BatteryUtils batteryUtils,
+            BatteryTipPolicy policy, PowerWhitelistBackend powerWhitelistBackend,
+            ContentResolver contentResolver, PowerUsageFeatureProvider powerUsageFeatureProvider,
             MetricsFeatureProvider metricsFeatureProvider, Bundle bundle) {
         // The Example of intentDimsValue is: 35:{1:{1:{1:10013|}|}|}
         final StatsDimensionsValue intentDimsValue =
@@ -164,13 +194,13 @@ public class AnomalyDetectionJobService extends JobService {
                     // Auto restrict this app
                     batteryUtils.setForceAppStandby(uid, packageName,
                             AppOpsManager.MODE_IGNORED);
-                    databaseManager.insertAnomaly(uid, packageName, anomalyInfo.anomalyType,
-                            AnomalyDatabaseHelper.State.AUTO_HANDLED,
-                            timeMs);
+                    anomalies.add(new BatteryDatabaseManager.AnomalyRecord(uid, packageName,
+                            anomalyInfo.anomalyType, AnomalyDatabaseHelper.State.AUTO_HANDLED,
+                            timeMs));
                 } else {
-                    databaseManager.insertAnomaly(uid, packageName, anomalyInfo.anomalyType,
-                            AnomalyDatabaseHelper.State.NEW,
-                            timeMs);
+                    anomalies.add(new BatteryDatabaseManager.AnomalyRecord(uid, packageName,
+                            anomalyInfo.anomalyType, AnomalyDatabaseHelper.State.NEW,
+                            timeMs));
                 }
                 metricsFeatureProvider.action(context,
                         MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
@@ -217,6 +247,19 @@ public class AnomalyDetectionJobService extends JobService {
         return UID_NULL;
     }
 
+    /**
+     * @return up to {@link #MAX_BATCH_SIZE} pending work items, or an empty list if there are none.
+     */
+    @VisibleForTesting
+    List<JobWorkItem> dequeueWorkBatch(JobParameters parameters) {
+        final List<JobWorkItem> items = new ArrayList<>();
+        for (JobWorkItem item = dequeueWork(parameters); item != null;
+                item = items.size() < MAX_BATCH_SIZE ? dequeueWork(parameters) : null) {
+            items.add(item);
+        }
+        return items;
+    }
+
     @VisibleForTesting
     JobWorkItem dequeueWork(JobParameters parameters) {
         synchronized (mLock) {
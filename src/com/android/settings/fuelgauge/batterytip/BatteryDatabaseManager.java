@@ -16,8 +16,8 @@
 
 package com.android.settings.fuelgauge.batterytip;
 
-import static android.database.sqlite.SQLiteDatabase.CONFLICT_IGNORE;
-
+import static com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper.AnomalyColumns
+        .ANOMALY_COUNT;
 import static com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper.AnomalyColumns
         .ANOMALY_STATE;
 import static com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper.AnomalyColumns
@@ -32,10 +32,17 @@ import static com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper.Ta
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.ArrayMap;
+import android.util.Log;
+import android.util.SparseArray;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -44,19 +51,60 @@ import java.util.Map;
 /**
  * Database manager for battery data. Now it only contains anomaly data stored in {@link AppInfo}.
  *
- * This manager may be accessed by multi-threads. All the database related methods are synchronized
- * so each operation won't be interfered by other threads.
+ * This manager may be accessed by multi-threads. Write operations are serialized by a write lock
+ * so each operation won't be interfered by other threads. The database runs in write-ahead logging
+ * mode, so queries use their own connection and don't wait for the writes.
  */
 public class BatteryDatabaseManager {
+    private static final String TAG = "BatteryDatabaseManager";
+
+    @VisibleForTesting
+    static final String KEY_LAST_COMPACTION_TIME_MS = "anomaly_last_compaction_time_ms";
+
+    private static final String TABLE_ANOMALY_COMPACTED = "anomaly_compacted";
+    // Columns of TABLE_ANOMALY that are kept by the compaction.
+    private static final String ANOMALY_COLUMNS = UID + "," + PACKAGE_NAME + "," + ANOMALY_TYPE
+            + "," + ANOMALY_STATE + "," + TIME_STAMP_MS + "," + ANOMALY_COUNT;
+    // Repeated anomalies with the same uid, type and state are collapsed per day (in UTC).
+    private static final String COMPACTION_GROUP_BY = UID + "," + ANOMALY_TYPE + ","
+            + ANOMALY_STATE + "," + TIME_STAMP_MS + "/" + DateUtils.DAY_IN_MILLIS;
+
+    private static final String INSERT_ANOMALY = "INSERT OR IGNORE INTO " + TABLE_ANOMALY + " ("
+            + UID + "," + PACKAGE_NAME + "," + ANOMALY_TYPE + "," + ANOMALY_STATE + ","
+            + TIME_STAMP_MS + ") VALUES (?,?,?,?,?)";
+
     private static BatteryDatabaseManager sSingleton;
 
+    private final Object mWriteLock = new Object();
+    private final Context mContext;
     private AnomalyDatabaseHelper mDatabaseHelper;
 
+    /**
+     * An anomaly to insert with {@link #insertAnomalies(List)}.
+     */
+    public static class AnomalyRecord {
+        public final int uid;
+        public final String packageName;
+        public final int type;
+        public final int anomalyState;
+        public final long timestampMs;
+
+        public AnomalyRecord(int uid, String packageName, int type, int anomalyState,
+                long timestampMs) {
+            this.uid = uid;
+            this.packageName = packageName;
+            this.type = type;
+            this.anomalyState = anomalyState;
+            this.timestampMs = timestampMs;
+        }
+    }
+
     private BatteryDatabaseManager(Context context) {
+        mContext = context.getApplicationContext();
         mDatabaseHelper = AnomalyDatabaseHelper.getInstance(context);
     }
 
-    public static BatteryDatabaseManager getInstance(Context context) {
+    public static synchronized BatteryDatabaseManager getInstance(Context context) {
         if (sSingleton == null) {
             sSingleton = new BatteryDatabaseManager(context);
         }
@@ -73,59 +121,114 @@ public class BatteryDatabaseManager {
      * @param timestampMs  the time when it is happened
      * @return {@code true} if insert operation succeed
      */
-    public synchronized boolean insertAnomaly(int uid, String packageName, int type,
+    public boolean insertAnomaly(int uid, String packageName, int type,
             int anomalyState,
             long timestampMs) {
-        try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
-            ContentValues values = new ContentValues();
-            values.put(UID, uid);
-            values.put(PACKAGE_NAME, packageName);
-            values.put(ANOMALY_TYPE, type);
-            values.put(ANOMALY_STATE, anomalyState);
-            values.put(TIME_STAMP_MS, timestampMs);
-            return db.insertWithOnConflict(TABLE_ANOMALY, null, values, CONFLICT_IGNORE) != -1;
-        }
+        return insertAnomalies(Collections.singletonList(
+                new AnomalyRecord(uid, packageName, type, anomalyState, timestampMs))) == 1;
     }
 
     /**
-     * Query all the anomalies that happened after {@code timestampMsAfter} and with {@code state}.
+     * Insert a batch of anomaly logs to database in a single transaction. Anomalies that are
+     * already in the database are ignored.
+     *
+     * @return the number of anomalies inserted
      */
-    public synchronized List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
-        final List<AppInfo> appInfos = new ArrayList<>();
-        try (SQLiteDatabase db = mDatabaseHelper.getReadableDatabase()) {
-            final String[] projection = {PACKAGE_NAME, ANOMALY_TYPE, UID};
-            final String orderBy = AnomalyDatabaseHelper.AnomalyColumns.TIME_STAMP_MS + " DESC";
-            final Map<Integer, AppInfo.Builder> mAppInfoBuilders = new ArrayMap<>();
-            final String selection = TIME_STAMP_MS + " > ? AND " + ANOMALY_STATE + " = ? ";
-            final String[] selectionArgs = new String[]{String.valueOf(timestampMsAfter),
-                    String.valueOf(state)};
-
-            try (Cursor cursor = db.query(TABLE_ANOMALY, projection, selection, selectionArgs,
-                    null /* groupBy */, null /* having */, orderBy)) {
-                while (cursor.moveToNext()) {
-                    final int uid = cursor.getInt(cursor.getColumnIndex(UID));
-                    if (!mAppInfoBuilders.containsKey(uid)) {
-                        final AppInfo.Builder builder = new AppInfo.Builder()
-                                .setUid(uid)
-                                .setPackageName(
-                                        cursor.getString(cursor.getColumnIndex(PACKAGE_NAME)));
-                        mAppInfoBuilders.put(uid, builder);
+    public int insertAnomalies(List<AnomalyRecord> anomalies) {
+        if (anomalies.isEmpty()) {
+            return 0;
+        }
+        int insertedCount = 0;
+        synchronized (mWriteLock) {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+            db.beginTransaction();
+            try (SQLiteStatement statement = db.compileStatement(INSERT_ANOMALY)) {
+                for (AnomalyRecord anomaly : anomalies) {
+                    statement.clearBindings();
+                    statement.bindLong(1, anomaly.uid);
+                    if (anomaly.packageName != null) {
+                        statement.bindString(2, anomaly.packageName);
+                    }
+                    statement.bindLong(3, anomaly.type);
+                    statement.bindLong(4, anomaly.anomalyState);
+                    statement.bindLong(5, anomaly.timestampMs);
+                    if (statement.executeInsert() != -1) {
+                        insertedCount++;
                     }
-                    mAppInfoBuilders.get(uid).addAnomalyType(
-                            cursor.getInt(cursor.getColumnIndex(ANOMALY_TYPE)));
                 }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
+        }
+        return insertedCount;
+    }
+
+    /**
+     * Query all the anomalies that happened after {@code timestampMsAfter} and with {@code state}.
+     */
+    public List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
+        return queryAnomaliesByState(timestampMsAfter, new int[]{state}).get(state);
+    }
+
+    /**
+     * Query all the anomalies that happened after {@code timestampMsAfter} and with any of
+     * {@code states}, in a single query.
+     *
+     * @return the anomalies grouped by state. Every state of {@code states} is present, mapped to
+     * an empty list if it has no anomalies.
+     */
+    public SparseArray<List<AppInfo>> queryAnomaliesByState(long timestampMsAfter,
+            int[] states) {
+        final SparseArray<Map<Integer, AppInfo.Builder>> appInfoBuilders = new SparseArray<>();
+        final String[] selectionArgs = new String[states.length + 1];
+        selectionArgs[0] = String.valueOf(timestampMsAfter);
+        for (int i = 0; i < states.length; i++) {
+            appInfoBuilders.put(states[i], new ArrayMap<>());
+            selectionArgs[i + 1] = String.valueOf(states[i]);
+        }
+
+        final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+        final String[] projection = {PACKAGE_NAME, ANOMALY_TYPE, UID, ANOMALY_STATE};
+        final String orderBy = AnomalyDatabaseHelper.AnomalyColumns.TIME_STAMP_MS + " DESC";
+        final String selection = TIME_STAMP_MS + " > ? AND " + ANOMALY_STATE + " IN ("
+                + TextUtils.join(",", Collections.nCopies(states.length, "?")) + ")";
 
-            for (Integer uid : mAppInfoBuilders.keySet()) {
-                appInfos.add(mAppInfoBuilders.get(uid).build());
+        try (Cursor cursor = db.query(TABLE_ANOMALY, projection, selection, selectionArgs,
+                null /* groupBy */, null /* having */, orderBy)) {
+            final int uidIndex = cursor.getColumnIndex(UID);
+            final int packageNameIndex = cursor.getColumnIndex(PACKAGE_NAME);
+            final int anomalyTypeIndex = cursor.getColumnIndex(ANOMALY_TYPE);
+            final int anomalyStateIndex = cursor.getColumnIndex(ANOMALY_STATE);
+            while (cursor.moveToNext()) {
+                final Map<Integer, AppInfo.Builder> builders =
+                        appInfoBuilders.get(cursor.getInt(anomalyStateIndex));
+                final int uid = cursor.getInt(uidIndex);
+                AppInfo.Builder builder = builders.get(uid);
+                if (builder == null) {
+                    builder = new AppInfo.Builder()
+                            .setUid(uid)
+                            .setPackageName(cursor.getString(packageNameIndex));
+                    builders.put(uid, builder);
+                }
+                builder.addAnomalyType(cursor.getInt(anomalyTypeIndex));
             }
         }
 
+        final SparseArray<List<AppInfo>> appInfos = new SparseArray<>(states.length);
+        for (int i = 0, size = appInfoBuilders.size(); i < size; i++) {
+            final List<AppInfo> stateAppInfos = new ArrayList<>();
+            for (AppInfo.Builder builder : appInfoBuilders.valueAt(i).values()) {
+                stateAppInfos.add(builder.build());
+            }
+            appInfos.put(appInfoBuilders.keyAt(i), stateAppInfos);
+        }
         return appInfos;
     }
 
-    public synchronized void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
-        try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
+    public void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
+        synchronized (mWriteLock) {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
             db.delete(TABLE_ANOMALY, TIME_STAMP_MS + " < ?",
                     new String[]{String.valueOf(timestampMs)});
         }
@@ -137,14 +240,15 @@ public class BatteryDatabaseManager {
      * @param appInfos represents the anomalies
      * @param state    which state to update to
      */
-    public synchronized void updateAnomalies(List<AppInfo> appInfos, int state) {
+    public void updateAnomalies(List<AppInfo> appInfos, int state) {
         if (!appInfos.isEmpty()) {
             final int size = appInfos.size();
             final String[] whereArgs = new String[size];
             for (int i = 0; i < size; i++) {
                 whereArgs[i] = appInfos.get(i).packageName;
             }
-            try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
+            synchronized (mWriteLock) {
+                final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
                 final ContentValues values = new ContentValues();
                 values.put(ANOMALY_STATE, state);
                 db.update(TABLE_ANOMALY, values, PACKAGE_NAME + " IN (" + TextUtils.join(",",
@@ -152,4 +256,89 @@ public class BatteryDatabaseManager {
             }
         }
     }
+
+    /**
+     * Collapse the anomalies of an app that happened in the same day, with the same type and
+     * state, into a single row. The row keeps the latest time stamp and counts the anomalies in
+     * {@link AnomalyDatabaseHelper.AnomalyColumns#ANOMALY_COUNT}.
+     *
+     * @return the number of rows removed
+     */
+    public int compactAnomalies() {
+        int removedCount = 0;
+        synchronized (mWriteLock) {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                final long rowCount = DatabaseUtils.queryNumEntries(db, TABLE_ANOMALY);
+                final long groupCount = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM"
+                        + " (SELECT 1 FROM " + TABLE_ANOMALY + " GROUP BY " + COMPACTION_GROUP_BY
+                        + ")", null /* selectionArgs */);
+                if (groupCount < rowCount) {
+                    db.execSQL("CREATE TEMP TABLE " + TABLE_ANOMALY_COMPACTED + " AS SELECT "
+                            + UID + "," + PACKAGE_NAME + "," + ANOMALY_TYPE + "," + ANOMALY_STATE
+                            + ",MAX(" + TIME_STAMP_MS + ") AS " + TIME_STAMP_MS
+                            + ",SUM(" + ANOMALY_COUNT + ") AS " + ANOMALY_COUNT
+                            + " FROM " + TABLE_ANOMALY + " GROUP BY " + COMPACTION_GROUP_BY);
+                    db.delete(TABLE_ANOMALY, null /* whereClause */, null /* whereArgs */);
+                    db.execSQL("INSERT INTO " + TABLE_ANOMALY + " (" + ANOMALY_COLUMNS
+                            + ") SELECT " + ANOMALY_COLUMNS + " FROM " + TABLE_ANOMALY_COMPACTED);
+                    db.execSQL("DROP TABLE " + TABLE_ANOMALY_COMPACTED);
+                    removedCount = (int) (rowCount - groupCount);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        mContext.getSharedPreferences(AnomalyConfigJobService.PREF_DB, Context.MODE_PRIVATE)
+                .edit()
+                .putLong(KEY_LAST_COMPACTION_TIME_MS, System.currentTimeMillis())
+                .apply();
+        Log.i(TAG, "Compacted anomaly database, removed rows: " + removedCount);
+        return removedCount;
+    }
+
+    /**
+     * Delete the oldest anomalies until at most {@code maxRows} rows are left.
+     *
+     * @return the number of rows removed
+     */
+    public int deleteOldestAnomalies(int maxRows) {
+        synchronized (mWriteLock) {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+            final long excessCount = DatabaseUtils.queryNumEntries(db, TABLE_ANOMALY) - maxRows;
+            if (excessCount <= 0) {
+                return 0;
+            }
+            return db.delete(TABLE_ANOMALY, "rowid IN (SELECT rowid FROM " + TABLE_ANOMALY
+                    + " ORDER BY " + TIME_STAMP_MS + " ASC LIMIT ?)",
+                    new String[]{String.valueOf(excessCount)});
+        }
+    }
+
+    /**
+     * @return the number of rows in anomaly database
+     */
+    public long getAnomalyRowCount() {
+        return DatabaseUtils.queryNumEntries(mDatabaseHelper.getReadableDatabase(),
+                TABLE_ANOMALY);
+    }
+
+    /**
+     * @return the size of anomaly database on disk, including its write-ahead log
+     */
+    public long getDatabaseSizeBytes() {
+        final File databaseFile = mContext.getDatabasePath(mDatabaseHelper.getDatabaseName());
+        final File walFile = new File(databaseFile.getPath() + "-wal");
+        return databaseFile.length() + walFile.length();
+    }
+
+    /**
+     * @return the time of the last {@link #compactAnomalies()}, or 0 if it never ran
+     */
+    public long getLastCompactionTimeMs() {
+        return mContext.getSharedPreferences(AnomalyConfigJobService.PREF_DB,
+                Context.MODE_PRIVATE).getLong(KEY_LAST_COMPACTION_TIME_MS, 0);
+    }
 }
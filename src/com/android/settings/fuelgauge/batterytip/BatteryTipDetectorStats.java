@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * Latency of every {@link com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector}
+ * run by {@link BatteryTipLoader}, exported through
+ * {@link com.android.settings.SettingsDumpService}.
+ */
+public class BatteryTipDetectorStats {
+
+    private static BatteryTipDetectorStats sInstance;
+
+    private final Map<String, DetectorStats> mDetectorStats = new ArrayMap<>();
+
+    public static synchronized BatteryTipDetectorStats getInstance() {
+        if (sInstance == null) {
+            sInstance = new BatteryTipDetectorStats();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    BatteryTipDetectorStats() {
+    }
+
+    /**
+     * Record that {@param detector} finished its detection in {@param latencyMs}.
+     */
+    synchronized void recordLatency(String detector, long latencyMs) {
+        final DetectorStats stats = getDetectorStats(detector);
+        stats.runCount++;
+        stats.lastLatencyMs = latencyMs;
+        stats.totalLatencyMs += latencyMs;
+        stats.maxLatencyMs = Math.max(stats.maxLatencyMs, latencyMs);
+    }
+
+    /**
+     * Record that the fallback tip of {@param detector} was used, either because it didn't finish
+     * before the deadline or because it failed.
+     */
+    synchronized void recordFallback(String detector, boolean timedOut) {
+        final DetectorStats stats = getDetectorStats(detector);
+        if (timedOut) {
+            stats.timeoutCount++;
+        } else {
+            stats.errorCount++;
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getRunCount(String detector) {
+        final DetectorStats stats = mDetectorStats.get(detector);
+        return stats == null ? 0 : stats.runCount;
+    }
+
+    @VisibleForTesting
+    synchronized int getTimeoutCount(String detector) {
+        final DetectorStats stats = mDetectorStats.get(detector);
+        return stats == null ? 0 : stats.timeoutCount;
+    }
+
+    public synchronized JSONObject dumpToJson() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        for (Map.Entry<String, DetectorStats> entry : mDetectorStats.entrySet()) {
+            final DetectorStats stats = entry.getValue();
+            final JSONObject detectorObj = new JSONObject();
+            detectorObj.put("runs", stats.runCount);
+            detectorObj.put("last_ms", stats.lastLatencyMs);
+            detectorObj.put("max_ms", stats.maxLatencyMs);
+            detectorObj.put("avg_ms",
+                    stats.runCount == 0 ? 0 : stats.totalLatencyMs / stats.runCount);
+            detectorObj.put("timeouts", stats.timeoutCount);
+            detectorObj.put("errors", stats.errorCount);
+            obj.put(entry.getKey(), detectorObj);
+        }
+        return obj;
+    }
+
+    private DetectorStats getDetectorStats(String detector) {
+        DetectorStats stats = mDetectorStats.get(detector);
+        if (stats == null) {
+            stats = new DetectorStats();
+            mDetectorStats.put(detector, stats);
+        }
+        return stats;
+    }
+
+    private static class DetectorStats {
+        int runCount;
+        long lastLatencyMs;
+        long maxLatencyMs;
+        long totalLatencyMs;
+        int timeoutCount;
+        int errorCount;
+    }
+}
@@ -17,12 +17,15 @@
 package com.android.settings.fuelgauge.batterytip;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.annotation.VisibleForTesting;
+import android.util.Log;
 
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.Estimate;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.EarlyWarningDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.HighUsageDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.LowBatteryDetector;
@@ -32,29 +35,60 @@ import com.android.settings.fuelgauge.batterytip.detectors.SummaryDetector;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
 import com.android.settings.fuelgauge.batterytip.tips.LowBatteryTip;
 import com.android.settings.fuelgauge.batterytip.tips.SummaryTip;
+import com.android.settings.utils.BackgroundThreadFactory;
 import com.android.settingslib.utils.AsyncLoader;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Loader to compute and return a battery tip list. It will always return a full length list even
  * though some tips may have state {@code BaseBatteryTip.StateType.INVISIBLE}.
+ *
+ * The detectors run concurrently with a shared deadline, so a slow detector can't hold back the
+ * whole list.
  */
 public class BatteryTipLoader extends AsyncLoader<List<BatteryTip>> {
     private static final String TAG = "BatteryTipLoader";
 
     private static final boolean USE_FAKE_DATA = false;
 
+    /**
+     * Number of detectors run at the same time. Most of them are cheap, so a few threads are enough
+     * to keep the slow ones from delaying the others.
+     */
+    private static final int DETECTOR_THREAD_COUNT = 3;
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 30;
+    @VisibleForTesting
+    static final long DETECT_TIMEOUT_MS = 2000;
+
+    private static ExecutorService sDetectorExecutor;
+
     private BatteryStatsHelper mBatteryStatsHelper;
     @VisibleForTesting
     BatteryUtils mBatteryUtils;
+    @VisibleForTesting
+    ExecutorService mExecutor;
+    @VisibleForTesting
+    BatteryTipDetectorStats mDetectorStats;
+    @VisibleForTesting
+    long mDetectTimeoutMs;
 
     public BatteryTipLoader(Context context, BatteryStatsHelper batteryStatsHelper) {
         super(context);
         mBatteryStatsHelper = batteryStatsHelper;
         mBatteryUtils = BatteryUtils.getInstance(context);
+        mExecutor = getDetectorExecutor();
+        mDetectorStats = BatteryTipDetectorStats.getInstance();
+        mDetectTimeoutMs = DETECT_TIMEOUT_MS;
     }
 
     @Override
@@ -62,23 +96,92 @@ public class BatteryTipLoader extends AsyncLoader<List<BatteryTip>> {
         if (USE_FAKE_DATA) {
             return getFakeData();
         }
-        final List<BatteryTip> tips = new ArrayList<>();
         final BatteryTipPolicy policy = new BatteryTipPolicy(getContext());
         final BatteryInfo batteryInfo = mBatteryUtils.getBatteryInfo(mBatteryStatsHelper, TAG);
         final Context context = getContext();
 
-        tips.add(new LowBatteryDetector(context, policy, batteryInfo).detect());
-        tips.add(new HighUsageDetector(context, policy, mBatteryStatsHelper,
-                batteryInfo.discharging).detect());
-        tips.add(new SmartBatteryDetector(policy, context.getContentResolver()).detect());
-        tips.add(new EarlyWarningDetector(policy, context).detect());
-        tips.add(new SummaryDetector(policy, batteryInfo.averageTimeToDischarge).detect());
-        tips.add(new RestrictAppDetector(context, policy).detect());
+        final List<BatteryTipDetector> detectors = new ArrayList<>();
+        detectors.add(new LowBatteryDetector(context, policy, batteryInfo));
+        detectors.add(new HighUsageDetector(context, policy, mBatteryStatsHelper,
+                batteryInfo.discharging));
+        detectors.add(new SmartBatteryDetector(policy, context.getContentResolver()));
+        detectors.add(new EarlyWarningDetector(policy, context));
+        detectors.add(new SummaryDetector(policy, batteryInfo.averageTimeToDischarge));
+        detectors.add(new RestrictAppDetector(context, policy));
 
+        final List<BatteryTip> tips = detectAll(detectors);
         Collections.sort(tips);
         return tips;
     }
 
+    /**
+     * Run all {@param detectors} concurrently and wait for them until {@link #mDetectTimeoutMs}.
+     * A detector that fails or misses the deadline contributes its fallback tip instead.
+     *
+     * @return the tips, in the same order as {@param detectors}
+     */
+    @VisibleForTesting
+    List<BatteryTip> detectAll(List<BatteryTipDetector> detectors) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final int size = detectors.size();
+        final List<Future<BatteryTip>> futures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final BatteryTipDetector detector = detectors.get(i);
+            futures.add(mExecutor.submit(() -> detect(detector)));
+        }
+
+        final List<BatteryTip> tips = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final BatteryTipDetector detector = detectors.get(i);
+            final Future<BatteryTip> future = futures.get(i);
+            BatteryTip tip;
+            try {
+                final long remainingMs =
+                        startTime + mDetectTimeoutMs - SystemClock.elapsedRealtime();
+                tip = future.get(Math.max(remainingMs, 0), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                Log.w(TAG, getDetectorName(detector) + " timed out");
+                future.cancel(true /* mayInterruptIfRunning */);
+                mDetectorStats.recordFallback(getDetectorName(detector), true /* timedOut */);
+                tip = detector.getFallbackTip();
+            } catch (ExecutionException e) {
+                Log.e(TAG, getDetectorName(detector) + " failed", e.getCause());
+                mDetectorStats.recordFallback(getDetectorName(detector), false /* timedOut */);
+                tip = detector.getFallbackTip();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true /* mayInterruptIfRunning */);
+                tip = detector.getFallbackTip();
+            }
+            tips.add(tip);
+        }
+
+        return tips;
+    }
+
+    private BatteryTip detect(BatteryTipDetector detector) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final BatteryTip tip = detector.detect();
+        mDetectorStats.recordLatency(getDetectorName(detector),
+                SystemClock.elapsedRealtime() - startTime);
+        return tip;
+    }
+
+    private static String getDetectorName(BatteryTipDetector detector) {
+        return detector.getClass().getSimpleName();
+    }
+
+    private static synchronized ExecutorService getDetectorExecutor() {
+        if (sDetectorExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(DETECTOR_THREAD_COUNT,
+                    DETECTOR_THREAD_COUNT, IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new BackgroundThreadFactory(TAG));
+            executor.allowCoreThreadTimeOut(true);
+            sDetectorExecutor = executor;
+        }
+        return sDetectorExecutor;
+    }
+
     @Override
     protected void onDiscardResult(List<BatteryTip> result) {
     }
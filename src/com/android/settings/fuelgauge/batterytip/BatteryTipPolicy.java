@@ -45,6 +45,9 @@ public class BatteryTipPolicy {
     private static final String KEY_LOW_BATTERY_ENABLED = "low_battery_enabled";
     private static final String KEY_LOW_BATTERY_HOUR = "low_battery_hour";
     private static final String KEY_DATA_HISTORY_RETAIN_DAY = "data_history_retain_day";
+    private static final String KEY_DATA_HISTORY_COMPACTION_ENABLED =
+            "data_history_compaction_enabled";
+    private static final String KEY_DATA_HISTORY_MAX_ROWS = "data_history_max_rows";
     private static final String KEY_EXCESSIVE_BG_DRAIN_PERCENTAGE = "excessive_bg_drain_percentage";
 
     private static final String KEY_TEST_BATTERY_SAVER_TIP = "test_battery_saver_tip";
@@ -158,6 +161,23 @@ public class BatteryTipPolicy {
      */
     public final int dataHistoryRetainDay;
 
+    /**
+     * {@code true} if repeated anomalies of an app in a day are collapsed into a single row of
+     * anomaly database
+     *
+     * @see Settings.Global#BATTERY_TIP_CONSTANTS
+     * @see #KEY_DATA_HISTORY_COMPACTION_ENABLED
+     */
+    public final boolean dataHistoryCompactionEnabled;
+
+    /**
+     * Max number of rows kept in anomaly database, the oldest ones are deleted first
+     *
+     * @see Settings.Global#BATTERY_TIP_CONSTANTS
+     * @see #KEY_DATA_HISTORY_MAX_ROWS
+     */
+    public final int dataHistoryMaxRows;
+
     /**
      * Battery drain percentage threshold for excessive background anomaly(i.e. 10%)
      *
@@ -233,6 +253,9 @@ public class BatteryTipPolicy {
         lowBatteryEnabled = mParser.getBoolean(KEY_LOW_BATTERY_ENABLED, true);
         lowBatteryHour = mParser.getInt(KEY_LOW_BATTERY_HOUR, 3);
         dataHistoryRetainDay = mParser.getInt(KEY_DATA_HISTORY_RETAIN_DAY, 30);
+        dataHistoryCompactionEnabled = mParser.getBoolean(KEY_DATA_HISTORY_COMPACTION_ENABLED,
+                true);
+        dataHistoryMaxRows = mParser.getInt(KEY_DATA_HISTORY_MAX_ROWS, 1000);
         excessiveBgDrainPercentage = mParser.getInt(KEY_EXCESSIVE_BG_DRAIN_PERCENTAGE, 10);
 
         testBatterySaverTip = mParser.getBoolean(KEY_TEST_BATTERY_SAVER_TIP, false);
@@ -18,6 +18,10 @@ package com.android.settings.fuelgauge.batterytip.detectors;
 
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
 
+/**
+ * Detector of a single {@link BatteryTip}. Detectors are independent from each other, so
+ * {@link com.android.settings.fuelgauge.batterytip.BatteryTipLoader} runs them concurrently.
+ */
 public interface BatteryTipDetector {
     /**
      * Detect and update the status of {@link BatteryTip}
@@ -25,4 +29,12 @@ public interface BatteryTipDetector {
      * @return a not null {@link BatteryTip}
      */
     BatteryTip detect();
+
+    /**
+     * Get the {@link BatteryTip} to show when {@link #detect()} fails or doesn't finish before the
+     * deadline. It must return quickly and must not touch the disk.
+     *
+     * @return a not null invisible {@link BatteryTip} of the same type as {@link #detect()}
+     */
+    BatteryTip getFallbackTip();
 }
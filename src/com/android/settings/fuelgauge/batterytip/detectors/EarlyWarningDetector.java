@@ -62,4 +62,9 @@ public class EarlyWarningDetector implements BatteryTipDetector {
                         : BatteryTip.StateType.INVISIBLE;
         return new EarlyWarningTip(state, powerSaveModeOn);
     }
+
+    @Override
+    public BatteryTip getFallbackTip() {
+        return new EarlyWarningTip(BatteryTip.StateType.INVISIBLE, false /* powerSaveModeOn */);
+    }
 }
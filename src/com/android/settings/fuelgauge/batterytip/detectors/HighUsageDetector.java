@@ -17,12 +17,12 @@
 package com.android.settings.fuelgauge.batterytip.detectors;
 
 import android.content.Context;
-import android.os.BatteryStats;
 import android.support.annotation.VisibleForTesting;
 import android.text.format.DateUtils;
 
 import com.android.internal.os.BatterySipper;
 import com.android.internal.os.BatteryStatsHelper;
+import com.android.settings.fuelgauge.BatterySipperAggregate;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.batterytip.BatteryTipPolicy;
 import com.android.settings.fuelgauge.batterytip.AppInfo;
@@ -69,13 +69,13 @@ public class HighUsageDetector implements BatteryTipDetector {
         if (mPolicy.highUsageEnabled && mDischarging) {
             parseBatteryData();
             if (mDataParser.isDeviceHeavilyUsed() || mPolicy.testHighUsageTip) {
-                final List<BatterySipper> batterySippers = mBatteryStatsHelper.getUsageList();
-                for (int i = 0, size = batterySippers.size(); i < size; i++) {
-                    final BatterySipper batterySipper = batterySippers.get(i);
-                    if (!mBatteryUtils.shouldHideSipper(batterySipper)) {
-                        final long foregroundTimeMs = mBatteryUtils.getProcessTimeMs(
-                                BatteryUtils.StatusType.FOREGROUND, batterySipper.uidObj,
-                                BatteryStats.STATS_SINCE_CHARGED);
+                final BatterySipperAggregate aggregate =
+                        mBatteryUtils.getSipperAggregate(mBatteryStatsHelper);
+                for (int i = 0, size = aggregate.size(); i < size; i++) {
+                    final BatterySipper batterySipper = aggregate.getSipper(i);
+                    if (!aggregate.isHidden(i)) {
+                        final long foregroundTimeMs = aggregate.getProcessTimeMs(mBatteryUtils,
+                                BatteryUtils.StatusType.FOREGROUND, i);
                         if (foregroundTimeMs >= DateUtils.MINUTE_IN_MILLIS) {
                             mHighUsageAppList.add(new AppInfo.Builder()
                                     .setUid(batterySipper.getUid())
@@ -104,6 +104,11 @@ public class HighUsageDetector implements BatteryTipDetector {
         return new HighUsageTip(lastFullChargeTimeMs, mHighUsageAppList);
     }
 
+    @Override
+    public BatteryTip getFallbackTip() {
+        return new HighUsageTip(0 /* lastFullChargeTimeMs */, new ArrayList<>());
+    }
+
     @VisibleForTesting
     void parseBatteryData() {
         BatteryInfo.parse(mBatteryStatsHelper.getStats(), mDataParser);
@@ -64,4 +64,10 @@ public class LowBatteryDetector implements BatteryTipDetector {
         return new LowBatteryTip(
                 state, powerSaveModeOn, mBatteryInfo.remainingLabel);
     }
+
+    @Override
+    public BatteryTip getFallbackTip() {
+        return new LowBatteryTip(BatteryTip.StateType.INVISIBLE, false /* powerSaveModeOn */,
+                mBatteryInfo.remainingLabel);
+    }
 }
@@ -19,6 +19,7 @@ package com.android.settings.fuelgauge.batterytip.detectors;
 import android.content.Context;
 import android.support.annotation.VisibleForTesting;
 import android.text.format.DateUtils;
+import android.util.SparseArray;
 
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
 import com.android.settings.fuelgauge.batterytip.AppInfo;
@@ -33,12 +34,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Detector whether to show summary tip. This detector should be executed as the last
- * {@link BatteryTipDetector} since it need the most up-to-date {@code visibleTips}
+ * Detector whether to show restrict app tip, based on the anomalies of the last day.
  */
 public class RestrictAppDetector implements BatteryTipDetector {
     @VisibleForTesting
     static final boolean USE_FAKE_DATA = false;
+    private static final int[] QUERY_STATES = {
+            AnomalyDatabaseHelper.State.NEW,
+            AnomalyDatabaseHelper.State.AUTO_HANDLED};
     private BatteryTipPolicy mPolicy;
     @VisibleForTesting
     BatteryDatabaseManager mBatteryDatabaseManager;
@@ -63,8 +66,11 @@ public class RestrictAppDetector implements BatteryTipDetector {
         if (mPolicy.appRestrictionEnabled) {
             // TODO(b/72385333): hook up the query timestamp to server side
             final long oneDayBeforeMs = System.currentTimeMillis() - DateUtils.DAY_IN_MILLIS;
-            final List<AppInfo> highUsageApps = mBatteryDatabaseManager.queryAllAnomalies(
-                    oneDayBeforeMs, AnomalyDatabaseHelper.State.NEW);
+            // Read both states in one query, as the auto-handled ones are needed as soon as all
+            // the new ones are filtered out.
+            final SparseArray<List<AppInfo>> anomalies =
+                    mBatteryDatabaseManager.queryAnomaliesByState(oneDayBeforeMs, QUERY_STATES);
+            final List<AppInfo> highUsageApps = anomalies.get(AnomalyDatabaseHelper.State.NEW);
             // Remove it if it doesn't have label or been restricted
             highUsageApps.removeIf(mAppLabelPredicate.or(mAppRestrictionPredicate));
             if (!highUsageApps.isEmpty()) {
@@ -72,8 +78,8 @@ public class RestrictAppDetector implements BatteryTipDetector {
                 return new RestrictAppTip(BatteryTip.StateType.NEW, highUsageApps);
             } else {
                 // Otherwise, show auto-handled one if it exists
-                final List<AppInfo> autoHandledApps = mBatteryDatabaseManager.queryAllAnomalies(
-                        oneDayBeforeMs, AnomalyDatabaseHelper.State.AUTO_HANDLED);
+                final List<AppInfo> autoHandledApps =
+                        anomalies.get(AnomalyDatabaseHelper.State.AUTO_HANDLED);
                 // Remove it if it doesn't have label or unrestricted
                 autoHandledApps.removeIf(mAppLabelPredicate.or(mAppRestrictionPredicate.negate()));
                 return new RestrictAppTip(autoHandledApps.isEmpty() ? BatteryTip.StateType.INVISIBLE
@@ -84,6 +90,11 @@ public class RestrictAppDetector implements BatteryTipDetector {
         }
     }
 
+    @Override
+    public BatteryTip getFallbackTip() {
+        return new RestrictAppTip(BatteryTip.StateType.INVISIBLE, new ArrayList<>());
+    }
+
     private BatteryTip getFakeData() {
         final List<AppInfo> highUsageApps = new ArrayList<>();
         highUsageApps.add(new AppInfo.Builder()
@@ -45,4 +45,9 @@ public class SmartBatteryDetector implements BatteryTipDetector {
                 smartBatteryOff ? BatteryTip.StateType.NEW : BatteryTip.StateType.INVISIBLE;
         return new SmartBatteryTip(state);
     }
+
+    @Override
+    public BatteryTip getFallbackTip() {
+        return new SmartBatteryTip(BatteryTip.StateType.INVISIBLE);
+    }
 }
@@ -20,33 +20,74 @@ import android.content.AsyncTaskLoader;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.PackageInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
+import com.android.settings.applications.PackageLabelIconCache;
 import com.android.settings.privacyguard.PrivacyGuardManager.AppInfo;
+import com.android.settings.utils.BackgroundThreadFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
 /**
  * An asynchronous loader implementation that loads AppInfo structures.
  */
 /* package */ class AppInfoLoader extends AsyncTaskLoader<List<AppInfo>> {
+    private static final String TAG = "AppInfoLoader";
+
+    // Apps whose label and Privacy Guard state are resolved by the same task.
+    private static final int BATCH_SIZE = 32;
+    private static final int RESOLVER_THREAD_COUNT = 3;
+
+    private static ExecutorService sResolverExecutor;
+
+    /**
+     * Receives the apps resolved so far on the main thread, while the loader is running.
+     */
+    interface OnPageLoadedListener {
+        void onPageLoaded(List<AppInfo> apps);
+    }
+
     private PackageManager mPm;
     private boolean mShowSystemApps;
     private AppOpsManager mAppOps;
+    private final PackageLabelIconCache mLabelCache;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private OnPageLoadedListener mPageListener;
     private static final String[] BLACKLISTED_PACKAGES = {
             "com.android.systemui"
     };
 
+    private static final Comparator<AppInfo> APP_COMPARATOR = new Comparator<AppInfo>() {
+        @Override
+        public int compare(AppInfo lhs, AppInfo rhs) {
+            if (lhs.enabled != rhs.enabled) {
+                return lhs.enabled ? -1 : 1;
+            }
+            return lhs.title.compareToIgnoreCase(rhs.title);
+        }
+    };
+
     public AppInfoLoader(Context context, boolean showSystemApps) {
         super(context);
         mPm = context.getPackageManager();
         mAppOps = (AppOpsManager)context.getSystemService(Context.APP_OPS_SERVICE);
+        mLabelCache = PackageLabelIconCache.getInstance(context);
         mShowSystemApps = showSystemApps;
     }
 
+    void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        mPageListener = listener;
+    }
+
     @Override
     public List<AppInfo> loadInBackground() {
         return loadInstalledApps();
@@ -80,45 +121,99 @@ import java.util.List;
     * Uses the package manager to query for all currently installed apps
     * for the list.
     *
+    * <p>Only the application infos are queried. Their labels and Privacy Guard states are
+    * resolved in parallel batches, and the apps of the completed batches are published as pages
+    * to the {@link OnPageLoadedListener}.
+    *
     * @return the complete List off installed applications (@code PrivacyGuardAppInfo)
     */
     private List<AppInfo> loadInstalledApps() {
-        List<AppInfo> apps = new ArrayList<AppInfo>();
-        List<PackageInfo> packages = mPm.getInstalledPackages(
-            PackageManager.GET_PERMISSIONS | PackageManager.GET_SIGNATURES);
-
-        for (PackageInfo info : packages) {
-            final ApplicationInfo appInfo = info.applicationInfo;
-
+        final List<ApplicationInfo> infos = new ArrayList<>();
+        for (ApplicationInfo appInfo : mPm.getInstalledApplications(0)) {
             // skip all system apps if they shall not be included
             if ((!mShowSystemApps && (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0)
                     || (appInfo.uid == android.os.Process.SYSTEM_UID)
                     || isBlacklisted(appInfo.packageName)) {
                 continue;
             }
+            infos.add(appInfo);
+        }
+
+        final List<FutureTask<List<AppInfo>>> tasks = new ArrayList<>();
+        for (int start = 0; start < infos.size(); start += BATCH_SIZE) {
+            final List<ApplicationInfo> batch =
+                    infos.subList(start, Math.min(start + BATCH_SIZE, infos.size()));
+            final FutureTask<List<AppInfo>> task = new FutureTask<>(() -> resolveApps(batch));
+            tasks.add(task);
+            getResolverExecutor().execute(task);
+        }
 
+        final List<AppInfo> apps = new ArrayList<AppInfo>(infos.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            if (isLoadInBackgroundCanceled()) {
+                cancelTasks(tasks, i);
+                return apps;
+            }
+            try {
+                apps.addAll(tasks.get(i).get());
+            } catch (ExecutionException | InterruptedException e) {
+                Log.w(TAG, "Failed to resolve apps", e);
+                cancelTasks(tasks, i);
+                return apps;
+            }
+            if (i < tasks.size() - 1) {
+                publishPage(apps);
+            }
+        }
+
+        // sort the apps by their enabled state, then by title
+        Collections.sort(apps, APP_COMPARATOR);
+
+        return apps;
+    }
+
+    private List<AppInfo> resolveApps(List<ApplicationInfo> infos) {
+        final List<AppInfo> apps = new ArrayList<>(infos.size());
+        for (ApplicationInfo appInfo : infos) {
             AppInfo app = new AppInfo();
-            app.title = appInfo.loadLabel(mPm).toString();
-            app.packageName = info.packageName;
+            app.title = mLabelCache.getLabel(appInfo).toString();
+            app.packageName = appInfo.packageName;
             app.enabled = appInfo.enabled;
-            app.uid = info.applicationInfo.uid;
+            app.uid = appInfo.uid;
+            app.info = appInfo;
             app.privacyGuardEnabled = mAppOps.getPrivacyGuardSettingForPackage(
                     app.uid, app.packageName);
             apps.add(app);
         }
+        return apps;
+    }
 
-        // sort the apps by their enabled state, then by title
-        Collections.sort(apps, new Comparator<AppInfo>() {
-            @Override
-            public int compare(AppInfo lhs, AppInfo rhs) {
-                if (lhs.enabled != rhs.enabled) {
-                    return lhs.enabled ? -1 : 1;
-                }
-                return lhs.title.compareToIgnoreCase(rhs.title);
+    private void publishPage(List<AppInfo> apps) {
+        final OnPageLoadedListener listener = mPageListener;
+        if (listener == null) {
+            return;
+        }
+        final List<AppInfo> page = new ArrayList<>(apps);
+        Collections.sort(page, APP_COMPARATOR);
+        mMainHandler.post(() -> {
+            // A page of a cancelled load is outdated.
+            if (!isLoadInBackgroundCanceled() && isStarted()) {
+                listener.onPageLoaded(page);
             }
         });
+    }
 
-        return apps;
+    private static void cancelTasks(List<FutureTask<List<AppInfo>>> tasks, int start) {
+        for (int i = start; i < tasks.size(); i++) {
+            tasks.get(i).cancel(false /* mayInterruptIfRunning */);
+        }
     }
 
+    private static synchronized ExecutorService getResolverExecutor() {
+        if (sResolverExecutor == null) {
+            sResolverExecutor = Executors.newFixedThreadPool(RESOLVER_THREAD_COUNT,
+                    new BackgroundThreadFactory(TAG));
+        }
+        return sResolverExecutor;
+    }
 }
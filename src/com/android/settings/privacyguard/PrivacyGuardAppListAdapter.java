@@ -18,9 +18,10 @@
 package com.android.settings.privacyguard;
 
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.util.ArrayMap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -30,44 +31,66 @@ import android.widget.SectionIndexer;
 import android.widget.TextView;
 
 import com.android.settings.R;
+import com.android.settings.applications.PackageLabelIconCache;
 import com.android.settings.privacyguard.PrivacyGuardManager.AppInfo;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class PrivacyGuardAppListAdapter extends BaseAdapter implements SectionIndexer {
 
     private LayoutInflater mInflater;
-    private PackageManager mPm;
-
-    private List<AppInfo> mApps;
-    private String[] mSections;
-    private int[] mPositions;
-    private ConcurrentHashMap<String, Drawable> mIcons;
+    private PackageLabelIconCache mIconCache;
+
+    private List<AppInfo> mApps = Collections.emptyList();
+    private String[] mSections = new String[0];
+    private int[] mPositions = new int[0];
+    // Icons which were loaded, and apps whose icon is requested by the rows shown.
+    private final ArrayMap<String, Drawable> mIcons = new ArrayMap<>();
+    private final ArrayMap<String, AppInfo> mPendingIcons = new ArrayMap<>();
+    private LoadIconsTask mLoadIconsTask;
+    private final Handler mHandler = new Handler();
     private Drawable mDefaultImg;
 
     private Context mContext;
 
+    // Loads the icons requested by all the rows bound in the same layout pass together.
+    private final Runnable mLoadIconsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mLoadIconsTask != null || mPendingIcons.isEmpty()) {
+                return;
+            }
+            final AppInfo[] apps = mPendingIcons.values().toArray(new AppInfo[0]);
+            mPendingIcons.clear();
+            mLoadIconsTask = new LoadIconsTask();
+            mLoadIconsTask.execute(apps);
+        }
+    };
+
     //constructor
-    public PrivacyGuardAppListAdapter(Context context, List<AppInfo> apps,
-            List<String> sections, List<Integer> positions) {
+    public PrivacyGuardAppListAdapter(Context context) {
         mContext = context;
         mInflater = LayoutInflater.from(mContext);
-        mPm = context.getPackageManager();
+        mIconCache = PackageLabelIconCache.getInstance(context);
 
+        // set the default icon till the actual app icon is loaded in async task
+        mDefaultImg = mContext.getResources().getDrawable(android.R.mipmap.sym_def_app_icon);
+    }
+
+    /**
+     * Replace the apps of the list. The icons already loaded are kept.
+     */
+    public void setApps(List<AppInfo> apps, List<String> sections, List<Integer> positions) {
         mApps = apps;
         mSections = sections.toArray(new String[sections.size()]);
         mPositions = new int[positions.size()];
         for (int i = 0; i < positions.size(); i++) {
             mPositions[i] = positions.get(i);
         }
-
-        // set the default icon till the actual app icon is loaded in async task
-        mDefaultImg = mContext.getResources().getDrawable(android.R.mipmap.sym_def_app_icon);
-        mIcons = new ConcurrentHashMap<String, Drawable>();
-
-        new LoadIconsTask().execute(apps.toArray(new PrivacyGuardManager.AppInfo[]{}));
+        notifyDataSetChanged();
     }
 
     @Override
@@ -108,6 +131,9 @@ public class PrivacyGuardAppListAdapter extends BaseAdapter implements SectionIn
 
         Drawable icon = mIcons.get(app.packageName);
         appHolder.icon.setImageDrawable(icon != null ? icon : mDefaultImg);
+        if (icon == null) {
+            requestIcon(app);
+        }
 
         int privacyGuardDrawableResId = app.privacyGuardEnabled
                 ? R.drawable.ic_privacy_guard_on :
@@ -150,28 +176,42 @@ public class PrivacyGuardAppListAdapter extends BaseAdapter implements SectionIn
         return mSections;
     }
 
+    private void requestIcon(AppInfo app) {
+        if (app.info == null || mPendingIcons.containsKey(app.packageName)) {
+            return;
+        }
+        mPendingIcons.put(app.packageName, app);
+        mHandler.removeCallbacks(mLoadIconsRunnable);
+        mHandler.post(mLoadIconsRunnable);
+    }
+
     /**
-     * An asynchronous task to load the icons of the installed applications.
+     * An asynchronous task to load the icons requested by the rows shown. The list is refreshed
+     * once for all of them.
      */
-    private class LoadIconsTask extends AsyncTask<PrivacyGuardManager.AppInfo, Void, Void> {
+    private class LoadIconsTask extends AsyncTask<PrivacyGuardManager.AppInfo, Void,
+            List<Drawable>> {
+        private PrivacyGuardManager.AppInfo[] mApps;
+
         @Override
-        protected Void doInBackground(PrivacyGuardManager.AppInfo... apps) {
+        protected List<Drawable> doInBackground(PrivacyGuardManager.AppInfo... apps) {
+            mApps = apps;
+            final List<Drawable> icons = new ArrayList<>(apps.length);
             for (PrivacyGuardManager.AppInfo app : apps) {
-                try {
-                    Drawable icon = mPm.getApplicationIcon(app.packageName);
-                    mIcons.put(app.packageName, icon);
-                    publishProgress();
-                } catch (PackageManager.NameNotFoundException e) {
-                    // ignored; app will show up with default image
-                }
+                icons.add(mIconCache.getIcon(app.info));
             }
-
-            return null;
+            return icons;
         }
 
         @Override
-        protected void onProgressUpdate(Void... progress) {
+        protected void onPostExecute(List<Drawable> icons) {
+            for (int i = 0; i < mApps.length; i++) {
+                mIcons.put(mApps[i].packageName, icons.get(i));
+            }
+            mLoadIconsTask = null;
             notifyDataSetChanged();
+            // Load the icons requested while this task was running.
+            mHandler.post(mLoadIconsRunnable);
         }
     }
 
@@ -32,10 +32,12 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -74,6 +76,12 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
 
     private int mSavedFirstVisiblePosition = AdapterView.INVALID_POSITION;
     private int mSavedFirstItemOffset;
+    // Whether the list shows the pages of a load which is not finished yet.
+    private boolean mShowingPages;
+    // Privacy Guard states changed while pages are shown, by package name. The apps of the next
+    // pages were resolved before the change, so the states are applied to them as they arrive.
+    private final ArrayMap<String, Boolean> mChangedStates = new ArrayMap<>();
+    private boolean mResetWhileLoading;
 
     // keys for extras and icicles
     private final static String LAST_LIST_POS = "last_list_pos";
@@ -89,6 +97,7 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
         boolean enabled;
         boolean privacyGuardEnabled;
         int uid;
+        ApplicationInfo info;
     }
 
     @Override
@@ -182,23 +191,69 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
 
         mAppsList.setVisibility(View.INVISIBLE);
         mLoadingContainer.setVisibility(View.VISIBLE);
-        return new AppInfoLoader(mActivity, shouldShowSystemApps());
+        mShowingPages = false;
+        mChangedStates.clear();
+        mResetWhileLoading = false;
+        final AppInfoLoader loader = new AppInfoLoader(mActivity, shouldShowSystemApps());
+        // Show the first apps while the others are still being loaded, unless the list is
+        // scrolled back to a saved position, which needs the complete list.
+        if (mSavedFirstVisiblePosition == AdapterView.INVALID_POSITION) {
+            loader.setOnPageLoadedListener(this::onPageLoaded);
+        }
+        return loader;
+    }
+
+    private void onPageLoaded(List<AppInfo> apps) {
+        if (apps.isEmpty()) {
+            return;
+        }
+        mApps = apps;
+        applyChangedStates();
+        prepareAppAdapter();
+        if (!mShowingPages) {
+            mShowingPages = true;
+            showAppsList();
+        }
     }
 
     @Override
     public void onLoadFinished(Loader<List<AppInfo>> loader, List<AppInfo> apps) {
         mApps = apps;
+        applyChangedStates();
+        mChangedStates.clear();
+        mResetWhileLoading = false;
         prepareAppAdapter();
 
-        mLoadingContainer.startAnimation(AnimationUtils.loadAnimation(
-              mActivity, android.R.anim.fade_out));
-        mAppsList.startAnimation(AnimationUtils.loadAnimation(
-              mActivity, android.R.anim.fade_in));
+        if (!mShowingPages) {
+            showAppsList();
+        }
+        mShowingPages = false;
 
         if (mSavedFirstVisiblePosition != AdapterView.INVALID_POSITION) {
             mAppsList.setSelectionFromTop(mSavedFirstVisiblePosition, mSavedFirstItemOffset);
             mSavedFirstVisiblePosition = AdapterView.INVALID_POSITION;
         }
+    }
+
+    private void applyChangedStates() {
+        if (!mResetWhileLoading && mChangedStates.isEmpty()) {
+            return;
+        }
+        for (AppInfo app : mApps) {
+            final Boolean enabled = mChangedStates.get(app.packageName);
+            if (enabled != null) {
+                app.privacyGuardEnabled = enabled;
+            } else if (mResetWhileLoading) {
+                app.privacyGuardEnabled = false;
+            }
+        }
+    }
+
+    private void showAppsList() {
+        mLoadingContainer.startAnimation(AnimationUtils.loadAnimation(
+              mActivity, android.R.anim.fade_out));
+        mAppsList.startAnimation(AnimationUtils.loadAnimation(
+              mActivity, android.R.anim.fade_in));
 
         mLoadingContainer.setVisibility(View.INVISIBLE);
         mAppsList.setVisibility(View.VISIBLE);
@@ -223,13 +278,19 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
         } else {
             mNoUserAppsInstalled.setVisibility(View.GONE);
             mAppsList.setVisibility(View.VISIBLE);
-            mAdapter = createAdapter();
-            mAppsList.setAdapter(mAdapter);
+            if (mAdapter != null && mAppsList.getAdapter() == mAdapter) {
+                // Keep the adapter, and the icons it already loaded.
+                updateAdapter(mAdapter);
+            } else {
+                mAdapter = new PrivacyGuardAppListAdapter(mActivity);
+                updateAdapter(mAdapter);
+                mAppsList.setAdapter(mAdapter);
+            }
             mAppsList.setFastScrollEnabled(true);
         }
     }
 
-    private PrivacyGuardAppListAdapter createAdapter() {
+    private void updateAdapter(PrivacyGuardAppListAdapter adapter) {
         String lastSectionIndex = null;
         ArrayList<String> sections = new ArrayList<String>();
         ArrayList<Integer> positions = new ArrayList<Integer>();
@@ -256,7 +317,7 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
             offset++;
         }
 
-        return new PrivacyGuardAppListAdapter(mActivity, mApps, sections, positions);
+        adapter.setApps(mApps, sections, positions);
     }
 
     private void resetPrivacyGuard() {
@@ -273,6 +334,9 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
 
         app.privacyGuardEnabled = !app.privacyGuardEnabled;
         mAppOps.setPrivacyGuardSettingForPackage(app.uid, app.packageName, app.privacyGuardEnabled);
+        if (mShowingPages) {
+            mChangedStates.put(app.packageName, app.privacyGuardEnabled);
+        }
 
         mAdapter.notifyDataSetChanged();
     }
@@ -352,6 +416,10 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
         for (AppInfo app : mApps) {
             app.privacyGuardEnabled = false;
         }
+        if (mShowingPages) {
+            mChangedStates.clear();
+            mResetWhileLoading = true;
+        }
         mAppOps.resetAllModes();
         mAdapter.notifyDataSetChanged();
     }
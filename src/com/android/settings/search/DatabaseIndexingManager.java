@@ -18,48 +18,23 @@
 package com.android.settings.search;
 
 
-import static com.android.settings.search.DatabaseResultLoader.COLUMN_INDEX_ID;
-import static com.android.settings.search.DatabaseResultLoader
-        .COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE;
-import static com.android.settings.search.DatabaseResultLoader.COLUMN_INDEX_KEY;
-import static com.android.settings.search.DatabaseResultLoader.SELECT_COLUMNS;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.CLASS_NAME;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_ENTRIES;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEYWORDS;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEY_REF;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_SUMMARY_ON;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns
-        .DATA_SUMMARY_ON_NORMALIZED;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_TITLE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_TITLE_NORMALIZED;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DOCID;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.ENABLED;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.ICON;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_ACTION;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_TARGET_CLASS;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_TARGET_PACKAGE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.LOCALE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PAYLOAD;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PAYLOAD_TYPE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.SCREEN_TITLE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.USER_ID;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PROVIDER_PACKAGE;
 import static com.android.settings.search.IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ResolveInfo;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.provider.SearchIndexablesContract;
-import android.provider.SearchIndexablesContract.SiteMapColumns;
 import android.support.annotation.VisibleForTesting;
-import android.text.TextUtils;
 import android.util.Log;
 
-import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.indexing.IndexData;
 import com.android.settings.search.indexing.IndexDataConverter;
 import com.android.settings.search.indexing.PreIndexData;
@@ -80,11 +55,58 @@ public class DatabaseIndexingManager {
 
     private static final String LOG_TAG = "DatabaseIndexingManager";
 
+    private static final String TEMP_TABLE_NON_INDEXABLE_KEYS = "temp.non_indexable_keys";
+    private static final String TEMP_COLUMN_PACKAGE = "package";
+    private static final String TEMP_COLUMN_KEY = "key_value";
+
+    private static final String CREATE_TEMP_NON_INDEXABLE_KEYS_TABLE =
+            "CREATE TEMP TABLE IF NOT EXISTS " + TEMP_TABLE_NON_INDEXABLE_KEYS
+                    + " (" + TEMP_COLUMN_PACKAGE + " TEXT NOT NULL, " + TEMP_COLUMN_KEY + " TEXT, "
+                    + "UNIQUE (" + TEMP_COLUMN_PACKAGE + ", " + TEMP_COLUMN_KEY + "))";
+
+    /** Rows are owned by their target package, or by Settings when it is null. */
+    private static final String ROW_PACKAGE =
+            "IFNULL(" + TABLE_PREFS_INDEX + "." + INTENT_TARGET_PACKAGE + ", ?)";
+
+    private static final String IS_NON_INDEXABLE_ROW =
+            "EXISTS (SELECT 1 FROM " + TEMP_TABLE_NON_INDEXABLE_KEYS
+                    + " WHERE " + TEMP_COLUMN_PACKAGE + " = " + ROW_PACKAGE
+                    + " AND " + TEMP_COLUMN_KEY + " = " + TABLE_PREFS_INDEX + "." + DATA_KEY_REF
+                    + ")";
+
+    private static final String DISABLE_NON_INDEXABLE_ROWS =
+            "UPDATE " + TABLE_PREFS_INDEX + " SET " + ENABLED + " = 0"
+                    + " WHERE " + ENABLED + " = 1 AND " + IS_NON_INDEXABLE_ROW;
+
+    private static final String ENABLE_INDEXABLE_ROWS =
+            "UPDATE " + TABLE_PREFS_INDEX + " SET " + ENABLED + " = 1"
+                    + " WHERE " + ENABLED + " = 0"
+                    + " AND " + ROW_PACKAGE + " IN (SELECT " + TEMP_COLUMN_PACKAGE
+                    + " FROM " + TEMP_TABLE_NON_INDEXABLE_KEYS + ")"
+                    + " AND NOT " + IS_NON_INDEXABLE_ROW;
+
     private PreIndexDataCollector mCollector;
     private IndexDataConverter mConverter;
 
     private Context mContext;
 
+    /** Stats of the indexing pass in progress, only set while {@link #performIndexing} runs. */
+    private IndexingStats mCurrentStats;
+    private IndexingStats mLastIndexingStats;
+
+    /**
+     * Timings of the phases of a single {@link #performIndexing()} pass.
+     */
+    public static class IndexingStats {
+        public boolean isFullIndex;
+        public long collectTimeMs;
+        public long convertTimeMs;
+        public long insertTimeMs;
+        public long reconcileTimeMs;
+        public int insertedRowCount;
+        public int reconciledRowCount;
+    }
+
     public DatabaseIndexingManager(Context context) {
         mContext = context;
     }
@@ -92,7 +114,8 @@ public class DatabaseIndexingManager {
     /**
      * Accumulate all data and non-indexable keys from each of the content-providers.
      * Only the first indexing for the default language gets static search results - subsequent
-     * calls will only gather non-indexable keys.
+     * calls will only gather non-indexable keys, plus the static results of providers which were
+     * added or updated since the last indexing.
      */
     public void performIndexing() {
         final long startTime = System.currentTimeMillis();
@@ -102,17 +125,37 @@ public class DatabaseIndexingManager {
 
         final String localeStr = Locale.getDefault().toString();
         final String fingerprint = Build.XTENDED_FINGERPRINT;
-        final String providerVersionedNames =
-                IndexDatabaseHelper.buildProviderVersionedNames(providers);
-
-        final boolean isFullIndex = isFullIndex(mContext, localeStr, fingerprint,
-                providerVersionedNames);
+        final Map<String, Long> providerVersions =
+                IndexDatabaseHelper.buildProviderVersions(providers);
+
+        boolean isFullIndex = isFullIndex(mContext, localeStr, fingerprint);
+        Set<String> changedProviders = null;
+        if (!isFullIndex) {
+            changedProviders = IndexDatabaseHelper.getChangedProviders(mContext, providerVersions);
+            // Settings rows also populate the site map, which is not tracked per provider.
+            isFullIndex = changedProviders.contains(mContext.getPackageName());
+        }
 
+        final IndexingStats stats = new IndexingStats();
+        stats.isFullIndex = isFullIndex;
+        final long collectStartTime = System.currentTimeMillis();
+        final PreIndexData indexData;
         if (isFullIndex) {
             rebuildDatabase();
+            indexData = getIndexDataFromProviders(providers, true /* isFullIndex */);
+        } else {
+            if (!changedProviders.isEmpty()) {
+                deleteIndexDataForPackages(changedProviders);
+            }
+            indexData = getIndexDataFromProviders(providers, changedProviders);
         }
-
-        PreIndexData indexData = getIndexDataFromProviders(providers, isFullIndex);
+        stats.collectTimeMs = System.currentTimeMillis() - collectStartTime;
+        // Leave providers which failed or timed out out of the ledger, so they are re-indexed
+        // next time.
+        for (String packageName : getCollector().getFailedProviders()) {
+            providerVersions.remove(packageName);
+        }
+        mCurrentStats = stats;
 
         final long updateDatabaseStartTime = System.currentTimeMillis();
         updateDatabase(indexData, isFullIndex);
@@ -120,46 +163,95 @@ public class DatabaseIndexingManager {
             final long updateDatabaseTime = System.currentTimeMillis() - updateDatabaseStartTime;
             Log.d(LOG_TAG, "performIndexing updateDatabase took time: " + updateDatabaseTime);
         }
+        mCurrentStats = null;
+        mLastIndexingStats = stats;
 
         //TODO(63922686): Setting indexed should be a single method, not 3 separate setters.
         IndexDatabaseHelper.setLocaleIndexed(mContext, localeStr);
         IndexDatabaseHelper.setBuildIndexed(mContext, fingerprint);
-        IndexDatabaseHelper.setProvidersIndexed(mContext, providerVersionedNames);
+        IndexDatabaseHelper.setProvidersIndexed(mContext, providerVersions);
 
         if (SettingsSearchIndexablesProvider.DEBUG) {
             final long indexingTime = System.currentTimeMillis() - startTime;
             Log.d(LOG_TAG, "performIndexing took time: " + indexingTime
-                    + "ms. Full index? " + isFullIndex);
+                    + "ms. Full index? " + isFullIndex
+                    + ". Re-indexed providers: " + changedProviders);
         }
     }
 
+    /**
+     * @return the stats of the last completed {@link #performIndexing()} pass, or null if no
+     * indexing happened yet.
+     */
+    public IndexingStats getLastIndexingStats() {
+        return mLastIndexingStats;
+    }
+
     @VisibleForTesting
     PreIndexData getIndexDataFromProviders(List<ResolveInfo> providers, boolean isFullIndex) {
+        return getCollector().collectIndexableData(providers, isFullIndex);
+    }
+
+    /**
+     * Collects non-indexable keys from every provider, but indexable data only from the providers
+     * in {@param changedProviders}.
+     */
+    @VisibleForTesting
+    PreIndexData getIndexDataFromProviders(List<ResolveInfo> providers,
+            Set<String> changedProviders) {
+        return getCollector().collectIndexableData(providers, changedProviders);
+    }
+
+    @VisibleForTesting
+    PreIndexDataCollector getCollector() {
         if (mCollector == null) {
             mCollector = new PreIndexDataCollector(mContext);
+            mCollector.setParallelCollectionEnabled(true);
         }
-        return mCollector.collectIndexableData(providers, isFullIndex);
+        return mCollector;
     }
 
     /**
      * Checks if the indexed data is obsolete, when either:
      * - Device language has changed
      * - Device has taken an OTA.
-     * In both cases, the device requires a full index.
+     * In both cases, the device requires a full index. Updated providers are re-indexed
+     * individually, see {@link IndexDatabaseHelper#getChangedProviders(Context, Map)}.
      *
      * @param locale      is the default for the device
      * @param fingerprint id for the current build.
      * @return true if a full index should be preformed.
      */
     @VisibleForTesting
-    boolean isFullIndex(Context context, String locale, String fingerprint,
-            String providerVersionedNames) {
+    boolean isFullIndex(Context context, String locale, String fingerprint) {
         final boolean isLocaleIndexed = IndexDatabaseHelper.isLocaleAlreadyIndexed(context, locale);
         final boolean isBuildIndexed = IndexDatabaseHelper.isBuildIndexed(context, fingerprint);
-        final boolean areProvidersIndexed = IndexDatabaseHelper
-                .areProvidersIndexed(context, providerVersionedNames);
 
-        return !(isLocaleIndexed && isBuildIndexed && areProvidersIndexed);
+        return !(isLocaleIndexed && isBuildIndexed);
+    }
+
+    /**
+     * Removes all rows which were indexed by the providers of the given packages, so that they
+     * can be re-indexed without dropping the rest of the database.
+     */
+    @VisibleForTesting
+    void deleteIndexDataForPackages(Set<String> packageNames) {
+        final SQLiteDatabase database = getWritableDatabase();
+        if (database == null) {
+            Log.w(LOG_TAG, "Cannot delete index data as I cannot get a writable database");
+            return;
+        }
+
+        try {
+            database.beginTransaction();
+            for (String packageName : packageNames) {
+                database.delete(TABLE_PREFS_INDEX, PROVIDER_PACKAGE + " = ?",
+                        new String[] {packageName});
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
     }
 
     /**
@@ -195,8 +287,11 @@ public class DatabaseIndexingManager {
             database.beginTransaction();
 
             // Convert all Pre-index data to Index data.
+            final long convertStartTime = System.currentTimeMillis();
             List<IndexData> indexData = getIndexData(preIndexData);
+            final long insertStartTime = System.currentTimeMillis();
             insertIndexData(database, indexData);
+            final long insertEndTime = System.currentTimeMillis();
 
             // Only check for non-indexable key updates after initial index.
             // Enabled state with non-indexable keys is checked when items are first inserted.
@@ -204,6 +299,12 @@ public class DatabaseIndexingManager {
                 updateDataInDatabase(database, nonIndexableKeys);
             }
 
+            if (mCurrentStats != null) {
+                mCurrentStats.convertTimeMs = insertStartTime - convertStartTime;
+                mCurrentStats.insertTimeMs = insertEndTime - insertStartTime;
+                mCurrentStats.reconcileTimeMs = System.currentTimeMillis() - insertEndTime;
+            }
+
             database.setTransactionSuccessful();
         } finally {
             database.endTransaction();
@@ -224,46 +325,10 @@ public class DatabaseIndexingManager {
      */
     @VisibleForTesting
     void insertIndexData(SQLiteDatabase database, List<IndexData> indexData) {
-        ContentValues values;
-
-        for (IndexData dataRow : indexData) {
-            if (TextUtils.isEmpty(dataRow.normalizedTitle)) {
-                continue;
-            }
-
-            values = new ContentValues();
-            values.put(IndexDatabaseHelper.IndexColumns.DOCID, dataRow.getDocId());
-            values.put(LOCALE, dataRow.locale);
-            values.put(DATA_TITLE, dataRow.updatedTitle);
-            values.put(DATA_TITLE_NORMALIZED, dataRow.normalizedTitle);
-            values.put(DATA_SUMMARY_ON, dataRow.updatedSummaryOn);
-            values.put(DATA_SUMMARY_ON_NORMALIZED, dataRow.normalizedSummaryOn);
-            values.put(DATA_ENTRIES, dataRow.entries);
-            values.put(DATA_KEYWORDS, dataRow.spaceDelimitedKeywords);
-            values.put(CLASS_NAME, dataRow.className);
-            values.put(SCREEN_TITLE, dataRow.screenTitle);
-            values.put(INTENT_ACTION, dataRow.intentAction);
-            values.put(INTENT_TARGET_PACKAGE, dataRow.intentTargetPackage);
-            values.put(INTENT_TARGET_CLASS, dataRow.intentTargetClass);
-            values.put(ICON, dataRow.iconResId);
-            values.put(ENABLED, dataRow.enabled);
-            values.put(DATA_KEY_REF, dataRow.key);
-            values.put(USER_ID, dataRow.userId);
-            values.put(PAYLOAD_TYPE, dataRow.payloadType);
-            values.put(PAYLOAD, dataRow.payload);
-
-            database.replaceOrThrow(TABLE_PREFS_INDEX, null, values);
-
-            if (!TextUtils.isEmpty(dataRow.className)
-                    && !TextUtils.isEmpty(dataRow.childClassName)) {
-                final ContentValues siteMapPair = new ContentValues();
-                siteMapPair.put(SiteMapColumns.PARENT_CLASS, dataRow.className);
-                siteMapPair.put(SiteMapColumns.PARENT_TITLE, dataRow.screenTitle);
-                siteMapPair.put(SiteMapColumns.CHILD_CLASS, dataRow.childClassName);
-                siteMapPair.put(SiteMapColumns.CHILD_TITLE, dataRow.updatedTitle);
-
-                database.replaceOrThrow(IndexDatabaseHelper.Tables.TABLE_SITE_MAP,
-                        null /* nullColumnHack */, siteMapPair);
+        try (IndexDataBulkWriter writer = new IndexDataBulkWriter(database)) {
+            final int rowCount = writer.write(indexData);
+            if (mCurrentStats != null) {
+                mCurrentStats.insertedRowCount = rowCount;
             }
         }
     }
@@ -273,68 +338,74 @@ public class DatabaseIndexingManager {
      * All rows which are enabled but are now flagged with non-indexable keys will become disabled.
      * All rows which are disabled but no longer a non-indexable key will become enabled.
      *
+     * The keys are loaded into a temporary table, and both transitions are applied with a single
+     * set-based UPDATE each, rather than scanning the index and updating one row at a time.
+     *
      * @param database         The database to validate.
      * @param nonIndexableKeys A map between package name and the set of non-indexable keys for it.
+     * @return the number of rows whose enabled state was flipped.
      */
     @VisibleForTesting
-    void updateDataInDatabase(SQLiteDatabase database,
+    int updateDataInDatabase(SQLiteDatabase database,
             Map<String, Set<String>> nonIndexableKeys) {
-        final String whereEnabled = ENABLED + " = 1";
-        final String whereDisabled = ENABLED + " = 0";
-
-        final Cursor enabledResults = database.query(TABLE_PREFS_INDEX, SELECT_COLUMNS,
-                whereEnabled, null, null, null, null);
-
-        final ContentValues enabledToDisabledValue = new ContentValues();
-        enabledToDisabledValue.put(ENABLED, 0);
+        database.execSQL(CREATE_TEMP_NON_INDEXABLE_KEYS_TABLE);
+        try {
+            loadNonIndexableKeys(database, nonIndexableKeys);
 
-        String packageName;
-        // TODO Refactor: Move these two loops into one method.
-        while (enabledResults.moveToNext()) {
             // Package name is the key for remote providers.
             // If package name is null, the provider is Settings.
-            packageName = enabledResults.getString(COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE);
-            if (packageName == null) {
-                packageName = mContext.getPackageName();
-            }
-
-            final String key = enabledResults.getString(COLUMN_INDEX_KEY);
-            final Set<String> packageKeys = nonIndexableKeys.get(packageName);
+            final String settingsPackage = mContext.getPackageName();
+            int touchedRowCount;
 
-            // The indexed item is set to Enabled but is now non-indexable
-            if (packageKeys != null && packageKeys.contains(key)) {
-                final String whereClause = DOCID + " = " + enabledResults.getInt(COLUMN_INDEX_ID);
-                database.update(TABLE_PREFS_INDEX, enabledToDisabledValue, whereClause, null);
+            // The indexed item is set to Enabled but is now non-indexable.
+            try (SQLiteStatement disable = database.compileStatement(DISABLE_NON_INDEXABLE_ROWS)) {
+                disable.bindString(1, settingsPackage);
+                touchedRowCount = disable.executeUpdateDelete();
             }
-        }
-        enabledResults.close();
-
-        final Cursor disabledResults = database.query(TABLE_PREFS_INDEX, SELECT_COLUMNS,
-                whereDisabled, null, null, null, null);
-
-        final ContentValues disabledToEnabledValue = new ContentValues();
-        disabledToEnabledValue.put(ENABLED, 1);
 
-        while (disabledResults.moveToNext()) {
-            // Package name is the key for remote providers.
-            // If package name is null, the provider is Settings.
-            packageName = disabledResults.getString(COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE);
-            if (packageName == null) {
-                packageName = mContext.getPackageName();
+            // The indexed item is set to Disabled but is no longer non-indexable.
+            // We do not enable keys when the package has no entry because it means the keys came
+            // from an unrecognized package and therefore should not be surfaced as results.
+            try (SQLiteStatement enable = database.compileStatement(ENABLE_INDEXABLE_ROWS)) {
+                enable.bindString(1, settingsPackage);
+                enable.bindString(2, settingsPackage);
+                touchedRowCount += enable.executeUpdateDelete();
             }
 
-            final String key = disabledResults.getString(COLUMN_INDEX_KEY);
-            final Set<String> packageKeys = nonIndexableKeys.get(packageName);
+            if (mCurrentStats != null) {
+                mCurrentStats.reconciledRowCount = touchedRowCount;
+            }
+            return touchedRowCount;
+        } finally {
+            database.execSQL("DROP TABLE IF EXISTS " + TEMP_TABLE_NON_INDEXABLE_KEYS);
+        }
+    }
 
-            // The indexed item is set to Disabled but is no longer non-indexable.
-            // We do not enable keys when packageKeys is null because it means the keys came
-            // from an unrecognized package and therefore should not be surfaced as results.
-            if (packageKeys != null && !packageKeys.contains(key)) {
-                String whereClause = DOCID + " = " + disabledResults.getInt(COLUMN_INDEX_ID);
-                database.update(TABLE_PREFS_INDEX, disabledToEnabledValue, whereClause, null);
+    /**
+     * Fills the temporary non-indexable keys table. Every package gets a row with a null key, so
+     * that packages without any non-indexable key are still known to the reconciliation.
+     */
+    private void loadNonIndexableKeys(SQLiteDatabase database,
+            Map<String, Set<String>> nonIndexableKeys) {
+        try (SQLiteStatement insert = database.compileStatement(
+                "INSERT OR IGNORE INTO " + TEMP_TABLE_NON_INDEXABLE_KEYS + " VALUES (?, ?)")) {
+            for (Map.Entry<String, Set<String>> entry : nonIndexableKeys.entrySet()) {
+                final String packageName = entry.getKey();
+                if (packageName == null) {
+                    continue;
+                }
+                insert.bindString(1, packageName);
+                insert.bindNull(2);
+                insert.executeInsert();
+                for (String key : entry.getValue()) {
+                    if (key == null) {
+                        continue;
+                    }
+                    insert.bindString(2, key);
+                    insert.executeInsert();
+                }
             }
         }
-        disabledResults.close();
     }
 
     private SQLiteDatabase getWritableDatabase() {
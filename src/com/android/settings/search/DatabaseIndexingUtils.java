@@ -137,6 +137,9 @@ public class DatabaseIndexingUtils {
     }
 
     public static Indexable.SearchIndexProvider getSearchIndexProvider(final Class<?> clazz) {
+        if (SearchIndexProviderRegistry.isRegistered(clazz)) {
+            return SearchIndexProviderRegistry.getSearchIndexProvider(clazz);
+        }
         try {
             final Field f = clazz.getField(FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER);
             return (Indexable.SearchIndexProvider) f.get(null);
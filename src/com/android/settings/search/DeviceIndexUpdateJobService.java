@@ -25,16 +25,28 @@ import android.content.ContentResolver;
 import android.content.Intent;
 import android.net.Uri;
 import android.net.Uri.Builder;
+import android.os.SystemClock;
 import android.provider.SettingsSlicesContract;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SettingsSliceProvider;
+import com.android.settings.slices.SliceDataSnapshot;
 import com.android.settings.slices.SliceDeepLinkSpringBoard;
+import com.android.settings.slices.SlicesDatabaseAccessor;
+import com.android.settings.utils.BackgroundThreadFactory;
+import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import androidx.slice.Slice;
 import androidx.slice.SliceItem;
@@ -48,8 +60,43 @@ public class DeviceIndexUpdateJobService extends JobService {
 
     private static final String TAG = "DeviceIndexUpdate";
     private static final boolean DEBUG = false;
+
+    private static final String METRICS_ACTION_SLICES_TOTAL = "device_index_slices_total";
+    private static final String METRICS_ACTION_SLICES_FAILED = "device_index_slices_failed";
+    private static final String METRICS_ACTION_SLICES_SLOW = "device_index_slices_slow";
+
+    /** Number of slices bound concurrently while indexing. */
+    private static final int MAX_CONCURRENT_BINDS = 4;
+    /** Time after which a slice which is still not fully loaded is given up on. */
+    private static final long SLICE_BIND_TIMEOUT_MS = 10000;
+    /** Slices taking at least this long to bind are reported as slow. */
+    private static final long SLOW_SLICE_BIND_MS = 1000;
+
+    @VisibleForTesting
+    protected volatile boolean mRunningJob;
+    @VisibleForTesting
+    int mMaxConcurrentBinds = MAX_CONCURRENT_BINDS;
     @VisibleForTesting
-    protected boolean mRunningJob;
+    long mSliceBindTimeoutMs = SLICE_BIND_TIMEOUT_MS;
+
+    @VisibleForTesting
+    int mTotalSliceCount;
+    @VisibleForTesting
+    int mFailedSliceCount;
+    @VisibleForTesting
+    int mSlowSliceCount;
+
+    private static class BindResult {
+        final Uri uri;
+        final Slice slice;
+        final long bindTimeMs;
+
+        BindResult(Uri uri, Slice slice, long bindTimeMs) {
+            this.uri = uri;
+            this.slice = slice;
+            this.bindTimeMs = bindTimeMs;
+        }
+    }
 
     @Override
     public boolean onStartJob(JobParameters params) {
@@ -98,32 +145,117 @@ public class DeviceIndexUpdateJobService extends JobService {
 
         indexProvider.clearIndex(this /* context */);
 
-        for (Uri slice : slices) {
-            if (!mRunningJob) {
-                return;
-            }
-            Slice loadedSlice = bindSliceSynchronous(manager, slice);
-            // TODO: Get Title APIs on SliceMetadata and use that.
-            SliceMetadata metaData = getMetadata(loadedSlice);
-            CharSequence title = findTitle(loadedSlice, metaData);
-            if (title != null) {
-                if (DEBUG) {
-                    Log.d(TAG, "Indexing: " + slice + " " + title + " " + loadedSlice);
+        // Load all indexed slice data in a single query up front, so that binding each slice
+        // below is served from the snapshot instead of querying the slices database.
+        getSliceDataSnapshot();
+
+        mTotalSliceCount = slices.size();
+        mFailedSliceCount = 0;
+        mSlowSliceCount = 0;
+
+        // Keep up to mMaxConcurrentBinds binds in flight, and index each slice on this thread
+        // as soon as its bind completes.
+        final ExecutorService executor = Executors.newFixedThreadPool(mMaxConcurrentBinds,
+                new BackgroundThreadFactory(TAG));
+        final CompletionService<BindResult> binds = new ExecutorCompletionService<>(executor);
+        final Iterator<Uri> pendingSlices = slices.iterator();
+        int inFlight = 0;
+        try {
+            while (true) {
+                if (!mRunningJob && (inFlight > 0 || pendingSlices.hasNext())) {
+                    return;
+                }
+                while (inFlight < mMaxConcurrentBinds && pendingSlices.hasNext()) {
+                    final Uri slice = pendingSlices.next();
+                    binds.submit(() -> bindSlice(manager, slice));
+                    inFlight++;
+                }
+                if (inFlight == 0) {
+                    break;
+                }
+                final BindResult result;
+                try {
+                    result = binds.take().get();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Failed to bind a slice", e);
+                    inFlight--;
+                    mFailedSliceCount++;
+                    continue;
+                } catch (InterruptedException e) {
+                    // Count the slices that will not be indexed, and still finish the job.
+                    Log.w(TAG, "Interrupted while indexing slices", e);
+                    Thread.currentThread().interrupt();
+                    mFailedSliceCount += inFlight;
+                    while (pendingSlices.hasNext()) {
+                        pendingSlices.next();
+                        mFailedSliceCount++;
+                    }
+                    break;
                 }
-                indexProvider.index(this, title, slice, createDeepLink(
-                        new Intent(SliceDeepLinkSpringBoard.ACTION_VIEW_SLICE)
-                                .setPackage(getPackageName())
-                                .putExtra(SliceDeepLinkSpringBoard.EXTRA_SLICE, slice.toString())
-                                .toUri(Intent.URI_ANDROID_APP_SCHEME)),
-                        metaData.getSliceKeywords());
+                inFlight--;
+                indexSlice(indexProvider, result);
             }
+        } finally {
+            executor.shutdownNow();
         }
+
+        Log.i(TAG, "Indexed slices: total=" + mTotalSliceCount + ", failed=" + mFailedSliceCount
+                + ", slow=" + mSlowSliceCount);
+        final MetricsFeatureProvider metricsFeatureProvider =
+                FeatureFactory.getFactory(this).getMetricsFeatureProvider();
+        metricsFeatureProvider.histogram(this, METRICS_ACTION_SLICES_TOTAL, mTotalSliceCount);
+        metricsFeatureProvider.histogram(this, METRICS_ACTION_SLICES_FAILED, mFailedSliceCount);
+        metricsFeatureProvider.histogram(this, METRICS_ACTION_SLICES_SLOW, mSlowSliceCount);
         if (DEBUG) {
             Log.d(TAG, "Done indexing");
         }
         jobFinished(params, false);
     }
 
+    private BindResult bindSlice(SliceViewManager manager, Uri slice) {
+        final long startTime = SystemClock.elapsedRealtime();
+        Slice loadedSlice;
+        try {
+            loadedSlice = bindSliceSynchronous(manager, slice);
+        } catch (RuntimeException e) {
+            Log.w(TAG, slice + " cannot be bound", e);
+            loadedSlice = null;
+        }
+        return new BindResult(slice, loadedSlice, SystemClock.elapsedRealtime() - startTime);
+    }
+
+    private void indexSlice(DeviceIndexFeatureProvider indexProvider, BindResult result) {
+        final Uri slice = result.uri;
+        final Slice loadedSlice = result.slice;
+        if (result.bindTimeMs >= SLOW_SLICE_BIND_MS) {
+            Log.w(TAG, "Slow slice bind (" + result.bindTimeMs + "ms): " + slice);
+            mSlowSliceCount++;
+        }
+        if (loadedSlice == null) {
+            mFailedSliceCount++;
+        }
+
+        // TODO: Get Title APIs on SliceMetadata and use that.
+        final SliceMetadata metaData = loadedSlice == null ? null : getMetadata(loadedSlice);
+        final CharSequence title = loadedSlice == null ? null : findTitle(loadedSlice, metaData);
+        if (title != null) {
+            if (DEBUG) {
+                Log.d(TAG, "Indexing: " + slice + " " + title + " " + loadedSlice);
+            }
+            indexProvider.index(this, title, slice, createDeepLink(
+                    new Intent(SliceDeepLinkSpringBoard.ACTION_VIEW_SLICE)
+                            .setPackage(getPackageName())
+                            .putExtra(SliceDeepLinkSpringBoard.EXTRA_SLICE, slice.toString())
+                            .toUri(Intent.URI_ANDROID_APP_SCHEME)),
+                    metaData == null ? null : metaData.getSliceKeywords());
+        }
+    }
+
+    @VisibleForTesting
+    protected SliceDataSnapshot getSliceDataSnapshot() {
+        return new SlicesDatabaseAccessor(this).getSliceDataSnapshot();
+    }
+
     protected SliceViewManager getSliceViewManager() {
         return SliceViewManager.getInstance(this);
     }
@@ -182,8 +314,13 @@ public class DeviceIndexUpdateJobService extends JobService {
         // Trigger the first bind in case no loading is needed.
         callback.onSliceUpdated(manager.bindSlice(slice));
         try {
-            latch.await();
+            if (!latch.await(mSliceBindTimeoutMs, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Timed out binding " + slice);
+                manager.unregisterSliceCallback(slice, callback);
+                return null;
+            }
         } catch (InterruptedException e) {
+            manager.unregisterSliceCallback(slice, callback);
         }
         return returnSlice[0];
     }
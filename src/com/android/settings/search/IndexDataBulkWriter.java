@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.CLASS_NAME;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_ENTRIES;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEYWORDS;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEY_REF;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_SUMMARY_ON;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns
+        .DATA_SUMMARY_ON_NORMALIZED;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_TITLE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_TITLE_NORMALIZED;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DOCID;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.ENABLED;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.ICON;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_ACTION;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_TARGET_CLASS;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_TARGET_PACKAGE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.LOCALE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PAYLOAD;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PAYLOAD_TYPE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PROVIDER_PACKAGE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.SCREEN_TITLE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.USER_ID;
+import static com.android.settings.search.IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX;
+import static com.android.settings.search.IndexDatabaseHelper.Tables.TABLE_SITE_MAP;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.SearchIndexablesContract.SiteMapColumns;
+import android.text.TextUtils;
+
+import com.android.settings.search.indexing.IndexData;
+
+import java.util.List;
+
+/**
+ * Writes {@link IndexData} rows into the search database.
+ *
+ * One {@link SQLiteStatement} is compiled per table and re-bound positionally for every row, so
+ * no {@link android.content.ContentValues} is allocated and no SQL is parsed per row. The writer
+ * is meant to be used inside the caller's transaction, and must be closed afterwards.
+ */
+class IndexDataBulkWriter implements AutoCloseable {
+
+    private static final String[] PREFS_INDEX_COLUMNS = {
+            DOCID,
+            LOCALE,
+            DATA_TITLE,
+            DATA_TITLE_NORMALIZED,
+            DATA_SUMMARY_ON,
+            DATA_SUMMARY_ON_NORMALIZED,
+            DATA_ENTRIES,
+            DATA_KEYWORDS,
+            CLASS_NAME,
+            SCREEN_TITLE,
+            INTENT_ACTION,
+            INTENT_TARGET_PACKAGE,
+            INTENT_TARGET_CLASS,
+            ICON,
+            ENABLED,
+            DATA_KEY_REF,
+            USER_ID,
+            PAYLOAD_TYPE,
+            PAYLOAD,
+            PROVIDER_PACKAGE
+    };
+
+    private static final String[] SITE_MAP_COLUMNS = {
+            SiteMapColumns.PARENT_CLASS,
+            SiteMapColumns.PARENT_TITLE,
+            SiteMapColumns.CHILD_CLASS,
+            SiteMapColumns.CHILD_TITLE
+    };
+
+    private final SQLiteStatement mPrefsIndexStatement;
+    private final SQLiteStatement mSiteMapStatement;
+
+    IndexDataBulkWriter(SQLiteDatabase database) {
+        mPrefsIndexStatement = database.compileStatement(
+                buildReplaceStatement(TABLE_PREFS_INDEX, PREFS_INDEX_COLUMNS));
+        mSiteMapStatement = database.compileStatement(
+                buildReplaceStatement(TABLE_SITE_MAP, SITE_MAP_COLUMNS));
+    }
+
+    /**
+     * Inserts all of the entries in {@param indexData} as Search Data and as part of the
+     * Information Hierarchy.
+     *
+     * @return the number of rows inserted into the prefs index.
+     */
+    int write(List<IndexData> indexData) {
+        int rowCount = 0;
+        for (IndexData dataRow : indexData) {
+            if (TextUtils.isEmpty(dataRow.normalizedTitle)) {
+                continue;
+            }
+            writePrefsIndexRow(dataRow);
+            rowCount++;
+
+            if (!TextUtils.isEmpty(dataRow.className)
+                    && !TextUtils.isEmpty(dataRow.childClassName)) {
+                writeSiteMapRow(dataRow);
+            }
+        }
+        return rowCount;
+    }
+
+    @Override
+    public void close() {
+        mPrefsIndexStatement.close();
+        mSiteMapStatement.close();
+    }
+
+    private void writePrefsIndexRow(IndexData dataRow) {
+        final SQLiteStatement statement = mPrefsIndexStatement;
+        statement.clearBindings();
+        // Bind indices are 1-based, and follow the order of PREFS_INDEX_COLUMNS.
+        statement.bindLong(1, dataRow.getDocId());
+        bindString(statement, 2, dataRow.locale);
+        bindString(statement, 3, dataRow.updatedTitle);
+        bindString(statement, 4, dataRow.normalizedTitle);
+        bindString(statement, 5, dataRow.updatedSummaryOn);
+        bindString(statement, 6, dataRow.normalizedSummaryOn);
+        bindString(statement, 7, dataRow.entries);
+        bindString(statement, 8, dataRow.spaceDelimitedKeywords);
+        bindString(statement, 9, dataRow.className);
+        bindString(statement, 10, dataRow.screenTitle);
+        bindString(statement, 11, dataRow.intentAction);
+        bindString(statement, 12, dataRow.intentTargetPackage);
+        bindString(statement, 13, dataRow.intentTargetClass);
+        statement.bindLong(14, dataRow.iconResId);
+        statement.bindLong(15, dataRow.enabled ? 1 : 0);
+        bindString(statement, 16, dataRow.key);
+        statement.bindLong(17, dataRow.userId);
+        statement.bindLong(18, dataRow.payloadType);
+        if (dataRow.payload == null) {
+            statement.bindNull(19);
+        } else {
+            statement.bindBlob(19, dataRow.payload);
+        }
+        bindString(statement, 20, dataRow.providerPackage);
+        statement.executeInsert();
+    }
+
+    private void writeSiteMapRow(IndexData dataRow) {
+        final SQLiteStatement statement = mSiteMapStatement;
+        statement.clearBindings();
+        // Bind indices are 1-based, and follow the order of SITE_MAP_COLUMNS.
+        bindString(statement, 1, dataRow.className);
+        bindString(statement, 2, dataRow.screenTitle);
+        bindString(statement, 3, dataRow.childClassName);
+        bindString(statement, 4, dataRow.updatedTitle);
+        statement.executeInsert();
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static String buildReplaceStatement(String table, String[] columns) {
+        final StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ")
+                .append(table)
+                .append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+}
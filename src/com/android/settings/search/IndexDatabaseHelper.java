@@ -17,6 +17,7 @@
 package com.android.settings.search;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.ResolveInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -24,21 +25,24 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
 import android.provider.SearchIndexablesContract.SiteMapColumns;
 import android.support.annotation.VisibleForTesting;
-import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Log;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class IndexDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String TAG = "IndexDatabaseHelper";
 
     private static final String DATABASE_NAME = "search_index.db";
-    private static final int DATABASE_VERSION = 118;
+    private static final int DATABASE_VERSION = 119;
 
     private static final String SHARED_PREFS_TAG = "indexing_manager";
 
-    private static final String PREF_KEY_INDEXED_PROVIDERS = "indexed_providers";
+    private static final String PREF_KEY_PROVIDER_VERSION_PREFIX = "provider_version:";
 
     public interface Tables {
         String TABLE_PREFS_INDEX = "prefs_index";
@@ -70,6 +74,7 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
         String USER_ID = "user_id";
         String PAYLOAD_TYPE = "payload_type";
         String PAYLOAD = "payload";
+        String PROVIDER_PACKAGE = "provider_package";
     }
 
     public interface MetaColumns {
@@ -125,6 +130,8 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                     IndexColumns.PAYLOAD_TYPE +
                     ", " +
                     IndexColumns.PAYLOAD +
+                    ", " +
+                    IndexColumns.PROVIDER_PACKAGE +
                     ");";
 
     private static final String CREATE_META_TABLE =
@@ -249,16 +256,17 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
         return version;
     }
 
+    /**
+     * Returns a map between the package name of each provider and its version code.
+     */
     @VisibleForTesting
-    static String buildProviderVersionedNames(List<ResolveInfo> providers) {
-        StringBuilder sb = new StringBuilder();
+    static Map<String, Long> buildProviderVersions(List<ResolveInfo> providers) {
+        final Map<String, Long> versions = new ArrayMap<>();
         for (ResolveInfo info : providers) {
-            sb.append(info.providerInfo.packageName)
-                    .append(':')
-                    .append(info.providerInfo.applicationInfo.longVersionCode)
-                    .append(',');
+            versions.put(info.providerInfo.packageName,
+                    info.providerInfo.applicationInfo.longVersionCode);
         }
-        return sb.toString();
+        return versions;
     }
 
     static void setLocaleIndexed(Context context, String locale) {
@@ -268,11 +276,63 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                 .apply();
     }
 
-    static void setProvidersIndexed(Context context, String providerVersionedNames) {
-        context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
-                .edit()
-                .putString(PREF_KEY_INDEXED_PROVIDERS, providerVersionedNames)
-                .apply();
+    /**
+     * Records the version of every provider that has been indexed, replacing the previous ledger.
+     * Providers absent from {@param providerVersions} are dropped from the ledger.
+     */
+    static void setProvidersIndexed(Context context, Map<String, Long> providerVersions) {
+        final SharedPreferences prefs =
+                context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE);
+        final SharedPreferences.Editor editor = prefs.edit();
+        for (String prefKey : prefs.getAll().keySet()) {
+            if (prefKey.startsWith(PREF_KEY_PROVIDER_VERSION_PREFIX)) {
+                editor.remove(prefKey);
+            }
+        }
+        for (Map.Entry<String, Long> entry : providerVersions.entrySet()) {
+            editor.putLong(PREF_KEY_PROVIDER_VERSION_PREFIX + entry.getKey(), entry.getValue());
+        }
+        editor.apply();
+    }
+
+    /**
+     * @return a map between the package name and version code of each provider that was indexed.
+     */
+    static Map<String, Long> getIndexedProviderVersions(Context context) {
+        final Map<String, Long> versions = new ArrayMap<>();
+        final Map<String, ?> prefs =
+                context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE).getAll();
+        for (Map.Entry<String, ?> entry : prefs.entrySet()) {
+            final String prefKey = entry.getKey();
+            if (prefKey.startsWith(PREF_KEY_PROVIDER_VERSION_PREFIX)
+                    && entry.getValue() instanceof Long) {
+                versions.put(prefKey.substring(PREF_KEY_PROVIDER_VERSION_PREFIX.length()),
+                        (Long) entry.getValue());
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Compares the provider ledger against {@param providerVersions}.
+     *
+     * @return the package names of providers which were added, updated or removed since the
+     * last indexing.
+     */
+    static Set<String> getChangedProviders(Context context, Map<String, Long> providerVersions) {
+        final Map<String, Long> indexedVersions = getIndexedProviderVersions(context);
+        final Set<String> changedProviders = new ArraySet<>();
+        for (Map.Entry<String, Long> entry : providerVersions.entrySet()) {
+            if (!entry.getValue().equals(indexedVersions.get(entry.getKey()))) {
+                changedProviders.add(entry.getKey());
+            }
+        }
+        for (String packageName : indexedVersions.keySet()) {
+            if (!providerVersions.containsKey(packageName)) {
+                changedProviders.add(packageName);
+            }
+        }
+        return changedProviders;
     }
 
     static boolean isLocaleAlreadyIndexed(Context context, String locale) {
@@ -280,13 +340,6 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                 .getBoolean(locale, false);
     }
 
-    static boolean areProvidersIndexed(Context context, String providerVersionedNames) {
-        final String indexedProviders =
-                context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
-                        .getString(PREF_KEY_INDEXED_PROVIDERS, null);
-        return TextUtils.equals(indexedProviders, providerVersionedNames);
-    }
-
     static boolean isBuildIndexed(Context context, String buildNo) {
         return context.getSharedPreferences(SHARED_PREFS_TAG,
                 Context.MODE_PRIVATE).getBoolean(buildNo, false);
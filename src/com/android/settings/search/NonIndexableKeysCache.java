@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import android.accounts.AccountManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.SystemProperties;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.provider.Settings;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+
+import com.android.internal.telephony.TelephonyIntents;
+
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Memoizes the non-indexable keys computed from every {@link Indexable.SearchIndexProvider} in
+ * Settings.
+ *
+ * A cached result is only valid for the user and locale it was computed for. It is invalidated
+ * whenever a value in {@link Settings.Global}, {@link Settings.Secure} or {@link Settings.System}
+ * changes, when a package is added, removed or changed, when users, profiles, accounts, user
+ * restrictions or the SIM state change, and when a system property change is reported.
+ */
+class NonIndexableKeysCache {
+
+    private final Context mContext;
+    private final Map<String, Long> mProviderTimes = new ArrayMap<>();
+
+    private int mGeneration;
+    private String mCachedSignature;
+    private List<String> mCachedKeys;
+    private boolean mObserving;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mInvalidationCount;
+
+    private final ContentObserver mSettingsObserver = new ContentObserver(null /* handler */) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            invalidate();
+        }
+    };
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    private final BroadcastReceiver mDeviceStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // The SIM state is sticky, its current value doesn't invalidate the cache.
+            if (!isInitialStickyBroadcast()) {
+                invalidate();
+            }
+        }
+    };
+
+    NonIndexableKeysCache(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @return the cached non-indexable keys, or null if they need to be computed again.
+     */
+    synchronized List<String> get() {
+        startObserving();
+        if (mCachedKeys != null && getSignature().equals(mCachedSignature)) {
+            mHitCount++;
+            return mCachedKeys;
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Returns a token identifying the current inputs of the computation. It must be taken before
+     * computing the keys and handed back to {@link #put}, so that a result computed while the
+     * inputs changed is not cached.
+     */
+    synchronized String getSignature() {
+        return UserHandle.myUserId() + "|" + Locale.getDefault().toString() + "|" + mGeneration;
+    }
+
+    synchronized void put(String signature, List<String> keys) {
+        if (!getSignature().equals(signature)) {
+            return;
+        }
+        mCachedSignature = signature;
+        mCachedKeys = Collections.unmodifiableList(keys);
+    }
+
+    synchronized void invalidate() {
+        mGeneration++;
+        mInvalidationCount++;
+        mCachedKeys = null;
+        mCachedSignature = null;
+    }
+
+    synchronized void recordProviderTime(String providerName, long timeMs) {
+        mProviderTimes.put(providerName, timeMs);
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.println("NonIndexableKeysCache:");
+        writer.println("  hits: " + mHitCount + ", misses: " + mMissCount
+                + ", invalidations: " + mInvalidationCount);
+        writer.println("  cached keys: " + (mCachedKeys == null ? "none" : mCachedKeys.size()));
+        writer.println("  last computation time per provider (ms):");
+        for (Map.Entry<String, Long> entry : mProviderTimes.entrySet()) {
+            writer.println("    " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    private void startObserving() {
+        if (mObserving) {
+            return;
+        }
+        mObserving = true;
+        mContext.getContentResolver().registerContentObserver(Settings.Global.CONTENT_URI,
+                true /* notifyForDescendants */, mSettingsObserver);
+        mContext.getContentResolver().registerContentObserver(Settings.Secure.CONTENT_URI,
+                true /* notifyForDescendants */, mSettingsObserver);
+        mContext.getContentResolver().registerContentObserver(Settings.System.CONTENT_URI,
+                true /* notifyForDescendants */, mSettingsObserver);
+
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiver(mPackageReceiver, packageFilter);
+
+        final IntentFilter deviceStateFilter = new IntentFilter();
+        deviceStateFilter.addAction(UserManager.ACTION_USER_RESTRICTIONS_CHANGED);
+        deviceStateFilter.addAction(TelephonyIntents.ACTION_SIM_STATE_CHANGED);
+        deviceStateFilter.addAction(Intent.ACTION_MANAGED_PROFILE_ADDED);
+        deviceStateFilter.addAction(Intent.ACTION_MANAGED_PROFILE_REMOVED);
+        deviceStateFilter.addAction(Intent.ACTION_USER_ADDED);
+        deviceStateFilter.addAction(Intent.ACTION_USER_REMOVED);
+        deviceStateFilter.addAction(AccountManager.LOGIN_ACCOUNTS_CHANGED_ACTION);
+        mContext.registerReceiver(mDeviceStateReceiver, deviceStateFilter);
+
+        SystemProperties.addChangeCallback(this::invalidate);
+    }
+}
@@ -28,6 +28,7 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.settings.external.SignatureVerifier;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.indexing.IndexData;
+import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 
 import java.util.Locale;
 
@@ -39,6 +40,18 @@ public class SearchFeatureProviderImpl implements SearchFeatureProvider {
     private static final String TAG = "SearchFeatureProvider";
 
     private static final String METRICS_ACTION_SETTINGS_INDEX = "search_synchronous_indexing";
+    private static final String METRICS_ACTION_SETTINGS_INDEX_COLLECT =
+            "search_synchronous_indexing_collect";
+    private static final String METRICS_ACTION_SETTINGS_INDEX_CONVERT =
+            "search_synchronous_indexing_convert";
+    private static final String METRICS_ACTION_SETTINGS_INDEX_INSERT =
+            "search_synchronous_indexing_insert";
+    private static final String METRICS_ACTION_SETTINGS_INDEX_RECONCILE =
+            "search_synchronous_indexing_reconcile";
+    private static final String METRICS_ACTION_SETTINGS_INDEX_ROWS =
+            "search_synchronous_indexing_rows";
+    private static final String METRICS_ACTION_SETTINGS_INDEX_RECONCILED_ROWS =
+            "search_synchronous_indexing_reconciled_rows";
     private DatabaseIndexingManager mDatabaseIndexingManager;
     private SearchIndexableResources mSearchIndexableResources;
 
@@ -71,10 +84,29 @@ public class SearchFeatureProviderImpl implements SearchFeatureProvider {
     @Override
     public void updateIndex(Context context) {
         long indexStartTime = System.currentTimeMillis();
-        getIndexingManager(context).performIndexing();
+        final DatabaseIndexingManager indexingManager = getIndexingManager(context);
+        indexingManager.performIndexing();
         int indexingTime = (int) (System.currentTimeMillis() - indexStartTime);
-        FeatureFactory.getFactory(context).getMetricsFeatureProvider()
-                .histogram(context, METRICS_ACTION_SETTINGS_INDEX, indexingTime);
+        final MetricsFeatureProvider metricsFeatureProvider =
+                FeatureFactory.getFactory(context).getMetricsFeatureProvider();
+        metricsFeatureProvider.histogram(context, METRICS_ACTION_SETTINGS_INDEX, indexingTime);
+
+        final DatabaseIndexingManager.IndexingStats stats =
+                indexingManager.getLastIndexingStats();
+        if (stats != null) {
+            metricsFeatureProvider.histogram(context, METRICS_ACTION_SETTINGS_INDEX_COLLECT,
+                    (int) stats.collectTimeMs);
+            metricsFeatureProvider.histogram(context, METRICS_ACTION_SETTINGS_INDEX_CONVERT,
+                    (int) stats.convertTimeMs);
+            metricsFeatureProvider.histogram(context, METRICS_ACTION_SETTINGS_INDEX_INSERT,
+                    (int) stats.insertTimeMs);
+            metricsFeatureProvider.histogram(context, METRICS_ACTION_SETTINGS_INDEX_RECONCILE,
+                    (int) stats.reconcileTimeMs);
+            metricsFeatureProvider.histogram(context, METRICS_ACTION_SETTINGS_INDEX_ROWS,
+                    stats.insertedRowCount);
+            metricsFeatureProvider.histogram(context,
+                    METRICS_ACTION_SETTINGS_INDEX_RECONCILED_ROWS, stats.reconciledRowCount);
+        }
     }
 
     @Override
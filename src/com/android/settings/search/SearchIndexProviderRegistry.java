@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.util.ArrayMap;
+
+import com.android.settings.DateTimeSettings;
+import com.android.settings.DisplaySettings;
+import com.android.settings.accessibility.AccessibilitySettings;
+import com.android.settings.accessibility.AccessibilityShortcutPreferenceFragment;
+import com.android.settings.accessibility.MagnificationPreferenceFragment;
+import com.android.settings.accessibility.VibrationSettings;
+import com.android.settings.accounts.AccountDashboardFragment;
+import com.android.settings.applications.AppAndNotificationDashboardFragment;
+import com.android.settings.applications.DefaultAppSettings;
+import com.android.settings.applications.SpecialAccessSettings;
+import com.android.settings.applications.assist.ManageAssist;
+import com.android.settings.backup.BackupSettingsActivity;
+import com.android.settings.backup.BackupSettingsFragment;
+import com.android.settings.connecteddevice.AdvancedConnectedDeviceDashboardFragment;
+import com.android.settings.connecteddevice.BluetoothDashboardFragment;
+import com.android.settings.connecteddevice.ConnectedDeviceDashboardFragment;
+import com.android.settings.connecteddevice.PreviouslyConnectedDeviceDashboardFragment;
+import com.android.settings.connecteddevice.usb.UsbDetailsFragment;
+import com.android.settings.datausage.DataUsageSummary;
+import com.android.settings.datausage.DataUsageSummaryLegacy;
+import com.android.settings.deletionhelper.AutomaticStorageManagerSettings;
+import com.android.settings.development.DevelopmentSettingsDashboardFragment;
+import com.android.settings.deviceinfo.DeviceInfoSettings;
+import com.android.settings.deviceinfo.StorageDashboardFragment;
+import com.android.settings.deviceinfo.StorageSettings;
+import com.android.settings.deviceinfo.aboutphone.MyDeviceInfoFragment;
+import com.android.settings.display.AmbientDisplaySettings;
+import com.android.settings.display.AutoBrightnessSettings;
+import com.android.settings.display.NightDisplaySettings;
+import com.android.settings.display.ScreenZoomSettings;
+import com.android.settings.dream.DreamSettings;
+import com.android.settings.enterprise.EnterprisePrivacySettings;
+import com.android.settings.fuelgauge.PowerUsageAdvanced;
+import com.android.settings.fuelgauge.PowerUsageSummary;
+import com.android.settings.fuelgauge.SmartBatterySettings;
+import com.android.settings.fuelgauge.batterysaver.BatterySaverSettings;
+import com.android.settings.gestures.AssistGestureSettings;
+import com.android.settings.gestures.DoubleTapPowerSettings;
+import com.android.settings.gestures.DoubleTapScreenSettings;
+import com.android.settings.gestures.DoubleTwistGestureSettings;
+import com.android.settings.gestures.GestureSettings;
+import com.android.settings.gestures.PickupGestureSettings;
+import com.android.settings.gestures.SwipeToNotificationSettings;
+import com.android.settings.gestures.SwipeUpGestureSettings;
+import com.android.settings.inputmethod.AvailableVirtualKeyboardFragment;
+import com.android.settings.inputmethod.PhysicalKeyboardFragment;
+import com.android.settings.inputmethod.VirtualKeyboardFragment;
+import com.android.settings.language.LanguageAndInputSettings;
+import com.android.settings.location.LocationSettings;
+import com.android.settings.location.RecentLocationRequestSeeAllFragment;
+import com.android.settings.location.ScanningSettings;
+import com.android.settings.network.NetworkDashboardFragment;
+import com.android.settings.nfc.PaymentSettings;
+import com.android.settings.notification.ConfigureNotificationSettings;
+import com.android.settings.notification.SoundSettings;
+import com.android.settings.notification.ZenModeAutomationSettings;
+import com.android.settings.notification.ZenModeBlockedEffectsSettings;
+import com.android.settings.notification.ZenModeCallsSettings;
+import com.android.settings.notification.ZenModeMsgEventReminderSettings;
+import com.android.settings.notification.ZenModeRestrictNotificationsSettings;
+import com.android.settings.notification.ZenModeSettings;
+import com.android.settings.notification.ZenModeSoundVibrationSettings;
+import com.android.settings.print.PrintSettingsFragment;
+import com.android.settings.security.EncryptionAndCredential;
+import com.android.settings.security.LockscreenDashboardFragment;
+import com.android.settings.security.ScreenPinningSettings;
+import com.android.settings.security.SecuritySettings;
+import com.android.settings.security.screenlock.ScreenLockSettings;
+import com.android.settings.sim.SimSettings;
+import com.android.settings.support.SupportDashboardActivity;
+import com.android.settings.system.ResetDashboardFragment;
+import com.android.settings.system.SystemDashboardFragment;
+import com.android.settings.tts.TextToSpeechSettings;
+import com.android.settings.tts.TtsEnginePreferenceFragment;
+import com.android.settings.users.UserSettings;
+import com.android.settings.wallpaper.WallpaperTypeSettings;
+import com.android.settings.wfd.WifiDisplaySettings;
+import com.android.settings.wifi.ConfigureWifiSettings;
+import com.android.settings.wifi.WifiSettings;
+
+import java.util.Map;
+
+/**
+ * Static lookup table from each class listed in {@link SearchIndexableResourcesImpl} to its
+ * {@link Indexable.SearchIndexProvider}.
+ *
+ * {@link DatabaseIndexingUtils#getSearchIndexProvider(Class)} consults this table before falling
+ * back to reading the {@link DatabaseIndexingUtils#FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER} field
+ * reflectively. Providers are only resolved when first requested, so classes are not loaded
+ * eagerly.
+ */
+public final class SearchIndexProviderRegistry {
+
+    /**
+     * Returns the {@link Indexable.SearchIndexProvider} of a single class.
+     */
+    public interface Factory {
+        Indexable.SearchIndexProvider get();
+    }
+
+    private static final Map<Class<?>, Factory> FACTORIES = new ArrayMap<>();
+
+    static {
+        addProvider(WifiSettings.class, () -> WifiSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(NetworkDashboardFragment.class,
+                () -> NetworkDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ConfigureWifiSettings.class,
+                () -> ConfigureWifiSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SimSettings.class, () -> SimSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DataUsageSummary.class, () -> DataUsageSummary.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DataUsageSummaryLegacy.class,
+                () -> DataUsageSummaryLegacy.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ScreenZoomSettings.class, () -> ScreenZoomSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DisplaySettings.class, () -> DisplaySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AutoBrightnessSettings.class,
+                () -> AutoBrightnessSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AmbientDisplaySettings.class,
+                () -> AmbientDisplaySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(WallpaperTypeSettings.class,
+                () -> WallpaperTypeSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AppAndNotificationDashboardFragment.class,
+                () -> AppAndNotificationDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SoundSettings.class, () -> SoundSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ZenModeSettings.class, () -> ZenModeSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(StorageSettings.class, () -> StorageSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(PowerUsageAdvanced.class, () -> PowerUsageAdvanced.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DefaultAppSettings.class, () -> DefaultAppSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ManageAssist.class, () -> ManageAssist.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SpecialAccessSettings.class,
+                () -> SpecialAccessSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(UserSettings.class, () -> UserSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AssistGestureSettings.class,
+                () -> AssistGestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(PickupGestureSettings.class,
+                () -> PickupGestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DoubleTapScreenSettings.class,
+                () -> DoubleTapScreenSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DoubleTapPowerSettings.class,
+                () -> DoubleTapPowerSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DoubleTwistGestureSettings.class,
+                () -> DoubleTwistGestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SwipeUpGestureSettings.class,
+                () -> SwipeUpGestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SwipeToNotificationSettings.class,
+                () -> SwipeToNotificationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(GestureSettings.class, () -> GestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(LanguageAndInputSettings.class,
+                () -> LanguageAndInputSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(LocationSettings.class, () -> LocationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ScanningSettings.class, () -> ScanningSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SecuritySettings.class, () -> SecuritySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ScreenLockSettings.class, () -> ScreenLockSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(EncryptionAndCredential.class,
+                () -> EncryptionAndCredential.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ScreenPinningSettings.class,
+                () -> ScreenPinningSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AccountDashboardFragment.class,
+                () -> AccountDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(VirtualKeyboardFragment.class,
+                () -> VirtualKeyboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AvailableVirtualKeyboardFragment.class,
+                () -> AvailableVirtualKeyboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(PhysicalKeyboardFragment.class,
+                () -> PhysicalKeyboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(BackupSettingsActivity.class,
+                () -> BackupSettingsActivity.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(BackupSettingsFragment.class,
+                () -> BackupSettingsFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DateTimeSettings.class, () -> DateTimeSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AccessibilitySettings.class,
+                () -> AccessibilitySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(PrintSettingsFragment.class,
+                () -> PrintSettingsFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DevelopmentSettingsDashboardFragment.class,
+                () -> DevelopmentSettingsDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DeviceInfoSettings.class, () -> DeviceInfoSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SystemDashboardFragment.class,
+                () -> SystemDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ResetDashboardFragment.class,
+                () -> ResetDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(StorageDashboardFragment.class,
+                () -> StorageDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ConnectedDeviceDashboardFragment.class,
+                () -> ConnectedDeviceDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AdvancedConnectedDeviceDashboardFragment.class,
+                () -> AdvancedConnectedDeviceDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(EnterprisePrivacySettings.class,
+                () -> EnterprisePrivacySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(PaymentSettings.class, () -> PaymentSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(TextToSpeechSettings.class,
+                () -> TextToSpeechSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(TtsEnginePreferenceFragment.class,
+                () -> TtsEnginePreferenceFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(MagnificationPreferenceFragment.class,
+                () -> MagnificationPreferenceFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AccessibilityShortcutPreferenceFragment.class,
+                () -> AccessibilityShortcutPreferenceFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(DreamSettings.class, () -> DreamSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SupportDashboardActivity.class,
+                () -> SupportDashboardActivity.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(AutomaticStorageManagerSettings.class,
+                () -> AutomaticStorageManagerSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ConfigureNotificationSettings.class,
+                () -> ConfigureNotificationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(PowerUsageSummary.class, () -> PowerUsageSummary.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(BatterySaverSettings.class,
+                () -> BatterySaverSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(LockscreenDashboardFragment.class,
+                () -> LockscreenDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(UsbDetailsFragment.class, () -> UsbDetailsFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(WifiDisplaySettings.class,
+                () -> WifiDisplaySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ZenModeMsgEventReminderSettings.class,
+                () -> ZenModeMsgEventReminderSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ZenModeCallsSettings.class,
+                () -> ZenModeCallsSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ZenModeSoundVibrationSettings.class,
+                () -> ZenModeSoundVibrationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ZenModeBlockedEffectsSettings.class,
+                () -> ZenModeBlockedEffectsSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ZenModeAutomationSettings.class,
+                () -> ZenModeAutomationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(ZenModeRestrictNotificationsSettings.class,
+                () -> ZenModeRestrictNotificationsSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(NightDisplaySettings.class,
+                () -> NightDisplaySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(SmartBatterySettings.class,
+                () -> SmartBatterySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(MyDeviceInfoFragment.class,
+                () -> MyDeviceInfoFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(VibrationSettings.class, () -> VibrationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(RecentLocationRequestSeeAllFragment.class,
+                () -> RecentLocationRequestSeeAllFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(PreviouslyConnectedDeviceDashboardFragment.class,
+                () -> PreviouslyConnectedDeviceDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addProvider(BluetoothDashboardFragment.class,
+                () -> BluetoothDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+    }
+
+    private SearchIndexProviderRegistry() {
+    }
+
+    /**
+     * @return the provider of {@param clazz}, or null if the class is not registered.
+     */
+    public static Indexable.SearchIndexProvider getSearchIndexProvider(Class<?> clazz) {
+        final Factory factory = FACTORIES.get(clazz);
+        return factory == null ? null : factory.get();
+    }
+
+    static boolean isRegistered(Class<?> clazz) {
+        return FACTORIES.containsKey(clazz);
+    }
+
+    private static void addProvider(Class<?> clazz, Factory factory) {
+        FACTORIES.put(clazz, factory);
+    }
+}
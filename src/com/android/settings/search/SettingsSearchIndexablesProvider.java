@@ -59,6 +59,8 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -84,6 +86,8 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         INVALID_KEYS.add("");
     }
 
+    private NonIndexableKeysCache mNonIndexableKeysCache;
+
     @Override
     public boolean onCreate() {
         return true;
@@ -142,7 +146,7 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     @Override
     public Cursor queryNonIndexableKeys(String[] projection) {
         MatrixCursor cursor = new MatrixCursor(NON_INDEXABLES_KEYS_COLUMNS);
-        final List<String> nonIndexableKeys = getNonIndexableKeysFromProvider(getContext());
+        final List<String> nonIndexableKeys = getCachedNonIndexableKeys(getContext());
         for (String nik : nonIndexableKeys) {
             final Object[] ref = new Object[NON_INDEXABLES_KEYS_COLUMNS.length];
             ref[COLUMN_INDEX_NON_INDEXABLE_KEYS_KEY_VALUE] = nik;
@@ -184,6 +188,34 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return cursor;
     }
 
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        getNonIndexableKeysCache(getContext()).dump(writer);
+    }
+
+    private synchronized NonIndexableKeysCache getNonIndexableKeysCache(Context context) {
+        if (mNonIndexableKeysCache == null) {
+            mNonIndexableKeysCache = new NonIndexableKeysCache(context);
+        }
+        return mNonIndexableKeysCache;
+    }
+
+    /**
+     * Returns the non-indexable keys, only asking every provider again when an input which can
+     * change them has changed since the last query.
+     */
+    private List<String> getCachedNonIndexableKeys(Context context) {
+        final NonIndexableKeysCache cache = getNonIndexableKeysCache(context);
+        final List<String> cachedKeys = cache.get();
+        if (cachedKeys != null) {
+            return cachedKeys;
+        }
+        final String signature = cache.getSignature();
+        final List<String> nonIndexableKeys = getNonIndexableKeysFromProvider(context);
+        cache.put(signature, nonIndexableKeys);
+        return nonIndexableKeys;
+    }
+
     private List<String> getNonIndexableKeysFromProvider(Context context) {
         final Collection<Class> values = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
@@ -211,6 +243,9 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                 continue;
             }
 
+            getNonIndexableKeysCache(context).recordProviderTime(clazz.getName(),
+                    System.currentTimeMillis() - startTime);
+
             if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
                 if (DEBUG) {
                     final long totalTime = System.currentTimeMillis() - startTime;
@@ -55,6 +55,8 @@ public class IndexData {
     public final int userId;
     public final int payloadType;
     public final byte[] payload;
+    // Package of the provider which indexed this row.
+    public final String providerPackage;
 
     private static final String NON_BREAKING_HYPHEN = "\u2011";
     private static final String EMPTY = "";
@@ -93,6 +95,7 @@ public class IndexData {
         payloadType = builder.mPayloadType;
         payload = builder.mPayload != null ? ResultPayloadUtils.marshall(builder.mPayload)
                 : null;
+        providerPackage = builder.mProviderPackage;
     }
 
     /**
@@ -175,6 +178,7 @@ public class IndexData {
         @ResultPayload.PayloadType
         private int mPayloadType;
         private ResultPayload mPayload;
+        private String mProviderPackage;
 
         public Builder setTitle(String title) {
             mTitle = title;
@@ -246,6 +250,11 @@ public class IndexData {
             return this;
         }
 
+        public Builder setProviderPackage(String providerPackage) {
+            mProviderPackage = providerPackage;
+            return this;
+        }
+
         public Builder setPayload(ResultPayload payload) {
             mPayload = payload;
 
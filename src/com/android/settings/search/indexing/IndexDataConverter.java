@@ -123,7 +123,8 @@ public class IndexDataConverter {
                 .setIntentTargetClass(raw.intentTargetClass)
                 .setEnabled(enabled)
                 .setKey(raw.key)
-                .setUserId(raw.userId);
+                .setUserId(raw.userId)
+                .setProviderPackage(raw.packageName);
 
         return builder;
     }
@@ -177,6 +178,7 @@ public class IndexDataConverter {
             final String intentAction = sir.intentAction;
             final String intentTargetPackage = sir.intentTargetPackage;
             final String intentTargetClass = sir.intentTargetClass;
+            final String providerPackage = sir.packageName;
 
             Map<String, ResultPayload> controllerUriMap = new HashMap<>();
 
@@ -202,7 +204,8 @@ public class IndexDataConverter {
                     .setIntentTargetClass(intentTargetClass)
                     .setEnabled(enabled)
                     .setKey(key)
-                    .setUserId(-1 /* default user id */);
+                    .setUserId(-1 /* default user id */)
+                    .setProviderPackage(providerPackage);
 
             // Flag for XML headers which a child element's title.
             boolean isHeaderUnique = true;
@@ -237,7 +240,8 @@ public class IndexDataConverter {
                         .setIntentTargetClass(intentTargetClass)
                         .setEnabled(enabled)
                         .setKey(key)
-                        .setUserId(-1 /* default user id */);
+                        .setUserId(-1 /* default user id */)
+                        .setProviderPackage(providerPackage);
 
                 if (!nodeName.equals(NODE_NAME_CHECK_BOX_PREFERENCE)) {
                     summary = PreferenceXmlParserUtils.getDataSummary(context, attrs);
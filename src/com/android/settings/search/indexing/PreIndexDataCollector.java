@@ -18,6 +18,7 @@
 package com.android.settings.search.indexing;
 
 import android.Manifest;
+import android.annotation.Nullable;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
@@ -26,6 +27,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.database.Cursor;
 import android.net.Uri;
+import android.provider.SearchIndexableData;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.text.TextUtils;
@@ -35,10 +37,24 @@ import android.util.Log;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.settings.search.SearchIndexableRaw;
 import com.android.settings.search.SettingsSearchIndexablesProvider;
+import com.android.settings.utils.BackgroundThreadFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static android.provider.SearchIndexablesContract.COLUMN_INDEX_XML_RES_CLASS_NAME;
 import static android.provider.SearchIndexablesContract.COLUMN_INDEX_XML_RES_ICON_RESID;
@@ -77,49 +93,253 @@ public class PreIndexDataCollector {
 
     private Context mContext;
 
+    private static final int MAX_PARALLEL_PROVIDERS = 4;
+
+    private static final long PROVIDER_TIMEOUT_MS = 5000;
+
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    // Shared by every collection, created on first use.
+    private static ExecutorService sExecutor;
+    private static ScheduledExecutorService sTimeoutExecutor;
+
     private PreIndexData mIndexData;
+    private Set<String> mFailedProviders = new ArraySet<>();
+    private boolean mParallel;
+    private long mProviderTimeoutMs = PROVIDER_TIMEOUT_MS;
+
+    /**
+     * Collects the data of a single provider, and cancels itself once it has run for longer than
+     * the provider timeout. The timeout starts when the provider is queried, not when the task is
+     * queued.
+     */
+    @VisibleForTesting
+    static class ProviderTask extends FutureTask<ProviderData> {
+        private final long mTimeoutMs;
+        private volatile boolean mStarted;
+
+        ProviderTask(Callable<ProviderData> callable, long timeoutMs) {
+            super(callable);
+            mTimeoutMs = timeoutMs;
+        }
+
+        @Override
+        public void run() {
+            mStarted = true;
+            final ScheduledFuture<?> timeout = getTimeoutExecutor().schedule(
+                    () -> cancel(true /* mayInterruptIfRunning */), mTimeoutMs,
+                    TimeUnit.MILLISECONDS);
+            try {
+                super.run();
+            } finally {
+                timeout.cancel(false /* mayInterruptIfRunning */);
+            }
+        }
+
+        boolean hasStarted() {
+            return mStarted;
+        }
+    }
+
+    /**
+     * Data collected from a single provider, before it is merged into {@link PreIndexData}.
+     */
+    @VisibleForTesting
+    static class ProviderData {
+        final String authority;
+        final List<SearchIndexableData> dataToUpdate = new ArrayList<>();
+        List<String> nonIndexableKeys;
+
+        ProviderData(String authority) {
+            this.authority = authority;
+        }
+    }
 
     public PreIndexDataCollector(Context context) {
         mContext = context;
     }
 
     public PreIndexData collectIndexableData(List<ResolveInfo> providers, boolean isFullIndex) {
+        return collectIndexableData(providers, isFullIndex ? null : Collections.emptySet());
+    }
+
+    /**
+     * Collects the non-indexable keys of every provider, and the indexable data of only the
+     * providers in {@param packagesToIndex}.
+     *
+     * When parallel collection is enabled, providers are queried concurrently and any provider
+     * which throws, or does not answer within {@link #PROVIDER_TIMEOUT_MS} of being queried, is
+     * skipped and reported by {@link #getFailedProviders()}. Results are always merged in the
+     * order of {@param providers}.
+     *
+     * @param packagesToIndex the package names of the providers whose indexable data should be
+     *                        collected, or null to collect it from every provider.
+     */
+    public PreIndexData collectIndexableData(List<ResolveInfo> providers,
+            @Nullable Set<String> packagesToIndex) {
         mIndexData = new PreIndexData();
+        mFailedProviders = new ArraySet<>();
 
+        final List<ResolveInfo> wellKnownProviders = new ArrayList<>();
         for (final ResolveInfo info : providers) {
-            if (!isWellKnownProvider(info)) {
-                continue;
+            if (isWellKnownProvider(info)) {
+                wellKnownProviders.add(info);
             }
-            final String authority = info.providerInfo.authority;
-            final String packageName = info.providerInfo.packageName;
+        }
 
-            if (isFullIndex) {
-                addIndexablesFromRemoteProvider(packageName, authority);
+        if (mParallel && wellKnownProviders.size() > 1) {
+            collectInParallel(wellKnownProviders, packagesToIndex);
+        } else {
+            for (final ResolveInfo info : wellKnownProviders) {
+                mergeProviderData(collectProviderData(info, packagesToIndex));
             }
+        }
 
-            final long nonIndexableStartTime = System.currentTimeMillis();
-            addNonIndexablesKeysFromRemoteProvider(packageName, authority);
-            if (SettingsSearchIndexablesProvider.DEBUG) {
-                final long nonIndexableTime = System.currentTimeMillis() - nonIndexableStartTime;
-                Log.d(TAG, "performIndexing update non-indexable for package " + packageName
-                        + " took time: " + nonIndexableTime);
+        return mIndexData;
+    }
+
+    /**
+     * Enables or disables querying the providers concurrently.
+     */
+    public void setParallelCollectionEnabled(boolean enabled) {
+        mParallel = enabled;
+    }
+
+    @VisibleForTesting
+    void setProviderTimeoutMs(long timeoutMs) {
+        mProviderTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * @return the package names of the providers which failed or timed out during the last
+     * collection. Their data is missing from the last {@link PreIndexData}.
+     */
+    public Set<String> getFailedProviders() {
+        return mFailedProviders;
+    }
+
+    private void collectInParallel(List<ResolveInfo> providers,
+            @Nullable Set<String> packagesToIndex) {
+        final ExecutorService executor = getExecutor();
+        final List<ProviderTask> tasks = new ArrayList<>(providers.size());
+        try {
+            for (final ResolveInfo info : providers) {
+                final ProviderTask task = new ProviderTask(
+                        () -> collectProviderData(info, packagesToIndex), mProviderTimeoutMs);
+                tasks.add(task);
+                executor.execute(task);
+            }
+
+            // Wait for the providers in their original order, so the merge is deterministic.
+            for (int i = 0; i < tasks.size(); i++) {
+                final String packageName = providers.get(i).providerInfo.packageName;
+                try {
+                    mergeProviderData(getProviderData(tasks.get(i)));
+                } catch (CancellationException | TimeoutException e) {
+                    Log.w(TAG, "Timed out collecting index data from " + packageName);
+                    tasks.get(i).cancel(true /* mayInterruptIfRunning */);
+                    mFailedProviders.add(packageName);
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Error collecting index data from " + packageName, e);
+                    mFailedProviders.add(packageName);
+                } catch (InterruptedException e) {
+                    Log.w(TAG, "Interrupted collecting index data from " + packageName);
+                    mFailedProviders.add(packageName);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            // Don't leave providers running or queued on the shared executor.
+            for (ProviderTask task : tasks) {
+                task.cancel(true /* mayInterruptIfRunning */);
             }
         }
+    }
 
-        return mIndexData;
+    /**
+     * Waits for the data of a provider until its task cancels itself at the provider timeout.
+     *
+     * @throws TimeoutException if the provider is still queued after a whole timeout, which
+     * means that the executor is stuck with providers which ignore their cancellation.
+     */
+    private ProviderData getProviderData(ProviderTask task)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        while (true) {
+            try {
+                return task.get(mProviderTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (!task.hasStarted()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_PROVIDERS,
+                    MAX_PARALLEL_PROVIDERS, IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new BackgroundThreadFactory(TAG));
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    private static synchronized ScheduledExecutorService getTimeoutExecutor() {
+        if (sTimeoutExecutor == null) {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                    new BackgroundThreadFactory(TAG + "-timeout"));
+            executor.setRemoveOnCancelPolicy(true);
+            executor.setKeepAliveTime(IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            executor.allowCoreThreadTimeOut(true);
+            sTimeoutExecutor = executor;
+        }
+        return sTimeoutExecutor;
     }
 
-    private boolean addIndexablesFromRemoteProvider(String packageName, String authority) {
+    private ProviderData collectProviderData(ResolveInfo info,
+            @Nullable Set<String> packagesToIndex) {
+        final String authority = info.providerInfo.authority;
+        final String packageName = info.providerInfo.packageName;
+        final ProviderData providerData = new ProviderData(authority);
+
+        if (packagesToIndex == null || packagesToIndex.contains(packageName)) {
+            addIndexablesFromRemoteProvider(providerData, packageName, authority);
+        }
+
+        final long nonIndexableStartTime = System.currentTimeMillis();
+        providerData.nonIndexableKeys =
+                getNonIndexablesKeysFromRemoteProvider(packageName, authority);
+        if (SettingsSearchIndexablesProvider.DEBUG) {
+            final long nonIndexableTime = System.currentTimeMillis() - nonIndexableStartTime;
+            Log.d(TAG, "performIndexing update non-indexable for package " + packageName
+                    + " took time: " + nonIndexableTime);
+        }
+        return providerData;
+    }
+
+    private void mergeProviderData(ProviderData providerData) {
+        mIndexData.dataToUpdate.addAll(providerData.dataToUpdate);
+
+        final List<String> keys = providerData.nonIndexableKeys;
+        if (keys != null && !keys.isEmpty()) {
+            mIndexData.nonIndexableKeys.put(providerData.authority, new ArraySet<>(keys));
+        }
+    }
+
+    private boolean addIndexablesFromRemoteProvider(ProviderData providerData,
+            String packageName, String authority) {
         try {
             final Context context = BASE_AUTHORITY.equals(authority) ?
                     mContext : mContext.createPackageContext(packageName, 0);
 
             final Uri uriForResources = buildUriForXmlResources(authority);
-            mIndexData.dataToUpdate.addAll(getIndexablesForXmlResourceUri(context, packageName,
+            providerData.dataToUpdate.addAll(getIndexablesForXmlResourceUri(context, packageName,
                     uriForResources, SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS));
 
             final Uri uriForRawData = buildUriForRawData(authority);
-            mIndexData.dataToUpdate.addAll(getIndexablesForRawDataUri(context, packageName,
+            providerData.dataToUpdate.addAll(getIndexablesForRawDataUri(context, packageName,
                     uriForRawData, SearchIndexablesContract.INDEXABLES_RAW_COLUMNS));
             return true;
         } catch (PackageManager.NameNotFoundException e) {
@@ -175,16 +395,6 @@ public class PreIndexDataCollector {
         return resources;
     }
 
-    private void addNonIndexablesKeysFromRemoteProvider(String packageName,
-            String authority) {
-        final List<String> keys =
-                getNonIndexablesKeysFromRemoteProvider(packageName, authority);
-
-        if (keys != null && !keys.isEmpty()) {
-            mIndexData.nonIndexableKeys.put(authority, new ArraySet<>(keys));
-        }
-    }
-
     @VisibleForTesting
     List<String> getNonIndexablesKeysFromRemoteProvider(String packageName,
             String authority) {
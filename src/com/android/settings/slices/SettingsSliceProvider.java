@@ -43,16 +43,16 @@ import com.android.settings.wifi.calling.WifiCallingSliceHelper;
 import com.android.settingslib.SliceBroadcastRelay;
 import com.android.settingslib.utils.ThreadUtils;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import androidx.slice.Slice;
 import androidx.slice.SliceProvider;
@@ -73,6 +73,12 @@ import androidx.slice.SliceProvider;
  * The {@link Slice} displayed by the Slice-presenter will re-query this Slice-provider and find
  * the {@link SliceData} cached to build the full {@link Slice}.
  *
+ * <p>To avoid returning a stub for most requests, {@link #mSliceDataCache} is a bounded LRU cache
+ * which is warmed up in the background with every indexed {@link SliceData} the first time the
+ * provider is used. The indexed data is read in a single query as a {@link SliceDataSnapshot},
+ * which is also used to list descendants and to fill cache misses once it is loaded. The cache is
+ * cleared and warmed up again whenever the slices database is indexed again.
+ *
  * <p>When an action is taken on that {@link Slice}, we receive the action in
  * {@link SliceBroadcastReceiver}, and use the
  * {@link com.android.settings.core.BasePreferenceController} indexed as
@@ -115,9 +121,10 @@ public class SettingsSliceProvider extends SliceProvider {
     SlicesDatabaseAccessor mSlicesDatabaseAccessor;
 
     @VisibleForTesting
-    Map<Uri, SliceData> mSliceWeakDataCache;
-    @VisibleForTesting
-    Map<Uri, SliceData> mSliceDataCache;
+    SliceDataCache mSliceDataCache;
+
+    private final AtomicBoolean mSliceDataCacheWarmed = new AtomicBoolean(false);
+    private final AtomicBoolean mSliceDataCacheWarming = new AtomicBoolean(false);
 
     private final KeyValueListParser mParser;
 
@@ -131,8 +138,7 @@ public class SettingsSliceProvider extends SliceProvider {
     @Override
     public boolean onCreateSliceProvider() {
         mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(getContext());
-        mSliceDataCache = new ConcurrentHashMap<>();
-        mSliceWeakDataCache = new WeakHashMap<>();
+        mSliceDataCache = new SliceDataCache();
         return true;
     }
 
@@ -161,6 +167,8 @@ public class SettingsSliceProvider extends SliceProvider {
         }
 
         // Start warming the slice, we expect someone will want it soon.
+        invalidateSliceDataCacheIfReindexed();
+        warmSliceDataCacheInBackground();
         loadSliceInBackground(sliceUri);
     }
 
@@ -171,7 +179,6 @@ public class SettingsSliceProvider extends SliceProvider {
             SliceBroadcastRelay.unregisterReceivers(getContext(), sliceUri);
             mRegisteredUris.remove(sliceUri);
         }
-        mSliceDataCache.remove(sliceUri);
     }
 
     @Override
@@ -207,16 +214,17 @@ public class SettingsSliceProvider extends SliceProvider {
                 return LocationSliceBuilder.getSlice(getContext());
             }
 
-            SliceData cachedSliceData = mSliceWeakDataCache.get(sliceUri);
+            invalidateSliceDataCacheIfReindexed();
+            warmSliceDataCacheInBackground();
+            SliceData cachedSliceData = mSliceDataCache.get(sliceUri);
+            if (cachedSliceData == null) {
+                cachedSliceData = getSliceDataFromLoadedSnapshot(sliceUri);
+            }
             if (cachedSliceData == null) {
                 loadSliceInBackground(sliceUri);
                 return getSliceStub(sliceUri);
             }
 
-            // Remove the SliceData from the cache after it has been used to prevent a memory-leak.
-            if (!mSliceDataCache.containsKey(sliceUri)) {
-                mSliceWeakDataCache.remove(sliceUri);
-            }
             return SliceBuilderUtils.buildSlice(getContext(), cachedSliceData);
         } finally {
             StrictMode.setThreadPolicy(oldPolicy);
@@ -259,12 +267,9 @@ public class SettingsSliceProvider extends SliceProvider {
 
         // No path nor authority. Return all possible Uris.
         if (isPathEmpty && TextUtils.isEmpty(authority)) {
-            final List<String> platformKeys = mSlicesDatabaseAccessor.getSliceKeys(
-                    true /* isPlatformSlice */);
-            final List<String> oemKeys = mSlicesDatabaseAccessor.getSliceKeys(
-                    false /* isPlatformSlice */);
-            descendants.addAll(buildUrisFromKeys(platformKeys, SettingsSlicesContract.AUTHORITY));
-            descendants.addAll(buildUrisFromKeys(oemKeys, SettingsSliceProvider.SLICE_AUTHORITY));
+            final SliceDataSnapshot snapshot = mSlicesDatabaseAccessor.getSliceDataSnapshot();
+            descendants.addAll(snapshot.getUris(true /* isPlatformSlice */));
+            descendants.addAll(snapshot.getUris(false /* isPlatformSlice */));
             descendants.addAll(getSpecialCaseUris(true /* isPlatformSlice */));
             descendants.addAll(getSpecialCaseUris(false /* isPlatformSlice */));
 
@@ -282,13 +287,14 @@ public class SettingsSliceProvider extends SliceProvider {
 
         // Can assume authority belongs to the provider. Return all Uris for the authority.
         final boolean isPlatformUri = TextUtils.equals(authority, SettingsSlicesContract.AUTHORITY);
-        final List<String> keys = mSlicesDatabaseAccessor.getSliceKeys(isPlatformUri);
-        descendants.addAll(buildUrisFromKeys(keys, authority));
+        final List<SliceData> sliceData = mSlicesDatabaseAccessor.getSliceDataSnapshot()
+                .getSliceData(isPlatformUri);
+        descendants.addAll(buildUrisFromSliceData(sliceData, authority));
         descendants.addAll(getSpecialCaseUris(isPlatformUri));
         return descendants;
     }
 
-    private List<Uri> buildUrisFromKeys(List<String> keys, String authority) {
+    private List<Uri> buildUrisFromSliceData(List<SliceData> sliceData, String authority) {
         final List<Uri> descendants = new ArrayList<>();
 
         final Uri.Builder builder = new Uri.Builder()
@@ -297,8 +303,8 @@ public class SettingsSliceProvider extends SliceProvider {
                 .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION);
 
         final String newUriPathPrefix = SettingsSlicesContract.PATH_SETTING_ACTION + "/";
-        for (String key : keys) {
-            builder.path(newUriPathPrefix + key);
+        for (SliceData data : sliceData) {
+            builder.path(newUriPathPrefix + data.getKey());
             descendants.add(builder.build());
         }
 
@@ -325,12 +331,7 @@ public class SettingsSliceProvider extends SliceProvider {
             registerIntentToUri(filter, uri);
         }
 
-        final List<Uri> pinnedSlices = getContext().getSystemService(
-                SliceManager.class).getPinnedSlices();
-        if (pinnedSlices.contains(uri)) {
-            mSliceDataCache.put(uri, sliceData);
-        }
-        mSliceWeakDataCache.put(uri, sliceData);
+        mSliceDataCache.put(uri, sliceData);
         getContext().getContentResolver().notifyChange(uri, null /* content observer */);
 
         Log.d(TAG, "Built slice (" + uri + ") in: " +
@@ -344,6 +345,79 @@ public class SettingsSliceProvider extends SliceProvider {
         });
     }
 
+    /**
+     * Loads every indexed {@link SliceData} into {@link #mSliceDataCache} with a single query,
+     * without replacing entries which were already loaded.
+     *
+     * @return {@code true} if the cache was warmed up with a non-empty index.
+     */
+    @VisibleForTesting
+    boolean warmSliceDataCache() {
+        final long startTime = System.currentTimeMillis();
+        final int generation = mSlicesDatabaseAccessor.getIndexGeneration();
+        final List<SliceData> sliceData;
+        try {
+            sliceData = mSlicesDatabaseAccessor.getSliceDataSnapshot().getAllSliceData();
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Could not warm up slice data cache", e);
+            return false;
+        }
+        if (sliceData.isEmpty() || generation != mSlicesDatabaseAccessor.getIndexGeneration()) {
+            // Not indexed yet, or indexed again while reading. Try again on the next request.
+            return false;
+        }
+        mSliceDataCache.setIndexGeneration(generation);
+        final int added = mSliceDataCache.putAllAbsent(sliceData);
+        Log.d(TAG, "Warmed up " + added + " slices in: "
+                + (System.currentTimeMillis() - startTime));
+        return true;
+    }
+
+    /**
+     * @return the {@link SliceData} for {@param uri} from the {@link SliceDataSnapshot} if it is
+     * already loaded, without touching the database. The data is added to the cache on success.
+     */
+    private SliceData getSliceDataFromLoadedSnapshot(Uri uri) {
+        final SliceDataSnapshot snapshot = mSlicesDatabaseAccessor.getLoadedSliceDataSnapshot();
+        final SliceData sliceData = snapshot == null ? null : snapshot.getSliceData(uri);
+        if (sliceData != null) {
+            mSliceDataCache.put(uri, sliceData);
+        }
+        return sliceData;
+    }
+
+    @VisibleForTesting
+    void warmSliceDataCacheInBackground() {
+        if (mSliceDataCacheWarmed.get() || mSliceDataCacheWarming.getAndSet(true)) {
+            return;
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            try {
+                if (warmSliceDataCache()) {
+                    mSliceDataCacheWarmed.set(true);
+                }
+            } finally {
+                mSliceDataCacheWarming.set(false);
+            }
+        });
+    }
+
+    /**
+     * Clears {@link #mSliceDataCache} and allows it to be warmed up again if the slices database
+     * was indexed again since its entries were loaded.
+     */
+    @VisibleForTesting
+    void invalidateSliceDataCacheIfReindexed() {
+        if (mSliceDataCache.setIndexGeneration(mSlicesDatabaseAccessor.getIndexGeneration())) {
+            mSliceDataCacheWarmed.set(false);
+        }
+    }
+
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mSliceDataCache.dump(writer);
+    }
+
     /**
      * @return an empty {@link Slice} with {@param uri} to be used as a stub while the real
      * {@link SliceData} is loaded from {@link SlicesDatabaseHelper.Tables#TABLE_SLICES_INDEX}.
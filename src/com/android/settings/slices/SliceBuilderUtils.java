@@ -42,6 +42,7 @@ import com.android.settings.R;
 import com.android.settings.SubSettings;
 import com.android.settings.Utils;
 import com.android.settings.core.BasePreferenceController;
+import com.android.settings.core.PreferenceControllerRegistry;
 import com.android.settings.core.SliderPreferenceController;
 import com.android.settings.core.TogglePreferenceController;
 import com.android.settings.overlay.FeatureFactory;
@@ -300,10 +301,12 @@ public class SliceBuilderUtils {
 
     private static BasePreferenceController getPreferenceController(Context context,
             String controllerClassName, String controllerKey) {
-        try {
-            return BasePreferenceController.createInstance(context, controllerClassName);
-        } catch (IllegalStateException e) {
-            // Do nothing
+        if (!PreferenceControllerRegistry.requiresKey(controllerClassName)) {
+            try {
+                return BasePreferenceController.createInstance(context, controllerClassName);
+            } catch (IllegalStateException e) {
+                // Do nothing
+            }
         }
 
         return BasePreferenceController.createInstance(context, controllerClassName, controllerKey);
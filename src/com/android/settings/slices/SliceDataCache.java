@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import android.net.Uri;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size-bounded, least-recently-used cache of {@link SliceData} keyed by Slice {@link Uri}.
+ *
+ * <p>The cache is safe to use from any thread. It keeps hit, miss and eviction counters, which
+ * are reported through {@link #dump(PrintWriter)}.
+ */
+class SliceDataCache {
+
+    /**
+     * Default number of entries kept in the cache, which is large enough to hold every Slice
+     * indexed by Settings.
+     */
+    static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final int GENERATION_UNKNOWN = -1;
+
+    private final int mMaxSize;
+    private final LinkedHashMap<Uri, SliceData> mEntries;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+    private int mIndexGeneration = GENERATION_UNKNOWN;
+
+    SliceDataCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    SliceDataCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        mMaxSize = maxSize;
+        mEntries = new LinkedHashMap<Uri, SliceData>(16, 0.75f, true /* accessOrder */) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Uri, SliceData> eldest) {
+                if (size() > mMaxSize) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the {@link SliceData} cached for {@param uri}, or {@code null} on a miss.
+     */
+    synchronized SliceData get(Uri uri) {
+        final SliceData data = mEntries.get(uri);
+        if (data == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return data;
+    }
+
+    synchronized void put(Uri uri, SliceData data) {
+        mEntries.put(uri, data);
+    }
+
+    /**
+     * Adds every entry of {@param dataList} keyed by its own {@link SliceData#getUri()}, without
+     * replacing entries that are already cached. Entries without a {@link Uri} are ignored.
+     *
+     * @return the number of entries added.
+     */
+    synchronized int putAllAbsent(List<SliceData> dataList) {
+        int added = 0;
+        for (SliceData data : dataList) {
+            final Uri uri = data.getUri();
+            if (uri == null || mEntries.containsKey(uri)) {
+                continue;
+            }
+            if (mEntries.size() >= mMaxSize) {
+                // Do not evict entries that were actually requested to make room for warm-up.
+                break;
+            }
+            mEntries.put(uri, data);
+            added++;
+        }
+        return added;
+    }
+
+    synchronized void remove(Uri uri) {
+        mEntries.remove(uri);
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Clears the cache if {@param generation} differs from the index generation of the cached
+     * entries, as returned by {@link SlicesDatabaseAccessor#getIndexGeneration()}.
+     *
+     * @return {@code true} if the cache was cleared.
+     */
+    synchronized boolean setIndexGeneration(int generation) {
+        final boolean changed = mIndexGeneration != GENERATION_UNKNOWN
+                && mIndexGeneration != generation;
+        mIndexGeneration = generation;
+        if (changed) {
+            mEntries.clear();
+        }
+        return changed;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    @VisibleForTesting
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    @VisibleForTesting
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    @VisibleForTesting
+    synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.println("SliceDataCache:");
+        writer.println("  size: " + mEntries.size() + "/" + mMaxSize);
+        writer.println("  hits: " + mHitCount + ", misses: " + mMissCount
+                + ", evictions: " + mEvictionCount);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import android.net.Uri;
+import android.util.ArrayMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the rows of the Slices database, read by
+ * {@link SlicesDatabaseAccessor#getSliceDataSnapshot()} in a single query.
+ *
+ * <p>Every {@link SliceData} of the snapshot is bound to the action {@link Uri} of its key, under
+ * the authority matching {@link SliceData#isPlatformDefined()}.
+ */
+public class SliceDataSnapshot {
+
+    private final Map<Uri, SliceData> mSliceDataByUri;
+    private final List<SliceData> mPlatformSliceData;
+    private final List<SliceData> mOemSliceData;
+
+    SliceDataSnapshot(List<SliceData> sliceData) {
+        final Map<Uri, SliceData> sliceDataByUri = new ArrayMap<>(sliceData.size());
+        final List<SliceData> platformSliceData = new ArrayList<>();
+        final List<SliceData> oemSliceData = new ArrayList<>();
+        for (SliceData data : sliceData) {
+            sliceDataByUri.put(data.getUri(), data);
+            if (data.isPlatformDefined()) {
+                platformSliceData.add(data);
+            } else {
+                oemSliceData.add(data);
+            }
+        }
+        mSliceDataByUri = Collections.unmodifiableMap(sliceDataByUri);
+        mPlatformSliceData = Collections.unmodifiableList(platformSliceData);
+        mOemSliceData = Collections.unmodifiableList(oemSliceData);
+    }
+
+    /**
+     * @return the {@link SliceData} bound to exactly {@param uri}, or {@code null} if the snapshot
+     * does not hold it, for instance because {@param uri} is an intent-only Uri.
+     */
+    public SliceData getSliceData(Uri uri) {
+        return mSliceDataByUri.get(uri);
+    }
+
+    /**
+     * @return all {@link SliceData} of the snapshot matching on {@param isPlatformSlice}.
+     */
+    public List<SliceData> getSliceData(boolean isPlatformSlice) {
+        return isPlatformSlice ? mPlatformSliceData : mOemSliceData;
+    }
+
+    /**
+     * @return all {@link SliceData} of the snapshot.
+     */
+    public List<SliceData> getAllSliceData() {
+        final List<SliceData> sliceData = new ArrayList<>(size());
+        sliceData.addAll(mPlatformSliceData);
+        sliceData.addAll(mOemSliceData);
+        return sliceData;
+    }
+
+    /**
+     * @return the Uris of all {@link SliceData} of the snapshot matching on
+     * {@param isPlatformSlice}.
+     */
+    public List<Uri> getUris(boolean isPlatformSlice) {
+        final List<SliceData> sliceData = getSliceData(isPlatformSlice);
+        final List<Uri> uris = new ArrayList<>(sliceData.size());
+        for (SliceData data : sliceData) {
+            uris.add(data.getUri());
+        }
+        return uris;
+    }
+
+    public int size() {
+        return mPlatformSliceData.size() + mOemSliceData.size();
+    }
+}
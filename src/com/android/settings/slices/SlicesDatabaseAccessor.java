@@ -22,8 +22,10 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.os.Binder;
+import android.provider.SettingsSlicesContract;
 import android.util.Pair;
 
 import com.android.settings.overlay.FeatureFactory;
@@ -116,6 +118,56 @@ public class SlicesDatabaseAccessor {
         return keys;
     }
 
+    /**
+     * Return an immutable {@link SliceDataSnapshot} of every row of the slices database, each
+     * bound to the action {@link Uri} of its key. The snapshot is read in a single query and
+     * shared by all accessors until the slices database is indexed again. A snapshot read while
+     * the database was indexed again is returned to the caller, but not shared.
+     */
+    public SliceDataSnapshot getSliceDataSnapshot() {
+        verifyIndexing();
+
+        SliceDataSnapshot snapshot = mHelper.getSliceDataSnapshot();
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        final int generation = mHelper.getIndexGeneration();
+        final SQLiteDatabase database = mHelper.getReadableDatabase();
+        final List<SliceData> sliceData = new ArrayList<>();
+
+        try (final Cursor resultCursor = database.query(TABLE_SLICES_INDEX, SELECT_COLUMNS_ALL,
+                null /* where */, null /* selection */, null /* groupBy */, null /* having */,
+                null /* orderBy */)) {
+            final int keyIndex = resultCursor.getColumnIndex(IndexColumns.KEY);
+            final int platformIndex = resultCursor.getColumnIndex(IndexColumns.PLATFORM_SLICE);
+            while (resultCursor.moveToNext()) {
+                final Uri uri = buildActionUri(resultCursor.getString(keyIndex),
+                        resultCursor.getInt(platformIndex) == TRUE);
+                sliceData.add(buildSliceData(resultCursor, uri, false /* isIntentOnly */));
+            }
+        }
+
+        snapshot = new SliceDataSnapshot(sliceData);
+        mHelper.setSliceDataSnapshot(snapshot, generation);
+        return snapshot;
+    }
+
+    /**
+     * @return the {@link SliceDataSnapshot} if it has already been loaded by
+     * {@link #getSliceDataSnapshot()}, or {@code null}. Never queries the database.
+     */
+    public SliceDataSnapshot getLoadedSliceDataSnapshot() {
+        return mHelper.getSliceDataSnapshot();
+    }
+
+    /**
+     * @return a number which changes whenever the slices database is dropped or indexed again.
+     */
+    public int getIndexGeneration() {
+        return mHelper.getIndexGeneration();
+    }
+
     private Cursor getIndexedSliceData(String path) {
         verifyIndexing();
 
@@ -140,6 +192,17 @@ public class SlicesDatabaseAccessor {
         return resultCursor;
     }
 
+    private static Uri buildActionUri(String key, boolean isPlatformSlice) {
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(isPlatformSlice
+                        ? SettingsSlicesContract.AUTHORITY
+                        : SettingsSliceProvider.SLICE_AUTHORITY)
+                .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION)
+                .appendPath(key)
+                .build();
+    }
+
     private String buildKeyMatchWhereClause() {
         return new StringBuilder(IndexColumns.KEY)
                 .append(" = ?")
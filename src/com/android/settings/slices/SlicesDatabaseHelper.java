@@ -25,6 +25,7 @@ import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Defines the schema for the Slices database.
@@ -123,6 +124,21 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
 
     private static SlicesDatabaseHelper sSingleton;
 
+    /**
+     * Snapshot of the indexed data shared by every {@link SlicesDatabaseAccessor}, dropped
+     * whenever the data is indexed again.
+     */
+    private volatile SliceDataSnapshot mSliceDataSnapshot;
+
+    /**
+     * Incremented whenever the indexed data is dropped or indexed again, so that the data cached
+     * out of the database can be invalidated.
+     */
+    private final AtomicInteger mIndexGeneration = new AtomicInteger();
+
+    // Guards the snapshot against being published for a generation that was just dropped.
+    private final Object mSnapshotLock = new Object();
+
     public static synchronized SlicesDatabaseHelper getInstance(Context context) {
         if (sSingleton == null) {
             sSingleton = new SlicesDatabaseHelper(context.getApplicationContext());
@@ -154,6 +170,7 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
      * {@link#isNewIndexingState(Context)} will return {@code true}.
      */
     void reconstruct(SQLiteDatabase db) {
+        clearSliceDataSnapshot();
         mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
                 .edit()
                 .clear()
@@ -167,6 +184,7 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
      * a full index of the TABLE_SLICES_INDEX.
      */
     public void setIndexedState() {
+        clearSliceDataSnapshot();
         setBuildIndexed();
         setLocaleIndexed();
     }
@@ -180,6 +198,37 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
         return isBuildIndexed() && isLocaleIndexed();
     }
 
+    SliceDataSnapshot getSliceDataSnapshot() {
+        return mSliceDataSnapshot;
+    }
+
+    /**
+     * Publishes {@param snapshot} unless the data was dropped or indexed again since
+     * {@param generation} was read, in which case the snapshot is stale.
+     *
+     * @return {@code true} if the snapshot was published.
+     */
+    boolean setSliceDataSnapshot(SliceDataSnapshot snapshot, int generation) {
+        synchronized (mSnapshotLock) {
+            if (mIndexGeneration.get() != generation) {
+                return false;
+            }
+            mSliceDataSnapshot = snapshot;
+            return true;
+        }
+    }
+
+    int getIndexGeneration() {
+        return mIndexGeneration.get();
+    }
+
+    private void clearSliceDataSnapshot() {
+        synchronized (mSnapshotLock) {
+            mSliceDataSnapshot = null;
+            mIndexGeneration.incrementAndGet();
+        }
+    }
+
     private void createDatabases(SQLiteDatabase db) {
         db.execSQL(CREATE_SLICES_TABLE);
         Log.d(TAG, "Created databases");
@@ -62,6 +62,14 @@ public class AppStateChangeWifiStateBridge extends AppStateAppOpsBridge {
         }
     }
 
+    @Override
+    protected void loadChangedExtraInfo(List<AppEntry> apps) {
+        // Same as loadAllExtraInfo(), which keeps the state of every package.
+        for (AppEntry entry : apps) {
+            updateExtraInfo(entry, entry.info.packageName, entry.info.uid);
+        }
+    }
+
     public WifiSettingsState getWifiSettingsInfo(String pkg, int uid) {
         PermissionState permissionState = super.getPermissionInfo(pkg, uid);
         return new WifiSettingsState(permissionState);
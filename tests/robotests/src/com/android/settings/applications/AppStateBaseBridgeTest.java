@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.ApplicationInfo;
+import android.os.Looper;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AppStateBaseBridgeTest {
+
+    @Mock
+    private ApplicationsState mState;
+    @Mock
+    private ApplicationsState.Session mSession;
+
+    private ArrayList<AppEntry> mApps;
+    private TestBridge mBridge;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mState.newSession(any())).thenReturn(mSession);
+        when(mState.getBackgroundLooper()).thenReturn(mock(Looper.class));
+
+        mApps = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            mApps.add(getMockAppEntry("pkg" + i, 10000 + i));
+        }
+        when(mSession.getAllApps()).thenAnswer(invocation -> new ArrayList<>(mApps));
+        mBridge = new TestBridge(mState);
+    }
+
+    @Test
+    public void testLoadExtraInfo_firstLoad_loadAll() {
+        assertThat(mBridge.loadExtraInfo(false /* loadAll */)).isTrue();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mUpdatedPackages).isEmpty();
+    }
+
+    @Test
+    public void testLoadExtraInfo_oneAppChanged_onlyUpdateChangedApp() {
+        mBridge.loadExtraInfo(true /* loadAll */);
+        final AppEntry changed = mApps.get(3);
+        final ApplicationInfo info = new ApplicationInfo(changed.info);
+        changed.info = info;
+        final AppEntry added = getMockAppEntry("added", 20000);
+        mApps.add(added);
+
+        assertThat(mBridge.loadExtraInfo(false /* loadAll */)).isTrue();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mUpdatedPackages).containsExactly("pkg3", "added");
+    }
+
+    @Test
+    public void testLoadExtraInfo_nothingChanged_nothingLoaded() {
+        mBridge.loadExtraInfo(true /* loadAll */);
+
+        assertThat(mBridge.loadExtraInfo(false /* loadAll */)).isFalse();
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(1);
+        assertThat(mBridge.mUpdatedPackages).isEmpty();
+    }
+
+    @Test
+    public void testLoadExtraInfo_manyAppsChanged_loadAll() {
+        mBridge.loadExtraInfo(true /* loadAll */);
+        for (int i = 0; i < 4; i++) {
+            mApps.get(i).info = new ApplicationInfo(mApps.get(i).info);
+        }
+
+        mBridge.loadExtraInfo(false /* loadAll */);
+
+        assertThat(mBridge.mLoadAllCount).isEqualTo(2);
+    }
+
+    @Test
+    public void testForceLoadPackage_indexedUid_updateMatchingApp() {
+        mBridge.loadExtraInfo(true /* loadAll */);
+
+        mBridge.forceLoadPackage("pkg5", 10005);
+
+        assertThat(mBridge.mUpdatedPackages).containsExactly("pkg5");
+    }
+
+    @Test
+    public void testForceLoadPackage_notIndexedYet_updateMatchingApp() {
+        mApps.add(getMockAppEntry("added", 20000));
+
+        mBridge.forceLoadPackage("added", 20000);
+
+        assertThat(mBridge.mUpdatedPackages).containsExactly("added");
+    }
+
+    private static AppEntry getMockAppEntry(String pkg, int uid) {
+        final AppEntry entry = mock(AppEntry.class);
+        entry.info = new ApplicationInfo();
+        entry.info.packageName = pkg;
+        entry.info.uid = uid;
+        return entry;
+    }
+
+    private static class TestBridge extends AppStateBaseBridge {
+        private int mLoadAllCount;
+        private final List<String> mUpdatedPackages = new ArrayList<>();
+
+        TestBridge(ApplicationsState appState) {
+            super(appState, null /* callback */);
+        }
+
+        @Override
+        protected void loadAllExtraInfo() {
+            mLoadAllCount++;
+        }
+
+        @Override
+        protected void updateExtraInfo(AppEntry app, String pkg, int uid) {
+            mUpdatedPackages.add(pkg);
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package com.android.settings.applications;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.app.admin.DevicePolicyManager;
@@ -132,6 +134,20 @@ public final class ApplicationFeatureProviderImplTest {
         assertThat(mAppList.get(0).appInfo.packageName).isEqualTo(APP_2);
     }
 
+    @Test
+    public void testCountAndListPolicyInstalledApps_scanInstalledAppsOnce() {
+        verifyCalculateNumberOfPolicyInstalledApps(false /* async */);
+        mProvider.listPolicyInstalledApps((list) -> mAppList = list);
+        mProvider.calculateNumberOfAppsWithAdminGrantedPermissions(new String[] {PERMISSION},
+                false /* async */, (num) -> mAppCount = num);
+
+        verify(mPackageManager, times(1)).getInstalledApplicationsAsUser(
+                PackageManager.GET_DISABLED_COMPONENTS
+                        | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
+                        | PackageManager.MATCH_ANY_USER,
+                MAIN_USER_ID);
+    }
+
     @Test
     public void testCalculateNumberOfInstalledAppsSync() {
         verifyCalculateNumberOfPolicyInstalledApps(false /* async */);
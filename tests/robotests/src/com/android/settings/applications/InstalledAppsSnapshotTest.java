@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.applications;
+
+import static com.android.settings.testutils.ApplicationTestUtils.buildInfo;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.os.Build;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.wrapper.PackageManagerWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public final class InstalledAppsSnapshotTest {
+
+    private static final int MANAGED_PROFILE_ID = 10;
+    private static final int FLAGS = PackageManager.GET_DISABLED_COMPONENTS
+            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS;
+
+    @Mock
+    private PackageManagerWrapper mPackageManager;
+
+    private Context mContext;
+    private UserInfo mManagedProfile;
+    private InstalledAppsSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mManagedProfile = new UserInfo(MANAGED_PROFILE_ID, "managed profile", 0);
+        when(mPackageManager.getInstalledApplicationsAsUser(FLAGS, MANAGED_PROFILE_ID))
+                .thenReturn(Arrays.asList(buildInfo(MANAGED_PROFILE_ID * 100000 + 1, "app1",
+                        0 /* flags */, Build.VERSION_CODES.M)));
+        mSnapshot = new InstalledAppsSnapshot(mContext, mPackageManager);
+    }
+
+    @Test
+    public void testGetInstalledApplications_sameProfile_scanOnce() {
+        final List<ApplicationInfo> apps = mSnapshot.getInstalledApplications(mManagedProfile);
+
+        assertThat(mSnapshot.getInstalledApplications(mManagedProfile)).isSameAs(apps);
+        assertThat(apps).hasSize(1);
+        verify(mPackageManager, times(1)).getInstalledApplicationsAsUser(FLAGS,
+                MANAGED_PROFILE_ID);
+    }
+
+    @Test
+    public void testGetInstalledApplications_packageChanged_scanAgain() {
+        mSnapshot.getInstalledApplications(mManagedProfile);
+
+        mSnapshot.mPackageReceiver.onReceive(mContext, new Intent(Intent.ACTION_PACKAGE_ADDED));
+        mSnapshot.getInstalledApplications(mManagedProfile);
+
+        verify(mPackageManager, times(2)).getInstalledApplicationsAsUser(FLAGS,
+                MANAGED_PROFILE_ID);
+    }
+}
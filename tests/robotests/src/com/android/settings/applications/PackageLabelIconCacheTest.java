@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public final class PackageLabelIconCacheTest {
+
+    private static final String PACKAGE_NAME = "com.android.test";
+    private static final int LABEL_RES = 0x7f010001;
+    private static final String LABEL = "Test app";
+
+    @Mock
+    private PackageManager mPackageManager;
+
+    private Context mContext;
+    private ApplicationInfo mInfo;
+    private PackageLabelIconCache mCache;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mInfo = new ApplicationInfo();
+        mInfo.packageName = PACKAGE_NAME;
+        mInfo.uid = 10001;
+        mInfo.labelRes = LABEL_RES;
+        mInfo.longVersionCode = 1;
+        when(mPackageManager.getText(PACKAGE_NAME, LABEL_RES, mInfo)).thenReturn(LABEL);
+        mCache = new PackageLabelIconCache(mContext, mPackageManager);
+    }
+
+    @Test
+    public void testGetLabel_samePackage_loadOnce() {
+        assertThat(mCache.getLabel(mInfo).toString()).isEqualTo(LABEL);
+        assertThat(mCache.getLabel(mInfo).toString()).isEqualTo(LABEL);
+
+        verify(mPackageManager, times(1)).getText(PACKAGE_NAME, LABEL_RES, mInfo);
+    }
+
+    @Test
+    public void testGetLabel_versionChanged_loadAgain() {
+        mCache.getLabel(mInfo);
+
+        mInfo.longVersionCode = 2;
+        mCache.getLabel(mInfo);
+
+        verify(mPackageManager, times(2)).getText(PACKAGE_NAME, LABEL_RES, mInfo);
+    }
+
+    @Test
+    public void testGetLabel_packageChanged_loadAgain() {
+        mCache.getLabel(mInfo);
+
+        mCache.mPackageReceiver.onReceive(mContext, new Intent(Intent.ACTION_PACKAGE_CHANGED,
+                Uri.fromParts("package", PACKAGE_NAME, null /* fragment */)));
+        mCache.getLabel(mInfo);
+
+        verify(mPackageManager, times(2)).getText(PACKAGE_NAME, LABEL_RES, mInfo);
+    }
+
+    @Test
+    public void testGetLabel_otherPackageChanged_loadOnce() {
+        mCache.getLabel(mInfo);
+
+        mCache.mPackageReceiver.onReceive(mContext, new Intent(Intent.ACTION_PACKAGE_CHANGED,
+                Uri.fromParts("package", "com.android.other", null /* fragment */)));
+        mCache.getLabel(mInfo);
+
+        verify(mPackageManager, times(1)).getText(PACKAGE_NAME, LABEL_RES, mInfo);
+    }
+}
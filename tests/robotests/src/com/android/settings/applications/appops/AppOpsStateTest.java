@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.applications.appops;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public final class AppOpsStateTest {
+
+    private static final String PACKAGE_NAME = "com.android.test";
+
+    @Mock
+    private AppOpsManager mAppOpsManager;
+    @Mock
+    private PackageManager mPackageManager;
+
+    private AppOpsState mState;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mState = new AppOpsState(RuntimeEnvironment.application, mAppOpsManager,
+                mPackageManager);
+    }
+
+    @Test
+    public void testTemplateIndex_shownPermissions_indexedOnceWithFirstOp() {
+        final AppOpsState.OpsTemplate template = new AppOpsState.OpsTemplate(
+                new int[] {AppOpsManager.OP_COARSE_LOCATION, AppOpsManager.OP_FINE_LOCATION,
+                        AppOpsManager.OP_GPS, AppOpsManager.OP_VIBRATE},
+                new boolean[] {true, true, true, false});
+
+        final AppOpsState.TemplateIndex index = template.getIndex();
+
+        assertThat(index.perms).asList().containsExactly(
+                Manifest.permission.ACCESS_COARSE_LOCATION,
+                Manifest.permission.ACCESS_FINE_LOCATION).inOrder();
+        assertThat(index.permOps).asList().containsExactly(
+                AppOpsManager.OP_COARSE_LOCATION, AppOpsManager.OP_FINE_LOCATION).inOrder();
+        assertThat(index.permToIndex.get(Manifest.permission.ACCESS_FINE_LOCATION))
+                .isEqualTo(1);
+        assertThat(index.permToIndex.containsKey(Manifest.permission.VIBRATE)).isFalse();
+        assertThat(index.opToOrder[AppOpsManager.OP_FINE_LOCATION]).isEqualTo(1);
+    }
+
+    @Test
+    public void testTemplateIndex_sameTemplate_builtOnce() {
+        final AppOpsState.OpsTemplate template = new AppOpsState.OpsTemplate(
+                new int[] {AppOpsManager.OP_COARSE_LOCATION}, new boolean[] {true});
+
+        assertThat(template.getIndex()).isSameAs(template.getIndex());
+    }
+
+    @Test
+    public void testBuildStateTask_cancelled_stopsBeforePackages() throws Exception {
+        final List<AppOpsManager.PackageOps> ops = new ArrayList<>();
+        ops.add(new AppOpsManager.PackageOps(PACKAGE_NAME, 10001,
+                new ArrayList<AppOpsManager.OpEntry>()));
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenReturn(ops);
+        when(mPackageManager.getPackagesHoldingPermissions(any(String[].class), anyInt()))
+                .thenReturn(new ArrayList<PackageInfo>());
+        final AppOpsState.BuildStateTask task = mState.new BuildStateTask(
+                AppOpsState.LOCATION_TEMPLATE, 0, null, AppOpsState.RECENCY_COMPARATOR,
+                false /* privacyGuard */, entries -> {});
+
+        task.cancel(false /* mayInterruptIfRunning */);
+
+        assertThat(task.doInBackground()).isNull();
+        verify(mPackageManager, never()).getApplicationInfo(anyString(), anyInt());
+    }
+}
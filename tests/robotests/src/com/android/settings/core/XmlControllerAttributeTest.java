@@ -53,6 +53,10 @@ public class XmlControllerAttributeTest {
     private static final String BAD_CLASSNAME_ERROR =
             "The following controllers set in the XML did not have valid class names:\n";
 
+    private static final String UNREGISTERED_CONTROLLER_ERROR =
+            "The following controllers are missing from PreferenceControllerRegistry, and will be "
+                    + "instantiated through reflection:\n";
+
     Context mContext;
     SearchFeatureProvider mSearchProvider;
 
@@ -109,6 +113,26 @@ public class XmlControllerAttributeTest {
         assertWithMessage(badClassNameError).that(badClassNameControllers).isEmpty();
     }
 
+    @Test
+    public void testAllIndexableXML_controllersRegistered() {
+        Set<Integer> xmlSet = getIndexableXml();
+        xmlSet.addAll(whitelistXml);
+
+        Set<String> unregisteredControllers = new HashSet<>();
+        for (int resId : xmlSet) {
+            for (String controllerClassName : getXmlControllers(resId)) {
+                if (PreferenceControllerRegistry.getFactory(controllerClassName) == null
+                        && PreferenceControllerRegistry.getKeyedFactory(controllerClassName)
+                        == null) {
+                    unregisteredControllers.add(controllerClassName);
+                }
+            }
+        }
+
+        assertWithMessage(buildErrorMessage(UNREGISTERED_CONTROLLER_ERROR,
+                unregisteredControllers)).that(unregisteredControllers).isEmpty();
+    }
+
     private Set<Integer> getIndexableXml() {
         Set<Integer> xmlResSet = new HashSet<>();
 
@@ -288,4 +288,34 @@ public class CachedStorageValuesHelperTest {
         assertThat(mSharedPreferences.getInt(USER_ID_KEY, -1)).isEqualTo(0);
         assertThat(mSharedPreferences.getLong(TIMESTAMP_KEY, -1)).isEqualTo(10000L);
     };
+
+    @Test
+    public void cacheResult_otherUsers_cachedValuesAreLoaded() throws Exception {
+        when(mMockClock.getCurrentTime()).thenReturn(10000L);
+        final SparseArray<StorageAsyncLoader.AppsStorageResult> results = new SparseArray<>();
+        results.put(0, buildResult(1L, 22222L));
+        results.put(10, buildResult(3L, 33333L));
+        final PrivateStorageInfo info = new PrivateStorageInfo(1000L, 6000L);
+
+        mCachedValuesHelper.cacheResult(info, results);
+        final SparseArray<StorageAsyncLoader.AppsStorageResult> cachedResults =
+                mCachedValuesHelper.getCachedAppsStorageResult();
+
+        assertThat(mSharedPreferences.getLong(GAME_APPS_SIZE_KEY, -1)).isEqualTo(1L);
+        assertThat(cachedResults.size()).isEqualTo(2);
+        assertThat(cachedResults.get(0).gamesSize).isEqualTo(1L);
+        assertThat(cachedResults.get(0).externalStats.totalBytes).isEqualTo(22222L);
+        assertThat(cachedResults.get(10).gamesSize).isEqualTo(3L);
+        assertThat(cachedResults.get(10).externalStats.totalBytes).isEqualTo(33333L);
+    }
+
+    private static StorageAsyncLoader.AppsStorageResult buildResult(long gamesSize,
+            long externalTotalBytes) {
+        final StorageAsyncLoader.AppsStorageResult result =
+                new StorageAsyncLoader.AppsStorageResult();
+        result.gamesSize = gamesSize;
+        result.externalStats = new StorageStatsSource.ExternalStorageStats(
+                externalTotalBytes, 2L, 20L, 200L, 2000L);
+        return result;
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryAppListDiffTest {
+
+    private static final String KEY_FIRST = "10001";
+    private static final String KEY_SECOND = "10002";
+    private static final String KEY_THIRD = "10003";
+
+    @Mock
+    private BatteryAppListDiff.Callback mCallback;
+
+    private BatteryAppListDiff mListDiff;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mListDiff = new BatteryAppListDiff();
+    }
+
+    @Test
+    public void testDispatch_firstRows_allInserted() {
+        final BatteryAppListDiff.Row first = createRow(KEY_FIRST, 1, 20);
+        final BatteryAppListDiff.Row second = createRow(KEY_SECOND, 2, 10);
+
+        mListDiff.dispatch(createRows(first, second), mCallback);
+
+        verify(mCallback).onInserted(first);
+        verify(mCallback).onInserted(second);
+        verify(mCallback, never()).onRemoved(anyString());
+        assertThat(mListDiff.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDispatch_sameRows_nothingDispatched() {
+        mListDiff.dispatch(createRows(createRow(KEY_FIRST, 1, 20)), new NoOpCallback());
+
+        mListDiff.dispatch(createRows(createRow(KEY_FIRST, 1, 20.2)), mCallback);
+
+        verify(mCallback, never()).onInserted(any());
+        verify(mCallback, never()).onRemoved(anyString());
+        verify(mCallback, never()).onChanged(any(), anyInt());
+    }
+
+    @Test
+    public void testDispatch_rowsChanged_reportMinimalMutations() {
+        mListDiff.dispatch(createRows(createRow(KEY_FIRST, 1, 20), createRow(KEY_SECOND, 2, 10)),
+                new NoOpCallback());
+        final BatteryAppListDiff.Row second = createRow(KEY_SECOND, 1, 30);
+        final BatteryAppListDiff.Row first = createRow(KEY_FIRST, 2, 20);
+        first.showAnomalyIcon = true;
+        final BatteryAppListDiff.Row third = createRow(KEY_THIRD, 3, 5);
+
+        mListDiff.dispatch(createRows(second, first, third), mCallback);
+
+        verify(mCallback).onChanged(second,
+                BatteryAppListDiff.Change.ORDER | BatteryAppListDiff.Change.PERCENT);
+        verify(mCallback).onChanged(first,
+                BatteryAppListDiff.Change.ORDER | BatteryAppListDiff.Change.ANOMALY);
+        verify(mCallback).onInserted(third);
+    }
+
+    @Test
+    public void testDispatch_rowMissing_removed() {
+        mListDiff.dispatch(createRows(createRow(KEY_FIRST, 1, 20), createRow(KEY_SECOND, 2, 10)),
+                new NoOpCallback());
+
+        mListDiff.dispatch(createRows(createRow(KEY_FIRST, 1, 20)), mCallback);
+
+        verify(mCallback).onRemoved(KEY_SECOND);
+        assertThat(mListDiff.getRow(KEY_SECOND)).isNull();
+    }
+
+    @Test
+    public void testDispatch_duplicateKey_keepFirstRow() {
+        final BatteryAppListDiff.Row first = createRow(KEY_FIRST, 1, 20);
+        final BatteryAppListDiff.Row duplicate = createRow(KEY_FIRST, 2, 10);
+
+        mListDiff.dispatch(createRows(first, duplicate), mCallback);
+
+        verify(mCallback).onInserted(first);
+        verify(mCallback, never()).onInserted(duplicate);
+        assertThat(mListDiff.getRow(KEY_FIRST)).isSameAs(first);
+    }
+
+    private static BatteryAppListDiff.Row createRow(String key, int order, double percent) {
+        final BatteryAppListDiff.Row row = new BatteryAppListDiff.Row(key, null /* sipper */);
+        row.order = order;
+        row.percent = percent;
+        return row;
+    }
+
+    private static List<BatteryAppListDiff.Row> createRows(BatteryAppListDiff.Row... rows) {
+        final List<BatteryAppListDiff.Row> list = new ArrayList<>();
+        for (BatteryAppListDiff.Row row : rows) {
+            list.add(row);
+        }
+        return list;
+    }
+
+    private static class NoOpCallback implements BatteryAppListDiff.Callback {
+        @Override
+        public void onRemoved(String key) {
+        }
+
+        @Override
+        public void onInserted(BatteryAppListDiff.Row row) {
+        }
+
+        @Override
+        public void onChanged(BatteryAppListDiff.Row row, int changes) {
+        }
+    }
+}
@@ -21,6 +21,7 @@ import static org.mockito.Mockito.spy;
 
 import android.content.Context;
 import android.text.format.DateUtils;
+import android.util.SparseArray;
 
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
 import com.android.settings.fuelgauge.batterytip.AppInfo;
@@ -148,4 +149,97 @@ public class BatteryDatabaseManagerTest {
                 AnomalyDatabaseHelper.State.NEW);
         assertThat(newAppInfos).containsExactly(mCombinedAppInfo);
     }
+
+    @Test
+    public void testQueryAnomaliesByState_groupsByState() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                AnomalyDatabaseHelper.State.AUTO_HANDLED, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_NEW,
+                AnomalyDatabaseHelper.State.HANDLED, NOW);
+
+        final SparseArray<List<AppInfo>> appInfos =
+                mBatteryDatabaseManager.queryAnomaliesByState(ONE_DAY_BEFORE,
+                        new int[]{AnomalyDatabaseHelper.State.NEW,
+                                AnomalyDatabaseHelper.State.AUTO_HANDLED});
+
+        assertThat(appInfos.size()).isEqualTo(2);
+        assertThat(appInfos.get(AnomalyDatabaseHelper.State.NEW)).containsExactly(mNewAppInfo);
+        assertThat(appInfos.get(AnomalyDatabaseHelper.State.AUTO_HANDLED))
+                .containsExactly(mOldAppInfo);
+    }
+
+    @Test
+    public void testQueryAnomaliesByState_noAnomaly_emptyList() {
+        final SparseArray<List<AppInfo>> appInfos =
+                mBatteryDatabaseManager.queryAnomaliesByState(0 /* timeMsAfter */,
+                        new int[]{AnomalyDatabaseHelper.State.NEW});
+
+        assertThat(appInfos.get(AnomalyDatabaseHelper.State.NEW)).isEmpty();
+    }
+
+    @Test
+    public void testInsertAnomalies_insertAllInBatch() {
+        final List<BatteryDatabaseManager.AnomalyRecord> anomalies = new ArrayList<>();
+        anomalies.add(new BatteryDatabaseManager.AnomalyRecord(UID_NEW, PACKAGE_NAME_NEW,
+                TYPE_NEW, AnomalyDatabaseHelper.State.NEW, NOW));
+        anomalies.add(new BatteryDatabaseManager.AnomalyRecord(UID_NEW, PACKAGE_NAME_NEW,
+                TYPE_OLD, AnomalyDatabaseHelper.State.NEW, NOW));
+        // Duplicate of the first anomaly, which should be ignored
+        anomalies.add(new BatteryDatabaseManager.AnomalyRecord(UID_NEW, PACKAGE_NAME_NEW,
+                TYPE_NEW, AnomalyDatabaseHelper.State.NEW, NOW));
+
+        assertThat(mBatteryDatabaseManager.insertAnomalies(anomalies)).isEqualTo(2);
+
+        final List<AppInfo> newAppInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                ONE_DAY_BEFORE, AnomalyDatabaseHelper.State.NEW);
+        assertThat(newAppInfos).containsExactly(mCombinedAppInfo);
+    }
+
+    @Test
+    public void testCompactAnomalies_collapseSameDayAnomalies() {
+        final long startOfDay = NOW - NOW % DateUtils.DAY_IN_MILLIS;
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, startOfDay);
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, startOfDay + DateUtils.HOUR_IN_MILLIS);
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, startOfDay + 2 * DateUtils.HOUR_IN_MILLIS);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                AnomalyDatabaseHelper.State.NEW, TWO_DAYS_BEFORE);
+
+        assertThat(mBatteryDatabaseManager.compactAnomalies()).isEqualTo(2);
+
+        assertThat(mBatteryDatabaseManager.getAnomalyRowCount()).isEqualTo(2);
+        assertThat(mBatteryDatabaseManager.getLastCompactionTimeMs()).isAtLeast(NOW);
+        final List<AppInfo> appInfos = mBatteryDatabaseManager.queryAllAnomalies(0,
+                AnomalyDatabaseHelper.State.NEW);
+        assertThat(appInfos).containsExactly(mNewAppInfo, mOldAppInfo);
+    }
+
+    @Test
+    public void testCompactAnomalies_noRepeatedAnomaly_removeNothing() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.HANDLED, NOW);
+
+        assertThat(mBatteryDatabaseManager.compactAnomalies()).isEqualTo(0);
+        assertThat(mBatteryDatabaseManager.getAnomalyRowCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDeleteOldestAnomalies_overMaxRows_deleteOldestFirst() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                AnomalyDatabaseHelper.State.NEW, TWO_DAYS_BEFORE);
+
+        assertThat(mBatteryDatabaseManager.deleteOldestAnomalies(1 /* maxRows */)).isEqualTo(1);
+
+        final List<AppInfo> appInfos = mBatteryDatabaseManager.queryAllAnomalies(0,
+                AnomalyDatabaseHelper.State.NEW);
+        assertThat(appInfos).containsExactly(mNewAppInfo);
+    }
 }
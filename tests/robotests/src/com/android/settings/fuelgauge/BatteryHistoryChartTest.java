@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryHistoryChartTest {
+
+    // Early in the day in UTC, so that the chart doesn't need date labels.
+    private static final long WALL_TIME = 1_500_000_000_000L;
+    private static final long HISTORY_START = 1000;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 500;
+    private static final int[] SIGNAL_STRENGTHS = {1, 3, 2, 4, 0};
+
+    private TimeZone mDefaultTimeZone;
+    private BatteryHistoryChart mChart;
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        mChart = createChart();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+    }
+
+    @Test
+    public void testExtendHistoryPaths_matchesLayoutChart() {
+        final BatteryHistorySnapshot history = createHistory(HISTORY_START, 4, HOUR_MS);
+        final BatteryHistorySnapshot appendedHistory = createHistory(HISTORY_START, 7, HOUR_MS);
+        setHistory(mChart, history);
+        mChart.layoutChart(WIDTH, HEIGHT);
+        setHistory(mChart, appendedHistory);
+
+        assertThat(mChart.canExtendHistory(history)).isTrue();
+        mChart.extendHistoryPaths(WIDTH, HEIGHT);
+
+        final BatteryHistoryChart freshChart = createChart();
+        setHistory(freshChart, appendedHistory);
+        freshChart.layoutChart(WIDTH, HEIGHT);
+
+        final BatteryHistoryChart.PathState state = mChart.mPathState;
+        final BatteryHistoryChart.PathState freshState = freshChart.mPathState;
+        assertThat(state.index).isEqualTo(freshState.index);
+        assertThat(state.curWalltime).isEqualTo(freshState.curWalltime);
+        assertThat(state.lastRealtime).isEqualTo(freshState.lastRealtime);
+        assertThat(state.walltimeChange).isEqualTo(freshState.walltimeChange);
+        assertThat(state.x).isEqualTo(freshState.x);
+        assertThat(state.y).isEqualTo(freshState.y);
+        assertThat(state.startX).isEqualTo(freshState.startX);
+        assertThat(state.lastX).isEqualTo(freshState.lastX);
+        assertThat(state.lastY).isEqualTo(freshState.lastY);
+        assertThat(state.xWalltime).isEqualTo(freshState.xWalltime);
+        assertThat(state.startXWalltime).isEqualTo(freshState.startXWalltime);
+        assertThat(state.lastXWalltime).isEqualTo(freshState.lastXWalltime);
+        assertThat(state.lastScreenOn).isEqualTo(freshState.lastScreenOn);
+        assertThat(state.numPhoneSignalTicks).isEqualTo(freshState.numPhoneSignalTicks);
+        assertThat(state.lastPhoneSignalBin).isEqualTo(freshState.lastPhoneSignalBin);
+
+        final BatteryHistoryChart.ChartData ticks = mChart.mPhoneSignalChart;
+        final BatteryHistoryChart.ChartData freshTicks = freshChart.mPhoneSignalChart;
+        assertThat(ticks.mNumTicks).isGreaterThan(0);
+        assertThat(ticks.mNumTicks).isEqualTo(freshTicks.mNumTicks);
+        assertThat(Arrays.copyOf(ticks.mTicks, ticks.mNumTicks))
+                .isEqualTo(Arrays.copyOf(freshTicks.mTicks, freshTicks.mNumTicks));
+    }
+
+    @Test
+    public void testCanExtendHistory_appendedRecords_returnsTrue() {
+        final BatteryHistorySnapshot history = createHistory(HISTORY_START, 4, HOUR_MS);
+        setHistory(mChart, history);
+        mChart.layoutChart(WIDTH, HEIGHT);
+
+        setHistory(mChart, createHistory(HISTORY_START, 7, HOUR_MS));
+
+        assertThat(mChart.canExtendHistory(history)).isTrue();
+    }
+
+    @Test
+    public void testCanExtendHistory_shiftedHistory_returnsFalse() {
+        final BatteryHistorySnapshot history = createHistory(HISTORY_START, 4, HOUR_MS);
+        setHistory(mChart, history);
+        mChart.layoutChart(WIDTH, HEIGHT);
+
+        setHistory(mChart, createHistory(HISTORY_START + HOUR_MS, 7, HOUR_MS));
+
+        assertThat(mChart.canExtendHistory(history)).isFalse();
+    }
+
+    @Test
+    public void testCanExtendHistory_resetHistory_returnsFalse() {
+        final BatteryHistorySnapshot history = createHistory(HISTORY_START, 4, HOUR_MS);
+        setHistory(mChart, history);
+        mChart.layoutChart(WIDTH, HEIGHT);
+
+        // Same start, but the records already drawn were replaced.
+        setHistory(mChart, createHistory(HISTORY_START, 7, HOUR_MS / 2));
+
+        assertThat(mChart.canExtendHistory(history)).isFalse();
+    }
+
+    @Test
+    public void testCanExtendHistory_shorterHistory_returnsFalse() {
+        final BatteryHistorySnapshot history = createHistory(HISTORY_START, 4, HOUR_MS);
+        setHistory(mChart, history);
+        mChart.layoutChart(WIDTH, HEIGHT);
+
+        setHistory(mChart, createHistory(HISTORY_START, 2, HOUR_MS));
+
+        assertThat(mChart.canExtendHistory(history)).isFalse();
+    }
+
+    @Test
+    public void testCanExtendHistory_notLaidOut_returnsFalse() {
+        final BatteryHistorySnapshot history = createHistory(HISTORY_START, 4, HOUR_MS);
+        setHistory(mChart, createHistory(HISTORY_START, 7, HOUR_MS));
+
+        assertThat(mChart.canExtendHistory(history)).isFalse();
+    }
+
+    private static BatteryHistoryChart createChart() {
+        final BatteryHistoryChart chart = new BatteryHistoryChart(RuntimeEnvironment.application,
+                null /* attrs */);
+        final BatteryInfo info = new BatteryInfo();
+        info.batteryLevel = 70;
+        chart.mInfo = info;
+        chart.mBatLow = 0;
+        chart.mBatHigh = 100;
+        chart.mHavePhoneSignal = true;
+        return chart;
+    }
+
+    /**
+     * Set the history of {@code chart} like {@link BatteryHistoryChart#setStats} does, without a
+     * remaining time.
+     */
+    private static void setHistory(BatteryHistoryChart chart, BatteryHistorySnapshot history) {
+        chart.mHistory = history;
+        chart.mNumHist = history.numInteresting;
+        chart.mHistStart = history.historyStart;
+        chart.mHistDataEnd = history.historyDataEnd;
+        chart.mHistEnd = history.historyDataEnd;
+        chart.mStartWallTime = history.startWallTime;
+        chart.mEndDataWallTime = history.getEndDataWallTime();
+        chart.mEndWallTime = chart.mEndDataWallTime;
+    }
+
+    /**
+     * @return a history starting with a time record at {@code startTime}, followed by
+     * {@code numUpdates} records {@code stepMs} apart, each with a lower battery level.
+     */
+    private static BatteryHistorySnapshot createHistory(long startTime, int numUpdates,
+            long stepMs) {
+        final int size = numUpdates + 1;
+        final byte[] cmds = new byte[size];
+        final long[] times = new long[size];
+        final byte[] levels = new byte[size];
+        final int[] states = new int[size];
+        cmds[0] = HistoryItem.CMD_CURRENT_TIME;
+        times[0] = startTime;
+        for (int i = 1; i < size; i++) {
+            cmds[i] = HistoryItem.CMD_UPDATE;
+            times[i] = startTime + i * stepMs;
+            levels[i] = (byte) (100 - 5 * i);
+            states[i] = SIGNAL_STRENGTHS[i % SIGNAL_STRENGTHS.length]
+                    << HistoryItem.STATE_PHONE_SIGNAL_STRENGTH_SHIFT;
+            if (i % 2 == 1) {
+                states[i] |= HistoryItem.STATE_SCREEN_ON_FLAG;
+            }
+        }
+
+        final BatteryStats stats = mock(BatteryStats.class);
+        doAnswer(invocation -> {
+            doAnswer(new Answer() {
+                private int count = 0;
+
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    if (count == size) {
+                        return false;
+                    }
+                    HistoryItem record = invocation.getArgument(0);
+                    record.cmd = cmds[count];
+                    record.time = times[count];
+                    record.currentTime = WALL_TIME;
+                    record.batteryLevel = levels[count];
+                    record.states = states[count];
+                    count++;
+                    return true;
+                }
+            }).when(stats).getNextHistoryLocked(any(HistoryItem.class));
+            return true;
+        }).when(stats).startIteratingHistoryLocked();
+        return new BatteryHistorySnapshot(stats);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryHistorySnapshotTest {
+
+    private static final long WALL_TIME = 1_000_000_000L;
+
+    @Mock
+    private BatteryStats mBatteryStats;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        BatteryHistorySnapshot.clearCache();
+    }
+
+    @After
+    public void tearDown() {
+        BatteryHistorySnapshot.clearCache();
+    }
+
+    @Test
+    public void testDecode_computesWallClockBounds() {
+        mockBatteryStatsHistory();
+
+        final BatteryHistorySnapshot history = new BatteryHistorySnapshot(mBatteryStats);
+
+        assertThat(history.size).isEqualTo(5);
+        assertThat(history.historyStart).isEqualTo(1000);
+        assertThat(history.startWallTime).isEqualTo(WALL_TIME);
+        assertThat(history.historyDataEnd).isEqualTo(3000);
+        assertThat(history.getEndDataWallTime()).isEqualTo(WALL_TIME + 2000);
+        // The trailing overflow record is not interesting.
+        assertThat(history.numInteresting).isEqualTo(4);
+        assertThat(history.aggregatedStates).isEqualTo(HistoryItem.STATE_SCREEN_ON_FLAG);
+        assertThat(history.batteryLevels[3]).isEqualTo((byte) 97);
+        assertThat(history.isDeltaData(0)).isFalse();
+        assertThat(history.isDeltaData(1)).isTrue();
+    }
+
+    @Test
+    public void testGet_sameStats_decodesOnce() {
+        mockBatteryStatsHistory();
+
+        final BatteryHistorySnapshot history = BatteryHistorySnapshot.get(mBatteryStats);
+
+        assertThat(BatteryHistorySnapshot.get(mBatteryStats)).isSameAs(history);
+        verify(mBatteryStats, times(1)).startIteratingHistoryLocked();
+    }
+
+    @Test
+    public void testGet_differentStats_decodesAgain() {
+        mockBatteryStatsHistory();
+        final BatteryHistorySnapshot history = BatteryHistorySnapshot.get(mBatteryStats);
+
+        assertThat(BatteryHistorySnapshot.get(mock(BatteryStats.class))).isNotSameAs(history);
+    }
+
+    @Test
+    public void testParse_replaysDataPointsFromSnapshot() {
+        mockBatteryStatsHistory();
+        final List<Byte> levels = new ArrayList<>();
+        final BatteryInfo.BatteryDataParser parser = new BatteryInfo.BatteryDataParser() {
+            @Override
+            public void onParsingStarted(long startTime, long endTime) {
+            }
+
+            @Override
+            public void onDataPoint(long time, HistoryItem record) {
+                levels.add(record.batteryLevel);
+            }
+
+            @Override
+            public void onDataGap() {
+            }
+
+            @Override
+            public void onParsingDone() {
+            }
+        };
+
+        BatteryInfo.parse(mBatteryStats, parser);
+        BatteryInfo.parse(mBatteryStats, parser);
+
+        assertThat(levels).containsExactly((byte) 99, (byte) 98, (byte) 97,
+                (byte) 99, (byte) 98, (byte) 97).inOrder();
+        verify(mBatteryStats, times(1)).startIteratingHistoryLocked();
+    }
+
+    private void mockBatteryStatsHistory() {
+        doAnswer(invocation -> {
+            doAnswer(new Answer() {
+                private int count = 0;
+                private byte[] cmds = {HistoryItem.CMD_CURRENT_TIME, HistoryItem.CMD_UPDATE,
+                        HistoryItem.CMD_UPDATE, HistoryItem.CMD_UPDATE, HistoryItem.CMD_OVERFLOW};
+                private long[] times = {1000, 1000, 2000, 3000, 3500};
+                private byte[] levels = {0, 99, 98, 97, 0};
+                private int[] states = {0, HistoryItem.STATE_SCREEN_ON_FLAG, 0, 0, 0};
+
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    if (count == times.length) {
+                        return false;
+                    }
+                    HistoryItem record = invocation.getArgument(0);
+                    record.cmd = cmds[count];
+                    record.time = times[count];
+                    record.currentTime = WALL_TIME;
+                    record.batteryLevel = levels[count];
+                    record.states = states[count];
+                    count++;
+                    return true;
+                }
+            }).when(mBatteryStats).getNextHistoryLocked(any(HistoryItem.class));
+            return true;
+        }).when(mBatteryStats).startIteratingHistoryLocked();
+    }
+}
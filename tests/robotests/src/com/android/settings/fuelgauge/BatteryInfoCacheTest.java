@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Intent;
+import android.os.BatteryStats;
+
+import com.android.settings.testutils.BatteryTestUtils;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryInfoCacheTest {
+
+    @Mock
+    private BatteryStats mBatteryStats;
+    @Mock
+    private BatteryStats mOtherBatteryStats;
+    @Mock
+    private BatteryInfo mBatteryInfo;
+    @Mock
+    private BatteryInfo mOtherBatteryInfo;
+
+    private BatteryInfoCache mBatteryInfoCache;
+    private Intent mDischargingIntent;
+    private int mComputeCount;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mBatteryInfoCache = new BatteryInfoCache();
+        mDischargingIntent = BatteryTestUtils.getDischargingIntent();
+        mComputeCount = 0;
+    }
+
+    @Test
+    public void getOrCompute_sameStatsAndBroadcast_computesOnce() {
+        final BatteryInfo first = getOrCompute(mBatteryStats, mDischargingIntent,
+                BatteryInfoCache.InfoType.DEFAULT);
+        final BatteryInfo second = getOrCompute(mBatteryStats,
+                BatteryTestUtils.getDischargingIntent(), BatteryInfoCache.InfoType.DEFAULT);
+
+        assertThat(second).isSameAs(first);
+        assertThat(mComputeCount).isEqualTo(1);
+        assertThat(mBatteryInfoCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getOrCompute_newStatsGeneration_computesAgain() {
+        getOrCompute(mBatteryStats, mDischargingIntent, BatteryInfoCache.InfoType.DEFAULT);
+        getOrCompute(mOtherBatteryStats, mDischargingIntent, BatteryInfoCache.InfoType.DEFAULT);
+
+        assertThat(mComputeCount).isEqualTo(2);
+    }
+
+    @Test
+    public void getOrCompute_batteryLevelChanged_computesAgain() {
+        getOrCompute(mBatteryStats, mDischargingIntent, BatteryInfoCache.InfoType.DEFAULT);
+        final Intent intent = BatteryTestUtils.getCustomBatteryIntent(0 /* plugged */,
+                9 /* level */, 100 /* scale */, 3 /* status */);
+        getOrCompute(mBatteryStats, intent, BatteryInfoCache.InfoType.DEFAULT);
+
+        assertThat(mComputeCount).isEqualTo(2);
+    }
+
+    @Test
+    public void getOrCompute_differentType_computesAgain() {
+        getOrCompute(mBatteryStats, mDischargingIntent, BatteryInfoCache.InfoType.DEFAULT);
+        getOrCompute(mBatteryStats, mDischargingIntent,
+                BatteryInfoCache.InfoType.SYSTEM_ESTIMATE);
+
+        assertThat(mComputeCount).isEqualTo(2);
+    }
+
+    @Test
+    public void getOrCompute_noBroadcast_doesNotCache() {
+        getOrCompute(mBatteryStats, null /* batteryBroadcast */,
+                BatteryInfoCache.InfoType.DEFAULT);
+        getOrCompute(mBatteryStats, null /* batteryBroadcast */,
+                BatteryInfoCache.InfoType.DEFAULT);
+
+        assertThat(mComputeCount).isEqualTo(2);
+    }
+
+    @Test
+    public void get_nullStats_matchesAnyGeneration() {
+        mBatteryInfoCache.put(null /* stats */, mDischargingIntent,
+                BatteryInfoCache.InfoType.SUMMARY, mBatteryInfo);
+
+        assertThat(mBatteryInfoCache.get(null /* stats */, mDischargingIntent,
+                BatteryInfoCache.InfoType.SUMMARY)).isSameAs(mBatteryInfo);
+        assertThat(mBatteryInfoCache.get(mBatteryStats, mDischargingIntent,
+                BatteryInfoCache.InfoType.SUMMARY)).isNull();
+    }
+
+    @Test
+    public void clear_removesEntries() {
+        mBatteryInfoCache.put(mBatteryStats, mDischargingIntent,
+                BatteryInfoCache.InfoType.DEFAULT, mBatteryInfo);
+
+        mBatteryInfoCache.clear();
+
+        assertThat(mBatteryInfoCache.get(mBatteryStats, mDischargingIntent,
+                BatteryInfoCache.InfoType.DEFAULT)).isNull();
+    }
+
+    private BatteryInfo getOrCompute(BatteryStats stats, Intent batteryBroadcast,
+            @BatteryInfoCache.InfoType int type) {
+        return mBatteryInfoCache.getOrCompute(stats, batteryBroadcast, type, () -> {
+            mComputeCount++;
+            return mComputeCount == 1 ? mBatteryInfo : mOtherBatteryInfo;
+        });
+    }
+}
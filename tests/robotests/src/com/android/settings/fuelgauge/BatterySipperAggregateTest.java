@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.os.BatteryStats;
+
+import com.android.internal.os.BatterySipper;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatterySipperAggregateTest {
+
+    private static final int UID_LOW = 10001;
+    private static final int UID_HIGH = 10002;
+    private static final int UID_SYSTEM = 1000;
+    private static final double PRECISION = 0.001;
+
+    @Mock
+    private BatteryUtils mBatteryUtils;
+
+    private BatterySipper mLowSipper;
+    private BatterySipper mHighSipper;
+    private BatterySipper mSystemSipper;
+    private BatterySipper mOvercountedSipper;
+    private List<BatterySipper> mSippers;
+    private BatterySipperAggregate mAggregate;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        mLowSipper = createSipper(BatterySipper.DrainType.APP, UID_LOW, 10);
+        mHighSipper = createSipper(BatterySipper.DrainType.APP, UID_HIGH, 30);
+        mSystemSipper = createSipper(BatterySipper.DrainType.APP, UID_SYSTEM, 20);
+        mOvercountedSipper = createSipper(BatterySipper.DrainType.OVERCOUNTED, UID_SYSTEM, 50);
+        doReturn(true).when(mBatteryUtils).shouldHideSipper(mSystemSipper);
+        doReturn(true).when(mBatteryUtils).shouldHideSipper(mOvercountedSipper);
+
+        mSippers = new ArrayList<>();
+        mSippers.add(mLowSipper);
+        mSippers.add(mHighSipper);
+        mSippers.add(mSystemSipper);
+        mSippers.add(mOvercountedSipper);
+        mAggregate = new BatterySipperAggregate();
+    }
+
+    @Test
+    public void testUpdate_sortedByDescendingPower() {
+        mAggregate.update(mBatteryUtils, mSippers, false /* smearScreenUsage */);
+
+        assertThat(mAggregate.size()).isEqualTo(4);
+        assertThat(mAggregate.getSipper(mAggregate.getSortedIndex(0)))
+                .isSameAs(mOvercountedSipper);
+        assertThat(mAggregate.getSipper(mAggregate.getSortedIndex(1))).isSameAs(mHighSipper);
+        assertThat(mAggregate.getSipper(mAggregate.getSortedIndex(2))).isSameAs(mSystemSipper);
+        assertThat(mAggregate.getSipper(mAggregate.getSortedIndex(3))).isSameAs(mLowSipper);
+    }
+
+    @Test
+    public void testUpdate_hiddenPowerSkipsOvercounted() {
+        mAggregate.update(mBatteryUtils, mSippers, false /* smearScreenUsage */);
+
+        assertThat(mAggregate.isHidden(2)).isTrue();
+        assertThat(mAggregate.isHidden(3)).isTrue();
+        assertThat(mAggregate.isHidden(0)).isFalse();
+        assertThat(mAggregate.getHiddenPowerMah()).isWithin(PRECISION).of(20);
+    }
+
+    @Test
+    public void testIndexOfUid_returnsFirstSipper() {
+        mAggregate.update(mBatteryUtils, mSippers, false /* smearScreenUsage */);
+
+        assertThat(mAggregate.indexOfUid(UID_HIGH)).isEqualTo(1);
+        assertThat(mAggregate.indexOfUid(UID_SYSTEM)).isEqualTo(2);
+        assertThat(mAggregate.indexOfUid(0)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testUpdate_smallerList_replacesContent() {
+        mAggregate.update(mBatteryUtils, mSippers, false /* smearScreenUsage */);
+        final List<BatterySipper> sippers = new ArrayList<>();
+        sippers.add(mLowSipper);
+
+        mAggregate.update(mBatteryUtils, sippers, false /* smearScreenUsage */);
+
+        assertThat(mAggregate.size()).isEqualTo(1);
+        assertThat(mAggregate.indexOfUid(UID_HIGH)).isEqualTo(-1);
+        assertThat(mAggregate.getHiddenPowerMah()).isWithin(PRECISION).of(0);
+    }
+
+    @Test
+    public void testUpdate_largerList_replacesContent() {
+        final List<BatterySipper> sippers = new ArrayList<>();
+        sippers.add(mLowSipper);
+        mAggregate.update(mBatteryUtils, sippers, false /* smearScreenUsage */);
+
+        mAggregate.update(mBatteryUtils, mSippers, false /* smearScreenUsage */);
+
+        assertThat(mAggregate.size()).isEqualTo(4);
+        assertThat(mAggregate.getSipper(3)).isSameAs(mOvercountedSipper);
+        assertThat(mAggregate.indexOfUid(UID_HIGH)).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetProcessTimeMs_readOncePerUpdate() {
+        doReturn(100L).when(mBatteryUtils).getProcessTimeMs(anyInt(),
+                any(BatteryStats.Uid.class), anyInt());
+        mAggregate.update(mBatteryUtils, mSippers, false /* smearScreenUsage */);
+
+        mAggregate.getProcessTimeMs(mBatteryUtils, BatteryUtils.StatusType.FOREGROUND, 0);
+        final long timeMs = mAggregate.getProcessTimeMs(mBatteryUtils,
+                BatteryUtils.StatusType.FOREGROUND, 0);
+
+        assertThat(timeMs).isEqualTo(100L);
+        verify(mBatteryUtils, times(1)).getProcessTimeMs(BatteryUtils.StatusType.FOREGROUND,
+                mLowSipper.uidObj, BatteryStats.STATS_SINCE_CHARGED);
+    }
+
+    @Test
+    public void testLoadProcessTimes_getProcessTimeMsDoesNotReadAgain() {
+        doReturn(100L).when(mBatteryUtils).getProcessTimeMs(anyInt(),
+                any(BatteryStats.Uid.class), anyInt());
+        mAggregate.update(mBatteryUtils, mSippers, false /* smearScreenUsage */);
+        mAggregate.loadProcessTimes(mBatteryUtils);
+
+        final long foregroundTimeMs = mAggregate.getProcessTimeMs(mBatteryUtils,
+                BatteryUtils.StatusType.FOREGROUND, 0);
+        final long backgroundTimeMs = mAggregate.getProcessTimeMs(mBatteryUtils,
+                BatteryUtils.StatusType.BACKGROUND, 0);
+
+        assertThat(foregroundTimeMs).isEqualTo(100L);
+        assertThat(backgroundTimeMs).isEqualTo(100L);
+        verify(mBatteryUtils, times(1)).getProcessTimeMs(BatteryUtils.StatusType.FOREGROUND,
+                mLowSipper.uidObj, BatteryStats.STATS_SINCE_CHARGED);
+        verify(mBatteryUtils, times(1)).getProcessTimeMs(BatteryUtils.StatusType.BACKGROUND,
+                mLowSipper.uidObj, BatteryStats.STATS_SINCE_CHARGED);
+    }
+
+    private static BatterySipper createSipper(BatterySipper.DrainType type, int uid,
+            double powerMah) {
+        final BatteryStats.Uid uidObj = mock(BatteryStats.Uid.class);
+        doReturn(uid).when(uidObj).getUid();
+        return new BatterySipper(type, uidObj, powerMah);
+    }
+}
@@ -25,9 +25,6 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
-import static org.mockito.Matchers.anyLong;
-import static org.mockito.Matchers.anyString;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -64,6 +61,8 @@ import com.android.settings.testutils.shadow.ShadowPowerWhitelistBackend;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.Robolectric;
@@ -74,6 +73,7 @@ import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowJobScheduler;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -102,6 +102,8 @@ public class AnomalyDetectionJobServiceTest {
     private JobParameters mJobParameters;
     @Mock
     private JobWorkItem mJobWorkItem;
+    @Captor
+    private ArgumentCaptor<List<BatteryDatabaseManager.AnomalyRecord>> mAnomaliesCaptor;
 
     private BatteryTipPolicy mPolicy;
     private Bundle mBundle;
@@ -142,22 +144,21 @@ public class AnomalyDetectionJobServiceTest {
     }
 
     @Test
-    public void saveAnomalyToDatabase_systemWhitelisted_doNotSave() {
+    public void saveAnomaliesToDatabase_systemWhitelisted_doNotSave() {
         doReturn(UID).when(mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
         doReturn(true).when(mPowerWhitelistBackend).isWhitelisted(any(String[].class));
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider,
-                mFeatureFactory.metricsFeatureProvider, mBundle);
+                mFeatureFactory.metricsFeatureProvider, Collections.singletonList(mBundle));
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
-                anyInt(), anyLong());
+        verify(mBatteryDatabaseManager, never()).insertAnomalies(any());
     }
 
     @Test
-    public void saveAnomalyToDatabase_systemApp_doNotSaveButLog() {
+    public void saveAnomaliesToDatabase_systemApp_doNotSaveButLog() {
         final ArrayList<String> cookies = new ArrayList<>();
         cookies.add(SUBSCRIBER_COOKIES_AUTO_RESTRICTION);
         mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES, cookies);
@@ -167,14 +168,13 @@ public class AnomalyDetectionJobServiceTest {
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
         doReturn(true).when(mBatteryUtils).shouldHideAnomaly(any(), anyInt(), any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider,
-                mFeatureFactory.metricsFeatureProvider, mBundle);
+                mFeatureFactory.metricsFeatureProvider, Collections.singletonList(mBundle));
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
-                anyInt(), anyLong());
+        verify(mBatteryDatabaseManager, never()).insertAnomalies(any());
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_IGNORED,
                 SYSTEM_PACKAGE,
@@ -183,37 +183,35 @@ public class AnomalyDetectionJobServiceTest {
     }
 
     @Test
-    public void saveAnomalyToDatabase_systemUid_doNotSave() {
+    public void saveAnomaliesToDatabase_systemUid_doNotSave() {
         doReturn(Process.SYSTEM_UID).when(
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                Collections.singletonList(mBundle));
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
-                anyInt(), anyLong());
+        verify(mBatteryDatabaseManager, never()).insertAnomalies(any());
     }
 
     @Test
-    public void saveAnomalyToDatabase_uidNull_doNotSave() {
+    public void saveAnomaliesToDatabase_uidNull_doNotSave() {
         doReturn(AnomalyDetectionJobService.UID_NULL).when(
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                Collections.singletonList(mBundle));
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
-                anyInt(), anyLong());
+        verify(mBatteryDatabaseManager, never()).insertAnomalies(any());
     }
 
     @Test
-    public void saveAnomalyToDatabase_normalAppWithAutoRestriction_save() {
+    public void saveAnomaliesToDatabase_normalAppWithAutoRestriction_save() {
         final ArrayList<String> cookies = new ArrayList<>();
         cookies.add(SUBSCRIBER_COOKIES_AUTO_RESTRICTION);
         mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES, cookies);
@@ -222,14 +220,17 @@ public class AnomalyDetectionJobServiceTest {
         doReturn(Process.FIRST_APPLICATION_UID).when(
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                Collections.singletonList(mBundle));
 
-        verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
-                eq(AnomalyDatabaseHelper.State.AUTO_HANDLED), anyLong());
+        verify(mBatteryDatabaseManager).insertAnomalies(mAnomaliesCaptor.capture());
+        assertThat(mAnomaliesCaptor.getValue()).hasSize(1);
+        final BatteryDatabaseManager.AnomalyRecord anomaly = mAnomaliesCaptor.getValue().get(0);
+        assertThat(anomaly.type).isEqualTo(ANOMALY_TYPE);
+        assertThat(anomaly.anomalyState).isEqualTo(AnomalyDatabaseHelper.State.AUTO_HANDLED);
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
                 SYSTEM_PACKAGE,
@@ -238,7 +239,7 @@ public class AnomalyDetectionJobServiceTest {
     }
 
     @Test
-    public void saveAnomalyToDatabase_normalAppWithoutAutoRestriction_save() {
+    public void saveAnomaliesToDatabase_normalAppWithoutAutoRestriction_save() {
         final ArrayList<String> cookies = new ArrayList<>();
         cookies.add(SUBSCRIBER_COOKIES_NOT_AUTO_RESTRICTION);
         mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES, cookies);
@@ -247,14 +248,17 @@ public class AnomalyDetectionJobServiceTest {
         doReturn(Process.FIRST_APPLICATION_UID).when(
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                Collections.singletonList(mBundle));
 
-        verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
-                eq(AnomalyDatabaseHelper.State.NEW), anyLong());
+        verify(mBatteryDatabaseManager).insertAnomalies(mAnomaliesCaptor.capture());
+        assertThat(mAnomaliesCaptor.getValue()).hasSize(1);
+        final BatteryDatabaseManager.AnomalyRecord anomaly = mAnomaliesCaptor.getValue().get(0);
+        assertThat(anomaly.type).isEqualTo(ANOMALY_TYPE);
+        assertThat(anomaly.anomalyState).isEqualTo(AnomalyDatabaseHelper.State.NEW);
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
                 SYSTEM_PACKAGE,
@@ -262,6 +266,44 @@ public class AnomalyDetectionJobServiceTest {
                 Pair.create(MetricsProto.MetricsEvent.FIELD_APP_VERSION_CODE, VERSION_CODE));
     }
 
+    @Test
+    public void saveAnomaliesToDatabase_multipleBundles_insertInOneBatch() {
+        final ArrayList<String> cookies = new ArrayList<>();
+        cookies.add(SUBSCRIBER_COOKIES_NOT_AUTO_RESTRICTION);
+        mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES, cookies);
+        doReturn(SYSTEM_PACKAGE).when(mBatteryUtils).getPackageName(anyInt());
+        doReturn(Process.FIRST_APPLICATION_UID).when(
+                mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
+        final List<Bundle> bundles = new ArrayList<>();
+        bundles.add(mBundle);
+        bundles.add(mBundle);
+        bundles.add(mBundle);
+
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
+                mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
+                mPowerWhitelistBackend, mContext.getContentResolver(),
+                mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
+                bundles);
+
+        verify(mBatteryDatabaseManager).insertAnomalies(mAnomaliesCaptor.capture());
+        assertThat(mAnomaliesCaptor.getValue()).hasSize(3);
+    }
+
+    @Test
+    public void dequeueWorkBatch_moreThanMaxBatchSize_returnMaxBatchSize() {
+        when(mJobParameters.dequeueWork()).thenReturn(mJobWorkItem);
+
+        assertThat(mAnomalyDetectionJobService.dequeueWorkBatch(mJobParameters))
+                .hasSize(AnomalyDetectionJobService.MAX_BATCH_SIZE);
+    }
+
+    @Test
+    public void dequeueWorkBatch_noWork_returnEmpty() {
+        when(mJobParameters.dequeueWork()).thenReturn(null);
+
+        assertThat(mAnomalyDetectionJobService.dequeueWorkBatch(mJobParameters)).isEmpty();
+    }
+
     @Test
     public void extractUidFromStatsDimensionsValue_extractCorrectUid() {
         // Build an integer dimensions value.
@@ -28,7 +28,10 @@ import android.os.PowerManager;
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.SmartBatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.SummaryTip;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 
 import org.junit.Before;
@@ -39,7 +42,10 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 @RunWith(SettingsRobolectricTestRunner.class)
 public class BatteryTipLoaderTest {
@@ -86,4 +92,77 @@ public class BatteryTipLoaderTest {
             assertThat(batteryTips.get(i).getType()).isEqualTo(TIP_ORDER[i]);
         }
     }
+
+    @Test
+    public void testDetectAll_keepsDetectorOrder() {
+        final BatteryTip smartBatteryTip = new SmartBatteryTip(BatteryTip.StateType.NEW);
+        final BatteryTip summaryTip = new SummaryTip(BatteryTip.StateType.NEW,
+                0 /* averageTimeMs */);
+
+        final List<BatteryTip> batteryTips = mBatteryTipLoader.detectAll(Arrays.asList(
+                new TestDetector(smartBatteryTip, null /* latch */),
+                new TestDetector(summaryTip, null /* latch */)));
+
+        assertThat(batteryTips).containsExactly(smartBatteryTip, summaryTip).inOrder();
+    }
+
+    @Test
+    public void testDetectAll_detectorTimesOut_useFallbackTip() {
+        final BatteryTipDetectorStats stats = new BatteryTipDetectorStats();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BatteryTip smartBatteryTip = new SmartBatteryTip(BatteryTip.StateType.NEW);
+        mBatteryTipLoader.mDetectorStats = stats;
+        mBatteryTipLoader.mDetectTimeoutMs = 100;
+
+        final List<BatteryTip> batteryTips = mBatteryTipLoader.detectAll(Arrays.asList(
+                new TestDetector(smartBatteryTip, null /* latch */),
+                new TestDetector(smartBatteryTip, latch)));
+        latch.countDown();
+
+        assertThat(batteryTips.get(0)).isSameAs(smartBatteryTip);
+        assertThat(batteryTips.get(1).getState()).isEqualTo(BatteryTip.StateType.INVISIBLE);
+        assertThat(stats.getTimeoutCount(TestDetector.class.getSimpleName())).isEqualTo(1);
+    }
+
+    @Test
+    public void testDetectAll_detectorFails_useFallbackTip() {
+        final BatteryTipDetector detector = new TestDetector(null /* tip */, null /* latch */) {
+            @Override
+            public BatteryTip detect() {
+                throw new IllegalStateException();
+            }
+        };
+
+        final List<BatteryTip> batteryTips = mBatteryTipLoader.detectAll(
+                Collections.singletonList(detector));
+
+        assertThat(batteryTips.get(0).getState()).isEqualTo(BatteryTip.StateType.INVISIBLE);
+    }
+
+    private static class TestDetector implements BatteryTipDetector {
+        private final BatteryTip mTip;
+        private final CountDownLatch mLatch;
+
+        TestDetector(BatteryTip tip, CountDownLatch latch) {
+            mTip = tip;
+            mLatch = latch;
+        }
+
+        @Override
+        public BatteryTip detect() {
+            if (mLatch != null) {
+                try {
+                    mLatch.await();
+                } catch (InterruptedException e) {
+                    // Cancelled by the loader after the deadline.
+                }
+            }
+            return mTip;
+        }
+
+        @Override
+        public BatteryTip getFallbackTip() {
+            return new SmartBatteryTip(BatteryTip.StateType.INVISIBLE);
+        }
+    }
 }
@@ -45,6 +45,8 @@ public class BatteryTipPolicyTest {
             + ",low_battery_enabled=false"
             + ",low_battery_hour=10"
             + ",data_history_retain_day=24"
+            + ",data_history_compaction_enabled=false"
+            + ",data_history_max_rows=500"
             + ",excessive_bg_drain_percentage=25"
             + ",test_battery_saver_tip=true"
             + ",test_high_usage_tip=false"
@@ -77,6 +79,8 @@ public class BatteryTipPolicyTest {
         assertThat(batteryTipPolicy.lowBatteryEnabled).isFalse();
         assertThat(batteryTipPolicy.lowBatteryHour).isEqualTo(10);
         assertThat(batteryTipPolicy.dataHistoryRetainDay).isEqualTo(24);
+        assertThat(batteryTipPolicy.dataHistoryCompactionEnabled).isFalse();
+        assertThat(batteryTipPolicy.dataHistoryMaxRows).isEqualTo(500);
         assertThat(batteryTipPolicy.excessiveBgDrainPercentage).isEqualTo(25);
         assertThat(batteryTipPolicy.testBatterySaverTip).isTrue();
         assertThat(batteryTipPolicy.testHighUsageTip).isFalse();
@@ -104,6 +108,8 @@ public class BatteryTipPolicyTest {
         assertThat(batteryTipPolicy.lowBatteryEnabled).isTrue();
         assertThat(batteryTipPolicy.lowBatteryHour).isEqualTo(3);
         assertThat(batteryTipPolicy.dataHistoryRetainDay).isEqualTo(30);
+        assertThat(batteryTipPolicy.dataHistoryCompactionEnabled).isTrue();
+        assertThat(batteryTipPolicy.dataHistoryMaxRows).isEqualTo(1000);
         assertThat(batteryTipPolicy.excessiveBgDrainPercentage).isEqualTo(10);
         assertThat(batteryTipPolicy.testBatterySaverTip).isFalse();
         assertThat(batteryTipPolicy.testHighUsageTip).isFalse();
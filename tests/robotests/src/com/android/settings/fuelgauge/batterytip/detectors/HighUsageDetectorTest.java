@@ -18,6 +18,7 @@ package com.android.settings.fuelgauge.batterytip.detectors;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -31,6 +32,7 @@ import android.text.format.DateUtils;
 import com.android.internal.os.BatterySipper;
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.settings.fuelgauge.BatteryInfo;
+import com.android.settings.fuelgauge.BatterySipperAggregate;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.batterytip.AppInfo;
 import com.android.settings.fuelgauge.batterytip.BatteryTipPolicy;
@@ -102,6 +104,11 @@ public class HighUsageDetectorTest {
         mUsageList = new ArrayList<>();
         mUsageList.add(mHighBatterySipper);
         when(mBatteryStatsHelper.getUsageList()).thenReturn(mUsageList);
+        doAnswer(invocation -> {
+            final BatterySipperAggregate aggregate = new BatterySipperAggregate();
+            aggregate.update(mBatteryUtils, mUsageList, false /* smearScreenUsage */);
+            return aggregate;
+        }).when(mBatteryUtils).getSipperAggregate(mBatteryStatsHelper);
     }
 
     @Test
@@ -24,12 +24,15 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 import android.app.AppOpsManager;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.util.SparseArray;
 
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
 import com.android.settings.fuelgauge.batterytip.AppInfo;
@@ -113,8 +116,7 @@ public class RestrictAppDetectorTest {
 
     @Test
     public void testDetect_hasAnomaly_tipNew() {
-        doReturn(mAppInfoList).when(mBatteryDatabaseManager)
-                .queryAllAnomalies(anyLong(), eq(AnomalyDatabaseHelper.State.NEW));
+        mockAnomalies(mAppInfoList, new ArrayList<>());
 
         assertThat(mRestrictAppDetector.detect().getState()).isEqualTo(BatteryTip.StateType.NEW);
     }
@@ -125,10 +127,7 @@ public class RestrictAppDetectorTest {
                 .setUid(RESTRICTED_UID)
                 .setPackageName(RESTRICTED_PACKAGE_NAME)
                 .build());
-        doReturn(new ArrayList<AppInfo>()).when(mBatteryDatabaseManager)
-                .queryAllAnomalies(anyLong(), eq(AnomalyDatabaseHelper.State.NEW));
-        doReturn(mAppInfoList).when(mBatteryDatabaseManager)
-                .queryAllAnomalies(anyLong(), eq(AnomalyDatabaseHelper.State.AUTO_HANDLED));
+        mockAnomalies(new ArrayList<>(), mAppInfoList);
 
         assertThat(mRestrictAppDetector.detect().getState())
                 .isEqualTo(BatteryTip.StateType.HANDLED);
@@ -139,8 +138,7 @@ public class RestrictAppDetectorTest {
         mAppInfoList.add(new AppInfo.Builder()
                 .setPackageName(UNINSTALLED_PACKAGE_NAME)
                 .build());
-        doReturn(mAppInfoList).when(mBatteryDatabaseManager)
-                .queryAllAnomalies(anyLong(), eq(AnomalyDatabaseHelper.State.NEW));
+        mockAnomalies(mAppInfoList, new ArrayList<>());
 
         final RestrictAppTip restrictAppTip = (RestrictAppTip) mRestrictAppDetector.detect();
         assertThat(restrictAppTip.getState()).isEqualTo(BatteryTip.StateType.NEW);
@@ -154,8 +152,7 @@ public class RestrictAppDetectorTest {
                 .setUid(RESTRICTED_UID)
                 .setPackageName(RESTRICTED_PACKAGE_NAME)
                 .build());
-        doReturn(mAppInfoList).when(mBatteryDatabaseManager)
-                .queryAllAnomalies(anyLong(), eq(AnomalyDatabaseHelper.State.NEW));
+        mockAnomalies(mAppInfoList, new ArrayList<>());
         doReturn(mApplicationInfo).when(mPackageManager).getApplicationInfo(
                 eq(RESTRICTED_PACKAGE_NAME), anyInt());
 
@@ -172,10 +169,7 @@ public class RestrictAppDetectorTest {
                 .setUid(UNRESTRICTED_UID)
                 .setPackageName(UNRESTRICTED_PACKAGE_NAME)
                 .build());
-        doReturn(new ArrayList<>()).when(mBatteryDatabaseManager)
-                .queryAllAnomalies(anyLong(), eq(AnomalyDatabaseHelper.State.NEW));
-        doReturn(mAppInfoList).when(mBatteryDatabaseManager)
-                .queryAllAnomalies(anyLong(), eq(AnomalyDatabaseHelper.State.AUTO_HANDLED));
+        mockAnomalies(new ArrayList<>(), mAppInfoList);
         doReturn(mApplicationInfo).when(mPackageManager).getApplicationInfo(
                 eq(UNRESTRICTED_PACKAGE_NAME), anyInt());
 
@@ -185,15 +179,31 @@ public class RestrictAppDetectorTest {
 
     @Test
     public void testDetect_noAnomaly_tipInvisible() {
-        doReturn(new ArrayList<AppInfo>()).when(mBatteryDatabaseManager)
-                .queryAllAnomalies(anyLong(), anyInt());
+        mockAnomalies(new ArrayList<>(), new ArrayList<>());
 
         assertThat(mRestrictAppDetector.detect().getState())
                 .isEqualTo(BatteryTip.StateType.INVISIBLE);
     }
 
+    @Test
+    public void testDetect_queriesAnomaliesOnce() {
+        mockAnomalies(new ArrayList<>(), new ArrayList<>());
+
+        mRestrictAppDetector.detect();
+
+        verify(mBatteryDatabaseManager).queryAnomaliesByState(anyLong(), any());
+        verify(mBatteryDatabaseManager, never()).queryAllAnomalies(anyLong(), anyInt());
+    }
+
     @Test
     public void testUseFakeData_alwaysFalse() {
         assertThat(RestrictAppDetector.USE_FAKE_DATA).isFalse();
     }
+
+    private void mockAnomalies(List<AppInfo> newAppInfos, List<AppInfo> autoHandledAppInfos) {
+        final SparseArray<List<AppInfo>> anomalies = new SparseArray<>();
+        anomalies.put(AnomalyDatabaseHelper.State.NEW, newAppInfos);
+        anomalies.put(AnomalyDatabaseHelper.State.AUTO_HANDLED, autoHandledAppInfos);
+        doReturn(anomalies).when(mBatteryDatabaseManager).queryAnomaliesByState(anyLong(), any());
+    }
 }
@@ -23,6 +23,7 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -30,7 +31,9 @@ import static org.mockito.Mockito.verify;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.content.pm.ProviderInfo;
 import android.content.pm.ResolveInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -38,7 +41,9 @@ import android.os.Build;
 import android.provider.SearchIndexableData;
 import android.util.ArrayMap;
 
+import com.android.settings.search.indexing.IndexData;
 import com.android.settings.search.indexing.PreIndexData;
+import com.android.settings.search.indexing.PreIndexDataCollector;
 import com.android.settings.testutils.DatabaseTestUtils;
 import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
@@ -103,6 +108,8 @@ public class DatabaseIndexingManagerTest {
 
     @Mock
     private PackageManager mPackageManager;
+    @Mock
+    private PreIndexDataCollector mCollector;
 
     @Before
     public void setUp() {
@@ -148,7 +155,8 @@ public class DatabaseIndexingManagerTest {
                 "data_key_reference",
                 "user_id",
                 "payload_type",
-                "payload"
+                "payload",
+                "provider_package"
         );
         // Prevent database schema regressions
         assertThat(columnNames).containsAllIn(expColumnNames);
@@ -162,7 +170,7 @@ public class DatabaseIndexingManagerTest {
         PreIndexData data = getPreIndexData(rawData);
         doReturn(data).when(mManager).getIndexDataFromProviders(anyList(), anyBoolean());
         doReturn(true).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         mManager.performIndexing();
 
@@ -175,7 +183,7 @@ public class DatabaseIndexingManagerTest {
         DatabaseIndexingManager manager =
                 spy(new DatabaseIndexingManager(mContext));
         doReturn(false).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         // Insert data point which will be dropped
         insertSpecialCase("Ceci n'est pas un pipe", true, "oui oui mon ami");
@@ -194,7 +202,7 @@ public class DatabaseIndexingManagerTest {
         PreIndexData data = getPreIndexData(rawData);
         doReturn(data).when(mManager).getIndexDataFromProviders(anyList(), anyBoolean());
         doReturn(true).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         mManager.performIndexing();
 
@@ -312,6 +320,39 @@ public class DatabaseIndexingManagerTest {
         assertThat(cursor.getString(2)).isEqualTo(TITLE_TWO);
     }
 
+    @Test
+    public void testUpdateDataInDatabase_returnsNumberOfFlippedRows() {
+        insertSpecialCase(TITLE_ONE, true /* enabled */, KEY_ONE);
+        insertSpecialCase(TITLE_TWO, false /* enabled */, KEY_TWO);
+        insertSpecialCase("title three", true /* enabled */, "key three");
+        Map<String, Set<String>> niks = new ArrayMap<>();
+        Set<String> keys = new HashSet<>();
+        keys.add(KEY_ONE);
+        niks.put(targetPackage, keys);
+
+        final int touched = mManager.updateDataInDatabase(mDb, niks);
+
+        // TITLE_ONE becomes disabled and TITLE_TWO becomes enabled, title three is untouched.
+        assertThat(touched).isEqualTo(2);
+        Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index WHERE enabled = 0", null);
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToPosition(0);
+        assertThat(cursor.getString(2)).isEqualTo(TITLE_ONE);
+    }
+
+    @Test
+    public void testUpdateDataInDatabase_unknownPackage_disabledResultsStayDisabled() {
+        insertSpecialCase(TITLE_ONE, false /* enabled */, KEY_ONE);
+        Map<String, Set<String>> niks = new ArrayMap<>();
+        niks.put("other package", new HashSet<>());
+
+        final int touched = mManager.updateDataInDatabase(mDb, niks);
+
+        assertThat(touched).isEqualTo(0);
+        Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index WHERE enabled = 0", null);
+        assertThat(cursor.getCount()).isEqualTo(1);
+    }
+
     @Test
     public void testEmptyNonIndexableKeys_emptyDataKeyResources_addedToDatabase() {
         insertSpecialCase(TITLE_ONE, true /* enabled */, null /* dataReferenceKey */);
@@ -324,8 +365,112 @@ public class DatabaseIndexingManagerTest {
         assertThat(cursor.getString(2)).isEqualTo(TITLE_ONE);
     }
 
+    @Test
+    public void testGetChangedProviders_updatedAddedAndRemovedProvidersAreChanged() {
+        final Map<String, Long> indexed = new ArrayMap<>();
+        indexed.put("unchanged", 1L);
+        indexed.put("updated", 1L);
+        indexed.put("removed", 1L);
+        IndexDatabaseHelper.setProvidersIndexed(mContext, indexed);
+
+        final Map<String, Long> current = new ArrayMap<>();
+        current.put("unchanged", 1L);
+        current.put("updated", 2L);
+        current.put("added", 1L);
+
+        assertThat(IndexDatabaseHelper.getChangedProviders(mContext, current))
+                .containsExactly("updated", "added", "removed");
+    }
+
+    @Test
+    public void testPerformIndexing_providerUpdated_onlyChangedProviderReindexed() {
+        IndexDatabaseHelper.setLocaleIndexed(mContext, Locale.getDefault().toString());
+        IndexDatabaseHelper.setBuildIndexed(mContext, Build.XTENDED_FINGERPRINT);
+        final Map<String, Long> indexed = new ArrayMap<>();
+        indexed.put(packageName, 1L);
+        IndexDatabaseHelper.setProvidersIndexed(mContext, indexed);
+        insertSpecialCase(TITLE_ONE, true /* enabled */, KEY_ONE);
+
+        mManager.performIndexing();
+
+        final Set<String> changedProviders = new HashSet<>();
+        changedProviders.add(packageName);
+        verify(mManager).deleteIndexDataForPackages(changedProviders);
+        verify(mManager).getIndexDataFromProviders(FAKE_PROVIDER_LIST, changedProviders);
+        verify(mManager).updateDatabase(any(PreIndexData.class), eq(false) /* isFullIndex */);
+        final Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index", null);
+        assertThat(cursor.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testPerformIndexing_providerFailed_leftOutOfLedger() {
+        IndexDatabaseHelper.setLocaleIndexed(mContext, Locale.getDefault().toString());
+        IndexDatabaseHelper.setBuildIndexed(mContext, Build.XTENDED_FINGERPRINT);
+        final Map<String, Long> indexed = new ArrayMap<>();
+        indexed.put(packageName, 1L);
+        IndexDatabaseHelper.setProvidersIndexed(mContext, indexed);
+        FAKE_PROVIDER_LIST.add(getFakeProvider(packageName, 2L));
+        final Set<String> failedProviders = new HashSet<>();
+        failedProviders.add(packageName);
+        doReturn(mCollector).when(mManager).getCollector();
+        doReturn(failedProviders).when(mCollector).getFailedProviders();
+        doReturn(new PreIndexData()).when(mManager)
+                .getIndexDataFromProviders(anyList(), any(Set.class));
+
+        mManager.performIndexing();
+
+        verify(mManager).deleteIndexDataForPackages(failedProviders);
+        assertThat(IndexDatabaseHelper.getIndexedProviderVersions(mContext))
+                .doesNotContainKey(packageName);
+    }
+
+    @Test
+    public void testDeleteIndexDataForPackages_otherPackagesKept() {
+        insertSpecialCase(TITLE_ONE, true /* enabled */, KEY_ONE);
+        final Set<String> packages = new HashSet<>();
+        packages.add("other package");
+
+        mManager.deleteIndexDataForPackages(packages);
+
+        final Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index", null);
+        assertThat(cursor.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDeleteIndexDataForPackages_rowsOfProviderDeleted() {
+        // The row targets another package than the provider which indexed it.
+        insertSpecialCase(TITLE_ONE, true /* enabled */, KEY_ONE);
+        final Set<String> packages = new HashSet<>();
+        packages.add(packageName);
+
+        mManager.deleteIndexDataForPackages(packages);
+
+        final Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index", null);
+        assertThat(cursor.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testInsertIndexData_rawData_providerPackageStored() {
+        final List<IndexData> indexData = mManager.getIndexData(getPreIndexData(getFakeRaw()));
+
+        mManager.insertIndexData(mDb, indexData);
+
+        final Cursor cursor = mDb.rawQuery("SELECT provider_package FROM prefs_index", null);
+        cursor.moveToFirst();
+        assertThat(cursor.getString(0)).isEqualTo(packageName);
+    }
+
     // Util functions
 
+    private ResolveInfo getFakeProvider(String packageName, long versionCode) {
+        final ResolveInfo info = new ResolveInfo();
+        info.providerInfo = new ProviderInfo();
+        info.providerInfo.packageName = packageName;
+        info.providerInfo.applicationInfo = new ApplicationInfo();
+        info.providerInfo.applicationInfo.longVersionCode = versionCode;
+        return info;
+    }
+
     private SearchIndexableRaw getFakeRaw() {
         return getFakeRaw(localeStr);
     }
@@ -376,6 +521,7 @@ public class DatabaseIndexingManagerTest {
         values.put(IndexDatabaseHelper.IndexColumns.USER_ID, 0);
         values.put(IndexDatabaseHelper.IndexColumns.PAYLOAD_TYPE, 0);
         values.put(IndexDatabaseHelper.IndexColumns.PAYLOAD, (String) null);
+        values.put(IndexDatabaseHelper.IndexColumns.PROVIDER_PACKAGE, packageName);
 
         mDb.replaceOrThrow(IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX, null, values);
     }
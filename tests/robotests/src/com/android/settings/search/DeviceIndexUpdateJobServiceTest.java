@@ -14,13 +14,16 @@
 
 package com.android.settings.search;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -31,6 +34,8 @@ import android.content.ContentResolver;
 import android.net.Uri;
 
 import com.android.settings.slices.SettingsSliceProvider;
+import com.android.settings.slices.SliceData;
+import com.android.settings.slices.SliceDataSnapshot;
 import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 
@@ -43,6 +48,8 @@ import org.robolectric.Robolectric;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import androidx.slice.Slice;
 import androidx.slice.SliceViewManager;
@@ -69,6 +76,10 @@ public class DeviceIndexUpdateJobServiceTest {
         doReturn(mActivity.getPackageName()).when(mJob).getPackageName();
         doReturn(mSliceManager).when(mJob).getSliceViewManager();
         doNothing().when(mJob).jobFinished(null, false);
+        doReturn(null).when(mJob).getSliceDataSnapshot();
+        // Bind one slice at a time unless a test needs concurrent binds, to keep the order of
+        // the binds deterministic.
+        mJob.mMaxConcurrentBinds = 1;
     }
 
     @Test
@@ -128,6 +139,99 @@ public class DeviceIndexUpdateJobServiceTest {
         verify(indexFeatureProvider, times(1)).index(any(), any(), any(), any(), any());
     }
 
+    @Test
+    public void testDoesNotIndexSnapshotTitleWithoutSliceTitle() {
+        Slice testSlice = genSlice("path1");
+        setSlices(testSlice);
+        doReturn(null).when(mJob).findTitle(testSlice, mJob.getMetadata(testSlice));
+        final SliceData sliceData = new SliceData.Builder()
+                .setKey("key")
+                .setTitle("indexed title")
+                .setFragmentName("fragment")
+                .setPreferenceControllerClassName("controller")
+                .setUri(testSlice.getUri())
+                .build();
+        final SliceDataSnapshot snapshot = mock(SliceDataSnapshot.class);
+        when(snapshot.getSliceData(testSlice.getUri())).thenReturn(sliceData);
+        doReturn(snapshot).when(mJob).getSliceDataSnapshot();
+
+        mJob.mRunningJob = true;
+        mJob.updateIndex(null);
+
+        DeviceIndexFeatureProvider indexFeatureProvider = FakeFeatureFactory.getFactory(mActivity)
+                .getDeviceIndexFeatureProvider();
+        verify(indexFeatureProvider, never()).index(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testBindsSlicesConcurrently() throws Exception {
+        Slice testSlice1 = genSlice("path1");
+        Slice testSlice2 = genSlice("path2");
+        setSlices(testSlice1, testSlice2);
+        final CountDownLatch secondBindStarted = new CountDownLatch(1);
+        final boolean[] bothBindsInFlight = new boolean[1];
+        doAnswer(invocation -> {
+            bothBindsInFlight[0] = secondBindStarted.await(5, TimeUnit.SECONDS);
+            return testSlice1;
+        }).when(mJob).bindSliceSynchronous(mSliceManager, testSlice1.getUri());
+        doAnswer(invocation -> {
+            secondBindStarted.countDown();
+            return testSlice2;
+        }).when(mJob).bindSliceSynchronous(mSliceManager, testSlice2.getUri());
+        mJob.mMaxConcurrentBinds = 2;
+
+        mJob.mRunningJob = true;
+        mJob.updateIndex(null);
+
+        assertThat(bothBindsInFlight[0]).isTrue();
+        DeviceIndexFeatureProvider indexFeatureProvider = FakeFeatureFactory.getFactory(mActivity)
+                .getDeviceIndexFeatureProvider();
+        verify(indexFeatureProvider, times(2)).index(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testCountsFailedSlices() {
+        Slice testSlice = genSlice("path2");
+        setSlices(genSlice("path1"), testSlice);
+        doReturn(null).when(mJob).bindSliceSynchronous(mSliceManager, testSlice.getUri());
+
+        mJob.mRunningJob = true;
+        mJob.updateIndex(null);
+
+        assertThat(mJob.mTotalSliceCount).isEqualTo(2);
+        assertThat(mJob.mFailedSliceCount).isEqualTo(1);
+        DeviceIndexFeatureProvider indexFeatureProvider = FakeFeatureFactory.getFactory(mActivity)
+                .getDeviceIndexFeatureProvider();
+        verify(indexFeatureProvider, times(1)).index(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testBindThrowsError_countedAsFailedAndJobFinished() {
+        Slice testSlice = genSlice("path2");
+        setSlices(genSlice("path1"), testSlice);
+        doThrow(new NoClassDefFoundError()).when(mJob)
+                .bindSliceSynchronous(mSliceManager, testSlice.getUri());
+
+        mJob.mRunningJob = true;
+        mJob.updateIndex(null);
+
+        assertThat(mJob.mTotalSliceCount).isEqualTo(2);
+        assertThat(mJob.mFailedSliceCount).isEqualTo(1);
+        DeviceIndexFeatureProvider indexFeatureProvider = FakeFeatureFactory.getFactory(mActivity)
+                .getDeviceIndexFeatureProvider();
+        verify(indexFeatureProvider, times(1)).index(any(), any(), any(), any(), any());
+        verify(mJob).jobFinished(null, false);
+    }
+
+    @Test
+    public void testBindSliceSynchronous_neverLoaded_timesOut() {
+        final Uri uri = genSlice("path1").getUri();
+        mJob.mSliceBindTimeoutMs = 10;
+
+        assertThat(mJob.bindSliceSynchronous(mSliceManager, uri)).isNull();
+        verify(mSliceManager).unregisterSliceCallback(eq(uri), any());
+    }
+
     private Slice genSlice(String path) {
         return new Slice.Builder(BASE_URI.buildUpon().path(path).build()).build();
     }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.accounts.AccountManager;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.UserManager;
+import android.provider.Settings;
+
+import com.android.internal.telephony.TelephonyIntents;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class NonIndexableKeysCacheTest {
+
+    private static final List<String> KEYS = Arrays.asList("key1", "key2");
+
+    private Context mContext;
+    private NonIndexableKeysCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = new NonIndexableKeysCache(mContext);
+    }
+
+    @Test
+    public void get_emptyCache_returnsNull() {
+        assertThat(mCache.get()).isNull();
+    }
+
+    @Test
+    public void get_afterPut_returnsCachedKeys() {
+        mCache.put(mCache.getSignature(), new ArrayList<>(KEYS));
+
+        assertThat(mCache.get()).containsExactlyElementsIn(KEYS).inOrder();
+        assertThat(mCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void put_inputsChangedDuringComputation_notCached() {
+        final String signature = mCache.getSignature();
+        mCache.invalidate();
+
+        mCache.put(signature, new ArrayList<>(KEYS));
+
+        assertThat(mCache.get()).isNull();
+    }
+
+    @Test
+    public void get_globalSettingChanged_returnsNull() {
+        mCache.get();
+        mCache.put(mCache.getSignature(), new ArrayList<>(KEYS));
+
+        mContext.getContentResolver().notifyChange(
+                Settings.Global.getUriFor(Settings.Global.DEVELOPMENT_SETTINGS_ENABLED),
+                null /* observer */);
+
+        assertThat(mCache.get()).isNull();
+    }
+
+    @Test
+    public void get_secureSettingChanged_returnsNull() {
+        mCache.get();
+        mCache.put(mCache.getSignature(), new ArrayList<>(KEYS));
+
+        mContext.getContentResolver().notifyChange(
+                Settings.Secure.getUriFor(Settings.Secure.LOCATION_MODE), null /* observer */);
+
+        assertThat(mCache.get()).isNull();
+    }
+
+    @Test
+    public void get_managedProfileAdded_returnsNull() {
+        mCache.get();
+        mCache.put(mCache.getSignature(), new ArrayList<>(KEYS));
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_MANAGED_PROFILE_ADDED));
+
+        assertThat(mCache.get()).isNull();
+    }
+
+    @Test
+    public void get_accountsChanged_returnsNull() {
+        mCache.get();
+        mCache.put(mCache.getSignature(), new ArrayList<>(KEYS));
+
+        mContext.sendBroadcast(new Intent(AccountManager.LOGIN_ACCOUNTS_CHANGED_ACTION));
+
+        assertThat(mCache.get()).isNull();
+    }
+
+    @Test
+    public void get_userRestrictionsChanged_returnsNull() {
+        mCache.get();
+        mCache.put(mCache.getSignature(), new ArrayList<>(KEYS));
+
+        mContext.sendBroadcast(new Intent(UserManager.ACTION_USER_RESTRICTIONS_CHANGED));
+
+        assertThat(mCache.get()).isNull();
+    }
+
+    @Test
+    public void get_simStateChanged_returnsNull() {
+        mCache.get();
+        mCache.put(mCache.getSignature(), new ArrayList<>(KEYS));
+
+        mContext.sendBroadcast(new Intent(TelephonyIntents.ACTION_SIM_STATE_CHANGED));
+
+        assertThat(mCache.get()).isNull();
+    }
+
+    @Test
+    public void get_packageChanged_returnsNull() {
+        mCache.get();
+        mCache.put(mCache.getSignature(), new ArrayList<>(KEYS));
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_ADDED,
+                Uri.fromParts("package", "com.example", null /* fragment */)));
+
+        assertThat(mCache.get()).isNull();
+    }
+}
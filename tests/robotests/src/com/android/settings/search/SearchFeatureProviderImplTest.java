@@ -18,7 +18,11 @@
 package com.android.settings.search;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import android.app.Activity;
 import android.content.ComponentName;
@@ -39,10 +43,11 @@ public class SearchFeatureProviderImplTest {
 
     private SearchFeatureProviderImpl mProvider;
     private Activity mActivity;
+    private FakeFeatureFactory mFeatureFactory;
 
     @Before
     public void setUp() {
-        FakeFeatureFactory.setupForTest();
+        mFeatureFactory = FakeFeatureFactory.setupForTest();
         mActivity = Robolectric.buildActivity(Activity.class).create().visible().get();
         mProvider = spy(new SearchFeatureProviderImpl());
     }
@@ -63,6 +68,25 @@ public class SearchFeatureProviderImplTest {
                 .isEqualTo("com.android.settings.action.SETTINGS_SEARCH");
     }
 
+    @Test
+    public void updateIndex_shouldLogIndexingPhaseHistograms() {
+        final DatabaseIndexingManager indexingManager = mock(DatabaseIndexingManager.class);
+        final DatabaseIndexingManager.IndexingStats stats =
+                new DatabaseIndexingManager.IndexingStats();
+        stats.insertTimeMs = 42;
+        stats.insertedRowCount = 1000;
+        when(indexingManager.getLastIndexingStats()).thenReturn(stats);
+        doReturn(indexingManager).when(mProvider).getIndexingManager(mActivity);
+
+        mProvider.updateIndex(mActivity);
+
+        verify(indexingManager).performIndexing();
+        verify(mFeatureFactory.metricsFeatureProvider)
+                .histogram(mActivity, "search_synchronous_indexing_insert", 42);
+        verify(mFeatureFactory.metricsFeatureProvider)
+                .histogram(mActivity, "search_synchronous_indexing_rows", 1000);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void verifyLaunchSearchResultPageCaller_nullCaller_shouldCrash() {
         mProvider.verifyLaunchSearchResultPageCaller(mActivity, null /* caller */);
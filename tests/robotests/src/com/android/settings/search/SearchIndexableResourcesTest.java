@@ -55,6 +55,16 @@ public class SearchIndexableResourcesTest {
         mFakeFeatureFactory.searchFeatureProvider = mock(SearchFeatureProvider.class);
     }
 
+    @Test
+    public void testAllProviderValues_registeredWithSameProvider() throws Exception {
+        for (Class<?> clazz : mSearchProvider.getSearchIndexableResources().getProviderValues()) {
+            final Object reflectedProvider = clazz.getField(
+                    DatabaseIndexingUtils.FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER).get(null);
+            assertThat(SearchIndexProviderRegistry.getSearchIndexProvider(clazz))
+                    .isSameAs(reflectedProvider);
+        }
+    }
+
     @Test
     public void testAddIndex() {
         // Confirms that String.class isn't contained in SearchIndexableResources.
@@ -20,7 +20,10 @@ package com.android.settings.search.indexing;
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.spy;
 
 import android.content.ContentResolver;
@@ -43,12 +46,16 @@ import org.robolectric.RuntimeEnvironment;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 
 @RunWith(SettingsRobolectricTestRunner.class)
 public class PreIndexDataCollectorTest {
 
     private static final String AUTHORITY_ONE = "authority";
     private static final String PACKAGE_ONE = "com.android.settings";
+    private static final String AUTHORITY_TWO = "authority.two";
+    private static final String PACKAGE_TWO = "com.android.settings.two";
 
     @Mock
     private ContentResolver mResolver;
@@ -113,17 +120,105 @@ public class PreIndexDataCollectorTest {
         assertThat(data.nonIndexableKeys.get(AUTHORITY_ONE)).containsAllIn(niks);
     }
 
+    @Test
+    public void testCollectIndexableData_parallel_mergesInProviderOrder() {
+        final List<ResolveInfo> providerInfo = getDummyResolveInfo();
+        providerInfo.add(getDummyResolveInfo(AUTHORITY_TWO, PACKAGE_TWO));
+        doReturn(true).when(mDataCollector).isWellKnownProvider(any(ResolveInfo.class));
+        final List<SearchIndexableRaw> rawOne = getFakeRaw();
+        final List<SearchIndexableRaw> rawTwo = getFakeRaw();
+        doReturn(rawOne).when(mDataCollector).getIndexablesForRawDataUri(any(Context.class),
+                eq(PACKAGE_ONE), any(Uri.class), any(String[].class));
+        doReturn(rawTwo).when(mDataCollector).getIndexablesForRawDataUri(any(Context.class),
+                eq(PACKAGE_TWO), any(Uri.class), any(String[].class));
+        mDataCollector.setParallelCollectionEnabled(true);
+
+        PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
+                true /* isFullIndex */);
+
+        assertThat(data.dataToUpdate).containsExactly(rawOne.get(0), rawTwo.get(0)).inOrder();
+        assertThat(mDataCollector.getFailedProviders()).isEmpty();
+    }
+
+    @Test
+    public void testCollectIndexableData_parallel_throwingProviderFails() {
+        final List<ResolveInfo> providerInfo = getDummyResolveInfo();
+        providerInfo.add(getDummyResolveInfo(AUTHORITY_TWO, PACKAGE_TWO));
+        doReturn(true).when(mDataCollector).isWellKnownProvider(any(ResolveInfo.class));
+        final List<String> niks = getFakeNonIndexables();
+        doReturn(niks).when(mDataCollector)
+                .getNonIndexablesKeysFromRemoteProvider(PACKAGE_ONE, AUTHORITY_ONE);
+        doThrow(new IllegalStateException()).when(mDataCollector)
+                .getNonIndexablesKeysFromRemoteProvider(PACKAGE_TWO, AUTHORITY_TWO);
+        mDataCollector.setParallelCollectionEnabled(true);
+
+        PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
+                false /* isFullIndex */);
+
+        assertThat(data.nonIndexableKeys.keySet()).containsExactly(AUTHORITY_ONE);
+        assertThat(mDataCollector.getFailedProviders()).containsExactly(PACKAGE_TWO);
+    }
+
+    @Test
+    public void testCollectIndexableData_parallel_slowProviderTimesOut() {
+        final List<ResolveInfo> providerInfo = getDummyResolveInfo();
+        providerInfo.add(getDummyResolveInfo(AUTHORITY_TWO, PACKAGE_TWO));
+        doReturn(true).when(mDataCollector).isWellKnownProvider(any(ResolveInfo.class));
+        final List<String> niks = getFakeNonIndexables();
+        doReturn(niks).when(mDataCollector)
+                .getNonIndexablesKeysFromRemoteProvider(PACKAGE_ONE, AUTHORITY_ONE);
+        // Blocks until the collector cancels it, which interrupts it.
+        final CountDownLatch never = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            never.await();
+            return niks;
+        }).when(mDataCollector).getNonIndexablesKeysFromRemoteProvider(PACKAGE_TWO,
+                AUTHORITY_TWO);
+        mDataCollector.setParallelCollectionEnabled(true);
+        mDataCollector.setProviderTimeoutMs(100);
+
+        PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
+                false /* isFullIndex */);
+
+        assertThat(data.nonIndexableKeys.keySet()).containsExactly(AUTHORITY_ONE);
+        assertThat(mDataCollector.getFailedProviders()).containsExactly(PACKAGE_TWO);
+    }
+
+    @Test(timeout = 10000)
+    public void testProviderTask_runningLongerThanTimeout_cancelsItself() throws Exception {
+        final PreIndexDataCollector.ProviderTask task = new PreIndexDataCollector.ProviderTask(
+                () -> {
+                    new CountDownLatch(1).await();
+                    return null;
+                }, 100 /* timeoutMs */);
+        new Thread(task).start();
+
+        // Nothing but the task itself enforces the timeout here.
+        try {
+            task.get();
+        } catch (CancellationException e) {
+            // Expected.
+        }
+
+        assertThat(task.hasStarted()).isTrue();
+        assertThat(task.isCancelled()).isTrue();
+    }
+
     private List<ResolveInfo> getDummyResolveInfo() {
         List<ResolveInfo> infoList = new ArrayList<>();
+        infoList.add(getDummyResolveInfo(AUTHORITY_ONE, PACKAGE_ONE));
+
+        return infoList;
+    }
+
+    private ResolveInfo getDummyResolveInfo(String authority, String packageName) {
         ResolveInfo info = new ResolveInfo();
         info.providerInfo = new ProviderInfo();
         info.providerInfo.exported = true;
-        info.providerInfo.authority = AUTHORITY_ONE;
-        info.providerInfo.packageName = PACKAGE_ONE;
+        info.providerInfo.authority = authority;
+        info.providerInfo.packageName = packageName;
         info.providerInfo.applicationInfo = new ApplicationInfo();
-        infoList.add(info);
-
-        return infoList;
+        return info;
     }
 
     private List<SearchIndexableResource> getFakeResource() {
@@ -20,8 +20,10 @@ package com.android.settings.slices;
 import static android.content.ContentResolver.SCHEME_CONTENT;
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -58,7 +60,6 @@ import org.robolectric.annotation.Resetter;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -103,8 +104,7 @@ public class SettingsSliceProviderTest {
         mContext = spy(RuntimeEnvironment.application);
         mProvider = spy(new SettingsSliceProvider());
         ShadowStrictMode.reset();
-        mProvider.mSliceWeakDataCache = new HashMap<>();
-        mProvider.mSliceDataCache = new HashMap<>();
+        mProvider.mSliceDataCache = new SliceDataCache();
         mProvider.mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(mContext);
         when(mProvider.getContext()).thenReturn(mContext);
 
@@ -137,7 +137,7 @@ public class SettingsSliceProviderTest {
         final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
 
         mProvider.loadSlice(uri);
-        SliceData data = mProvider.mSliceWeakDataCache.get(uri);
+        SliceData data = mProvider.mSliceDataCache.get(uri);
 
         assertThat(data.getKey()).isEqualTo(KEY);
         assertThat(data.getTitle()).isEqualTo(TITLE);
@@ -154,39 +154,84 @@ public class SettingsSliceProviderTest {
     }
 
     @Test
-    public void testLoadSlice_doesNotCacheWithoutPin() {
+    public void testLoadSlice_cachesWithoutPin() {
         insertSpecialCase(KEY);
         final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
 
         mProvider.loadSlice(uri);
         SliceData data = mProvider.mSliceDataCache.get(uri);
 
-        assertThat(data).isNull();
+        assertThat(data.getKey()).isEqualTo(KEY);
     }
 
     @Test
-    public void testLoadSlice_cachesWithPin() {
-        insertSpecialCase(KEY);
+    public void testLoadSlice_cachedEntryKeptOnBuild() {
+        SliceData data = getDummyData();
+        mProvider.mSliceDataCache.put(data.getUri(), data);
+        mProvider.onBindSlice(data.getUri());
+
+        assertThat(mProvider.mSliceDataCache.getHitCount()).isEqualTo(1);
+        assertThat(mProvider.mSliceDataCache.get(data.getUri())).isEqualTo(data);
+    }
+
+    @Test
+    public void onBindSlice_cacheMiss_loadsSliceInBackground() {
         final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
-        when(mManager.getPinnedSlices()).thenReturn(Arrays.asList(uri));
+        doNothing().when(mProvider).loadSliceInBackground(uri);
 
-        mProvider.loadSlice(uri);
-        SliceData data = mProvider.mSliceDataCache.get(uri);
+        final Slice slice = mProvider.onBindSlice(uri);
 
-        assertThat(data.getKey()).isEqualTo(KEY);
-        assertThat(data.getTitle()).isEqualTo(TITLE);
+        assertThat(slice.getItems()).isEmpty();
+        assertThat(mProvider.mSliceDataCache.getMissCount()).isEqualTo(1);
+        verify(mProvider).loadSliceInBackground(uri);
     }
 
     @Test
-    public void testLoadSlice_cachedEntryRemovedOnBuild() {
-        SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
-        mProvider.onBindSlice(data.getUri());
-        insertSpecialCase(data.getKey());
+    public void warmSliceDataCache_cachesAllIndexedSlices() {
+        insertSpecialCase("platform_key", true /* isPlatformSlice */);
+        insertSpecialCase("oem_key", false /* isPlatformSlice */);
+        final Uri platformUri = getActionUri(SettingsSlicesContract.AUTHORITY, "platform_key");
+        final Uri oemUri = getActionUri(SettingsSliceProvider.SLICE_AUTHORITY, "oem_key");
+
+        mProvider.warmSliceDataCache();
+
+        assertThat(mProvider.mSliceDataCache.size()).isEqualTo(2);
+        assertThat(mProvider.mSliceDataCache.get(platformUri).getKey())
+                .isEqualTo("platform_key");
+        assertThat(mProvider.mSliceDataCache.get(oemUri).getKey()).isEqualTo("oem_key");
+    }
+
+    @Test
+    public void warmSliceDataCache_emptyIndex_returnsFalse() {
+        assertThat(mProvider.warmSliceDataCache()).isFalse();
+
+        insertSpecialCase(KEY);
+        // Drop the empty snapshot, as indexing does.
+        SlicesDatabaseHelper.getInstance(mContext).setIndexedState();
+        assertThat(mProvider.warmSliceDataCache()).isTrue();
+    }
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
+    @Test
+    public void invalidateSliceDataCacheIfReindexed_reindexed_clearsCache() {
+        final SliceData data = getDummyData();
+        mProvider.mSliceDataCache.put(data.getUri(), data);
+        mProvider.invalidateSliceDataCacheIfReindexed();
 
-        assertThat(cachedData).isNull();
+        SlicesDatabaseHelper.getInstance(mContext).setIndexedState();
+        mProvider.invalidateSliceDataCacheIfReindexed();
+
+        assertThat(mProvider.mSliceDataCache.get(data.getUri())).isNull();
+    }
+
+    @Test
+    public void onBindSlice_warmedCache_returnsFullSlice() {
+        insertSpecialCase(KEY);
+        final Uri uri = getActionUri(SettingsSlicesContract.AUTHORITY, KEY);
+
+        final Slice slice = mProvider.onBindSlice(uri);
+
+        assertThat(slice.getItems()).isNotEmpty();
+        verify(mProvider, never()).loadSliceInBackground(uri);
     }
 
     @Test
@@ -194,7 +239,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(true);
         final StrictMode.ThreadPolicy oldThreadPolicy = StrictMode.getThreadPolicy();
         SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         final StrictMode.ThreadPolicy newThreadPolicy = StrictMode.getThreadPolicy();
@@ -208,7 +253,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(false);
 
         SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         assertThat(ShadowStrictMode.isThreadPolicyOverridden()).isTrue();
@@ -233,15 +278,14 @@ public class SettingsSliceProviderTest {
     }
 
     @Test
-    public void testLoadSlice_cachedEntryRemovedOnUnpin() {
+    public void testLoadSlice_cachedEntryKeptOnUnpin() {
         SliceData data = getDummyData();
         mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onSliceUnpinned(data.getUri());
-        insertSpecialCase(data.getKey());
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
+        SliceData cachedData = mProvider.mSliceDataCache.get(data.getUri());
 
-        assertThat(cachedData).isNull();
+        assertThat(cachedData).isEqualTo(data);
     }
 
     @Test
@@ -456,6 +500,30 @@ public class SettingsSliceProviderTest {
         mProvider.onSlicePinned(uri);
     }
 
+    @Test
+    public void onBindSlice_cacheMiss_usesLoadedSnapshot() {
+        insertSpecialCase(KEY);
+        final Uri uri = getActionUri(SettingsSlicesContract.AUTHORITY, KEY);
+        mProvider.mSlicesDatabaseAccessor.getSliceDataSnapshot();
+        // The snapshot is loaded, but the cache was never warmed up.
+        doNothing().when(mProvider).warmSliceDataCacheInBackground();
+
+        final Slice slice = mProvider.onBindSlice(uri);
+
+        assertThat(slice.getItems()).isNotEmpty();
+        assertThat(mProvider.mSliceDataCache.get(uri).getKey()).isEqualTo(KEY);
+        verify(mProvider, never()).loadSliceInBackground(uri);
+    }
+
+    private static Uri getActionUri(String authority, String key) {
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(authority)
+                .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION)
+                .appendPath(key)
+                .build();
+    }
+
     private void insertSpecialCase(String key) {
         insertSpecialCase(key, true);
     }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class SliceDataCacheTest {
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        final SliceDataCache cache = new SliceDataCache(2);
+        final SliceData data = getDummyData("key");
+        cache.put(data.getUri(), data);
+
+        assertThat(cache.get(data.getUri())).isEqualTo(data);
+        assertThat(cache.get(getUri("missing"))).isNull();
+
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void put_overCapacity_evictsLeastRecentlyUsed() {
+        final SliceDataCache cache = new SliceDataCache(2);
+        final SliceData first = getDummyData("first");
+        final SliceData second = getDummyData("second");
+        final SliceData third = getDummyData("third");
+        cache.put(first.getUri(), first);
+        cache.put(second.getUri(), second);
+        // Touch the first entry, so that the second one is the least recently used.
+        cache.get(first.getUri());
+
+        cache.put(third.getUri(), third);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        assertThat(cache.get(second.getUri())).isNull();
+        assertThat(cache.get(first.getUri())).isEqualTo(first);
+        assertThat(cache.get(third.getUri())).isEqualTo(third);
+    }
+
+    @Test
+    public void putAllAbsent_keepsExistingEntriesAndDoesNotEvict() {
+        final SliceDataCache cache = new SliceDataCache(2);
+        final SliceData loaded = getDummyData("loaded");
+        final SliceData stale = new SliceData.Builder()
+                .setKey("loaded")
+                .setTitle("stale")
+                .setFragmentName("fragment")
+                .setPreferenceControllerClassName("controller")
+                .setUri(loaded.getUri())
+                .build();
+        cache.put(loaded.getUri(), loaded);
+
+        final int added = cache.putAllAbsent(Arrays.asList(stale, getDummyData("second"),
+                getDummyData("third")));
+
+        assertThat(added).isEqualTo(1);
+        assertThat(cache.getEvictionCount()).isEqualTo(0);
+        assertThat(cache.get(loaded.getUri()).getTitle()).isEqualTo("title");
+    }
+
+    @Test
+    public void setIndexGeneration_changed_clearsEntries() {
+        final SliceDataCache cache = new SliceDataCache(2);
+        final SliceData data = getDummyData("key");
+        cache.put(data.getUri(), data);
+
+        // The first generation is adopted by the entries already cached.
+        assertThat(cache.setIndexGeneration(1)).isFalse();
+        assertThat(cache.setIndexGeneration(1)).isFalse();
+        assertThat(cache.size()).isEqualTo(1);
+
+        assertThat(cache.setIndexGeneration(2)).isTrue();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void dump_printsCounters() {
+        final SliceDataCache cache = new SliceDataCache(2);
+        cache.get(getUri("missing"));
+        final StringWriter stringWriter = new StringWriter();
+
+        cache.dump(new PrintWriter(stringWriter));
+
+        assertThat(stringWriter.toString()).contains("hits: 0, misses: 1, evictions: 0");
+    }
+
+    private static Uri getUri(String key) {
+        return SliceBuilderUtils.getUri("action/" + key, false /* isPlatformSlice */);
+    }
+
+    private static SliceData getDummyData(String key) {
+        return new SliceData.Builder()
+                .setKey(key)
+                .setTitle("title")
+                .setFragmentName("fragment")
+                .setPreferenceControllerClassName("controller")
+                .setUri(getUri(key))
+                .build();
+    }
+}
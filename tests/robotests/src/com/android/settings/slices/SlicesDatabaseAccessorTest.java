@@ -21,10 +21,12 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Mockito.spy;
 
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.provider.SettingsSlicesContract;
 import android.view.accessibility.AccessibilityManager;
 
 import com.android.settings.testutils.FakeIndexProvider;
@@ -173,6 +175,54 @@ public class SlicesDatabaseAccessorTest {
         assertThat(keys).containsExactly(key);
     }
 
+    @Test
+    public void getSliceDataSnapshot_splitsSlicesByAuthority() {
+        insertSpecialCase("platform_key", true /* isPlatformSlice */);
+        insertSpecialCase("oem_key", false /* isPlatformSlice */);
+        final Uri platformUri = new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(SettingsSlicesContract.AUTHORITY)
+                .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION)
+                .appendPath("platform_key")
+                .build();
+
+        final SliceDataSnapshot snapshot = mAccessor.getSliceDataSnapshot();
+
+        assertThat(snapshot.size()).isEqualTo(2);
+        assertThat(snapshot.getUris(true /* isPlatformSlice */)).containsExactly(platformUri);
+        assertThat(snapshot.getSliceData(false /* isPlatformSlice */).get(0).getKey())
+                .isEqualTo("oem_key");
+        final SliceData data = snapshot.getSliceData(platformUri);
+        assertThat(data.getKey()).isEqualTo("platform_key");
+        assertThat(data.getTitle()).isEqualTo(FAKE_TITLE);
+        assertThat(data.getUri()).isEqualTo(platformUri);
+    }
+
+    @Test
+    public void getSliceDataSnapshot_sharedUntilIndexedAgain() {
+        insertSpecialCase("key");
+
+        final SliceDataSnapshot snapshot = mAccessor.getSliceDataSnapshot();
+
+        assertThat(new SlicesDatabaseAccessor(mContext).getLoadedSliceDataSnapshot())
+                .isSameAs(snapshot);
+        assertThat(mAccessor.getSliceDataSnapshot()).isSameAs(snapshot);
+
+        SlicesDatabaseHelper.getInstance(mContext).setIndexedState();
+
+        assertThat(mAccessor.getLoadedSliceDataSnapshot()).isNull();
+        assertThat(mAccessor.getSliceDataSnapshot()).isNotSameAs(snapshot);
+    }
+
+    @Test
+    public void getSliceDataSnapshot_intentUri_notInSnapshot() {
+        insertSpecialCase("key");
+
+        final SliceDataSnapshot snapshot = mAccessor.getSliceDataSnapshot();
+
+        assertThat(snapshot.getSliceData(SliceBuilderUtils.getUri("intent/key", true))).isNull();
+    }
+
     @Test
     @Config(qualifiers = "mcc999")
     public void getSliceKeys_indexesDatabase() {
@@ -35,6 +35,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
 import java.util.Locale;
 
 @RunWith(SettingsRobolectricTestRunner.class)
@@ -77,6 +78,32 @@ public class SlicesDatabaseHelperTest {
         assertThat(columnNames).isEqualTo(expectedNames);
     }
 
+    @Test
+    public void setSliceDataSnapshot_sameGeneration_published() {
+        final SliceDataSnapshot snapshot = new SliceDataSnapshot(new ArrayList<>());
+
+        final boolean published = mSlicesDatabaseHelper.setSliceDataSnapshot(snapshot,
+                mSlicesDatabaseHelper.getIndexGeneration());
+
+        assertThat(published).isTrue();
+        assertThat(mSlicesDatabaseHelper.getSliceDataSnapshot()).isSameAs(snapshot);
+    }
+
+    @Test
+    public void setSliceDataSnapshot_indexedAgainAfterQuery_notPublished() {
+        // The generation is read before the query, and the data is indexed again before the
+        // snapshot of the query is published.
+        final int generation = mSlicesDatabaseHelper.getIndexGeneration();
+        final SliceDataSnapshot snapshot = new SliceDataSnapshot(new ArrayList<>());
+        mSlicesDatabaseHelper.setIndexedState();
+
+        final boolean published = mSlicesDatabaseHelper.setSliceDataSnapshot(snapshot,
+                generation);
+
+        assertThat(published).isFalse();
+        assertThat(mSlicesDatabaseHelper.getSliceDataSnapshot()).isNull();
+    }
+
     @Test
     public void testUpgrade_dropsOldData() {
         ContentValues dummyValues = getDummyRow();
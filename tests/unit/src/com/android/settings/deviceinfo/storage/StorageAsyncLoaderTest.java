@@ -22,6 +22,9 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -55,6 +58,8 @@ public class StorageAsyncLoaderTest {
     private static final int SECONDARY_USER_ID = 10;
     private static final String PACKAGE_NAME_1 = "com.blah.test";
     private static final String PACKAGE_NAME_2 = "com.blah.test2";
+    private static final int FIRST_APP_UID = 10000;
+    private static final int SHARED_UID = 10100;
     private static final long DEFAULT_QUOTA = 64 * TrafficStats.MB_IN_BYTES;
 
     @Mock
@@ -219,21 +224,136 @@ public class StorageAsyncLoaderTest {
         assertThat(result.get(PRIMARY_USER_ID).otherAppsSize).isEqualTo(DEFAULT_QUOTA + 11);
     }
 
+    @Test
+    public void testSingleAppUid_loadedPerPackage() throws Exception {
+        addPackage(PACKAGE_NAME_1, 0, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
+        addPackage(PACKAGE_NAME_2, 0, 100, 1000, ApplicationInfo.CATEGORY_VIDEO);
+
+        SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.get(PRIMARY_USER_ID).videoAppsSize).isEqualTo(1111L);
+        verify(mSource, times(1)).getStatsForPackage(anyString(), eq(PACKAGE_NAME_1),
+                any(UserHandle.class));
+        verify(mSource, times(1)).getStatsForPackage(anyString(), eq(PACKAGE_NAME_2),
+                any(UserHandle.class));
+        verify(mSource, never()).getStatsForUid(anyString(), anyInt());
+    }
+
+    @Test
+    public void testSharedUid_sameBucket_loadedOnce() throws Exception {
+        addPackage(PACKAGE_NAME_1, SHARED_UID, 0, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
+        addPackage(PACKAGE_NAME_2, SHARED_UID, 0, 100, 1000, ApplicationInfo.CATEGORY_VIDEO);
+        setUidStats(SHARED_UID, 0, 101, 1010);
+
+        SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.get(PRIMARY_USER_ID).videoAppsSize).isEqualTo(1111L);
+        verify(mSource, times(1)).getStatsForUid(anyString(), eq(SHARED_UID));
+        verify(mSource, never()).getStatsForPackage(anyString(), anyString(),
+                any(UserHandle.class));
+    }
+
+    @Test
+    public void testSharedUid_mixedBuckets_loadedPerPackage() throws Exception {
+        addPackage(PACKAGE_NAME_1, SHARED_UID, 0, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
+        addPackage(PACKAGE_NAME_2, SHARED_UID, 0, 100, 1000, ApplicationInfo.CATEGORY_GAME);
+        setUidStats(SHARED_UID, 0, 101, 1010);
+
+        SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.get(PRIMARY_USER_ID).videoAppsSize).isEqualTo(11L);
+        assertThat(result.get(PRIMARY_USER_ID).gamesSize).isEqualTo(1100L);
+        verify(mSource, never()).getStatsForUid(anyString(), anyInt());
+    }
+
+    @Test
+    public void testSharedUid_mixedCodeOwners_loadedPerPackage() throws Exception {
+        UserInfo info = new UserInfo();
+        info.id = SECONDARY_USER_ID;
+        mUsers.add(info);
+        ApplicationInfo sharedApp = addPackage(PACKAGE_NAME_1, SHARED_UID, 0, 1, 10,
+                ApplicationInfo.CATEGORY_VIDEO);
+        List<ApplicationInfo> secondaryUserApps = new ArrayList<>();
+        secondaryUserApps.add(sharedApp);
+        ApplicationInfo secondaryApp = new ApplicationInfo();
+        secondaryApp.packageName = PACKAGE_NAME_2;
+        secondaryApp.uid = SHARED_UID;
+        secondaryApp.category = ApplicationInfo.CATEGORY_VIDEO;
+        secondaryUserApps.add(secondaryApp);
+        when(mSource.getStatsForPackage(anyString(), eq(PACKAGE_NAME_2), any(UserHandle.class)))
+                .thenReturn(createStats(0, 100, 1000));
+        when(mPackageManager.getInstalledApplicationsAsUser(0, SECONDARY_USER_ID))
+                .thenReturn(secondaryUserApps);
+        setUidStats(SHARED_UID, 0, 101, 1010);
+
+        SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.get(PRIMARY_USER_ID).videoAppsSize).isEqualTo(11L);
+        // Only the code size of the package which the primary user doesn't have.
+        assertThat(result.get(SECONDARY_USER_ID).videoAppsSize).isEqualTo(1110L);
+        verify(mSource, never()).getStatsForUid(anyString(), anyInt());
+    }
+
+    @Test
+    public void testSharedUid_cacheOverQuota_loadedPerPackage() throws Exception {
+        addPackage(PACKAGE_NAME_1, SHARED_UID, 100, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
+        addPackage(PACKAGE_NAME_2, SHARED_UID, DEFAULT_QUOTA, 100, 1000,
+                ApplicationInfo.CATEGORY_VIDEO);
+        setUidStats(SHARED_UID, DEFAULT_QUOTA + 100, 101, 1010);
+
+        SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
+
+        // Neither package is over the quota on its own.
+        assertThat(result.get(PRIMARY_USER_ID).videoAppsSize)
+                .isEqualTo(DEFAULT_QUOTA + 100 + 1111L);
+    }
+
+    @Test
+    public void testSharedUid_noUidStats_loadedPerPackage() throws Exception {
+        addPackage(PACKAGE_NAME_1, SHARED_UID, 0, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
+        addPackage(PACKAGE_NAME_2, SHARED_UID, 0, 100, 1000, ApplicationInfo.CATEGORY_VIDEO);
+
+        SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.get(PRIMARY_USER_ID).videoAppsSize).isEqualTo(1111L);
+    }
+
     private ApplicationInfo addPackage(String packageName, long cacheSize, long codeSize,
             long dataSize, int category) throws Exception {
+        return addPackage(packageName, FIRST_APP_UID + mInfo.size(), cacheSize, codeSize,
+                dataSize, category);
+    }
+
+    private ApplicationInfo addPackage(String packageName, int uid, long cacheSize,
+            long codeSize, long dataSize, int category) throws Exception {
         StorageStatsSource.AppStorageStats storageStats =
-                mock(StorageStatsSource.AppStorageStats.class);
-        when(storageStats.getCodeBytes()).thenReturn(codeSize);
-        when(storageStats.getDataBytes()).thenReturn(dataSize + cacheSize);
-        when(storageStats.getCacheBytes()).thenReturn(cacheSize);
+                createStats(cacheSize, codeSize, dataSize);
         when(mSource.getStatsForPackage(anyString(), eq(packageName), any(UserHandle.class)))
                 .thenReturn(storageStats);
 
         ApplicationInfo info = new ApplicationInfo();
         info.packageName = packageName;
+        info.uid = uid;
         info.category = category;
         mInfo.add(info);
         return info;
     }
 
+    private void setUidStats(int uid, long cacheSize, long codeSize, long dataSize)
+            throws Exception {
+        StorageStatsSource.AppStorageStats storageStats =
+                createStats(cacheSize, codeSize, dataSize);
+        when(mSource.getStatsForUid(anyString(), eq(uid))).thenReturn(storageStats);
+    }
+
+    private static StorageStatsSource.AppStorageStats createStats(long cacheSize, long codeSize,
+            long dataSize) {
+        StorageStatsSource.AppStorageStats storageStats =
+                mock(StorageStatsSource.AppStorageStats.class);
+        when(storageStats.getCodeBytes()).thenReturn(codeSize);
+        when(storageStats.getDataBytes()).thenReturn(dataSize + cacheSize);
+        when(storageStats.getCacheBytes()).thenReturn(cacheSize);
+        return storageStats;
+    }
+
 }